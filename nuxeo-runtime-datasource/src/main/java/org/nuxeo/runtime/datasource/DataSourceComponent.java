@@ -115,6 +115,25 @@ public class DataSourceComponent extends DefaultComponent {
         for (DataSourceLinkDescriptor linkDesc:links.values()) {
         	bindDataSourceLink(linkDesc);
         }
+        warmUpDataSources();
+    }
+
+    /**
+     * Creates the pools of the registered datasources and fills them up to
+     * their minimum size, so that the first requests don't pay for the
+     * connections establishment.
+     *
+     * @since 7.1
+     */
+    protected void warmUpDataSources() {
+        for (DataSourceDescriptor datasourceDesc : datasources.values()) {
+            try {
+                DataSourceHelper.getDataSource(datasourceDesc.getName());
+            } catch (NamingException | RuntimeException e) {
+                log.error("Cannot lookup datasource '" + datasourceDesc.getName() + "' for warm up", e);
+            }
+        }
+        registry.warmUp();
     }
 
     @Override
@@ -128,6 +147,7 @@ public class DataSourceComponent extends DefaultComponent {
             unbindDataSource(desc);
         }
         datasources.clear();
+        registry.shutdownValidation();
         namingContext = null;
     }
 
@@ -163,6 +183,8 @@ public class DataSourceComponent extends DefaultComponent {
         } catch (NamingException cause) {
             log.error("Cannot unbind datasource '" + descr.name + "' in JNDI",
                     cause);
+        } finally {
+            NuxeoContainer.invalidateLookups();
         }
     }
 
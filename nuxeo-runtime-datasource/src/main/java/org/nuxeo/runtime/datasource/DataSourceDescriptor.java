@@ -17,14 +17,18 @@
 
 package org.nuxeo.runtime.datasource;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.naming.Context;
 import javax.naming.Name;
 import javax.naming.NamingException;
+import javax.naming.RefAddr;
 import javax.naming.Reference;
 import javax.naming.StringRefAddr;
 import javax.naming.spi.ObjectFactory;
@@ -34,6 +38,7 @@ import javax.sql.XADataSource;
 import org.apache.commons.logging.LogFactory;
 import org.apache.tomcat.jdbc.naming.GenericNamingResourcesFactory;
 import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XNodeList;
 import org.nuxeo.common.xmap.annotation.XNodeMap;
 import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.runtime.api.Framework;
@@ -76,10 +81,22 @@ import org.w3c.dom.Node;
  * </pre>
  *
  * For a XA datasource, see the documentation for your JDBC driver.
+ * <p>
+ * A non-XA datasource may declare read replicas through {@code <replica>}
+ * sub-elements holding their URL, each replica gets its own pool and the
+ * datasource then routes read-only work to them, see
+ * {@link ReadOnlyRoutingDataSource}. Non-transactional work is also routed to
+ * the replicas if the <b>routeNonTransactional</b> attribute is true.
  */
 @XObject("datasource")
 public class DataSourceDescriptor {
 
+    public static final String PRIMARY_ADDR = "primary";
+
+    public static final String REPLICA_ADDR = "replica";
+
+    public static final String ROUTE_NON_TRANSACTIONAL_ADDR = "routeNonTransactional";
+
     /*
      * It is not possible to expand the variables in the setters because in
      * tests, values are not available in context. A clean up needs to be done
@@ -122,10 +139,18 @@ public class DataSourceDescriptor {
     @XNodeMap(value = "property", key = "@name", type = HashMap.class, componentType = String.class)
     public Map<String, String> properties;
 
+    /**
+     * @since 7.1
+     */
+    @XNodeList(value = "replica", type = ArrayList.class, componentType = String.class)
+    public List<String> replicas = new ArrayList<String>();
+
     protected Reference poolReference;
 
     protected Reference xaReference;
 
+    protected Reference routerReference;
+
     public static class PoolFactory
             implements ObjectFactory {
 
@@ -143,6 +168,93 @@ public class DataSourceDescriptor {
 
     }
 
+    public static class RouterFactory implements ObjectFactory {
+
+        @Override
+        public Object getObjectInstance(Object obj, Name name,
+                Context nameCtx, Hashtable<?, ?> env) throws Exception {
+            return Framework.getLocalService(PooledDataSourceRegistry.class).getOrCreateRouter(
+                    (Reference) obj);
+        }
+
+    }
+
+    public boolean hasReplicas() {
+        return replicas != null && !replicas.isEmpty();
+    }
+
+    protected String getPrimaryName() {
+        return getName() + "-primary";
+    }
+
+    protected String getReplicaName(int index) {
+        return getName() + "-replica-" + index;
+    }
+
+    /**
+     * Copies a pool reference, replacing the values of the given address
+     * types.
+     */
+    protected static Reference copyReference(Reference ref,
+            Map<String, String> replacements) {
+        Reference copy = new Reference(ref.getClassName(),
+                ref.getFactoryClassName(), null);
+        for (RefAddr addr : Collections.list(ref.getAll())) {
+            String value = replacements.get(addr.getType());
+            copy.add(value == null ? addr : new StringRefAddr(addr.getType(),
+                    value));
+        }
+        return copy;
+    }
+
+    /**
+     * Binds the primary and replica pools, and the routing datasource in
+     * place of the plain pool.
+     */
+    protected void bindReplicas(Context naming) throws NamingException {
+        if (driverClasssName == null) {
+            throw new RuntimeException("Datasource " + getName()
+                    + " should have a driverClassName attribute for using replicas");
+        }
+        Map<String, String> replacements = new HashMap<String, String>();
+        replacements.put("name", getPrimaryName());
+        naming.bind(DataSourceHelper.getDataSourceJNDIName(getPrimaryName()),
+                copyReference(poolReference, replacements));
+        routerReference = new Reference(DataSource.class.getName(),
+                RouterFactory.class.getName(), null);
+        routerReference.add(new StringRefAddr(PRIMARY_ADDR, getPrimaryName()));
+        for (int i = 0; i < replicas.size(); i++) {
+            String replicaName = getReplicaName(i);
+            replacements.put("name", replicaName);
+            replacements.put("url", Framework.expandVars(replicas.get(i).trim()));
+            naming.bind(DataSourceHelper.getDataSourceJNDIName(replicaName),
+                    copyReference(poolReference, replacements));
+            routerReference.add(new StringRefAddr(REPLICA_ADDR, replicaName));
+        }
+        NamedNodeMap attrs = element.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            Node attr = attrs.item(i);
+            routerReference.add(new StringRefAddr(attr.getNodeName(),
+                    Framework.expandVars(attr.getNodeValue())));
+        }
+        naming.bind(DataSourceHelper.getDataSourceJNDIName(getName()),
+                routerReference);
+    }
+
+    protected void unbindReplicas(Context naming,
+            PooledDataSourceRegistry registry) throws Exception {
+        if (registry != null) {
+            registry.clearPool(getPrimaryName());
+            for (int i = 0; i < replicas.size(); i++) {
+                registry.clearPool(getReplicaName(i));
+            }
+        }
+        naming.unbind(DataSourceHelper.getDataSourceJNDIName(getPrimaryName()));
+        for (int i = 0; i < replicas.size(); i++) {
+            naming.unbind(DataSourceHelper.getDataSourceJNDIName(getReplicaName(i)));
+        }
+    }
+
     public void bindSelf(
             Context naming)
             throws NamingException {
@@ -209,6 +321,10 @@ public class DataSourceDescriptor {
         }
 
         LogFactory.getLog(DataSourceDescriptor.class).info("binding " + getName());
+        if (hasReplicas()) {
+            bindReplicas(naming);
+            return;
+        }
         naming.bind(
                 DataSourceHelper.getDataSourceJNDIName(getName()),
                 poolReference);
@@ -222,6 +338,9 @@ public class DataSourceDescriptor {
             if (registry != null) {
                 registry.clearPool(getName());
             }
+            if (routerReference != null) {
+                unbindReplicas(naming, registry);
+            }
         } catch (Exception cause) {
             NamingException error = new NamingException(
                     "Cannot clear pooled datasource "
@@ -13,23 +13,39 @@ package org.nuxeo.runtime.datasource;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.naming.Context;
 import javax.naming.Name;
+import javax.naming.RefAddr;
 import javax.naming.Reference;
 import javax.naming.spi.ObjectFactory;
 import javax.sql.DataSource;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.nuxeo.runtime.datasource.geronimo.PooledDataSourceFactory;
+import org.nuxeo.runtime.datasource.geronimo.PooledDataSourceFactory.NamedThreadFactory;
+import org.nuxeo.runtime.jtajca.NuxeoConnectionManagerConfiguration;
+import org.nuxeo.runtime.jtajca.NuxeoConnectionManagerFactory;
 
 public class PooledDataSourceRegistry extends ReentrantReadWriteLock {
 
     private static final long serialVersionUID = 1L;
 
+    private static final Log log = LogFactory.getLog(PooledDataSourceRegistry.class);
+
     public interface Factory extends ObjectFactory {
 
     }
@@ -38,9 +54,32 @@ public class PooledDataSourceRegistry extends ReentrantReadWriteLock {
         void dispose() throws Exception;
 
         Connection getConnection(boolean noSharing) throws SQLException;
+
+        /**
+         * @since 7.1
+         */
+        NuxeoConnectionManagerConfiguration getConfiguration();
+
+        /**
+         * Fills the pool up to its minimum size.
+         *
+         * @since 7.1
+         */
+        void warmUp() throws Exception;
+
+        /**
+         * Tests the idle connections and evicts the invalid or expired ones.
+         *
+         * @since 7.1
+         */
+        void validate() throws SQLException;
     }
 
-    protected final Map<String, PooledDataSource> pools = new HashMap<>();
+    protected final Map<String, PooledDataSource> pools = new ConcurrentHashMap<>();
+
+    protected final Map<String, ScheduledFuture<?>> validations = new HashMap<>();
+
+    protected ScheduledExecutorService validator;
 
     protected final PooledDataSourceFactory poolFactory = new org.nuxeo.runtime.datasource.geronimo.PooledDataSourceFactory();
 
@@ -58,8 +97,8 @@ public class PooledDataSourceRegistry extends ReentrantReadWriteLock {
     protected DataSource createPool(String dsName, Reference ref, Name objectName,
             Context nameCtx, Hashtable<?, ?> env) throws Exception {
         PooledDataSource ds;
+        writeLock().lock();
         try {
-            readLock().lock();
             ds = pools.get(dsName);
             if (ds != null) {
                 return ds;
@@ -67,13 +106,120 @@ public class PooledDataSourceRegistry extends ReentrantReadWriteLock {
             ds = (PooledDataSource) poolFactory.getObjectInstance(ref, objectName,
                    nameCtx, env);
             pools.put(dsName, ds);
+            scheduleValidation(dsName, ds);
+        } finally {
+            writeLock().unlock();
+        }
+        return ds;
+    }
+
+    /**
+     * Gets or creates the datasource routing read-only work of the
+     * datasource described by the reference to its replicas.
+     *
+     * @since 7.1
+     */
+    public DataSource getOrCreateRouter(Reference ref) {
+        String dsName = (String) ref.get("name").getContent();
+        PooledDataSource ds = pools.get(dsName);
+        if (ds != null) {
+            return ds;
+        }
+        writeLock().lock();
+        try {
+            ds = pools.get(dsName);
+            if (ds != null) {
+                return ds;
+            }
+            String primary = null;
+            boolean routeNonTransactional = false;
+            List<String> replicas = new ArrayList<>();
+            for (RefAddr addr : Collections.list(ref.getAll())) {
+                String type = addr.getType();
+                if (DataSourceDescriptor.PRIMARY_ADDR.equals(type)) {
+                    primary = (String) addr.getContent();
+                } else if (DataSourceDescriptor.REPLICA_ADDR.equals(type)) {
+                    replicas.add((String) addr.getContent());
+                } else if (DataSourceDescriptor.ROUTE_NON_TRANSACTIONAL_ADDR.equals(type)) {
+                    routeNonTransactional = Boolean.parseBoolean((String) addr.getContent());
+                }
+            }
+            NuxeoConnectionManagerConfiguration config = NuxeoConnectionManagerFactory.getConfig(ref);
+            ds = new ReadOnlyRoutingDataSource(primary, replicas,
+                    routeNonTransactional, config);
+            pools.put(dsName, ds);
+            scheduleValidation(dsName, ds);
         } finally {
-            readLock().unlock();
+            writeLock().unlock();
         }
         return ds;
     }
 
+    /**
+     * Fills all the created pools up to their minimum size.
+     *
+     * @since 7.1
+     */
+    public void warmUp() {
+        List<PooledDataSource> snapshot = new ArrayList<>(pools.values());
+        for (PooledDataSource ds : snapshot) {
+            try {
+                ds.warmUp();
+            } catch (Exception cause) {
+                log.error("Cannot warm up pool "
+                        + ds.getConfiguration().getName(), cause);
+            }
+        }
+    }
+
+    protected synchronized void scheduleValidation(String name,
+            final PooledDataSource ds) {
+        int interval = ds.getConfiguration().getValidationIntervalSeconds();
+        if (interval <= 0) {
+            return;
+        }
+        if (validator == null) {
+            validator = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(
+                    "Nuxeo-DataSource-Validator"));
+        }
+        ScheduledFuture<?> future = validator.scheduleWithFixedDelay(
+                new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            ds.validate();
+                        } catch (Exception cause) {
+                            log.error("Cannot validate pool "
+                                    + ds.getConfiguration().getName(), cause);
+                        }
+                    }
+                }, interval, interval, TimeUnit.SECONDS);
+        validations.put(name, future);
+    }
+
+    protected synchronized void cancelValidation(String name) {
+        ScheduledFuture<?> future = validations.remove(name);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Stops the background validation of all the pools.
+     *
+     * @since 7.1
+     */
+    protected synchronized void shutdownValidation() {
+        validations.clear();
+        if (validator != null) {
+            validator.shutdownNow();
+            validator = null;
+        }
+    }
+
     protected void clearPool(String name) throws Exception {
+        cancelValidation(name);
         PooledDataSource ds = pools.remove(name);
         if (ds != null) {
             ds.dispose();
@@ -0,0 +1,407 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *******************************************************************************/
+package org.nuxeo.runtime.datasource;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.naming.NamingException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.datasource.PooledDataSourceRegistry.PooledDataSource;
+import org.nuxeo.runtime.jtajca.NuxeoConnectionManagerConfiguration;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Datasource routing read-only work to replica pools.
+ * <p>
+ * Connections are handed out lazily: the target pool is chosen on the first
+ * call actually needing a physical connection. A connection flagged with
+ * {@link Connection#setReadOnly setReadOnly(true)} before that goes to a
+ * replica, as does any connection requested outside of a transaction if the
+ * datasource routes non-transactional work. Everything else goes to the
+ * primary.
+ * <p>
+ * Replicas are balanced on their number of outstanding connections. A replica
+ * failing to provide a connection is taken out of rotation until it is probed
+ * successfully by {@link #validate} or until its retry delay elapsed.
+ *
+ * @since 7.1
+ */
+public class ReadOnlyRoutingDataSource implements PooledDataSource {
+
+    private static final Log log = LogFactory.getLog(ReadOnlyRoutingDataSource.class);
+
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 30000;
+
+    protected static class Replica {
+
+        protected final String jndiName;
+
+        protected final AtomicInteger outstanding = new AtomicInteger();
+
+        protected volatile long unhealthyUntil;
+
+        protected volatile PooledDataSource pool;
+
+        protected Replica(String jndiName) {
+            this.jndiName = jndiName;
+        }
+
+        protected boolean isHealthy(long now) {
+            return unhealthyUntil <= now;
+        }
+
+        @Override
+        public String toString() {
+            return jndiName;
+        }
+    }
+
+    protected final String primaryName;
+
+    protected final List<Replica> replicas = new ArrayList<Replica>();
+
+    protected final boolean routeNonTransactional;
+
+    protected final NuxeoConnectionManagerConfiguration config;
+
+    protected long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+
+    protected volatile PooledDataSource primary;
+
+    public ReadOnlyRoutingDataSource(String primaryName,
+            List<String> replicaNames, boolean routeNonTransactional,
+            NuxeoConnectionManagerConfiguration config) {
+        this.primaryName = primaryName;
+        for (String name : replicaNames) {
+            replicas.add(new Replica(name));
+        }
+        this.routeNonTransactional = routeNonTransactional;
+        this.config = config;
+    }
+
+    protected static PooledDataSource lookup(String name) throws SQLException {
+        try {
+            return DataSourceHelper.getDataSource(name, PooledDataSource.class);
+        } catch (NamingException cause) {
+            throw new SQLException("Cannot lookup " + name, cause);
+        }
+    }
+
+    protected PooledDataSource getPrimary() throws SQLException {
+        if (primary == null) {
+            primary = lookup(primaryName);
+        }
+        return primary;
+    }
+
+    protected PooledDataSource getPool(Replica replica) throws SQLException {
+        if (replica.pool == null) {
+            replica.pool = lookup(replica.jndiName);
+        }
+        return replica.pool;
+    }
+
+    /**
+     * Picks the healthy replica having the fewest outstanding connections.
+     *
+     * @return the replica, or {@code null} if none is available
+     */
+    protected Replica selectReplica() {
+        long now = System.currentTimeMillis();
+        Replica selected = null;
+        int min = Integer.MAX_VALUE;
+        for (Replica replica : replicas) {
+            if (!replica.isHealthy(now)) {
+                continue;
+            }
+            int outstanding = replica.outstanding.get();
+            if (outstanding < min) {
+                min = outstanding;
+                selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    protected void markUnhealthy(Replica replica, SQLException cause) {
+        replica.unhealthyUntil = System.currentTimeMillis() + retryDelayMillis;
+        log.warn("Replica " + replica + " of " + primaryName
+                + " taken out of rotation", cause);
+    }
+
+    /**
+     * Gets a physical connection from a replica, falling back to the primary
+     * when none is available. A primary connection is never shared in that
+     * case, as it is flagged read-only afterwards and the flag would leak to
+     * the other handles enlisted in the transaction.
+     */
+    protected Connection openReadOnly(ConnectionHandler handler)
+            throws SQLException {
+        Replica replica;
+        while ((replica = selectReplica()) != null) {
+            replica.outstanding.incrementAndGet();
+            try {
+                Connection connection = getPool(replica).getConnection(
+                        handler.noSharing);
+                handler.replica = replica;
+                return connection;
+            } catch (SQLException cause) {
+                replica.outstanding.decrementAndGet();
+                markUnhealthy(replica, cause);
+            }
+        }
+        return getPrimary().getConnection(true);
+    }
+
+    protected class ConnectionHandler implements InvocationHandler {
+
+        protected final boolean nonTransactional;
+
+        protected final boolean noSharing;
+
+        protected Connection target;
+
+        protected Replica replica;
+
+        protected boolean readOnly;
+
+        protected boolean closed;
+
+        protected ConnectionHandler(boolean nonTransactional, boolean noSharing) {
+            this.nonTransactional = nonTransactional;
+            this.noSharing = noSharing;
+        }
+
+        protected Connection target() throws SQLException {
+            if (closed) {
+                throw new SQLException("Connection closed");
+            }
+            if (target == null) {
+                if (readOnly || (routeNonTransactional && nonTransactional)) {
+                    target = openReadOnly(this);
+                    target.setReadOnly(readOnly);
+                } else {
+                    target = getPrimary().getConnection(noSharing);
+                }
+            }
+            return target;
+        }
+
+        /**
+         * Returns the physical connection to its pool. A primary connection
+         * flagged read-only, when falling back from the replicas or by the
+         * caller, is reset first as the primary pool hands out read-write
+         * connections.
+         */
+        protected void release() throws SQLException {
+            try {
+                if (replica == null && readOnly) {
+                    target.setReadOnly(false);
+                }
+            } finally {
+                try {
+                    target.close();
+                } finally {
+                    if (replica != null) {
+                        replica.outstanding.decrementAndGet();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            if (target == null) {
+                if ("setReadOnly".equals(name)) {
+                    readOnly = ((Boolean) args[0]).booleanValue();
+                    return null;
+                }
+                if ("isReadOnly".equals(name)) {
+                    return Boolean.valueOf(readOnly);
+                }
+                if ("isClosed".equals(name)) {
+                    return Boolean.valueOf(closed);
+                }
+                if ("close".equals(name)) {
+                    closed = true;
+                    return null;
+                }
+            }
+            if ("close".equals(name)) {
+                if (!closed) {
+                    closed = true;
+                    release();
+                }
+                return null;
+            }
+            if ("setReadOnly".equals(name)) {
+                readOnly = ((Boolean) args[0]).booleanValue();
+            }
+            if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+            if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            if ("toString".equals(name)) {
+                return "Routed connection of " + primaryName + " to "
+                        + (target == null ? "none" : replica == null ? "primary" : replica);
+            }
+            try {
+                return method.invoke(target(), args);
+            } catch (InvocationTargetException cause) {
+                throw cause.getCause();
+            }
+        }
+    }
+
+    protected Connection newConnection(boolean noSharing) {
+        boolean nonTransactional = !TransactionHelper.isTransactionActiveOrMarkedRollback();
+        return (Connection) Proxy.newProxyInstance(
+                ReadOnlyRoutingDataSource.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConnectionHandler(
+                        nonTransactional, noSharing));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return newConnection(false);
+    }
+
+    @Override
+    public Connection getConnection(boolean noSharing) throws SQLException {
+        return newConnection(noSharing);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password)
+            throws SQLException {
+        throw new SQLFeatureNotSupportedException(
+                "Routed datasources do not support per connection credentials");
+    }
+
+    @Override
+    public NuxeoConnectionManagerConfiguration getConfiguration() {
+        return config;
+    }
+
+    /**
+     * Warms up the primary and the replica pools.
+     */
+    @Override
+    public void warmUp() throws Exception {
+        getPrimary().warmUp();
+        for (Replica replica : replicas) {
+            try {
+                getPool(replica).warmUp();
+            } catch (SQLException cause) {
+                markUnhealthy(replica, cause);
+            }
+        }
+    }
+
+    /**
+     * Probes the replicas out of rotation and puts them back if they answer.
+     */
+    @Override
+    public void validate() throws SQLException {
+        long now = System.currentTimeMillis();
+        for (Replica replica : replicas) {
+            if (replica.isHealthy(now)) {
+                continue;
+            }
+            try {
+                Connection connection = getPool(replica).getConnection(true);
+                try {
+                    if (!connection.isValid(config.getValidationTimeoutSeconds())) {
+                        continue;
+                    }
+                } finally {
+                    connection.close();
+                }
+                replica.unhealthyUntil = 0;
+                log.info("Replica " + replica + " of " + primaryName
+                        + " back in rotation");
+            } catch (SQLException cause) {
+                log.debug("Replica " + replica + " still unavailable", cause);
+            }
+        }
+    }
+
+    /**
+     * Nothing to release, the primary and the replica pools are disposed on
+     * their own.
+     */
+    @Override
+    public void dispose() {
+        primary = null;
+        for (Replica replica : replicas) {
+            replica.pool = null;
+        }
+    }
+
+    public void setRetryDelayMillis(long retryDelayMillis) {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("not yet available");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+}
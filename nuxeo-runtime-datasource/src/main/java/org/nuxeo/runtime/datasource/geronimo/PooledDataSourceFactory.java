@@ -3,7 +3,19 @@ package org.nuxeo.runtime.datasource.geronimo;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.naming.Context;
@@ -16,6 +28,7 @@ import javax.resource.spi.InvalidPropertyException;
 import javax.resource.spi.ManagedConnectionFactory;
 import javax.sql.XADataSource;
 
+import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.runtime.datasource.DataSourceHelper;
 import org.nuxeo.runtime.datasource.PooledDataSourceRegistry;
@@ -32,6 +45,14 @@ import org.tranql.connector.jdbc.XADataSourceWrapper;
 public class PooledDataSourceFactory implements
         PooledDataSourceRegistry.Factory {
 
+    protected static final Log log = LogFactory.getLog(PooledDataSourceFactory.class);
+
+    /** Maximum number of threads opening connections during warm-up. */
+    protected static final int WARMUP_MAX_THREADS = 8;
+
+    /** Maximum number of connections held at once during validation. */
+    protected static final int VALIDATION_BATCH_SIZE = 4;
+
     protected static class DataSource extends TranqlDataSource implements
             PooledDataSource {
 
@@ -61,12 +82,205 @@ public class PooledDataSourceFactory implements
             }
         }
 
+        @Override
+        public NuxeoConnectionManagerConfiguration getConfiguration() {
+            return wrapper.getConfiguration();
+        }
+
+        /**
+         * Opens {@code minPoolSize} physical connections in parallel and
+         * returns them to the pool. Each connection is held until all of them
+         * are opened so that the pool cannot hand back the same one twice.
+         */
+        @Override
+        public void warmUp() throws Exception {
+            final NuxeoConnectionManagerConfiguration config = getConfiguration();
+            final int size = config.getMinPoolSize();
+            if (!config.getWarmUp() || size <= 0) {
+                return;
+            }
+            final AtomicInteger remaining = new AtomicInteger(size);
+            final CountDownLatch filled = new CountDownLatch(size);
+            final long timeout = Math.max(config.getBlockingTimeoutMillis(),
+                    1000) * size;
+            int threads = Math.min(size, WARMUP_MAX_THREADS);
+            ExecutorService executor = Executors.newFixedThreadPool(threads,
+                    new NamedThreadFactory("Nuxeo-DataSource-WarmUp-"
+                            + config.getName()));
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+            try {
+                for (int i = 0; i < threads; i++) {
+                    futures.add(executor.submit(new Callable<Void>() {
+
+                        @Override
+                        public Void call() throws Exception {
+                            List<Connection> held = new ArrayList<Connection>();
+                            try {
+                                while (remaining.getAndDecrement() > 0) {
+                                    try {
+                                        held.add(getConnection(true));
+                                    } finally {
+                                        filled.countDown();
+                                    }
+                                }
+                                filled.await(timeout, TimeUnit.MILLISECONDS);
+                            } finally {
+                                for (Connection each : held) {
+                                    each.close();
+                                }
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                Exception errors = new Exception("Cannot warm up pool "
+                        + config.getName());
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException cause) {
+                        errors.addSuppressed(cause.getCause());
+                    }
+                }
+                if (errors.getSuppressed().length > 0) {
+                    throw errors;
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            log.debug("Warmed up pool " + config.getName() + " with " + size
+                    + " connections");
+        }
+
+        /**
+         * Tests the idle connections and evicts those that are broken or that
+         * exceeded their max lifetime. Must be called outside of any
+         * transaction.
+         */
+        @Override
+        public void validate() throws SQLException {
+            validate(TimeUnit.MINUTES.toMillis(getConfiguration().getMaxLifetimeMinutes()));
+        }
+
+        /**
+         * Checks out the idle connections by batches of
+         * {@value #VALIDATION_BATCH_SIZE}, so that the pool keeps serving
+         * requests meanwhile. The pool hands out the most recently returned
+         * connection first, so the valid connections of a batch come back
+         * first in the next one: the next batch is only checked out when
+         * connections were evicted from the previous one. The connections
+         * staying idle beyond are closed by the pool idle timeout.
+         */
+        protected void validate(long maxLifetime) throws SQLException {
+            NuxeoConnectionManagerConfiguration config = getConfiguration();
+            int remaining = wrapper.getPooling().getIdleConnectionCount();
+            int evicted = 0;
+            boolean more = true;
+            while (more && remaining > 0) {
+                int size = Math.min(remaining, Math.min(VALIDATION_BATCH_SIZE,
+                        wrapper.getPooling().getIdleConnectionCount()));
+                if (size <= 0) {
+                    break;
+                }
+                remaining -= size;
+                int batchEvicted = validateBatch(size, maxLifetime, config);
+                evicted += batchEvicted;
+                more = batchEvicted > 0;
+            }
+            if (evicted > 0) {
+                log.info("Evicted " + evicted + " connections from pool "
+                        + config.getName());
+            }
+        }
+
+        /**
+         * Checks out, tests and releases or evicts a batch of connections.
+         *
+         * @return the number of evicted connections
+         */
+        protected int validateBatch(int size, long maxLifetime,
+                NuxeoConnectionManagerConfiguration config)
+                throws SQLException {
+            List<Connection> held = new ArrayList<Connection>(size);
+            int evicted = 0;
+            try {
+                for (int i = 0; i < size; i++) {
+                    held.add(getConnection(true));
+                }
+                for (int i = 0; i < held.size(); i++) {
+                    Connection connection = held.get(i);
+                    long age = wrapper.getConnectionAgeMillis(connection);
+                    if ((maxLifetime > 0 && age > maxLifetime)
+                            || !isValid(connection, config)) {
+                        if (wrapper.evict(connection)) {
+                            held.set(i, null);
+                            evicted += 1;
+                        }
+                    }
+                }
+            } finally {
+                for (Connection each : held) {
+                    if (each != null) {
+                        each.close();
+                    }
+                }
+            }
+            return evicted;
+        }
+
+        protected boolean isValid(Connection connection,
+                NuxeoConnectionManagerConfiguration config) {
+            int timeout = config.getValidationTimeoutSeconds();
+            String query = config.getValidationQuery();
+            try {
+                if (query == null || query.isEmpty()) {
+                    return connection.isValid(timeout);
+                }
+                Statement st = connection.createStatement();
+                try {
+                    st.setQueryTimeout(timeout);
+                    st.execute(query);
+                } finally {
+                    st.close();
+                }
+                return true;
+            } catch (SQLException cause) {
+                log.debug("Connection of pool " + config.getName()
+                        + " is not valid", cause);
+                return false;
+            }
+        }
+
         @Override
         public Logger getParentLogger() throws SQLFeatureNotSupportedException {
             throw new SQLFeatureNotSupportedException("not yet available");
         }
     }
 
+    /**
+     * Creates daemon threads for the pool maintenance tasks.
+     *
+     * @since 7.1
+     */
+    public static class NamedThreadFactory implements ThreadFactory {
+
+        protected final AtomicInteger count = new AtomicInteger();
+
+        protected final String prefix;
+
+        public NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-"
+                    + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     @Override
     public Object getObjectInstance(Object obj, Name name, Context ctx,
             Hashtable<?, ?> environment) throws Exception {
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.jtajca.ContextCarrier;
+import org.nuxeo.runtime.model.RuntimeContext;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+public class TestContextCarrier extends NXRuntimeTestCase {
+
+    private static final URL STRESS_CONTRIB = TestContextCarrier.class.getClassLoader().getResource(
+            "datasource-stress-contrib.xml");
+
+    private static final int TRANSACTIONS = 10000;
+
+    private static final int THREADS = 32;
+
+    protected RuntimeContext ctx;
+
+    protected DataSource ds;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        deployBundle("org.nuxeo.runtime.jtajca");
+        deployBundle("org.nuxeo.runtime.datasource");
+        fireFrameworkStarted();
+        ctx = deployTestContrib("org.nuxeo.runtime.datasource", STRESS_CONTRIB);
+        ds = DataSourceHelper.getDataSource("stress");
+        execute("CREATE TABLE IF NOT EXISTS T (ID INT)");
+        execute("DELETE FROM T");
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        ctx.destroy();
+        super.tearDown();
+    }
+
+    protected void execute(String sql) throws SQLException {
+        Connection conn = ds.getConnection();
+        try {
+            Statement st = conn.createStatement();
+            try {
+                st.execute(sql);
+            } finally {
+                st.close();
+            }
+        } finally {
+            conn.close();
+        }
+    }
+
+    protected int count() throws SQLException {
+        Connection conn = ds.getConnection();
+        try {
+            Statement st = conn.createStatement();
+            try {
+                ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM T");
+                rs.next();
+                return rs.getInt(1);
+            } finally {
+                st.close();
+            }
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testCarryTransactionToAnotherThread() throws Exception {
+        TransactionHelper.startTransaction();
+        final ContextCarrier carrier = ContextCarrier.capture();
+        assertTrue(TransactionHelper.isNoTransaction());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Boolean active = executor.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() throws Exception {
+                    return carrier.call(new Callable<Boolean>() {
+
+                        @Override
+                        public Boolean call() throws Exception {
+                            execute("INSERT INTO T VALUES (1)");
+                            return Boolean.valueOf(TransactionHelper.isTransactionActive());
+                        }
+                    });
+                }
+            }).get();
+            assertTrue(active.booleanValue());
+            // nothing left behind in the worker thread
+            Boolean none = executor.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() {
+                    return Boolean.valueOf(TransactionHelper.isNoTransaction());
+                }
+            }).get();
+            assertTrue(none.booleanValue());
+        } finally {
+            executor.shutdownNow();
+        }
+        carrier.restore();
+        assertTrue(TransactionHelper.isTransactionActive());
+        TransactionHelper.setTransactionRollbackOnly();
+        TransactionHelper.commitOrRollbackTransaction();
+        assertFalse(TransactionHelper.isTransactionActiveOrMarkedRollback());
+        assertEquals(0, count());
+    }
+
+    @Test
+    public void testManyShortTransactions() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(TRANSACTIONS);
+        try {
+            for (int i = 0; i < TRANSACTIONS; i++) {
+                TransactionHelper.startTransaction();
+                final ContextCarrier carrier = ContextCarrier.capture();
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        carrier.call(new Callable<Void>() {
+
+                            @Override
+                            public Void call() throws Exception {
+                                execute("INSERT INTO T VALUES (1)");
+                                return null;
+                            }
+                        });
+                        carrier.restore();
+                        TransactionHelper.commitOrRollbackTransaction();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        assertTrue(TransactionHelper.isNoTransaction());
+        assertEquals(TRANSACTIONS, count());
+    }
+
+}
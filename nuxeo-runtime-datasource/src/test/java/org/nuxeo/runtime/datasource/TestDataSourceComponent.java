@@ -18,6 +18,7 @@
 package org.nuxeo.runtime.datasource;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -49,6 +50,10 @@ public class TestDataSourceComponent extends NXRuntimeTestCase {
 
     private static final URL XADATASOURCE_CONTRIB = LOADER.getResource("xadatasource-contrib.xml");
 
+    private static final URL DATASOURCE_WARMUP_CONTRIB = LOADER.getResource("datasource-warmup-contrib.xml");
+
+    private static final URL DATASOURCE_REPLICAS_CONTRIB = LOADER.getResource("datasource-replicas-contrib.xml");
+
     private static final URL XADATASOURCE_PG_CONTRIB = LOADER.getResource("xadatasource-pg-contrib.xml");
 
     /** This directory will be deleted and recreated. */
@@ -146,6 +151,77 @@ public class TestDataSourceComponent extends NXRuntimeTestCase {
         }
     }
 
+    @Test
+    public void testWarmUpAndValidate() throws Exception {
+        RuntimeContext ctx = deployTestContrib(TEST_BUNDLE,
+                DATASOURCE_WARMUP_CONTRIB);
+        try {
+            countPhysicalConnectionsSql = COUNT_SQL;
+            DataSource ds = DataSourceHelper.getDataSource("warmup");
+            PooledDataSourceRegistry registry = Framework.getLocalService(PooledDataSourceRegistry.class);
+            registry.warmUp();
+            Connection conn = ds.getConnection();
+            try {
+                // the connection used for counting is one of the warmed up
+                assertEquals(3, countPhysicalConnections(conn));
+            } finally {
+                conn.close();
+            }
+            ((PooledDataSourceRegistry.PooledDataSource) ds).validate();
+            conn = ds.getConnection();
+            try {
+                assertEquals(3, countPhysicalConnections(conn));
+            } finally {
+                conn.close();
+            }
+        } finally {
+            ctx.destroy();
+        }
+    }
+
+    protected static String databaseName(Connection conn) throws SQLException {
+        Statement st = conn.createStatement();
+        try {
+            ResultSet rs = st.executeQuery("SELECT DATABASE()");
+            rs.next();
+            return rs.getString(1);
+        } finally {
+            st.close();
+        }
+    }
+
+    @Test
+    public void testReadOnlyRouting() throws Exception {
+        RuntimeContext ctx = deployTestContrib(TEST_BUNDLE,
+                DATASOURCE_REPLICAS_CONTRIB);
+        try {
+            DataSource ds = DataSourceHelper.getDataSource("routed");
+            Connection conn = ds.getConnection();
+            try {
+                assertEquals("PRIMARY", databaseName(conn));
+            } finally {
+                conn.close();
+            }
+            // two concurrent read-only connections are balanced on both replicas
+            Connection conn1 = ds.getConnection();
+            Connection conn2 = ds.getConnection();
+            try {
+                conn1.setReadOnly(true);
+                conn2.setReadOnly(true);
+                String name1 = databaseName(conn1);
+                String name2 = databaseName(conn2);
+                assertTrue(name1, name1.startsWith("REPLICA"));
+                assertTrue(name2, name2.startsWith("REPLICA"));
+                assertFalse(name1.equals(name2));
+            } finally {
+                conn1.close();
+                conn2.close();
+            }
+        } finally {
+            ctx.destroy();
+        }
+    }
+
     // disabled for now, see NXP-12086
     @Ignore
     @Test
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.runtime.datasource.PooledDataSourceRegistry.PooledDataSource;
+import org.nuxeo.runtime.jtajca.NuxeoConnectionManagerConfiguration;
+
+/**
+ * Routing checks against fake pools recording the physical connections they
+ * hand out.
+ */
+public class TestReadOnlyRoutingDataSource {
+
+    protected static class FakeConnection implements InvocationHandler {
+
+        protected final String pool;
+
+        protected final boolean noSharing;
+
+        protected boolean readOnly;
+
+        protected boolean closed;
+
+        protected FakeConnection(String pool, boolean noSharing) {
+            this.pool = pool;
+            this.noSharing = noSharing;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("setReadOnly".equals(name)) {
+                readOnly = ((Boolean) args[0]).booleanValue();
+            } else if ("isReadOnly".equals(name)) {
+                return Boolean.valueOf(readOnly);
+            } else if ("isValid".equals(name)) {
+                return Boolean.TRUE;
+            } else if ("close".equals(name)) {
+                closed = true;
+            } else if ("getCatalog".equals(name)) {
+                return pool;
+            }
+            return null;
+        }
+    }
+
+    protected static class FakePool implements InvocationHandler {
+
+        protected final String name;
+
+        protected final List<FakeConnection> connections = new ArrayList<FakeConnection>();
+
+        protected boolean failing;
+
+        protected FakePool(String name) {
+            this.name = name;
+        }
+
+        protected PooledDataSource newProxy() {
+            return (PooledDataSource) Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[] { PooledDataSource.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws SQLException {
+            if (!"getConnection".equals(method.getName())) {
+                return null;
+            }
+            if (failing) {
+                throw new SQLException("Pool " + name + " is down");
+            }
+            boolean noSharing = args != null
+                    && ((Boolean) args[0]).booleanValue();
+            FakeConnection connection = new FakeConnection(name, noSharing);
+            connections.add(connection);
+            return Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class }, connection);
+        }
+    }
+
+    protected final FakePool primary = new FakePool("primary");
+
+    protected final FakePool replica0 = new FakePool("replica0");
+
+    protected final FakePool replica1 = new FakePool("replica1");
+
+    protected ReadOnlyRoutingDataSource newDataSource() {
+        ReadOnlyRoutingDataSource ds = new ReadOnlyRoutingDataSource(
+                "primary", Arrays.asList("replica0", "replica1"), false,
+                new NuxeoConnectionManagerConfiguration());
+        ds.primary = primary.newProxy();
+        ds.replicas.get(0).pool = replica0.newProxy();
+        ds.replicas.get(1).pool = replica1.newProxy();
+        return ds;
+    }
+
+    @Test
+    public void testReplicaRouting() throws Exception {
+        ReadOnlyRoutingDataSource ds = newDataSource();
+        Connection conn = ds.getConnection();
+        Connection conn1 = ds.getConnection();
+        Connection conn2 = ds.getConnection();
+        conn1.setReadOnly(true);
+        conn2.setReadOnly(true);
+        assertEquals("primary", conn.getCatalog());
+        assertEquals("replica0", conn1.getCatalog());
+        assertEquals("replica1", conn2.getCatalog());
+        assertTrue(replica0.connections.get(0).readOnly);
+        conn.close();
+        conn1.close();
+        conn2.close();
+        assertTrue(replica0.connections.get(0).closed);
+        assertEquals(0, ds.replicas.get(0).outstanding.get());
+        assertEquals(0, ds.replicas.get(1).outstanding.get());
+    }
+
+    @Test
+    public void testNoConnectionBeforeUse() throws Exception {
+        ReadOnlyRoutingDataSource ds = newDataSource();
+        Connection conn = ds.getConnection();
+        conn.setReadOnly(true);
+        assertTrue(conn.isReadOnly());
+        conn.close();
+        assertTrue(primary.connections.isEmpty());
+        assertTrue(replica0.connections.isEmpty());
+        assertTrue(replica1.connections.isEmpty());
+    }
+
+    @Test
+    public void testFallbackToPrimary() throws Exception {
+        replica0.failing = true;
+        replica1.failing = true;
+        ReadOnlyRoutingDataSource ds = newDataSource();
+        Connection conn = ds.getConnection();
+        conn.setReadOnly(true);
+        assertEquals("primary", conn.getCatalog());
+        FakeConnection physical = primary.connections.get(0);
+        assertTrue(physical.readOnly);
+        // not the connection shared by the transaction
+        assertTrue(physical.noSharing);
+        // both replicas are out of rotation
+        assertNull(ds.selectReplica());
+        conn.close();
+        // returned to the primary pool as it was handed out
+        assertTrue(physical.closed);
+        assertFalse(physical.readOnly);
+        // back in rotation once probed successfully
+        replica0.failing = false;
+        ds.validate();
+        assertEquals("replica0", ds.selectReplica().toString());
+    }
+
+    @Test
+    public void testReadOnlyOnPrimaryIsReset() throws Exception {
+        ReadOnlyRoutingDataSource ds = newDataSource();
+        Connection conn = ds.getConnection();
+        assertEquals("primary", conn.getCatalog());
+        conn.setReadOnly(true);
+        FakeConnection physical = primary.connections.get(0);
+        assertTrue(physical.readOnly);
+        conn.close();
+        assertTrue(physical.closed);
+        assertFalse(physical.readOnly);
+    }
+
+    @Test
+    public void testNoSharingPassedThrough() throws Exception {
+        ReadOnlyRoutingDataSource ds = newDataSource();
+        Connection shared = ds.getConnection();
+        Connection unshared = ds.getConnection(true);
+        Connection readOnly = ds.getConnection(true);
+        readOnly.setReadOnly(true);
+        assertEquals("primary", shared.getCatalog());
+        assertEquals("primary", unshared.getCatalog());
+        assertEquals("replica0", readOnly.getCatalog());
+        assertFalse(primary.connections.get(0).noSharing);
+        assertTrue(primary.connections.get(1).noSharing);
+        assertTrue(replica0.connections.get(0).noSharing);
+        shared.close();
+        unshared.close();
+        readOnly.close();
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.transaction.Status;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.jtajca.NuxeoContainer;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+public class TestThreadTransactionStatus extends NXRuntimeTestCase {
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        deployBundle("org.nuxeo.runtime.jtajca");
+        fireFrameworkStarted();
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        if (!TransactionHelper.isNoTransaction()) {
+            TransactionHelper.commitOrRollbackTransaction();
+        }
+        super.tearDown();
+    }
+
+    protected static void assertStatus(int status) throws Exception {
+        assertEquals(status, NuxeoContainer.getTransactionManager().getStatus());
+        assertEquals(status == Status.STATUS_NO_TRANSACTION,
+                TransactionHelper.isNoTransaction());
+        assertEquals(status == Status.STATUS_ACTIVE,
+                TransactionHelper.isTransactionActive());
+    }
+
+    protected void checkDemarcation(TransactionManager tm) throws Exception {
+        assertStatus(Status.STATUS_NO_TRANSACTION);
+        tm.begin();
+        assertStatus(Status.STATUS_ACTIVE);
+        Transaction tx = tm.suspend();
+        assertNotNull(tx);
+        assertStatus(Status.STATUS_NO_TRANSACTION);
+        tm.begin();
+        assertStatus(Status.STATUS_ACTIVE);
+        tm.commit();
+        assertStatus(Status.STATUS_NO_TRANSACTION);
+        tm.resume(tx);
+        assertStatus(Status.STATUS_ACTIVE);
+        tm.setRollbackOnly();
+        assertStatus(Status.STATUS_MARKED_ROLLBACK);
+        assertTrue(TransactionHelper.isTransactionMarkedRollback());
+        tm.rollback();
+        assertStatus(Status.STATUS_NO_TRANSACTION);
+    }
+
+    @Test
+    public void testThroughContainerTransactionManager() throws Exception {
+        checkDemarcation(NuxeoContainer.getTransactionManager());
+    }
+
+    @Test
+    public void testThroughJNDITransactionManager() throws Exception {
+        checkDemarcation(TransactionHelper.lookupTransactionManager());
+    }
+
+    @Test
+    public void testThroughTransactionHelper() throws Exception {
+        assertStatus(Status.STATUS_NO_TRANSACTION);
+        assertTrue(TransactionHelper.startTransaction());
+        assertStatus(Status.STATUS_ACTIVE);
+        Transaction tx = TransactionHelper.suspendTransaction();
+        assertStatus(Status.STATUS_NO_TRANSACTION);
+        TransactionHelper.resumeTransaction(tx);
+        assertStatus(Status.STATUS_ACTIVE);
+        Transaction outer = TransactionHelper.requireNewTransaction();
+        assertStatus(Status.STATUS_ACTIVE);
+        TransactionHelper.resumeTransaction(outer);
+        assertStatus(Status.STATUS_ACTIVE);
+        TransactionHelper.commitOrRollbackTransaction();
+        assertStatus(Status.STATUS_NO_TRANSACTION);
+        assertFalse(TransactionHelper.isTransactionActiveOrMarkedRollback());
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.datasource.geronimo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.datasource.DataSourceHelper;
+import org.nuxeo.runtime.datasource.PooledDataSourceRegistry;
+import org.nuxeo.runtime.model.RuntimeContext;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestPooledDataSourceValidation extends NXRuntimeTestCase {
+
+    private static final String TEST_BUNDLE = "org.nuxeo.runtime.datasource";
+
+    private static final URL VALIDATION_CONTRIB = TestPooledDataSourceValidation.class.getClassLoader().getResource(
+            "datasource-validation-contrib.xml");
+
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS";
+
+    protected RuntimeContext ctx;
+
+    protected PooledDataSourceFactory.DataSource ds;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        deployBundle("org.nuxeo.runtime.jtajca");
+        deployBundle("org.nuxeo.runtime.datasource");
+        fireFrameworkStarted();
+        ctx = deployTestContrib(TEST_BUNDLE, VALIDATION_CONTRIB);
+        ds = (PooledDataSourceFactory.DataSource) DataSourceHelper.getDataSource("validation");
+        Framework.getLocalService(PooledDataSourceRegistry.class).warmUp();
+        assertEquals(3, ds.wrapper.getPooling().getIdleConnectionCount());
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        ctx.destroy();
+        super.tearDown();
+    }
+
+    protected static int queryInt(Connection conn, String sql)
+            throws SQLException {
+        Statement st = conn.createStatement();
+        try {
+            ResultSet rs = st.executeQuery(sql);
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            st.close();
+        }
+    }
+
+    @Test
+    public void testValidConnectionsAreKept() throws Exception {
+        ds.validate();
+        assertEquals(3, ds.wrapper.getPooling().getIdleConnectionCount());
+        Connection conn = ds.getConnection();
+        try {
+            assertEquals(3, queryInt(conn, COUNT_SQL));
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testBrokenConnectionIsEvicted() throws Exception {
+        // the connection is returned on top of the pool
+        Connection conn = ds.getConnection();
+        try {
+            Statement st = conn.createStatement();
+            try {
+                st.execute("SET @broken = 1");
+            } finally {
+                st.close();
+            }
+        } finally {
+            conn.close();
+        }
+        ds.validate();
+        assertEquals(2, ds.wrapper.getPooling().getIdleConnectionCount());
+        Connection conn1 = ds.getConnection();
+        Connection conn2 = ds.getConnection();
+        try {
+            assertEquals(2, queryInt(conn1, COUNT_SQL));
+            assertEquals(1, queryInt(conn1, "SELECT 1 / (1 - COALESCE(@broken, 0))"));
+            assertEquals(1, queryInt(conn2, "SELECT 1 / (1 - COALESCE(@broken, 0))"));
+        } finally {
+            conn1.close();
+            conn2.close();
+        }
+    }
+
+    @Test
+    public void testExpiredConnectionsAreEvicted() throws Exception {
+        Thread.sleep(20);
+        ds.validate(10);
+        assertEquals(0, ds.wrapper.getPooling().getIdleConnectionCount());
+        Connection conn = ds.getConnection();
+        try {
+            // only the new connection is left
+            assertEquals(1, queryInt(conn, COUNT_SQL));
+        } finally {
+            conn.close();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.jtajca;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Checks that carrying a transaction leaves no transaction state in the
+ * worker threads.
+ */
+public class TestContextCarrierCleanup extends NXRuntimeTestCase {
+
+    protected static final Callable<Transaction> THREAD_STATE = new Callable<Transaction>() {
+
+        @Override
+        public Transaction call() throws SystemException {
+            return NuxeoContainer.getTransactionManager().getTransaction();
+        }
+    };
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        deployBundle("org.nuxeo.runtime.jtajca");
+        fireFrameworkStarted();
+    }
+
+    @Test
+    public void testCallLeavesNoState() throws Exception {
+        TransactionHelper.startTransaction();
+        final ContextCarrier carrier = ContextCarrier.capture();
+        assertNull(THREAD_STATE.call());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Transaction carried = executor.submit(new Callable<Transaction>() {
+
+                @Override
+                public Transaction call() throws Exception {
+                    return carrier.call(THREAD_STATE);
+                }
+            }).get();
+            assertNotNull(carried);
+            assertNull(executor.submit(THREAD_STATE).get());
+        } finally {
+            executor.shutdownNow();
+        }
+        carrier.restore();
+        assertTrue(TransactionHelper.isTransactionActive());
+        TransactionHelper.commitOrRollbackTransaction();
+        assertNull(THREAD_STATE.call());
+    }
+
+    @Test
+    public void testRestoreInWorkerLeavesNoState() throws Exception {
+        TransactionHelper.startTransaction();
+        final ContextCarrier carrier = ContextCarrier.capture();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    carrier.restore();
+                    TransactionHelper.commitOrRollbackTransaction();
+                    return null;
+                }
+            }).get();
+            assertNull(executor.submit(THREAD_STATE).get());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(TransactionHelper.isNoTransaction());
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.jtajca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.naming.NamingException;
+
+import org.junit.Test;
+
+/**
+ * Checks that the lookups cached by the container naming context follow the
+ * binding changes.
+ */
+public class TestNamingContext {
+
+    @Test
+    public void testLookupRebindLookup() throws Exception {
+        NamingContext context = new NamingContext();
+        context.bind("name", "first");
+        assertEquals("first", context.lookupResolved("name"));
+        assertTrue(context.resolved.containsKey("name"));
+        context.rebind("name", "second");
+        assertFalse(context.resolved.containsKey("name"));
+        assertEquals("second", context.lookupResolved("name"));
+        context.unbind("name");
+        try {
+            context.lookupResolved("name");
+            throw new AssertionError("name still bound");
+        } catch (NamingException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLookupRacingRebindIsNotCached() throws Exception {
+        NamingContext context = new NamingContext() {
+
+            private static final long serialVersionUID = 1L;
+
+            protected boolean racing = true;
+
+            @Override
+            protected Object resolve(String name, Object value)
+                    throws NamingException {
+                if (racing) {
+                    // rebound by another thread while resolving
+                    racing = false;
+                    rebind(name, "second");
+                }
+                return super.resolve(name, value);
+            }
+        };
+        context.bind("name", "first");
+        assertEquals("first", context.lookupResolved("name"));
+        assertFalse(context.resolved.containsKey("name"));
+        assertEquals("second", context.lookupResolved("name"));
+        assertEquals("second", context.resolved.get("name"));
+    }
+
+}
@@ -62,7 +62,7 @@ import org.nuxeo.runtime.model.DefaultComponent;
  */
 public class JettyComponent extends DefaultComponent {
 
-    public static final ComponentName NAME = new ComponentName(
+    public static final ComponentName NAME = ComponentName.of(
             "org.nuxeo.runtime.server");
 
     public static final String XP_WEB_APP = "webapp";
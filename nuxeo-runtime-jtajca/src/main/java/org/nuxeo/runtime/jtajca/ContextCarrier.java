@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.jtajca;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.transaction.InvalidTransactionException;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
+import org.nuxeo.runtime.jtajca.NuxeoContainer.ConnectionManagerWrapper;
+import org.nuxeo.runtime.jtajca.NuxeoContainer.ConnectionTrackingCoordinator;
+import org.nuxeo.runtime.transaction.TransactionRuntimeException;
+
+/**
+ * Carries the transaction and the connection tracking contexts of a thread so
+ * that work can go on under them in another thread.
+ * <p>
+ * The transaction manager and the connection managers keep their state in
+ * thread locals, which means one transaction per thread. {@link #capture}
+ * detaches that state from the calling thread, {@link #call} attaches it to
+ * the running thread for the duration of a task only, and {@link #restore}
+ * attaches it back to a thread for continuing the work there. Nothing is left
+ * in the thread locals of the threads which ran the tasks.
+ * <p>
+ * A transaction can only be associated to one thread at a time, tasks
+ * sharing a carrier are thus run one after the other.
+ *
+ * @since 7.1
+ */
+public class ContextCarrier {
+
+    protected final Transaction transaction;
+
+    protected final Map<ConnectionTrackingCoordinator, ConnectionTrackingCoordinator.Context> contexts;
+
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    protected boolean restored;
+
+    protected ContextCarrier(Transaction transaction,
+            Map<ConnectionTrackingCoordinator, ConnectionTrackingCoordinator.Context> contexts) {
+        this.transaction = transaction;
+        this.contexts = contexts;
+    }
+
+    /**
+     * Detaches the current transaction and connection tracking contexts from
+     * the calling thread.
+     *
+     * @return the carrier, to be restored once the carried work is done
+     */
+    public static ContextCarrier capture() {
+        Transaction tx = null;
+        TransactionManager tm = NuxeoContainer.getTransactionManager();
+        if (tm != null) {
+            try {
+                if (tm.getTransaction() != null) {
+                    tx = tm.suspend();
+                }
+            } catch (SystemException cause) {
+                throw new TransactionRuntimeException("Cannot suspend tx",
+                        cause);
+            }
+        }
+        Map<ConnectionTrackingCoordinator, ConnectionTrackingCoordinator.Context> contexts = new HashMap<ConnectionTrackingCoordinator, ConnectionTrackingCoordinator.Context>();
+        for (ConnectionManagerWrapper cm : NuxeoContainer.connectionManagers.values()) {
+            ConnectionTrackingCoordinator.Context context = cm.coordinator.detach();
+            if (context != null) {
+                contexts.put(cm.coordinator, context);
+            }
+        }
+        return new ContextCarrier(tx, contexts);
+    }
+
+    /**
+     * Returns the carried transaction, or {@code null} if the capturing
+     * thread had none.
+     */
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * Runs a task in the calling thread under the carried contexts.
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        lock.lock();
+        try {
+            if (restored) {
+                throw new IllegalStateException("Contexts already restored");
+            }
+            attach();
+            try {
+                return task.call();
+            } finally {
+                detach();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wraps a task so that it runs under the carried contexts in whatever
+     * thread executes it.
+     */
+    public Runnable wrap(final Runnable task) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    call(new Callable<Void>() {
+
+                        @Override
+                        public Void call() {
+                            task.run();
+                            return null;
+                        }
+                    });
+                } catch (RuntimeException cause) {
+                    throw cause;
+                } catch (Exception cause) {
+                    throw new RuntimeException(cause);
+                }
+            }
+        };
+    }
+
+    /**
+     * Attaches the carried contexts back to the calling thread, the carrier
+     * cannot be used afterwards.
+     */
+    public void restore() {
+        lock.lock();
+        try {
+            if (restored) {
+                throw new IllegalStateException("Contexts already restored");
+            }
+            restored = true;
+            attach();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected void attach() {
+        if (transaction != null) {
+            try {
+                NuxeoContainer.getTransactionManager().resume(transaction);
+            } catch (InvalidTransactionException | IllegalStateException
+                    | SystemException cause) {
+                throw new TransactionRuntimeException("Cannot resume tx",
+                        cause);
+            }
+        }
+        for (Map.Entry<ConnectionTrackingCoordinator, ConnectionTrackingCoordinator.Context> entry : contexts.entrySet()) {
+            entry.getKey().attach(entry.getValue());
+        }
+    }
+
+    protected void detach() {
+        // the task may have obtained or released connections in any pool
+        for (ConnectionManagerWrapper cm : NuxeoContainer.connectionManagers.values()) {
+            ConnectionTrackingCoordinator.Context context = cm.coordinator.detach();
+            if (context != null) {
+                contexts.put(cm.coordinator, context);
+            } else {
+                contexts.remove(cm.coordinator);
+            }
+        }
+        if (transaction != null) {
+            try {
+                NuxeoContainer.getTransactionManager().suspend();
+            } catch (SystemException cause) {
+                throw new TransactionRuntimeException("Cannot suspend tx",
+                        cause);
+            }
+        }
+    }
+
+}
@@ -19,13 +19,27 @@
 
 package org.nuxeo.runtime.jtajca;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.CompositeName;
+import javax.naming.Name;
 import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.spi.NamingManager;
 
 import org.apache.xbean.naming.context.WritableContext;
 
 /**
  * Naming context for nuxeo container. Basically re-locate
  * geronimo implementation in nuxeo namespace.
+ * <p>
+ * Resolved lookups are cached by name, the cache is invalidated each time a
+ * binding is changed through this context. Bindings changed through sub
+ * contexts must be followed by a call to {@link #invalidateCache}. A lookup
+ * takes the generation before resolving the name, and its result is only
+ * cached if no invalidation happened since: the generation check and the
+ * cache write are done under the same lock as the invalidation.
  *
  * @since 5.6
  *
@@ -38,4 +52,143 @@ public class NamingContext extends WritableContext {
 
     private static final long serialVersionUID = 1L;
 
+    protected final Map<String, Object> resolved = new ConcurrentHashMap<String, Object>();
+
+    protected final Object cacheLock = new Object();
+
+    protected volatile int generation;
+
+    /**
+     * Looks up a name and resolves it if bound to a reference, the result is
+     * cached until the bindings change.
+     *
+     * @since 7.1
+     */
+    public Object lookupResolved(String name) throws NamingException {
+        Object value = resolved.get(name);
+        if (value != null) {
+            return value;
+        }
+        int generation = this.generation;
+        value = resolve(name, super.lookup(new CompositeName(name)));
+        synchronized (cacheLock) {
+            if (generation == this.generation) {
+                resolved.put(name, value);
+            }
+        }
+        return value;
+    }
+
+    protected Object resolve(String name, Object value) throws NamingException {
+        if (!(value instanceof Reference)) {
+            return value;
+        }
+        try {
+            return NamingManager.getObjectInstance(value,
+                    new CompositeName(name), this, null);
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot get access to " + name, e);
+        }
+    }
+
+    /**
+     * @since 7.1
+     */
+    public void invalidateCache() {
+        synchronized (cacheLock) {
+            generation++;
+            resolved.clear();
+        }
+    }
+
+    @Override
+    public void bind(Name name, Object obj) throws NamingException {
+        try {
+            super.bind(name, obj);
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public void bind(String name, Object obj) throws NamingException {
+        try {
+            super.bind(name, obj);
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public void rebind(Name name, Object obj) throws NamingException {
+        try {
+            super.rebind(name, obj);
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public void rebind(String name, Object obj) throws NamingException {
+        try {
+            super.rebind(name, obj);
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public void unbind(Name name) throws NamingException {
+        try {
+            super.unbind(name);
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public void unbind(String name) throws NamingException {
+        try {
+            super.unbind(name);
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public void rename(Name oldName, Name newName) throws NamingException {
+        try {
+            super.rename(oldName, newName);
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public void rename(String oldName, String newName) throws NamingException {
+        try {
+            super.rename(oldName, newName);
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public void destroySubcontext(Name name) throws NamingException {
+        try {
+            super.destroySubcontext(name);
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public void destroySubcontext(String name) throws NamingException {
+        try {
+            super.destroySubcontext(name);
+        } finally {
+            invalidateCache();
+        }
+    }
+
 }
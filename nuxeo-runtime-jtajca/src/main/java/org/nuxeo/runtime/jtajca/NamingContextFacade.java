@@ -48,5 +48,18 @@ public class NamingContextFacade extends NamingContext {
         }
     }
 
+    /**
+     * Only the names bound in nuxeo's context are cached, the main context
+     * is not notified of its bindings changes.
+     */
+    @Override
+    public Object lookupResolved(String name) throws NamingException {
+        try {
+            return super.lookupResolved(name);
+        } catch (NamingException e) {
+            return resolve(name, delegate.lookup(name));
+        }
+    }
+
 
 }
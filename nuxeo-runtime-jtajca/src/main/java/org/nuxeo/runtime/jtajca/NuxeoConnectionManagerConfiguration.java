@@ -34,6 +34,12 @@ public class NuxeoConnectionManagerConfiguration {
 
     public static final int DEFAULT_IDLE_TIMEOUT_MINUTES = 0; // no timeout
 
+    public static final int DEFAULT_VALIDATION_INTERVAL_SECONDS = 0; // no validation
+
+    public static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 5;
+
+    public static final int DEFAULT_MAX_LIFETIME_MINUTES = 0; // no limit
+
     @XNode("@name")
     private String name = "NuxeoConnectionManager";
 
@@ -70,6 +76,23 @@ public class NuxeoConnectionManagerConfiguration {
     @XNode("@idleTimeoutMinutes")
     private Integer idleTimeoutMinutes;
 
+    // maintenance
+
+    @XNode("@warmUp")
+    private Boolean warmUp;
+
+    @XNode("@validationQuery")
+    private String validationQuery;
+
+    @XNode("@validationIntervalSeconds")
+    private Integer validationIntervalSeconds;
+
+    @XNode("@validationTimeoutSeconds")
+    private Integer validationTimeoutSeconds;
+
+    @XNode("@maxLifetimeMinutes")
+    private Integer maxLifetimeMinutes;
+
     public NuxeoConnectionManagerConfiguration() {
     }
 
@@ -86,6 +109,11 @@ public class NuxeoConnectionManagerConfiguration {
         minPoolSize = other.minPoolSize;
         blockingTimeoutMillis = other.blockingTimeoutMillis;
         idleTimeoutMinutes = other.idleTimeoutMinutes;
+        warmUp = other.warmUp;
+        validationQuery = other.validationQuery;
+        validationIntervalSeconds = other.validationIntervalSeconds;
+        validationTimeoutSeconds = other.validationTimeoutSeconds;
+        maxLifetimeMinutes = other.maxLifetimeMinutes;
     }
 
     public void merge(NuxeoConnectionManagerConfiguration other) {
@@ -122,6 +150,21 @@ public class NuxeoConnectionManagerConfiguration {
         if (other.idleTimeoutMinutes != null) {
             idleTimeoutMinutes = other.idleTimeoutMinutes;
         }
+        if (other.warmUp != null) {
+            warmUp = other.warmUp;
+        }
+        if (other.validationQuery != null) {
+            validationQuery = other.validationQuery;
+        }
+        if (other.validationIntervalSeconds != null) {
+            validationIntervalSeconds = other.validationIntervalSeconds;
+        }
+        if (other.validationTimeoutSeconds != null) {
+            validationTimeoutSeconds = other.validationTimeoutSeconds;
+        }
+        if (other.maxLifetimeMinutes != null) {
+            maxLifetimeMinutes = other.maxLifetimeMinutes;
+        }
     }
 
     /** False if the boolean is null or FALSE, true otherwise. */
@@ -183,6 +226,53 @@ public class NuxeoConnectionManagerConfiguration {
         return defaultInt(idleTimeoutMinutes, DEFAULT_IDLE_TIMEOUT_MINUTES);
     }
 
+    /**
+     * Pre-fills the pool up to its minimum size when the application starts.
+     *
+     * @since 7.1
+     */
+    public boolean getWarmUp() {
+        return defaultTrue(warmUp);
+    }
+
+    /**
+     * The query used by the background validator, or {@code null} to use
+     * {@link java.sql.Connection#isValid}.
+     *
+     * @since 7.1
+     */
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    /**
+     * Period of the background validation of idle connections, 0 disables it.
+     *
+     * @since 7.1
+     */
+    public int getValidationIntervalSeconds() {
+        return defaultInt(validationIntervalSeconds,
+                DEFAULT_VALIDATION_INTERVAL_SECONDS);
+    }
+
+    /**
+     * @since 7.1
+     */
+    public int getValidationTimeoutSeconds() {
+        return defaultInt(validationTimeoutSeconds,
+                DEFAULT_VALIDATION_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Age after which a connection is evicted by the background validator, 0
+     * means connections are never evicted because of their age.
+     *
+     * @since 7.1
+     */
+    public int getMaxLifetimeMinutes() {
+        return defaultInt(maxLifetimeMinutes, DEFAULT_MAX_LIFETIME_MINUTES);
+    }
+
     public void setName(String name) {
         this.name = name;
     }
@@ -227,6 +317,26 @@ public class NuxeoConnectionManagerConfiguration {
         this.idleTimeoutMinutes = Integer.valueOf(idleTimeoutMinutes);
     }
 
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = Boolean.valueOf(warmUp);
+    }
+
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    public void setValidationIntervalSeconds(int validationIntervalSeconds) {
+        this.validationIntervalSeconds = Integer.valueOf(validationIntervalSeconds);
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = Integer.valueOf(validationTimeoutSeconds);
+    }
+
+    public void setMaxLifetimeMinutes(int maxLifetimeMinutes) {
+        this.maxLifetimeMinutes = Integer.valueOf(maxLifetimeMinutes);
+    }
+
     @XNode("@maxActive")
     public void setMaxActive(int num) {
         maxPoolSize = num;
@@ -14,10 +14,13 @@ package org.nuxeo.runtime.jtajca;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.CompositeName;
 import javax.naming.Context;
@@ -26,8 +29,10 @@ import javax.naming.NamingException;
 import javax.naming.Reference;
 import javax.naming.spi.NamingManager;
 import javax.resource.ResourceException;
+import javax.resource.spi.ConnectionEvent;
 import javax.resource.spi.ConnectionManager;
 import javax.resource.spi.ConnectionRequestInfo;
+import javax.resource.spi.ManagedConnection;
 import javax.resource.spi.ManagedConnectionFactory;
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
@@ -48,6 +53,7 @@ import org.apache.geronimo.connector.outbound.ConnectionInfo;
 import org.apache.geronimo.connector.outbound.ConnectionReturnAction;
 import org.apache.geronimo.connector.outbound.ConnectionTrackingInterceptor;
 import org.apache.geronimo.connector.outbound.GenericConnectionManager;
+import org.apache.geronimo.connector.outbound.ManagedConnectionInfo;
 import org.apache.geronimo.connector.outbound.PoolingAttributes;
 import org.apache.geronimo.connector.outbound.connectionmanagerconfig.LocalTransactions;
 import org.apache.geronimo.connector.outbound.connectionmanagerconfig.PoolingSupport;
@@ -60,12 +66,13 @@ import org.apache.geronimo.transaction.manager.RecoverableTransactionManager;
 import org.apache.geronimo.transaction.manager.TransactionImpl;
 import org.apache.geronimo.transaction.manager.TransactionManagerImpl;
 import org.apache.xbean.naming.reference.SimpleReference;
-import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.metrics.ComponentMetrics;
+import org.nuxeo.runtime.metrics.MetricName;
+import org.nuxeo.runtime.metrics.RuntimeMetrics;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
 
 /**
@@ -100,23 +107,39 @@ public class NuxeoContainer {
 
     protected static String jndiPrefix = "java:comp/env/";
 
+    /**
+     * JNDI names of the datasources by their short name.
+     *
+     * @since 7.1
+     */
+    protected static final Map<String, String> dataSourceNames = new ConcurrentHashMap<String, String>();
+
     // @since 5.7
-    protected static final MetricRegistry registry = SharedMetricRegistries
-        .getOrCreate(MetricsService.class.getName());
+    protected static final MetricRegistry registry = RuntimeMetrics.registry();
+
+    // @since 7.1
+    protected static final ComponentMetrics transactionMetrics = RuntimeMetrics.forComponent(
+            "nuxeo", "transactions");
+
+    protected static final Counter rollbackCount = transactionMetrics.counter(MetricName.of("rollbacks"));
+
+    protected static final Counter concurrentCount = transactionMetrics.counter(MetricName.of(
+            "concurrents", "count"));
 
-    protected static final Counter rollbackCount = registry
-        .counter(MetricRegistry.name("nuxeo", "transactions", "rollbacks"));
+    protected static final Counter concurrentMaxCount = transactionMetrics.counter(MetricName.of(
+            "concurrents", "max"));
 
-    protected static final Counter concurrentCount = registry
-        .counter(MetricRegistry.name("nuxeo", "transactions", "concurrents",
-                "count"));
+    /**
+     * Running transactions and their max, tracked apart from the counters so
+     * that a begin does not sum the counter cells.
+     *
+     * @since 7.1
+     */
+    protected static final AtomicLong concurrents = new AtomicLong();
 
-    protected static final Counter concurrentMaxCount = registry
-        .counter(MetricRegistry.name("nuxeo", "transactions", "concurrents",
-                "max"));
+    protected static final AtomicLong concurrentMax = new AtomicLong();
 
-    protected static final Timer transactionTimer = registry
-        .timer(MetricRegistry.name("nuxeo", "transactions", "duration"));
+    protected static final Timer transactionTimer = transactionMetrics.timer(MetricName.of("duration"));
 
     protected static final ConcurrentHashMap<Transaction, Timer.Context> timers = new ConcurrentHashMap<Transaction, Timer.Context>();
 
@@ -164,6 +187,7 @@ public class NuxeoContainer {
                     TransactionManager.class.getName(),
                     NuxeoTransactionManagerFactory.class.getName(), null));
         }
+        dataSourceNames.clear();
         log.info("Using JNDI prefix: " + jndiPrefix);
         installTransactionManager();
     }
@@ -176,6 +200,7 @@ public class NuxeoContainer {
         addDeepBinding(rootContext,
                 new CompositeName(nameOf("UserTransaction")),
                 getUserTransactionReference());
+        invalidateLookups();
     }
 
     /**
@@ -199,6 +224,7 @@ public class NuxeoContainer {
             try {
                 addDeepBinding(rootContext, new CompositeName(jndiName),
                         getConnectionManagerReference(name));
+                invalidateLookups();
             } catch (NamingException e) {
                 log.error("Cannot bind in JNDI connection manager "
                         + config.getName() + " to name " + jndiName);
@@ -238,6 +264,7 @@ public class NuxeoContainer {
             tmSynchRegistry = null;
             ut = null;
             connectionManagers.clear();
+            dataSourceNames.clear();
         }
     }
 
@@ -303,6 +330,7 @@ public class NuxeoContainer {
     public static void addDeepBinding(String name, Object obj)
             throws NamingException {
         addDeepBinding(rootContext, new CompositeName(name), obj);
+        invalidateLookups();
     }
 
     protected static void addDeepBinding(Context dir, CompositeName comp,
@@ -332,6 +360,20 @@ public class NuxeoContainer {
 
     protected static void removeBinding(String name) throws NamingException {
         rootContext.unbind(name);
+        invalidateLookups();
+    }
+
+    /**
+     * Forgets the lookups resolved so far, to be called when bindings are
+     * changed through a sub context of the root context.
+     *
+     * @since 7.1
+     */
+    public static void invalidateLookups() {
+        dataSourceNames.clear();
+        if (rootContext instanceof NamingContext) {
+            ((NamingContext) rootContext).invalidateCache();
+        }
     }
 
     /**
@@ -477,6 +519,9 @@ public class NuxeoContainer {
         if (rootContext == null) {
             throw new NamingException("no naming context available");
         }
+        if (rootContext instanceof NamingContext) {
+            return type.cast(((NamingContext) rootContext).lookupResolved(name));
+        }
         Object resolved = rootContext.lookup(name);
         if (resolved instanceof Reference) {
             try {
@@ -491,7 +536,12 @@ public class NuxeoContainer {
 
     public static <T> T lookupDataSource(String name, Class<T> type)
             throws NamingException {
-        return lookup(nameOf("jdbc/".concat(name)), type);
+        String jndiName = dataSourceNames.get(name);
+        if (jndiName == null) {
+            jndiName = nameOf("jdbc/".concat(name));
+            dataSourceNames.put(name, jndiName);
+        }
+        return lookup(jndiName, type);
     }
 
     protected static void installTransactionManager()
@@ -565,14 +615,52 @@ public class NuxeoContainer {
         @Override
         public void begin() throws NotSupportedException, SystemException {
             transactionManager.begin();
+            started();
+        }
+
+        /**
+         * Begins a transaction with the given timeout without changing the
+         * default timeout of the thread, when the transaction manager allows
+         * it.
+         *
+         * @param timeout the timeout in seconds, 0 for the default
+         * @since 7.1
+         */
+        public void begin(int timeout) throws NotSupportedException,
+                SystemException {
+            if (transactionManager instanceof TransactionManagerImpl) {
+                ((TransactionManagerImpl) transactionManager).begin(timeout * 1000L);
+            } else {
+                transactionManager.setTransactionTimeout(timeout);
+                try {
+                    transactionManager.begin();
+                } finally {
+                    transactionManager.setTransactionTimeout(0);
+                }
+            }
+            started();
+        }
+
+        protected void started() throws SystemException {
             timers.put(transactionManager.getTransaction(),
                     transactionTimer.time());
             concurrentCount.inc();
-            if (concurrentCount.getCount() > concurrentMaxCount.getCount()) {
-                concurrentMaxCount.inc();
+            long current = concurrents.incrementAndGet();
+            long max = concurrentMax.get();
+            while (current > max) {
+                if (concurrentMax.compareAndSet(max, current)) {
+                    concurrentMaxCount.inc(current - max);
+                    break;
+                }
+                max = concurrentMax.get();
             }
         }
 
+        protected void ended() {
+            concurrentCount.dec();
+            concurrents.decrementAndGet();
+        }
+
         @Override
         public void commit() throws HeuristicMixedException,
                 HeuristicRollbackException, IllegalStateException,
@@ -583,7 +671,7 @@ public class NuxeoContainer {
             if (timerContext != null) {
                 timerContext.stop();
             }
-            concurrentCount.dec();
+            ended();
         }
 
         @Override
@@ -592,7 +680,7 @@ public class NuxeoContainer {
             Timer.Context timerContext = timers.remove(transactionManager
                 .getTransaction());
             transactionManager.rollback();
-            concurrentCount.dec();
+            ended();
             if (timerContext != null) {
                 timerContext.stop();
             }
@@ -863,6 +951,14 @@ public class NuxeoContainer {
 
         };
 
+        /**
+         * First time each managed connection was handed out, used for
+         * evicting connections exceeding their max lifetime.
+         *
+         * @since 7.1
+         */
+        protected final Map<ManagedConnection, Long> births = Collections.synchronizedMap(new WeakHashMap<ManagedConnection, Long>());
+
         @Override
         public void handleObtained(
                 ConnectionTrackingInterceptor connectionTrackingInterceptor,
@@ -871,6 +967,57 @@ public class NuxeoContainer {
             final Context context = contextHolder.get();
             context.inuse.put(connectionInfo, new Context.Allocation(
                     connectionInfo));
+            ManagedConnection mc = connectionInfo.getManagedConnectionInfo()
+                .getManagedConnection();
+            synchronized (births) {
+                if (!births.containsKey(mc)) {
+                    births.put(mc, Long.valueOf(System.currentTimeMillis()));
+                }
+            }
+        }
+
+        /**
+         * Removes the tracking context of the current thread so that it can
+         * be attached to another thread.
+         *
+         * @return the context, or {@code null} if there is nothing to carry
+         * @since 7.1
+         */
+        protected Context detach() {
+            Context context = contextHolder.get();
+            contextHolder.remove();
+            if (context.inuse.isEmpty() && !context.unshareable) {
+                return null;
+            }
+            return context;
+        }
+
+        /**
+         * Attaches a context previously detached from another thread.
+         *
+         * @since 7.1
+         */
+        protected void attach(Context context) {
+            if (context == null) {
+                contextHolder.remove();
+            } else {
+                contextHolder.set(context);
+            }
+        }
+
+        /**
+         * Returns the connection info of a handle obtained by the current
+         * thread, or {@code null} if the handle is not tracked.
+         *
+         * @since 7.1
+         */
+        protected ConnectionInfo lookupCurrentThreadInfo(Object handle) {
+            for (ConnectionInfo info : contextHolder.get().inuse.keySet()) {
+                if (info.getConnectionHandle() == handle) {
+                    return info;
+                }
+            }
+            return null;
         }
 
         @Override
@@ -950,6 +1097,49 @@ public class NuxeoContainer {
             coordinator.contextHolder.get().unshareable = true;
         }
 
+        /**
+         * Returns the time elapsed since the managed connection behind this
+         * handle was first handed out, or -1 if the handle was not obtained by
+         * the current thread.
+         *
+         * @since 7.1
+         */
+        public long getConnectionAgeMillis(Object handle) {
+            ConnectionInfo info = coordinator.lookupCurrentThreadInfo(handle);
+            if (info == null) {
+                return -1;
+            }
+            Long birth = coordinator.births.get(info.getManagedConnectionInfo()
+                .getManagedConnection());
+            if (birth == null) {
+                return -1;
+            }
+            return System.currentTimeMillis() - birth.longValue();
+        }
+
+        /**
+         * Destroys the managed connection behind a handle obtained by the
+         * current thread instead of returning it to the pool. The handle must
+         * not be used nor closed afterwards.
+         *
+         * @return false if the handle was not obtained by the current thread
+         * @since 7.1
+         */
+        public boolean evict(Object handle) {
+            ConnectionInfo info = coordinator.lookupCurrentThreadInfo(handle);
+            if (info == null) {
+                return false;
+            }
+            ManagedConnectionInfo mci = info.getManagedConnectionInfo();
+            ManagedConnection mc = mci.getManagedConnection();
+            coordinator.births.remove(mc);
+            ConnectionEvent event = new ConnectionEvent(mc,
+                    ConnectionEvent.CONNECTION_ERROR_OCCURRED);
+            event.setConnectionHandle(handle);
+            mci.getConnectionEventListener().connectionErrorOccurred(event);
+            return true;
+        }
+
         public void exitNoSharing() {
             coordinator.contextHolder.get().unshareable = false;
         }
@@ -16,6 +16,7 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.naming.NamingException;
 import javax.transaction.RollbackException;
@@ -300,6 +301,55 @@ public class TransactionHelper {
         }
     }
 
+    /**
+     * Runs the given callable in a new User Transaction with the specified
+     * timeout, or in the current transaction if one is already active.
+     * <p>
+     * The transaction is started with its own timeout instead of changing the
+     * default timeout of the thread, and is rolled back if the callable
+     * fails.
+     *
+     * @param callable the work to run
+     * @param timeout the timeout in seconds, <= 0 for the default
+     * @return the callable result
+     * @since 7.1
+     */
+    public static <T> T runInTransaction(Callable<T> callable, int timeout)
+            throws Exception {
+        if (isTransactionActiveOrMarkedRollback()) {
+            return callable.call();
+        }
+        UserTransaction ut = NuxeoContainer.getUserTransaction();
+        if (ut == null) {
+            throw new TransactionRuntimeException("tx manager not installed");
+        }
+        if (timeout < 0) {
+            timeout = 0;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Starting transaction");
+        }
+        if (ut instanceof NuxeoContainer.UserTransactionImpl) {
+            ((NuxeoContainer.UserTransactionImpl) ut).begin(timeout);
+        } else {
+            if (!startTransaction(timeout)) {
+                throw new TransactionRuntimeException(
+                        "Cannot start transaction");
+            }
+        }
+        boolean completed = false;
+        try {
+            T result = callable.call();
+            completed = true;
+            return result;
+        } finally {
+            if (!completed) {
+                setTransactionRollbackOnly();
+            }
+            commitOrRollbackTransaction();
+        }
+    }
+
     /**
      * Commits or rolls back the User Transaction depending on the transaction
      * status.
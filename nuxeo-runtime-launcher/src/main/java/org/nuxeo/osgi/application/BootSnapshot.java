@@ -0,0 +1,242 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.osgi.application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a successful boot, replayed on the next start to skip the class
+ * path scanning and the bundle manifest parsing.
+ * <p>
+ * A snapshot holds the class path in resolution order, the bundle files
+ * given to the framework loader and the manifest headers of those which are
+ * bundles, keyed by path. It is valid as long as its fingerprint is: the
+ * length and last modification time of the scanned directories, of the class
+ * path entries and of the manifests of directory bundles, along with the
+ * class path specifications it was built from.
+ * <p>
+ * Strings are stored as length prefixed UTF-8 bytes: the manifest headers
+ * listing many components can exceed the 64 KB that
+ * {@link DataOutputStream#writeUTF(String)} can write.
+ *
+ * @since 7.1
+ */
+public class BootSnapshot {
+
+    protected static final int MAGIC = 0x4e584253;
+
+    protected static final int VERSION = 2;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected final Map<String, String> specs = new HashMap<String, String>();
+
+    /** File path to {length, lastModified}. */
+    protected final Map<String, long[]> fingerprint = new LinkedHashMap<String, long[]>();
+
+    protected final List<File> classPath = new ArrayList<File>();
+
+    protected final List<File> bundleFiles = new ArrayList<File>();
+
+    protected final Map<String, Map<String, String>> bundleHeaders = new HashMap<String, Map<String, String>>();
+
+    public void setSpec(String key, String value) {
+        specs.put(key, value);
+    }
+
+    /**
+     * Adds a file to the fingerprint. Missing files are recorded too, so that
+     * creating them invalidates the snapshot.
+     */
+    public void addFingerprint(File file) {
+        fingerprint.put(file.getAbsolutePath(), new long[] { file.length(),
+                file.lastModified() });
+    }
+
+    public void addClassPath(File file) {
+        classPath.add(file);
+        addFingerprint(file);
+        if (file.isDirectory()) {
+            addFingerprint(new File(file, "META-INF/MANIFEST.MF"));
+        }
+    }
+
+    public void setBundleFiles(Collection<File> files) {
+        bundleFiles.clear();
+        bundleFiles.addAll(files);
+    }
+
+    public void setBundleHeaders(Map<String, Map<String, String>> headers) {
+        bundleHeaders.clear();
+        bundleHeaders.putAll(headers);
+    }
+
+    public List<File> getClassPath() {
+        return classPath;
+    }
+
+    public List<File> getBundleFiles() {
+        return bundleFiles;
+    }
+
+    /**
+     * Gets the manifest headers of the bundle files, keyed by path. Bundle
+     * files without headers are not bundles.
+     */
+    public Map<String, Map<String, String>> getBundleHeaders() {
+        return bundleHeaders;
+    }
+
+    /**
+     * Checks the fingerprint against the file system and the given class path
+     * specifications.
+     */
+    public boolean isValid(Map<String, String> currentSpecs) {
+        if (!specs.equals(currentSpecs)) {
+            return false;
+        }
+        for (Map.Entry<String, long[]> entry : fingerprint.entrySet()) {
+            File file = new File(entry.getKey());
+            long[] stat = entry.getValue();
+            if (file.lastModified() != stat[1] || file.length() != stat[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static BootSnapshot load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a boot snapshot: " + file);
+            }
+            BootSnapshot snapshot = new BootSnapshot();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                snapshot.specs.put(readString(in), readString(in));
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                snapshot.fingerprint.put(readString(in), new long[] {
+                        in.readLong(), in.readLong() });
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                snapshot.classPath.add(new File(readString(in)));
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                snapshot.bundleFiles.add(new File(readString(in)));
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = readString(in);
+                int size = in.readInt();
+                Map<String, String> headers = new HashMap<String, String>(
+                        size * 2);
+                for (int j = 0; j < size; j++) {
+                    headers.put(readString(in), readString(in));
+                }
+                snapshot.bundleHeaders.put(path, headers);
+            }
+            return snapshot;
+        } finally {
+            in.close();
+        }
+    }
+
+    public void store(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(specs.size());
+            for (Map.Entry<String, String> entry : specs.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+            out.writeInt(fingerprint.size());
+            for (Map.Entry<String, long[]> entry : fingerprint.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeLong(entry.getValue()[0]);
+                out.writeLong(entry.getValue()[1]);
+            }
+            out.writeInt(classPath.size());
+            for (File each : classPath) {
+                writeString(out, each.getPath());
+            }
+            out.writeInt(bundleFiles.size());
+            for (File each : bundleFiles) {
+                writeString(out, each.getPath());
+            }
+            out.writeInt(bundleHeaders.size());
+            for (Map.Entry<String, Map<String, String>> entry : bundleHeaders.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Map.Entry<String, String> header : entry.getValue().entrySet()) {
+                    writeString(out, header.getKey());
+                    writeString(out, header.getValue());
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Cannot write boot snapshot " + file);
+            }
+        }
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    protected static void writeString(DataOutputStream out, String value)
+            throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -62,6 +62,16 @@ public class FrameworkBootstrap implements LoaderConstants {
 
     protected boolean flushCache = false;
 
+    protected boolean useBootSnapshot = true;
+
+    /**
+     * Snapshot of the boot in progress, recorded while scanning the class
+     * path or replayed from the previous boot.
+     */
+    protected BootSnapshot snapshot;
+
+    protected boolean snapshotReplayed;
+
     public FrameworkBootstrap(ClassLoader cl, File home) throws IOException {
         this(new MutableClassLoaderDelegate(cl), home);
     }
@@ -97,6 +107,13 @@ public class FrameworkBootstrap implements LoaderConstants {
         this.scanForNestedJars = scanForNestedJars;
     }
 
+    /**
+     * @since 7.1
+     */
+    public void setUseBootSnapshot(boolean useBootSnapshot) {
+        this.useBootSnapshot = useBootSnapshot;
+    }
+
     public Map<String, Object> env() {
         return env;
     }
@@ -130,6 +147,7 @@ public class FrameworkBootstrap implements LoaderConstants {
         }
         Method start = frameworkLoaderClass.getMethod("start");
         start.invoke(null);
+        storeBootSnapshot();
         printStartedMessage();
     }
 
@@ -186,6 +204,10 @@ public class FrameworkBootstrap implements LoaderConstants {
             if (v != null) {
                 flushCache = Boolean.parseBoolean(v);
             }
+            v = (String) env.get(BOOT_SNAPSHOT);
+            if (v != null) {
+                useBootSnapshot = Boolean.parseBoolean(v);
+            }
         } finally {
             in.close();
         }
@@ -210,6 +232,14 @@ public class FrameworkBootstrap implements LoaderConstants {
      * @return the list of bundle files.
      */
     protected List<File> buildClassPath() throws IOException {
+        if (useBootSnapshot && replayBootSnapshot()) {
+            return snapshot.getBundleFiles();
+        }
+        snapshot = new BootSnapshot();
+        for (Map.Entry<String, String> spec : getClassPathSpecs().entrySet()) {
+            snapshot.setSpec(spec.getKey(), spec.getValue());
+        }
+        snapshot.addFingerprint(new File(home, "launcher.properties"));
         List<File> bundleFiles = new ArrayList<File>();
         String libsCp = (String) env.get(LIBS);
         if (libsCp != null) {
@@ -220,24 +250,131 @@ public class FrameworkBootstrap implements LoaderConstants {
             buildBundlesClassPath(bundlesCp, bundleFiles);
         }
         extractNestedJars(bundleFiles, new File(home, "tmp/nested-jars"));
+        snapshot.setBundleFiles(bundleFiles);
         return bundleFiles;
     }
 
+    /**
+     * Adds a class path entry to the loader, recording it in the boot
+     * snapshot.
+     *
+     * @since 7.1
+     */
+    protected void addClassPath(File file) throws IOException {
+        loader.addURL(file.toURI().toURL());
+        snapshot.addClassPath(file);
+    }
+
+    /**
+     * Lists a class path directory, recording it in the boot snapshot.
+     *
+     * @since 7.1
+     */
+    protected File[] listClassPath(File dir) {
+        snapshot.addFingerprint(dir);
+        return dir.listFiles();
+    }
+
+    /**
+     * Gets the settings the class path is built from, which a boot snapshot
+     * must match to be replayed.
+     *
+     * @since 7.1
+     */
+    protected Map<String, String> getClassPathSpecs() {
+        Map<String, String> specs = new HashMap<String, String>();
+        specs.put(HOME_DIR, home.getPath());
+        specs.put(LIBS, String.valueOf(env.get(LIBS)));
+        specs.put(BUNDLES, String.valueOf(env.get(BUNDLES)));
+        specs.put(SCAN_FOR_NESTED_JARS, Boolean.toString(scanForNestedJars));
+        return specs;
+    }
+
+    protected File getBootSnapshotFile() {
+        return new File(home, "tmp/boot.snapshot");
+    }
+
+    /**
+     * Fills the class loader from the snapshot of the previous boot if it is
+     * still valid, and hands the recorded bundle headers to the framework
+     * loader.
+     *
+     * @since 7.1
+     */
+    protected boolean replayBootSnapshot() throws IOException {
+        File file = getBootSnapshotFile();
+        if (flushCache) {
+            file.delete();
+            return false;
+        }
+        if (!file.isFile()) {
+            return false;
+        }
+        BootSnapshot previous;
+        try {
+            previous = BootSnapshot.load(file);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable boot snapshot " + file, e);
+            file.delete();
+            return false;
+        }
+        if (!previous.isValid(getClassPathSpecs())) {
+            log.debug("Boot snapshot is out of date, scanning the class path");
+            return false;
+        }
+        for (File each : previous.getClassPath()) {
+            loader.addURL(each.toURI().toURL());
+        }
+        env.put(BUNDLE_HEADERS, previous.getBundleHeaders());
+        snapshot = previous;
+        snapshotReplayed = true;
+        log.debug("Class path restored from boot snapshot " + file);
+        return true;
+    }
+
+    /**
+     * Stores the snapshot of a boot which scanned the class path, once the
+     * framework started successfully.
+     *
+     * @since 7.1
+     */
+    @SuppressWarnings("unchecked")
+    protected void storeBootSnapshot() {
+        if (!useBootSnapshot || snapshot == null || snapshotReplayed) {
+            return;
+        }
+        File file = getBootSnapshotFile();
+        try {
+            Method getHeaders = frameworkLoaderClass.getMethod("getBundleHeaders");
+            Map<String, Map<String, String>> headers = (Map<String, Map<String, String>>) getHeaders.invoke(null);
+            if (headers == null) {
+                // some bundles failed to install, do not replay this boot
+                file.delete();
+                return;
+            }
+            snapshot.setBundleHeaders(headers);
+            snapshot.store(file);
+        } catch (ReflectiveOperationException | IOException e) {
+            log.warn("Cannot store boot snapshot " + file, e);
+            file.delete();
+        }
+    }
+
     protected void buildLibsClassPath(String libsCp) throws IOException {
         String[] ar = libsCp.split(":");
         for (String entry : ar) {
             File entryFile;
             if (entry.endsWith("/*")) {
                 entryFile = newFile(entry.substring(0, entry.length() - 2));
-                File[] files = entryFile.listFiles();
+                File[] files = listClassPath(entryFile);
                 if (files != null) {
                     for (File file : files) {
-                        loader.addURL(file.toURI().toURL());
+                        addClassPath(file);
                     }
                 }
             } else {
                 entryFile = newFile(entry);
-                loader.addURL(entryFile.toURI().toURL());
+                addClassPath(entryFile);
             }
         }
     }
@@ -249,7 +386,7 @@ public class FrameworkBootstrap implements LoaderConstants {
             File entryFile;
             if (entry.endsWith("/*")) {
                 entryFile = newFile(entry.substring(0, entry.length() - 2));
-                File[] files = entryFile.listFiles();
+                File[] files = listClassPath(entryFile);
                 if (files != null) {
                     for (File file : files) {
                         String path = file.getPath();
@@ -257,14 +394,14 @@ public class FrameworkBootstrap implements LoaderConstants {
                                 || path.endsWith(".war")
                                 || path.endsWith("rar")) {
                             bundleFiles.add(file);
-                            loader.addURL(file.toURI().toURL());
+                            addClassPath(file);
                         }
                     }
                 }
             } else {
                 entryFile = newFile(entry);
                 bundleFiles.add(entryFile);
-                loader.addURL(entryFile.toURI().toURL());
+                addClassPath(entryFile);
             }
         }
     }
@@ -278,10 +415,10 @@ public class FrameworkBootstrap implements LoaderConstants {
             if (flushCache) {
                 deleteAll(dir);
             } else {
-                File[] files = dir.listFiles();
+                File[] files = listClassPath(dir);
                 if (files != null) {
                     for (File f : files) {
-                        loader.addURL(f.toURI().toURL());
+                        addClassPath(f);
                     }
                 }
                 return;
@@ -306,7 +443,7 @@ public class FrameworkBootstrap implements LoaderConstants {
                 String name = path.replace('/', '_');
                 File dest = new File(tmpDir, fileName + '-' + name);
                 extractNestedJar(jarFile, entry, dest);
-                loader.addURL(dest.toURI().toURL());
+                addClassPath(dest);
             }
         }
     }
@@ -38,5 +38,7 @@ public interface LoaderConstants {
     static final String INSTALL_RELOAD_TIMER = "org.nuxeo.app.installReloadTimer";
     static final String FLUSH_CACHE = "org.nuxeo.app.flushCache";
     static final String ARGS = "org.nuxeo.app.args";
+    static final String BOOT_SNAPSHOT = "org.nuxeo.app.bootSnapshot";
+    static final String BUNDLE_HEADERS = "org.nuxeo.app.bundleHeaders"; // bundle path -> manifest headers
 
 }
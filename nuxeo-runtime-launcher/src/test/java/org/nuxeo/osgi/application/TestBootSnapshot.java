@@ -0,0 +1,193 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.osgi.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @since 7.1
+ */
+public class TestBootSnapshot {
+
+    protected static class RecordingClassLoader implements MutableClassLoader {
+
+        protected final List<URL> urls = new ArrayList<URL>();
+
+        @Override
+        public void addURL(URL url) {
+            urls.add(url);
+        }
+
+        @Override
+        public ClassLoader getClassLoader() {
+            return getClass().getClassLoader();
+        }
+
+        @Override
+        public Class<?> loadClass(String startupClass)
+                throws ClassNotFoundException {
+            return getClassLoader().loadClass(startupClass);
+        }
+    }
+
+    protected File home;
+
+    @Before
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("boot").toFile().getCanonicalFile();
+    }
+
+    @After
+    public void tearDown() {
+        FrameworkBootstrap.deleteAll(home);
+    }
+
+    protected File write(String path, String content) throws IOException {
+        File file = new File(home, path);
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+        return file;
+    }
+
+    @Test
+    public void storesLongStrings() throws IOException {
+        StringBuilder components = new StringBuilder();
+        while (components.length() < 100 * 1024) {
+            components.append("OSGI-INF/compon\u00e9nt-").append(
+                    components.length()).append(".xml,");
+        }
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Bundle-SymbolicName", "long");
+        headers.put("Nuxeo-Component", components.toString());
+        BootSnapshot snapshot = new BootSnapshot();
+        snapshot.setSpec("spec", "value");
+        snapshot.addClassPath(write("lib/a.jar", "a"));
+        snapshot.setBundleFiles(Collections.singletonList(new File(home,
+                "lib/a.jar")));
+        snapshot.setBundleHeaders(Collections.singletonMap("lib/a.jar",
+                headers));
+        File file = new File(home, "tmp/boot.snapshot");
+        snapshot.store(file);
+
+        BootSnapshot loaded = BootSnapshot.load(file);
+        assertEquals(snapshot.specs, loaded.specs);
+        assertEquals(snapshot.getClassPath(), loaded.getClassPath());
+        assertEquals(snapshot.getBundleFiles(), loaded.getBundleFiles());
+        assertEquals(headers, loaded.getBundleHeaders().get("lib/a.jar"));
+        assertTrue(loaded.isValid(snapshot.specs));
+    }
+
+    @Test
+    public void fingerprintInvalidatesSnapshot() throws IOException {
+        Map<String, String> specs = Collections.singletonMap("spec", "value");
+        File jar = write("lib/a.jar", "a");
+        File missing = new File(home, "lib/missing.jar");
+        BootSnapshot snapshot = new BootSnapshot();
+        snapshot.setSpec("spec", "value");
+        snapshot.addClassPath(jar);
+        snapshot.addFingerprint(missing);
+        assertTrue(snapshot.isValid(specs));
+
+        // other class path settings
+        assertFalse(snapshot.isValid(Collections.singletonMap("spec", "other")));
+
+        // changed entry
+        long modified = jar.lastModified();
+        write("lib/a.jar", "changed");
+        jar.setLastModified(modified);
+        assertFalse(snapshot.isValid(specs));
+        write("lib/a.jar", "a");
+        jar.setLastModified(modified);
+        assertTrue(snapshot.isValid(specs));
+        jar.setLastModified(modified - 10000);
+        assertFalse(snapshot.isValid(specs));
+        jar.setLastModified(modified);
+
+        // created file
+        write("lib/missing.jar", "");
+        assertFalse(snapshot.isValid(specs));
+    }
+
+    protected FrameworkBootstrap newBootstrap(RecordingClassLoader loader)
+            throws IOException {
+        return new FrameworkBootstrap(loader, home);
+    }
+
+    @Test
+    public void replaysClassPath() throws IOException {
+        write("launcher.properties", LoaderConstants.LIBS + "=lib/*\n"
+                + LoaderConstants.BUNDLES + "=bundles/*\n"
+                + LoaderConstants.SCAN_FOR_NESTED_JARS + "=false\n");
+        write("lib/a.jar", "a");
+        File bundle = write("bundles/b.jar", "b");
+        Map<String, Map<String, String>> headers = Collections.singletonMap(
+                bundle.getPath(),
+                Collections.singletonMap("Bundle-SymbolicName", "b"));
+
+        // first boot scans and records the class path
+        RecordingClassLoader scanned = new RecordingClassLoader();
+        FrameworkBootstrap bootstrap = newBootstrap(scanned);
+        assertEquals(Arrays.asList(bundle), bootstrap.buildClassPath());
+        assertFalse(bootstrap.snapshotReplayed);
+        assertNull(bootstrap.env().get(LoaderConstants.BUNDLE_HEADERS));
+        bootstrap.snapshot.setBundleHeaders(headers);
+        bootstrap.snapshot.store(bootstrap.getBootSnapshotFile());
+
+        // next boot replays it
+        RecordingClassLoader replayed = new RecordingClassLoader();
+        bootstrap = newBootstrap(replayed);
+        assertEquals(Arrays.asList(bundle), bootstrap.buildClassPath());
+        assertTrue(bootstrap.snapshotReplayed);
+        assertEquals(scanned.urls, replayed.urls);
+        assertEquals(headers,
+                bootstrap.env().get(LoaderConstants.BUNDLE_HEADERS));
+
+        // a new library invalidates it
+        File lib = new File(home, "lib");
+        long modified = lib.lastModified();
+        File added = write("lib/c.jar", "c");
+        lib.setLastModified(modified + 10000);
+        RecordingClassLoader rescanned = new RecordingClassLoader();
+        bootstrap = newBootstrap(rescanned);
+        bootstrap.buildClassPath();
+        assertFalse(bootstrap.snapshotReplayed);
+        assertTrue(rescanned.urls.contains(added.toURI().toURL()));
+    }
+
+}
@@ -16,13 +16,20 @@
  */
 package org.nuxeo.runtime.management;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -53,9 +60,18 @@ public class ResourcePublisherService extends DefaultComponent implements
 
     public static final String SHORTCUTS_EXT_KEY = "shortcuts";
 
-    public static final ComponentName NAME = new ComponentName(
+    public static final ComponentName NAME = ComponentName.of(
             "org.nuxeo.runtime.management.ResourcePublisher");
 
+    /**
+     * Framework property disabling the deferred binding of the resources,
+     * they are then bound synchronously as soon as registered once the
+     * application is started.
+     *
+     * @since 7.1
+     */
+    public static final String DEFERRED_BINDING_PROPERTY = "org.nuxeo.runtime.management.deferredBinding";
+
     private static final Log log = LogFactory.getLog(ResourcePublisherService.class);
 
     protected final ShortcutsRegistry shortcutsRegistry = new ShortcutsRegistry();
@@ -66,6 +82,12 @@ public class ResourcePublisherService extends DefaultComponent implements
 
     protected ServerLocatorService serverLocatorService;
 
+    protected boolean deferredBinding;
+
+    protected ExecutorService binder;
+
+    protected final AtomicBoolean bindingScheduled = new AtomicBoolean();
+
     public ResourcePublisherService() {
         super(); // enables breaking
     }
@@ -155,10 +177,17 @@ public class ResourcePublisherService extends DefaultComponent implements
         }
     }
 
+    /**
+     * Registered resources, binding them in the MBean server is done once the
+     * application is started. It is deferred to a background batch unless
+     * explicitly requested or when the resources are looked up.
+     */
     protected class ResourcesRegistry {
 
         protected final Map<ObjectName, Resource> registry = new HashMap<ObjectName, Resource>();
 
+        protected final Set<Resource> pending = new LinkedHashSet<Resource>();
+
         protected void doRegisterResource(String qualifiedName, Class<?> info,
                 Object instance) {
             Resource resource = new Resource(
@@ -189,10 +218,20 @@ public class ResourcePublisherService extends DefaultComponent implements
             return mbean;
         }
 
-        protected void doBind(Resource resource) {
+        protected synchronized void doBind(Resource resource) {
             if (!started) {
                 return;
             }
+            if (deferredBinding) {
+                pending.add(resource);
+                scheduleBinding();
+                return;
+            }
+            doBindNow(resource);
+        }
+
+        protected synchronized void doBindNow(Resource resource) {
+            pending.remove(resource);
             if (resource.mbean != null) {
                 throw new IllegalStateException(resource + " is already bound");
             }
@@ -208,7 +247,23 @@ public class ResourcePublisherService extends DefaultComponent implements
             }
         }
 
-        protected void doUnbind(Resource resource) {
+        /**
+         * Binds the resources waiting for the background batch.
+         *
+         * @since 7.1
+         */
+        protected synchronized void doBindPending() {
+            List<Resource> resources = new ArrayList<Resource>(pending);
+            pending.clear();
+            for (Resource resource : resources) {
+                if (resource.mbean == null) {
+                    doBindNow(resource);
+                }
+            }
+        }
+
+        protected synchronized void doUnbind(Resource resource) {
+            pending.remove(resource);
             if (resource.mbean == null) {
                 throw new IllegalStateException(resource.managementName + " is not bound");
             }
@@ -226,7 +281,7 @@ public class ResourcePublisherService extends DefaultComponent implements
             }
         }
 
-        protected void doRegisterResource(Resource resource) {
+        protected synchronized void doRegisterResource(Resource resource) {
             final ObjectName name = resource.getManagementName();
             if (registry.containsKey(name)) {
                 log.warn("Already registered " + name + ", skipping",
@@ -277,7 +332,8 @@ public class ResourcePublisherService extends DefaultComponent implements
             return service;
         }
 
-        protected void doUnregisterResources() {
+        protected synchronized void doUnregisterResources() {
+            pending.clear();
             Iterator<Entry<ObjectName, Resource>> iterator = registry.entrySet().iterator();
             while (iterator.hasNext()) {
                 Entry<ObjectName, Resource> entry = iterator.next();
@@ -303,12 +359,13 @@ public class ResourcePublisherService extends DefaultComponent implements
             doUnregisterResource(objectName);
         }
 
-        protected void doUnregisterResource(ObjectName objectName) {
+        protected synchronized void doUnregisterResource(ObjectName objectName) {
             Resource resource = registry.remove(objectName);
             if (resource == null) {
                 throw new IllegalArgumentException(objectName
                         + " is not registered");
             }
+            pending.remove(resource);
             if (resource.mbean != null) {
                 doUnbind(resource);
             }
@@ -349,11 +406,15 @@ public class ResourcePublisherService extends DefaultComponent implements
 
     @Override
     public Set<ObjectName> getResourcesName() {
-        return new HashSet<ObjectName>(resourcesRegistry.registry.keySet());
+        synchronized (resourcesRegistry) {
+            resourcesRegistry.doBindPending();
+            return new HashSet<ObjectName>(resourcesRegistry.registry.keySet());
+        }
     }
 
     @Override
     public ObjectName lookupName(String name) {
+        resourcesRegistry.doBindPending();
         if (!shortcutsRegistry.registry.containsKey(name)) {
             return ObjectNameFactory.getObjectName(name);
         }
@@ -361,24 +422,67 @@ public class ResourcePublisherService extends DefaultComponent implements
     }
 
     protected void doBindResources() {
-        for (Resource resource : resourcesRegistry.registry.values()) {
-            if (resource.mbean == null) {
-                resourcesRegistry.doBind(resource);
+        synchronized (resourcesRegistry) {
+            for (Resource resource : resourcesRegistry.registry.values()) {
+                if (resource.mbean == null) {
+                    resourcesRegistry.doBindNow(resource);
+                }
             }
         }
     }
 
+    /**
+     * Queues the unbound resources for the background batch.
+     *
+     * @since 7.1
+     */
+    protected void doDeferBindResources() {
+        synchronized (resourcesRegistry) {
+            for (Resource resource : resourcesRegistry.registry.values()) {
+                if (resource.mbean == null) {
+                    resourcesRegistry.pending.add(resource);
+                }
+            }
+        }
+        scheduleBinding();
+    }
+
+    /**
+     * Submits a background batch binding the pending resources, unless one
+     * is already waiting.
+     *
+     * @since 7.1
+     */
+    protected void scheduleBinding() {
+        if (binder == null || !bindingScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        binder.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                bindingScheduled.set(false);
+                try {
+                    resourcesRegistry.doBindPending();
+                } catch (RuntimeException e) {
+                    log.error("Cannot bind pending resources", e);
+                }
+            }
+        });
+    }
+
     @Override
     public void bindResources() {
         doBindResources();
     }
 
     protected void doUnbindResources() {
-        for (Resource resource : resourcesRegistry.registry.values()) {
-            if (resource.mbean != null) {
-                resourcesRegistry.doUnbind(resource);
-            } else {
-                ;
+        synchronized (resourcesRegistry) {
+            resourcesRegistry.pending.clear();
+            for (Resource resource : resourcesRegistry.registry.values()) {
+                if (resource.mbean != null) {
+                    resourcesRegistry.doUnbind(resource);
+                }
             }
         }
     }
@@ -392,9 +496,26 @@ public class ResourcePublisherService extends DefaultComponent implements
 
     @Override
     public void applicationStarted(ComponentContext context) throws Exception {
+        deferredBinding = !"false".equals(Framework.getProperty(
+                DEFERRED_BINDING_PROPERTY, "true"));
+        if (deferredBinding) {
+            binder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Nuxeo-Management-Binder");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
         started = true;
         factoriesRegistry.doRegisterResources();
-        doBindResources();
+        if (deferredBinding) {
+            doDeferBindResources();
+        } else {
+            doBindResources();
+        }
         Framework.addListener(new RuntimeServiceListener() {
 
             @Override
@@ -415,6 +536,10 @@ public class ResourcePublisherService extends DefaultComponent implements
 
     @Override
     public void deactivate(ComponentContext context) {
+        if (binder != null) {
+            binder.shutdownNow();
+            binder = null;
+        }
         resourcesRegistry.doUnregisterResources();
     }
 
@@ -423,7 +548,7 @@ public class ResourcePublisherService extends DefaultComponent implements
         if (resource == null) {
             throw new IllegalArgumentException(name + " is not registered");
         }
-        resourcesRegistry.doBind(resource);
+        resourcesRegistry.doBindNow(resource);
     }
 
     public void unbindResource(ObjectName name) {
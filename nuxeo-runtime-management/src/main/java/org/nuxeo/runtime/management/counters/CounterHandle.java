@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.counters;
+
+/**
+ * Pre-resolved counter, to be kept by code updating the same counter often
+ * instead of going through the counter name each time.
+ *
+ * @since 7.1
+ */
+public interface CounterHandle {
+
+    String getName();
+
+    void increase();
+
+    void increase(long value);
+
+    void decrease();
+
+    void decrease(long value);
+
+    void set(long value);
+
+    /**
+     * Handle doing nothing, used when counters are not available.
+     */
+    CounterHandle NOOP = new CounterHandle() {
+
+        @Override
+        public String getName() {
+            return "noop";
+        }
+
+        @Override
+        public void increase() {
+        }
+
+        @Override
+        public void increase(long value) {
+        }
+
+        @Override
+        public void decrease() {
+        }
+
+        @Override
+        public void decrease(long value) {
+        }
+
+        @Override
+        public void set(long value) {
+        }
+    };
+
+}
@@ -31,6 +31,18 @@ public class CounterHelper {
 
     protected static CounterManager cm = Framework.getLocalService(CounterManager.class);
 
+    /**
+     * Gets a handle on a counter, to be kept by the caller.
+     *
+     * @since 7.1
+     */
+    public static CounterHandle counter(String counterName) {
+        if (cm == null) {
+            return CounterHandle.NOOP;
+        }
+        return cm.counter(counterName);
+    }
+
     public static void increaseCounter(String counterName) {
         if (cm!=null) {
             cm.increaseCounter(counterName);
@@ -20,6 +20,10 @@ package org.nuxeo.runtime.management.counters;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.javasimon.CallbackSkeleton;
 import org.javasimon.Counter;
@@ -28,31 +32,141 @@ import org.javasimon.Counter;
  * Listen to Simon events to store past values of the counters
  *
  * History is kept in memory using {@link CounterHistoryStack}
+ * <p>
+ * When a sampling interval is set, counter events only register the counter
+ * and a background thread records the values that changed at each interval.
+ * Samples can also be taken on demand through {@link #sample()}, samples are
+ * serialized so that there is a single writer of the stacks at a time. With
+ * no interval, values are recorded on each counter event instead, pushes to a
+ * stack are then serialized on its entry.
  *
  * @author Tiry (tdelprat@nuxeo.com)
  *
  */
 public class CounterHistoryRecorder extends CallbackSkeleton {
 
-    protected Map<String, CounterHistoryStack> counterHistory = new ConcurrentHashMap<String, CounterHistoryStack>();
+    protected static class Entry {
+
+        protected final Counter counter;
+
+        protected final CounterHistoryStack stack;
+
+        protected long lastValue = Long.MIN_VALUE;
+
+        protected Entry(Counter counter, CounterHistoryStack stack) {
+            this.counter = counter;
+            this.stack = stack;
+        }
+
+        protected void sample(long now) {
+            long value = counter.getCounter();
+            if (value != lastValue) {
+                lastValue = value;
+                stack.push(now, value);
+            }
+        }
+    }
+
+    protected Map<String, Entry> counterHistory = new ConcurrentHashMap<String, Entry>();
 
     protected int historyLength=100;
 
+    protected final long samplingInterval;
+
+    protected ScheduledExecutorService sampler;
+
     public CounterHistoryRecorder(int size) {
+        this(size, 0);
+    }
+
+    /**
+     * @param samplingInterval the sampling interval in milliseconds, 0 for
+     *            recording each counter event
+     * @since 7.1
+     */
+    public CounterHistoryRecorder(int size, long samplingInterval) {
         historyLength = size;
+        this.samplingInterval = samplingInterval;
     }
 
-    protected CounterHistoryStack getCounterHistoryStack(Counter counter) {
-        CounterHistoryStack stack = counterHistory.get(counter.getName());
-        if (stack==null) {
-            stack = new CounterHistoryStack(historyLength);
-            counterHistory.put(counter.getName(), stack);
+    protected Entry getEntry(Counter counter) {
+        Entry entry = counterHistory.get(counter.getName());
+        if (entry==null) {
+            synchronized (counterHistory) {
+                entry = counterHistory.get(counter.getName());
+                if (entry == null) {
+                    entry = new Entry(counter, new CounterHistoryStack(historyLength));
+                    counterHistory.put(counter.getName(), entry);
+                }
+            }
         }
-        return stack;
+        return entry;
+    }
+
+    protected CounterHistoryStack getCounterHistoryStack(Counter counter) {
+        return getEntry(counter).stack;
     }
 
     protected void storeCounter(Counter counter) {
-        getCounterHistoryStack(counter).push(new long[] {System.currentTimeMillis(),counter.getCounter()});
+        Entry entry = getEntry(counter);
+        if (samplingInterval > 0) {
+            return;
+        }
+        // several threads may update the counter
+        synchronized (entry) {
+            entry.stack.push(System.currentTimeMillis(), counter.getCounter());
+        }
+    }
+
+    /**
+     * Records the changed values of all the known counters.
+     * <p>
+     * Also called on demand, for instance before reading the history.
+     *
+     * @since 7.1
+     */
+    public synchronized void sample() {
+        long now = System.currentTimeMillis();
+        for (Entry entry : counterHistory.values()) {
+            entry.sample(now);
+        }
+    }
+
+    /**
+     * Starts the background sampling if an interval is set.
+     *
+     * @since 7.1
+     */
+    public synchronized void start() {
+        if (samplingInterval <= 0 || sampler != null) {
+            return;
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Nuxeo-Counters-Sampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sampler.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                sample();
+            }
+        }, samplingInterval, samplingInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @since 7.1
+     */
+    public synchronized void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
     }
 
     @Override
@@ -73,6 +187,7 @@ public class CounterHistoryRecorder extends CallbackSkeleton {
     }
 
     public CounterHistoryStack getCounterHistory(String counterName) {
-        return counterHistory.get(counterName);
+        Entry entry = counterHistory.get(counterName);
+        return entry == null ? null : entry.stack;
     }
 }
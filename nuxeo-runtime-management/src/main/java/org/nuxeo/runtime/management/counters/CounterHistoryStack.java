@@ -20,55 +20,185 @@ package org.nuxeo.runtime.management.counters;
 
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.NoSuchElementException;
 
 /**
  *
  * Fixed length Stack that is used to store values of a counter over time
- *
+ * <p>
+ * Timestamps and values are kept in a ring of primitive arrays. There must be
+ * a single writer at a time, readers don't lock: they iterate over a
+ * snapshot from the most recent entry and drop the entries overwritten while
+ * copying.
  *
  * @author Tiry (tdelprat@nuxeo.com)
  *
  */
 public class CounterHistoryStack implements Iterable<long[]> {
 
-    protected final LinkedList<long[]> list = new LinkedList<long[]>();
+    protected final long[] timestamps;
+
+    protected final long[] values;
 
     protected final int maxSize;
 
+    /**
+     * Number of slots of the ring, one more than the entries kept so that
+     * the slot being written is never one of them.
+     */
+    protected final int capacity;
+
+    /** Number of pushed entries, published after each entry is written. */
+    protected volatile long count;
+
     public CounterHistoryStack(int size) {
         maxSize = size;
+        capacity = size + 1;
+        timestamps = new long[capacity];
+        values = new long[capacity];
+    }
+
+    /**
+     * Records a value, must not be called concurrently.
+     *
+     * @since 7.1
+     */
+    public void push(long timestamp, long value) {
+        long n = count;
+        int idx = (int) (n % capacity);
+        timestamps[idx] = timestamp;
+        values[idx] = value;
+        count = n + 1;
+    }
+
+    public void push(long[] item) {
+        push(item[0], item[1]);
     }
 
-    public synchronized void push(long[] item) {
-        list.push(item);
-        if (list.size() > maxSize) {
-            list.remove(list.size() - 1);
+    /**
+     * Copies the current entries, most recent first.
+     *
+     * @since 7.1
+     */
+    public Snapshot snapshot() {
+        long end = count;
+        long start = Math.max(0, end - maxSize);
+        int size = (int) (end - start);
+        long[] ts = new long[size];
+        long[] vs = new long[size];
+        for (int i = 0; i < size; i++) {
+            int idx = (int) ((end - 1 - i) % capacity);
+            ts[i] = timestamps[idx];
+            vs[i] = values[idx];
+        }
+        // the writer may have overwritten the oldest entries while we were
+        // copying, up to the slot of the entry it is writing now
+        long overwritten = count - capacity;
+        int valid = (int) Math.max(0, Math.min(size, end - 1 - overwritten));
+        return new Snapshot(ts, vs, valid);
+    }
+
+    /**
+     * Immutable copy of the history, most recent first.
+     *
+     * @since 7.1
+     */
+    public static class Snapshot implements Iterable<long[]> {
+
+        protected final long[] timestamps;
+
+        protected final long[] values;
+
+        protected final int size;
+
+        protected Snapshot(long[] timestamps, long[] values, int size) {
+            this.timestamps = timestamps;
+            this.values = values;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getTimestamp(int idx) {
+            checkIndex(idx);
+            return timestamps[idx];
+        }
+
+        public long getValue(int idx) {
+            checkIndex(idx);
+            return values[idx];
+        }
+
+        protected void checkIndex(int idx) {
+            if (idx < 0 || idx >= size) {
+                throw new IndexOutOfBoundsException("Index: " + idx
+                        + ", Size: " + size);
+            }
+        }
+
+        @Override
+        public Iterator<long[]> iterator() {
+            return new Iterator<long[]>() {
+
+                int idx;
+
+                @Override
+                public boolean hasNext() {
+                    return idx < size;
+                }
+
+                @Override
+                public long[] next() {
+                    if (idx >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    long[] entry = new long[] { timestamps[idx], values[idx] };
+                    idx += 1;
+                    return entry;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
         }
     }
 
     @Override
     public Iterator<long[]> iterator() {
-        return list.iterator();
+        return snapshot().iterator();
     }
 
     @Override
     public String toString() {
-        StringBuffer sb = new StringBuffer();
-
-        for (long[] entry : this) {
-            sb.append(entry[0]);
+        StringBuilder sb = new StringBuilder();
+        Snapshot snapshot = snapshot();
+        for (int i = 0; i < snapshot.size(); i++) {
+            sb.append(snapshot.timestamps[i]);
             sb.append(" => ");
-            sb.append(entry[1]);
+            sb.append(snapshot.values[i]);
             sb.append("\n");
         }
         return sb.toString();
     }
 
     public long[] get(int idx) {
-        return list.get(idx);
+        Snapshot snapshot = snapshot();
+        return new long[] { snapshot.getTimestamp(idx),
+                snapshot.getValue(idx) };
     }
 
+    /**
+     * Returns a copy of the history, most recent first.
+     */
     public LinkedList<long[]> getAsList() {
+        LinkedList<long[]> list = new LinkedList<long[]>();
+        for (long[] entry : snapshot()) {
+            list.add(entry);
+        }
         return list;
     }
 }
@@ -29,6 +29,14 @@ package org.nuxeo.runtime.management.counters;
  */
 public interface CounterManager {
 
+    /**
+     * Gets a handle on a counter, resolving it once for all the updates made
+     * through the handle.
+     *
+     * @since 7.1
+     */
+    CounterHandle counter(String counterName);
+
     /**
      * Increase a counter
      *
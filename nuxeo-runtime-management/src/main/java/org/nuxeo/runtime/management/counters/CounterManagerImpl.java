@@ -18,8 +18,13 @@
  */
 package org.nuxeo.runtime.management.counters;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.javasimon.Counter;
 import org.javasimon.SimonManager;
 import org.javasimon.SimonState;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.DefaultComponent;
 
@@ -36,7 +41,102 @@ public class CounterManagerImpl extends DefaultComponent implements
 
     public static final String COUNTER_PREFIX = "org.nuxeo";
 
-    protected CounterHistoryRecorder history = new CounterHistoryRecorder(50);
+    /**
+     * Interval in milliseconds between two samples of the counters history,
+     * 0 for recording each counter change instead.
+     *
+     * @since 7.1
+     */
+    public static final String SAMPLING_INTERVAL_PROPERTY = "org.nuxeo.runtime.management.counters.sampling";
+
+    public static final long DEFAULT_SAMPLING_INTERVAL = 1000;
+
+    protected CounterHistoryRecorder history;
+
+    /**
+     * Maximum number of handles kept for the name based methods, counters
+     * beyond are resolved on each call.
+     *
+     * @since 7.1
+     */
+    public static final int MAX_CACHED_HANDLES = 1024;
+
+    protected final Map<String, CounterHandle> handles = new ConcurrentHashMap<String, CounterHandle>();
+
+    protected class SimonCounterHandle implements CounterHandle {
+
+        protected final Counter counter;
+
+        protected SimonCounterHandle(Counter counter) {
+            this.counter = counter;
+        }
+
+        /**
+         * Reads the state from Simon, a field read, as counters can be
+         * enabled or disabled through Simon or JMX as well as through the
+         * manager.
+         */
+        protected boolean isEnabled() {
+            return counter.isEnabled();
+        }
+
+        @Override
+        public String getName() {
+            return counter.getName();
+        }
+
+        @Override
+        public void increase() {
+            if (isEnabled()) {
+                counter.increase();
+            }
+        }
+
+        @Override
+        public void increase(long value) {
+            if (isEnabled()) {
+                counter.increase(value);
+            }
+        }
+
+        @Override
+        public void decrease() {
+            if (isEnabled()) {
+                counter.decrease();
+            }
+        }
+
+        @Override
+        public void decrease(long value) {
+            if (isEnabled()) {
+                counter.decrease(value);
+            }
+        }
+
+        @Override
+        public void set(long value) {
+            if (isEnabled()) {
+                counter.set(value);
+            }
+        }
+    }
+
+    @Override
+    public CounterHandle counter(String counterName) {
+        return new SimonCounterHandle(SimonManager.getCounter(counterName));
+    }
+
+    protected CounterHandle getHandle(String counterName) {
+        CounterHandle handle = handles.get(counterName);
+        if (handle != null) {
+            return handle;
+        }
+        handle = counter(counterName);
+        if (handles.size() < MAX_CACHED_HANDLES) {
+            handles.put(counterName, handle);
+        }
+        return handle;
+    }
 
     public void enableCounters() {
         SimonManager.getCounter(COUNTER_PREFIX).setState(SimonState.ENABLED,
@@ -48,51 +148,58 @@ public class CounterManagerImpl extends DefaultComponent implements
                 true);
     }
 
+    @Override
+    public void activate(ComponentContext context) throws Exception {
+        super.activate(context);
+        String interval = Framework.getProperty(SAMPLING_INTERVAL_PROPERTY,
+                Long.toString(DEFAULT_SAMPLING_INTERVAL));
+        history = new CounterHistoryRecorder(50, Long.parseLong(interval));
+    }
+
+    @Override
+    public void deactivate(ComponentContext context) throws Exception {
+        super.deactivate(context);
+        SimonManager.callback().removeCallback(history);
+        history.stop();
+    }
+
     @Override
     public void applicationStarted(ComponentContext context) throws Exception {
         // create the root counter
         SimonManager.getCounter(COUNTER_PREFIX);
         // register call back for history management
         SimonManager.callback().addCallback(history);
+        history.start();
     }
 
     @Override
     public void decreaseCounter(String counterName) {
-        if (SimonManager.getCounter(counterName).isEnabled()) {
-            SimonManager.getCounter(counterName).decrease();
-        }
+        getHandle(counterName).decrease();
     }
 
     @Override
     public void increaseCounter(String counterName) {
-        if (SimonManager.getCounter(counterName).isEnabled()) {
-            SimonManager.getCounter(counterName).increase();
-        }
+        getHandle(counterName).increase();
     }
 
     @Override
     public void decreaseCounter(String counterName, long value) {
-        if (SimonManager.getCounter(counterName).isEnabled()) {
-            SimonManager.getCounter(counterName).decrease(value);
-        }
+        getHandle(counterName).decrease(value);
     }
 
     @Override
     public void increaseCounter(String counterName, long value) {
-        if (SimonManager.getCounter(counterName).isEnabled()) {
-            SimonManager.getCounter(counterName).increase(value);
-        }
+        getHandle(counterName).increase(value);
     }
 
     @Override
     public void setCounterValue(String counterName, long value) {
-        if (SimonManager.getCounter(counterName).isEnabled()) {
-            SimonManager.getCounter(counterName).set(value);
-        }
+        getHandle(counterName).set(value);
     }
 
     public CounterHistoryStack getCounterHistory(String counterName) {
-
+        // catch up with the changes since the last sample
+        history.sample();
         CounterHistoryStack stack = history.getCounterHistory(counterName);
         if (stack == null) {
             return new CounterHistoryStack(50);
@@ -19,26 +19,31 @@
 
 package org.nuxeo.runtime.management.inspector;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import javax.management.modelmbean.ModelMBeanInfo;
 
+/**
+ * Builds the model MBean infos of the managed classes.
+ * <p>
+ * Introspection is done once per class, the result being attached to the
+ * class itself so that it is shared by all the factories and released along
+ * with the class loader. Each call returns its own copy.
+ */
 public class ModelMBeanInfoFactory {
 
-    private final Map<Class<?>, ModelMBeanInfo> infos = new HashMap<Class<?>, ModelMBeanInfo>();
+    protected static final ClassValue<ModelMBeanInfo> INFOS = new ClassValue<ModelMBeanInfo>() {
+
+        @Override
+        protected ModelMBeanInfo computeValue(Class<?> type) {
+            return new ModelMBeanIntrospector(type).introspect();
+        }
+    };
 
     public ModelMBeanInfoFactory() {
         super(); // enabled breaking
     }
 
     public ModelMBeanInfo getModelMBeanInfo(Class<?> resourceClass) {
-        if (infos.containsKey(resourceClass)) {
-            return infos.get(resourceClass);
-        }
-        ModelMBeanInfo info = new ModelMBeanIntrospector(resourceClass).introspect();
-        infos.put(resourceClass, info);
-        return info;
+        return (ModelMBeanInfo) INFOS.get(resourceClass).clone();
     }
 
 }
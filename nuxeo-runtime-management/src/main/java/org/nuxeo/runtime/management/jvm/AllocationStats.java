@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+/**
+ * Bytes allocated by a thread or on behalf of a component, as tracked by
+ * {@link HeapAnalytics}.
+ *
+ * @since 7.1
+ */
+public class AllocationStats {
+
+    protected final String name;
+
+    protected final long bytes;
+
+    protected final double bytesPerSecond;
+
+    public AllocationStats(String name, long bytes, double bytesPerSecond) {
+        this.name = name;
+        this.bytes = bytes;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * The thread or component name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Bytes allocated since tracking started.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Allocation rate over the last sampling period.
+     */
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return name + " bytes=" + bytes + " rate=" + (long) bytesPerSecond
+                + "B/s";
+    }
+
+}
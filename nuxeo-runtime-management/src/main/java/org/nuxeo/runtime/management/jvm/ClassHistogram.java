@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class histogram of the heap, as printed by the {@code GC.class_histogram}
+ * diagnostic command.
+ *
+ * @since 7.1
+ */
+public class ClassHistogram {
+
+    protected static final Comparator<ClassHistogramEntry> BY_BYTES = new Comparator<ClassHistogramEntry>() {
+
+        @Override
+        public int compare(ClassHistogramEntry o1, ClassHistogramEntry o2) {
+            return Long.compare(o2.getBytes(), o1.getBytes());
+        }
+    };
+
+    protected final long timestamp;
+
+    protected final Map<String, ClassHistogramEntry> entries = new HashMap<String, ClassHistogramEntry>();
+
+    protected long totalInstances;
+
+    protected long totalBytes;
+
+    public ClassHistogram(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Parses the histogram lines, {@code <rank>: <instances> <bytes>
+     * <class name>}, headers and totals being skipped.
+     */
+    public static ClassHistogram parse(String text, long timestamp) {
+        ClassHistogram histogram = new ClassHistogram(timestamp);
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length < 4 || !fields[0].endsWith(":")) {
+                    continue;
+                }
+                try {
+                    histogram.add(fields[3], Long.parseLong(fields[1]),
+                            Long.parseLong(fields[2]));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read histogram", e);
+        }
+        return histogram;
+    }
+
+    protected void add(String className, long instances, long bytes) {
+        totalInstances += instances;
+        totalBytes += bytes;
+        ClassHistogramEntry previous = entries.get(className);
+        if (previous != null) {
+            // same name, other class loader
+            instances += previous.getInstances();
+            bytes += previous.getBytes();
+        }
+        entries.put(className, new ClassHistogramEntry(className, instances,
+                bytes));
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getTotalInstances() {
+        return totalInstances;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public ClassHistogramEntry get(String className) {
+        return entries.get(className);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the classes using the most bytes.
+     */
+    public List<ClassHistogramEntry> top(int count) {
+        return top(new ArrayList<ClassHistogramEntry>(entries.values()), count);
+    }
+
+    /**
+     * Returns the classes having grown the most in bytes since the previous
+     * histogram, shrinking classes being ignored.
+     */
+    public List<ClassHistogramEntry> growth(ClassHistogram previous, int count) {
+        List<ClassHistogramEntry> growing = new ArrayList<ClassHistogramEntry>();
+        for (ClassHistogramEntry entry : entries.values()) {
+            ClassHistogramEntry before = previous.get(entry.getClassName());
+            long bytes = entry.getBytes();
+            long instances = entry.getInstances();
+            if (before != null) {
+                bytes -= before.getBytes();
+                instances -= before.getInstances();
+            }
+            if (bytes > 0) {
+                growing.add(new ClassHistogramEntry(entry.getClassName(),
+                        instances, bytes));
+            }
+        }
+        return top(growing, count);
+    }
+
+    protected static List<ClassHistogramEntry> top(
+            List<ClassHistogramEntry> list, int count) {
+        Collections.sort(list, BY_BYTES);
+        return list.size() > count ? new ArrayList<ClassHistogramEntry>(
+                list.subList(0, count)) : list;
+    }
+
+}
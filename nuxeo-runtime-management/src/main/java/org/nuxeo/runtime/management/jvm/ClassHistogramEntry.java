@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+/**
+ * Instances and bytes of a class in a {@link ClassHistogram}, or their
+ * growth between two histograms.
+ *
+ * @since 7.1
+ */
+public class ClassHistogramEntry {
+
+    protected final String className;
+
+    protected final long instances;
+
+    protected final long bytes;
+
+    public ClassHistogramEntry(String className, long instances, long bytes) {
+        this.className = className;
+        this.instances = instances;
+        this.bytes = bytes;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public long getInstances() {
+        return instances;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return className + " instances=" + instances + " bytes=" + bytes;
+    }
+
+}
@@ -0,0 +1,340 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Heap analytics lighter than full dumps: scheduled class histograms, diffed
+ * to find the growing classes, and allocation tracking per thread and per
+ * component.
+ * <p>
+ * Threads are tagged with the name of the component they work for through
+ * {@link #tag(String)}. The bytes a thread allocates while tagged are
+ * credited to the component when the tag changes, so attribution is exact
+ * whatever the sampling period. Thread allocations are sampled
+ * periodically.
+ *
+ * @since 7.1
+ */
+public class HeapAnalytics implements HeapAnalyticsMXBean {
+
+    private static final Log log = LogFactory.getLog(HeapAnalytics.class);
+
+    public static final int TOP = 20;
+
+    protected static final Comparator<AllocationStats> BY_RATE = new Comparator<AllocationStats>() {
+
+        @Override
+        public int compare(AllocationStats o1, AllocationStats o2) {
+            int cmp = Double.compare(o2.getBytesPerSecond(),
+                    o1.getBytesPerSecond());
+            return cmp != 0 ? cmp : Long.compare(o2.getBytes(), o1.getBytes());
+        }
+    };
+
+    protected static final com.sun.management.ThreadMXBean allocations = allocationBean();
+
+    protected static volatile boolean tracking;
+
+    protected static final ConcurrentMap<String, AtomicLong> componentBytes = new ConcurrentHashMap<String, AtomicLong>();
+
+    protected static class Tag {
+
+        protected String name;
+
+        protected long start;
+    }
+
+    protected static final ThreadLocal<Tag> tags = new ThreadLocal<Tag>() {
+
+        @Override
+        protected Tag initialValue() {
+            return new Tag();
+        }
+    };
+
+    protected static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+        return sun.isThreadAllocatedMemorySupported() ? sun : null;
+    }
+
+    /**
+     * Tags the current thread with a component name, {@code null} removing
+     * the tag. The bytes allocated since the previous tag was set are
+     * credited to it.
+     *
+     * @return the previous tag, to be restored once the work is done
+     */
+    public static String tag(String name) {
+        if (!tracking) {
+            return null;
+        }
+        Tag tag = tags.get();
+        String previous = tag.name;
+        long now = allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+        if (previous != null && now > tag.start) {
+            AtomicLong bytes = componentBytes.get(previous);
+            if (bytes == null) {
+                AtomicLong other = componentBytes.putIfAbsent(previous,
+                        bytes = new AtomicLong());
+                if (other != null) {
+                    bytes = other;
+                }
+            }
+            bytes.addAndGet(now - tag.start);
+        }
+        tag.name = name;
+        tag.start = now;
+        return previous;
+    }
+
+    protected final HeapDumper dumper;
+
+    protected final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    protected final long allocationPeriodMillis;
+
+    protected final long histogramPeriodMillis;
+
+    protected ScheduledExecutorService executor;
+
+    protected Map<Long, Long> threadBytes = new HashMap<Long, Long>();
+
+    protected List<AllocationStats> topThreads = Collections.emptyList();
+
+    protected Map<String, Long> lastComponentBytes = new HashMap<String, Long>();
+
+    protected List<AllocationStats> componentStats = Collections.emptyList();
+
+    protected long allocatedBytes;
+
+    protected double allocationRate;
+
+    protected long lastSample;
+
+    protected ClassHistogram previousHistogram;
+
+    protected ClassHistogram lastHistogram;
+
+    /**
+     * @param allocationPeriodMillis period of the thread allocation samples
+     * @param histogramPeriodMillis period of the class histograms, 0 to only
+     *            take them on demand
+     */
+    public HeapAnalytics(long allocationPeriodMillis, long histogramPeriodMillis)
+            throws IOException {
+        this.allocationPeriodMillis = allocationPeriodMillis;
+        this.histogramPeriodMillis = histogramPeriodMillis;
+        dumper = new HeapDumper();
+    }
+
+    @Override
+    public boolean isAllocationTrackingSupported() {
+        return allocations != null;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Nuxeo-Heap-Analytics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (allocations != null) {
+            allocations.setThreadAllocatedMemoryEnabled(true);
+            tracking = true;
+            lastSample = System.nanoTime();
+            executor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        sampleAllocations();
+                    } catch (RuntimeException e) {
+                        log.error("Cannot sample allocations", e);
+                    }
+                }
+            }, allocationPeriodMillis, allocationPeriodMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        if (histogramPeriodMillis > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        takeHistogram();
+                    } catch (IOException | RuntimeException e) {
+                        log.error("Cannot take class histogram", e);
+                    }
+                }
+            }, histogramPeriodMillis, histogramPeriodMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        tracking = false;
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    /**
+     * Samples the bytes allocated by each live thread and by each component.
+     */
+    public void sampleAllocations() {
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = allocations.getThreadAllocatedBytes(ids);
+        ThreadInfo[] infos = threads.getThreadInfo(ids, 0);
+        long now = System.nanoTime();
+        synchronized (this) {
+            double seconds = Math.max(now - lastSample, 1) / 1e9;
+            Map<Long, Long> current = new HashMap<Long, Long>(ids.length * 2);
+            List<AllocationStats> stats = new ArrayList<AllocationStats>(
+                    ids.length);
+            long delta = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] < 0 || infos[i] == null) {
+                    continue;
+                }
+                Long id = Long.valueOf(ids[i]);
+                current.put(id, Long.valueOf(bytes[i]));
+                Long before = threadBytes.get(id);
+                long threadDelta = before == null ? 0 : bytes[i]
+                        - before.longValue();
+                delta += threadDelta;
+                stats.add(new AllocationStats(infos[i].getThreadName(),
+                        bytes[i], threadDelta / seconds));
+            }
+            threadBytes = current;
+            allocatedBytes += delta;
+            allocationRate = delta / seconds;
+            topThreads = top(stats);
+            Map<String, Long> components = new HashMap<String, Long>();
+            List<AllocationStats> componentList = new ArrayList<AllocationStats>();
+            for (Map.Entry<String, AtomicLong> entry : componentBytes.entrySet()) {
+                long total = entry.getValue().get();
+                Long before = lastComponentBytes.get(entry.getKey());
+                components.put(entry.getKey(), Long.valueOf(total));
+                componentList.add(new AllocationStats(entry.getKey(), total,
+                        (total - (before == null ? 0 : before.longValue()))
+                                / seconds));
+            }
+            lastComponentBytes = components;
+            Collections.sort(componentList, BY_RATE);
+            componentStats = componentList;
+            lastSample = now;
+        }
+    }
+
+    protected static List<AllocationStats> top(List<AllocationStats> stats) {
+        Collections.sort(stats, BY_RATE);
+        return stats.size() > TOP ? new ArrayList<AllocationStats>(
+                stats.subList(0, TOP)) : stats;
+    }
+
+    @Override
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public synchronized double getAllocationRate() {
+        return allocationRate;
+    }
+
+    @Override
+    public synchronized List<AllocationStats> getTopThreads() {
+        return topThreads;
+    }
+
+    @Override
+    public synchronized List<AllocationStats> getComponentAllocations() {
+        return componentStats;
+    }
+
+    @Override
+    public List<ClassHistogramEntry> takeHistogram() throws IOException {
+        ClassHistogram histogram = dumper.histogram();
+        synchronized (this) {
+            previousHistogram = lastHistogram;
+            lastHistogram = histogram;
+        }
+        return histogram.top(TOP);
+    }
+
+    public synchronized ClassHistogram getLastHistogram() {
+        return lastHistogram;
+    }
+
+    @Override
+    public synchronized List<ClassHistogramEntry> getTopClasses() {
+        if (lastHistogram == null) {
+            return Collections.emptyList();
+        }
+        return lastHistogram.top(TOP);
+    }
+
+    @Override
+    public synchronized List<ClassHistogramEntry> getGrowingClasses() {
+        if (previousHistogram == null) {
+            return Collections.emptyList();
+        }
+        return lastHistogram.growth(previousHistogram, TOP);
+    }
+
+}
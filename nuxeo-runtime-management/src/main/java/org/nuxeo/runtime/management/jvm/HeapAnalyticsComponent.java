@@ -0,0 +1,194 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.nuxeo.runtime.ComponentEvent;
+import org.nuxeo.runtime.ComponentListener;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.management.metrics.MetricRegister;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.ComponentManager;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * Runs {@link HeapAnalytics} if enabled and publishes it through JMX and the
+ * metrics registry.
+ * <p>
+ * Threads activating components are tagged with the component name, so that
+ * activation allocations are attributed to each component.
+ *
+ * @since 7.1
+ */
+public class HeapAnalyticsComponent extends DefaultComponent {
+
+    public static final String ENABLED_PROPERTY = "org.nuxeo.runtime.management.heap.enabled";
+
+    public static final String ALLOCATION_PERIOD_PROPERTY = "org.nuxeo.runtime.management.heap.allocationPeriod";
+
+    public static final String HISTOGRAM_PERIOD_PROPERTY = "org.nuxeo.runtime.management.heap.histogramPeriod";
+
+    protected static final String METRICS_REGISTRY = "org.nuxeo.runtime.metrics.MetricsService";
+
+    protected static final String METRICS_PREFIX = "nuxeo.heap";
+
+    protected HeapAnalytics analytics;
+
+    protected MetricRegister register;
+
+    protected final ThreadLocal<Deque<String[]>> activations = new ThreadLocal<Deque<String[]>>() {
+
+        @Override
+        protected Deque<String[]> initialValue() {
+            return new ArrayDeque<String[]>();
+        }
+    };
+
+    /**
+     * Tags the threads with the name of the component being activated.
+     */
+    protected final ComponentListener tagger = new ComponentListener() {
+
+        @Override
+        public void handleEvent(ComponentEvent event) {
+            if (event.registrationInfo == null) {
+                return;
+            }
+            String name = event.registrationInfo.getName().getName();
+            Deque<String[]> stack = activations.get();
+            switch (event.id) {
+            case ComponentEvent.ACTIVATING_COMPONENT:
+                stack.push(new String[] { name, HeapAnalytics.tag(name) });
+                break;
+            case ComponentEvent.COMPONENT_ACTIVATED:
+                // unwind activations that failed without notification
+                while (!stack.isEmpty()) {
+                    String[] entry = stack.pop();
+                    if (name.equals(entry[0])) {
+                        HeapAnalytics.tag(entry[1]);
+                        break;
+                    }
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    };
+
+    public HeapAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    @Override
+    public void activate(ComponentContext context) throws Exception {
+        analytics = new HeapAnalytics(Long.parseLong(Framework.getProperty(
+                ALLOCATION_PERIOD_PROPERTY, "10000")),
+                Long.parseLong(Framework.getProperty(HISTOGRAM_PERIOD_PROPERTY,
+                        "600000")));
+        if (Framework.isBooleanPropertyTrue(ENABLED_PROPERTY)) {
+            // started early to account for the components activation
+            analytics.start();
+            componentManager().addComponentListener(tagger);
+        }
+    }
+
+    protected ComponentManager componentManager() {
+        return Framework.getRuntime().getComponentManager();
+    }
+
+    @Override
+    public void applicationStarted(ComponentContext context) {
+        register = new MetricRegister();
+        register.registerMXBean(analytics, "heapAnalytics",
+                HeapAnalyticsMXBean.class, "Feature");
+        registerGauges(SharedMetricRegistries.getOrCreate(METRICS_REGISTRY));
+    }
+
+    protected void registerGauges(MetricRegistry registry) {
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "allocation",
+                "rate"), new Gauge<Double>() {
+
+            @Override
+            public Double getValue() {
+                return Double.valueOf(analytics.getAllocationRate());
+            }
+        });
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "allocation",
+                "bytes"), new Gauge<Long>() {
+
+            @Override
+            public Long getValue() {
+                return Long.valueOf(analytics.getAllocatedBytes());
+            }
+        });
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "histogram",
+                "bytes"), new Gauge<Long>() {
+
+            @Override
+            public Long getValue() {
+                ClassHistogram histogram = analytics.getLastHistogram();
+                return Long.valueOf(histogram == null ? 0
+                        : histogram.getTotalBytes());
+            }
+        });
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "histogram",
+                "instances"), new Gauge<Long>() {
+
+            @Override
+            public Long getValue() {
+                ClassHistogram histogram = analytics.getLastHistogram();
+                return Long.valueOf(histogram == null ? 0
+                        : histogram.getTotalInstances());
+            }
+        });
+    }
+
+    @Override
+    public void deactivate(ComponentContext context) {
+        if (analytics == null) {
+            return;
+        }
+        try {
+            componentManager().removeComponentListener(tagger);
+            analytics.stop();
+            if (register != null) {
+                register.unregisterAll();
+                SharedMetricRegistries.getOrCreate(METRICS_REGISTRY).removeMatching(
+                        new MetricFilter() {
+
+                            @Override
+                            public boolean matches(String name, Metric metric) {
+                                return name.startsWith(METRICS_PREFIX + ".");
+                            }
+                        });
+            }
+        } finally {
+            analytics = null;
+            register = null;
+        }
+    }
+
+}
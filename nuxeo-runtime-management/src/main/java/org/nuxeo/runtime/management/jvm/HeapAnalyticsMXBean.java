@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Management interface of {@link HeapAnalytics}.
+ *
+ * @since 7.1
+ */
+public interface HeapAnalyticsMXBean {
+
+    boolean isRunning();
+
+    void start();
+
+    void stop();
+
+    boolean isAllocationTrackingSupported();
+
+    /**
+     * Bytes allocated by all the threads since tracking started.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Allocation rate of all the threads over the last sampling period.
+     */
+    double getAllocationRate();
+
+    List<AllocationStats> getTopThreads();
+
+    /**
+     * Allocations done while threads were tagged with a component name.
+     */
+    List<AllocationStats> getComponentAllocations();
+
+    /**
+     * Takes a class histogram now and returns the classes using the most
+     * bytes.
+     */
+    List<ClassHistogramEntry> takeHistogram() throws IOException;
+
+    List<ClassHistogramEntry> getTopClasses();
+
+    /**
+     * Classes having grown the most between the two last histograms.
+     */
+    List<ClassHistogramEntry> getGrowingClasses();
+
+}
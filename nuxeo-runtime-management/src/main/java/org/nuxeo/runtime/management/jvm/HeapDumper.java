@@ -20,7 +20,9 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 
+import javax.management.JMException;
 import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import com.sun.management.HotSpotDiagnosticMXBean;
 
@@ -34,6 +36,8 @@ public class HeapDumper {
 
     private static final String HOTSPOT_NAME = "com.sun.management:type=HotSpotDiagnostic";
 
+    private static final String DIAGNOSTIC_COMMAND_NAME = "com.sun.management:type=DiagnosticCommand";
+
     public HeapDumper() throws IOException {
     }
 
@@ -58,4 +62,34 @@ public class HeapDumper {
         return file;
     }
 
+    /**
+     * Returns the class histogram of the heap as printed by the
+     * {@code GC.class_histogram} diagnostic command. Only live objects are
+     * accounted for, which triggers a full GC but is far lighter than a dump.
+     *
+     * @since 7.1
+     * @throws IOException if the diagnostic command is not available
+     */
+    public String classHistogram() throws IOException {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try {
+            return (String) mbs.invoke(
+                    new ObjectName(DIAGNOSTIC_COMMAND_NAME),
+                    "gcClassHistogram", new Object[] { new String[0] },
+                    new String[] { String[].class.getName() });
+        } catch (JMException e) {
+            throw new IOException("Cannot get class histogram", e);
+        }
+    }
+
+    /**
+     * Returns the parsed class histogram of the heap.
+     *
+     * @since 7.1
+     */
+    public ClassHistogram histogram() throws IOException {
+        return ClassHistogram.parse(classHistogram(),
+                System.currentTimeMillis());
+    }
+
 }
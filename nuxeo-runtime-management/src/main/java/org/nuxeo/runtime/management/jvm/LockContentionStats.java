@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+/**
+ * Contention aggregated by the {@link ThreadContentionProfiler} for a lock
+ * class or a contended stack frame.
+ *
+ * @since 7.1
+ */
+public class LockContentionStats {
+
+    protected final String name;
+
+    protected long blockedMillis;
+
+    protected long waitedMillis;
+
+    protected long count;
+
+    protected String ownerFrame;
+
+    public LockContentionStats(String name) {
+        this.name = name;
+    }
+
+    protected LockContentionStats(LockContentionStats other) {
+        name = other.name;
+        blockedMillis = other.blockedMillis;
+        waitedMillis = other.waitedMillis;
+        count = other.count;
+        ownerFrame = other.ownerFrame;
+    }
+
+    protected void add(long blocked, long waited, String owner) {
+        blockedMillis += blocked;
+        waitedMillis += waited;
+        count += 1;
+        if (owner != null) {
+            ownerFrame = owner;
+        }
+    }
+
+    /**
+     * The lock class name or the contended frame.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getBlockedMillis() {
+        return blockedMillis;
+    }
+
+    public long getWaitedMillis() {
+        return waitedMillis;
+    }
+
+    public long getTotalMillis() {
+        return blockedMillis + waitedMillis;
+    }
+
+    /**
+     * Number of samples in which a thread was found contending.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Frame of the lock owner the last time it was seen, if any.
+     */
+    public String getOwnerFrame() {
+        return ownerFrame;
+    }
+
+    @Override
+    public String toString() {
+        return name + " blocked=" + blockedMillis + "ms waited="
+                + waitedMillis + "ms count=" + count;
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.management.metrics.MetricRegister;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * Runs the {@link ThreadContentionProfiler} once the application is started,
+ * if enabled, and publishes it through JMX and the metrics registry.
+ *
+ * @since 7.1
+ */
+public class ThreadContentionComponent extends DefaultComponent {
+
+    public static final String ENABLED_PROPERTY = "org.nuxeo.runtime.management.contention.enabled";
+
+    public static final String PERIOD_PROPERTY = "org.nuxeo.runtime.management.contention.period";
+
+    public static final String DEPTH_PROPERTY = "org.nuxeo.runtime.management.contention.depth";
+
+    public static final String TOP_PROPERTY = "org.nuxeo.runtime.management.contention.top";
+
+    /**
+     * Registry of the metrics service, named after its interface.
+     */
+    protected static final String METRICS_REGISTRY = "org.nuxeo.runtime.metrics.MetricsService";
+
+    protected static final String METRICS_PREFIX = "nuxeo.threads.contention";
+
+    protected ThreadContentionProfiler profiler;
+
+    protected MetricRegister register;
+
+    public ThreadContentionProfiler getProfiler() {
+        return profiler;
+    }
+
+    @Override
+    public void applicationStarted(ComponentContext context) {
+        profiler = new ThreadContentionProfiler(Long.parseLong(Framework.getProperty(
+                PERIOD_PROPERTY,
+                String.valueOf(ThreadContentionProfiler.DEFAULT_PERIOD_MILLIS))),
+                Integer.parseInt(Framework.getProperty(DEPTH_PROPERTY,
+                        String.valueOf(ThreadContentionProfiler.DEFAULT_DEPTH))),
+                Integer.parseInt(Framework.getProperty(TOP_PROPERTY,
+                        String.valueOf(ThreadContentionProfiler.DEFAULT_TOP))));
+        register = new MetricRegister();
+        register.registerMXBean(profiler, "contention",
+                ThreadContentionProfilerMXBean.class, "Feature");
+        registerGauges(SharedMetricRegistries.getOrCreate(METRICS_REGISTRY));
+        if (Framework.isBooleanPropertyTrue(ENABLED_PROPERTY)) {
+            profiler.start();
+        }
+    }
+
+    protected void registerGauges(MetricRegistry registry) {
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "blocked"),
+                new Gauge<Long>() {
+
+                    @Override
+                    public Long getValue() {
+                        return Long.valueOf(profiler.getBlockedMillis());
+                    }
+                });
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "waited"),
+                new Gauge<Long>() {
+
+                    @Override
+                    public Long getValue() {
+                        return Long.valueOf(profiler.getWaitedMillis());
+                    }
+                });
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "overhead"),
+                new Gauge<Double>() {
+
+                    @Override
+                    public Double getValue() {
+                        return Double.valueOf(profiler.getOverheadPercent());
+                    }
+                });
+    }
+
+    @Override
+    public void deactivate(ComponentContext context) {
+        if (profiler == null) {
+            return;
+        }
+        try {
+            profiler.stop();
+            register.unregisterAll();
+            SharedMetricRegistries.getOrCreate(METRICS_REGISTRY).removeMatching(
+                    new MetricFilter() {
+
+                        @Override
+                        public boolean matches(String name, Metric metric) {
+                            return name.startsWith(METRICS_PREFIX + ".");
+                        }
+                    });
+        } finally {
+            profiler = null;
+            register = null;
+        }
+    }
+
+}
@@ -0,0 +1,367 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Samples the threads periodically and aggregates the time they spend
+ * contending on locks, per lock class and per contended frame.
+ * <p>
+ * Each sample only fetches the top frames of the threads. When the JVM
+ * supports contention monitoring, the blocked and waited times accumulated by
+ * each thread since the previous sample are attributed to the lock it is
+ * contending on, otherwise the sampling period is. Waiting is only accounted
+ * for locks owned by another thread, so that idle threads parked on a
+ * condition do not hide the actual contention.
+ * <p>
+ * Tables are bounded: once full, the entry having the lowest total time is
+ * evicted to make room.
+ * <p>
+ * Contention monitoring is enabled while the profiler runs and restored to
+ * its previous state once stopped. A sample is expected to cost less than 1%
+ * of the default period, the actual cost is reported by
+ * {@link #getOverheadPercent()}.
+ *
+ * @since 7.1
+ */
+public class ThreadContentionProfiler implements ThreadContentionProfilerMXBean {
+
+    private static final Log log = LogFactory.getLog(ThreadContentionProfiler.class);
+
+    public static final long DEFAULT_PERIOD_MILLIS = 1000;
+
+    public static final int DEFAULT_DEPTH = 8;
+
+    public static final int DEFAULT_TOP = 20;
+
+    public static final int MAX_ENTRIES = 512;
+
+    protected static final Comparator<LockContentionStats> BY_TOTAL = new Comparator<LockContentionStats>() {
+
+        @Override
+        public int compare(LockContentionStats o1, LockContentionStats o2) {
+            return Long.compare(o2.getTotalMillis(), o1.getTotalMillis());
+        }
+    };
+
+    protected final ThreadMXBean mgmt = ManagementFactory.getThreadMXBean();
+
+    protected final long periodMillis;
+
+    protected final int depth;
+
+    protected final int top;
+
+    protected final boolean contentionMonitoring;
+
+    protected final Map<String, LockContentionStats> locks = new HashMap<String, LockContentionStats>();
+
+    protected final Map<String, LockContentionStats> frames = new HashMap<String, LockContentionStats>();
+
+    /**
+     * Blocked and waited times of each thread at the previous sample.
+     */
+    protected Map<Long, long[]> previous = new HashMap<Long, long[]>();
+
+    protected long blockedMillis;
+
+    protected long waitedMillis;
+
+    protected long sampleCount;
+
+    protected long samplingNanos;
+
+    protected long startedNanos;
+
+    protected ScheduledExecutorService executor;
+
+    /**
+     * Whether contention monitoring was enabled before the profiler started.
+     */
+    protected boolean monitoringWasEnabled;
+
+    public ThreadContentionProfiler() {
+        this(DEFAULT_PERIOD_MILLIS, DEFAULT_DEPTH, DEFAULT_TOP);
+    }
+
+    public ThreadContentionProfiler(long periodMillis, int depth, int top) {
+        this.periodMillis = periodMillis;
+        this.depth = depth;
+        this.top = top;
+        contentionMonitoring = mgmt.isThreadContentionMonitoringSupported();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        if (contentionMonitoring) {
+            monitoringWasEnabled = mgmt.isThreadContentionMonitoringEnabled();
+            if (!monitoringWasEnabled) {
+                mgmt.setThreadContentionMonitoringEnabled(true);
+            }
+        }
+        startedNanos = System.nanoTime();
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Nuxeo-Contention-Profiler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    sample();
+                } catch (RuntimeException e) {
+                    log.error("Cannot sample threads", e);
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        executor = null;
+        if (contentionMonitoring && !monitoringWasEnabled) {
+            mgmt.setThreadContentionMonitoringEnabled(false);
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        locks.clear();
+        frames.clear();
+        blockedMillis = 0;
+        waitedMillis = 0;
+        sampleCount = 0;
+        samplingNanos = 0;
+        startedNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a sample of all the threads.
+     */
+    public void sample() {
+        long start = System.nanoTime();
+        ThreadInfo[] infos = mgmt.getThreadInfo(mgmt.getAllThreadIds(), depth);
+        Map<Long, ThreadInfo> byId = new HashMap<Long, ThreadInfo>(
+                infos.length * 2);
+        for (ThreadInfo info : infos) {
+            if (info != null) {
+                byId.put(Long.valueOf(info.getThreadId()), info);
+            }
+        }
+        synchronized (this) {
+            Map<Long, long[]> current = new HashMap<Long, long[]>(
+                    byId.size() * 2);
+            for (ThreadInfo info : byId.values()) {
+                record(info, byId, current);
+            }
+            previous = current;
+            sampleCount += 1;
+            samplingNanos += System.nanoTime() - start;
+        }
+    }
+
+    protected void record(ThreadInfo info, Map<Long, ThreadInfo> byId,
+            Map<Long, long[]> current) {
+        long blocked;
+        long waited;
+        if (contentionMonitoring) {
+            long[] times = new long[] { info.getBlockedTime(),
+                    info.getWaitedTime() };
+            current.put(Long.valueOf(info.getThreadId()), times);
+            long[] last = previous.get(Long.valueOf(info.getThreadId()));
+            if (last == null || times[0] < 0) {
+                return;
+            }
+            blocked = times[0] - last[0];
+            waited = times[1] - last[1];
+        } else {
+            blocked = periodMillis;
+            waited = periodMillis;
+        }
+        LockInfo lock = info.getLockInfo();
+        if (lock == null) {
+            return;
+        }
+        boolean owned = info.getLockOwnerId() != -1;
+        switch (info.getThreadState()) {
+        case BLOCKED:
+            waited = 0;
+            break;
+        case WAITING:
+        case TIMED_WAITING:
+            if (!owned) {
+                return;
+            }
+            blocked = 0;
+            break;
+        default:
+            return;
+        }
+        if (blocked <= 0 && waited <= 0) {
+            return;
+        }
+        blocked = Math.max(blocked, 0);
+        waited = Math.max(waited, 0);
+        String ownerFrame = null;
+        if (owned) {
+            ThreadInfo owner = byId.get(Long.valueOf(info.getLockOwnerId()));
+            if (owner != null) {
+                ownerFrame = frame(owner.getStackTrace());
+            }
+        }
+        blockedMillis += blocked;
+        waitedMillis += waited;
+        stats(locks, lock.getClassName()).add(blocked, waited, ownerFrame);
+        String frame = frame(info.getStackTrace());
+        if (frame != null) {
+            stats(frames, frame).add(blocked, waited, ownerFrame);
+        }
+    }
+
+    /**
+     * Returns the first frame outside of the JDK, or the top frame.
+     */
+    protected static String frame(StackTraceElement[] stack) {
+        if (stack == null || stack.length == 0) {
+            return null;
+        }
+        for (StackTraceElement element : stack) {
+            String name = element.getClassName();
+            if (!name.startsWith("java.") && !name.startsWith("javax.")
+                    && !name.startsWith("sun.") && !name.startsWith("jdk.")) {
+                return element.toString();
+            }
+        }
+        return stack[0].toString();
+    }
+
+    protected static LockContentionStats stats(
+            Map<String, LockContentionStats> table, String name) {
+        LockContentionStats stats = table.get(name);
+        if (stats != null) {
+            return stats;
+        }
+        if (table.size() >= MAX_ENTRIES) {
+            evictLowest(table);
+        }
+        stats = new LockContentionStats(name);
+        table.put(name, stats);
+        return stats;
+    }
+
+    protected static void evictLowest(Map<String, LockContentionStats> table) {
+        Iterator<LockContentionStats> it = table.values().iterator();
+        LockContentionStats lowest = null;
+        while (it.hasNext()) {
+            LockContentionStats each = it.next();
+            if (lowest == null || each.getTotalMillis() < lowest.getTotalMillis()) {
+                lowest = each;
+            }
+        }
+        if (lowest != null) {
+            table.remove(lowest.getName());
+        }
+    }
+
+    protected synchronized List<LockContentionStats> top(
+            Map<String, LockContentionStats> table) {
+        List<LockContentionStats> list = new ArrayList<LockContentionStats>(
+                table.size());
+        for (LockContentionStats stats : table.values()) {
+            list.add(new LockContentionStats(stats));
+        }
+        Collections.sort(list, BY_TOTAL);
+        return list.size() > top ? new ArrayList<LockContentionStats>(
+                list.subList(0, top)) : list;
+    }
+
+    @Override
+    public List<LockContentionStats> getTopLocks() {
+        return top(locks);
+    }
+
+    @Override
+    public List<LockContentionStats> getTopFrames() {
+        return top(frames);
+    }
+
+    @Override
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    @Override
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    @Override
+    public synchronized double getOverheadPercent() {
+        long elapsed = System.nanoTime() - startedNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return 100.0 * samplingNanos / elapsed;
+    }
+
+    @Override
+    public synchronized long getBlockedMillis() {
+        return blockedMillis;
+    }
+
+    @Override
+    public synchronized long getWaitedMillis() {
+        return waitedMillis;
+    }
+
+}
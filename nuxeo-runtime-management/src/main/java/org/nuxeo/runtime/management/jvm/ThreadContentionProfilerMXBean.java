@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link ThreadContentionProfiler}.
+ *
+ * @since 7.1
+ */
+public interface ThreadContentionProfilerMXBean {
+
+    boolean isRunning();
+
+    void start();
+
+    void stop();
+
+    void reset();
+
+    long getPeriodMillis();
+
+    long getSampleCount();
+
+    /**
+     * Time spent sampling relative to the elapsed time since started, in
+     * percent.
+     */
+    double getOverheadPercent();
+
+    long getBlockedMillis();
+
+    long getWaitedMillis();
+
+    List<LockContentionStats> getTopLocks();
+
+    List<LockContentionStats> getTopFrames();
+
+}
@@ -65,16 +65,15 @@ public class ThreadDeadlocksDetector {
             if (mbean.isObjectMonitorUsageSupported()) {
                 monitors = thread.getLockedMonitors();
             }
-            sb.append("\n\"" + thread.getThreadName() + // NOI18N
-                    "\" - Thread t@" + thread.getThreadId() + "\n"); // NOI18N
-            sb.append("   java.lang.Thread.State: " + thread.getThreadState()); // NOI18N
-            sb.append("\n"); // NOI18N
+            sb.append("\n\"").append(thread.getThreadName()) // NOI18N
+                    .append("\" - Thread t@").append(thread.getThreadId()).append('\n'); // NOI18N
+            sb.append("   java.lang.Thread.State: ").append(thread.getThreadState()); // NOI18N
+            sb.append('\n'); // NOI18N
             int index = 0;
+            LockInfo lock = thread.getLockInfo();
+            String lockOwner = thread.getLockOwnerName();
             for (StackTraceElement st : thread.getStackTrace()) {
-                LockInfo lock = thread.getLockInfo();
-                String lockOwner = thread.getLockOwnerName();
-
-                sb.append("\tat " + st.toString() + "\n"); // NOI18N
+                sb.append("\tat ").append(st).append('\n'); // NOI18N
                 if (index == 0) {
                     if ("java.lang.Object".equals(st.getClassName()) && // NOI18N
                             "wait".equals(st.getMethodName())) { // NOI18N
@@ -91,8 +90,8 @@ public class ThreadDeadlocksDetector {
                         } else {
                             sb.append("\t- waiting to lock "); // NOI18N
                             printLock(sb, lock);
-                            sb.append(" owned by \"" + lockOwner + "\" t@"
-                                    + thread.getLockOwnerId() + "\n"); // NOI18N
+                            sb.append(" owned by \"").append(lockOwner).append("\" t@")
+                                    .append(thread.getLockOwnerId()).append('\n'); // NOI18N
                         }
                     }
                 }
@@ -139,7 +138,7 @@ public class ThreadDeadlocksDetector {
             String id = Integer.toHexString(lock.getIdentityHashCode());
             String className = lock.getClassName();
 
-            sb.append("<" + id + "> (a " + className + ")"); // NOI18N
+            sb.append('<').append(id).append("> (a ").append(className).append(')'); // NOI18N
         }
 
     }
@@ -17,21 +17,65 @@
 
 package org.nuxeo.runtime.management.metrics;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.javasimon.SimonManager;
 import org.javasimon.Split;
 import org.javasimon.Stopwatch;
+import org.nuxeo.runtime.api.Framework;
 
+/**
+ * Times the calls of a proxied object using one stopwatch per method.
+ * <p>
+ * Stopwatches and method handles are resolved once per method. The call
+ * arguments are only formatted into the stopwatch note if enabled through the
+ * {@value #NOTES_SAMPLING_PROPERTY} property, which gives the number of calls
+ * between two notes.
+ */
 public class MetricInvocationHandler<T> implements InvocationHandler {
 
+    /**
+     * @since 7.1
+     */
+    public static final String NOTES_SAMPLING_PROPERTY = "org.nuxeo.runtime.management.metrics.notes.sampling";
+
+    protected static final Object[] NO_ARGS = new Object[0];
+
     protected final T proxied;
 
+    protected final int notesSampling;
+
+    /**
+     * Copied on write, the methods of a proxy are a small fixed set.
+     */
+    protected volatile Map<Method, MethodEntry> entries = new IdentityHashMap<Method, MethodEntry>();
+
+    protected static class MethodEntry {
+
+        protected final Stopwatch stopwatch;
+
+        protected final MethodHandle handle;
+
+        protected int calls;
+
+        protected MethodEntry(Stopwatch stopwatch, MethodHandle handle) {
+            this.stopwatch = stopwatch;
+            this.handle = handle;
+        }
+    }
+
     protected MetricInvocationHandler(T proxied) {
         this.proxied = proxied;
+        notesSampling = Integer.parseInt(Framework.getProperty(
+                NOTES_SAMPLING_PROPERTY, "0"));
     }
 
     @SuppressWarnings("unchecked")
@@ -44,7 +88,7 @@ public class MetricInvocationHandler<T> implements InvocationHandler {
         if (parms == null) {
             return "";
         }
-        StringBuffer buffer = new StringBuffer();
+        StringBuilder buffer = new StringBuilder();
         for (Object parm : parms) {
             buffer.append(".").append(parm);
         }
@@ -53,29 +97,84 @@ public class MetricInvocationHandler<T> implements InvocationHandler {
 
     protected String formatName(Method m, Object[] parms) {
         Class<?> declaringClass = m.getDeclaringClass();
-        return String.format("%s.%s", declaringClass.getSimpleName(), m.getName());
+        return declaringClass.getSimpleName() + "." + m.getName();
     }
 
     protected String formatNote(Method m, Object[] parms) {
-        return String.format("%s#%s(%s)", m.getDeclaringClass().getSimpleName(), m.getName(), formatParms(parms));
+        return m.getDeclaringClass().getSimpleName() + "#" + m.getName() + "("
+                + formatParms(parms) + ")";
     }
 
     protected Stopwatch getStopwatch(Method m, Object[] parms) {
-        String name = formatName(m, parms);
-        Stopwatch stopwatch = SimonManager.getStopwatch(name);
-        stopwatch.setNote(formatNote(m, parms));
-        return stopwatch;
+        return getStopwatch(getEntry(m), m, parms);
+    }
+
+    protected Stopwatch getStopwatch(MethodEntry entry, Method m,
+            Object[] parms) {
+        if (notesSampling > 0 && ++entry.calls % notesSampling == 0) {
+            entry.stopwatch.setNote(formatNote(m, parms));
+        }
+        return entry.stopwatch;
+    }
+
+    protected MethodEntry getEntry(Method m) {
+        MethodEntry entry = entries.get(m);
+        if (entry != null) {
+            return entry;
+        }
+        synchronized (this) {
+            entry = entries.get(m);
+            if (entry == null) {
+                entry = new MethodEntry(SimonManager.getStopwatch(formatName(
+                        m, null)), unreflect(m));
+                Map<Method, MethodEntry> copy = new IdentityHashMap<Method, MethodEntry>(entries);
+                copy.put(m, entry);
+                entries = copy;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns a handle taking the target and the arguments array, or
+     * {@code null} if the method is not accessible and must be invoked
+     * through reflection.
+     */
+    protected static MethodHandle unreflect(Method m) {
+        try {
+            int arity = m.getParameterTypes().length;
+            return MethodHandles.publicLookup().unreflect(m).asType(
+                    MethodType.genericMethodType(arity + 1)).asSpreader(
+                    Object[].class, arity);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
     }
 
     @Override
     public Object invoke(Object proxy, Method m, Object[] parms) throws Throwable {
-        Split split = getStopwatch(m, parms).start();
+        MethodEntry entry = getEntry(m);
+        if (!SimonManager.isEnabled()) {
+            return dispatch(entry, m, parms);
+        }
+        Split split = getStopwatch(entry, m, parms).start();
+        try {
+            return dispatch(entry, m, parms);
+        } finally {
+            split.stop();
+        }
+    }
+
+    protected Object dispatch(MethodEntry entry, Method m, Object[] parms)
+            throws Throwable {
+        if (entry.handle != null) {
+            return (Object) entry.handle.invokeExact((Object) proxied,
+                    parms == null ? NO_ARGS : parms);
+        }
         try {
             return m.invoke(proxied, parms);
         } catch (InvocationTargetException e) {
             throw e.getTargetException();
-        } finally {
-            split.stop();
         }
     }
 
@@ -0,0 +1,177 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.management.metrics;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.javasimon.CounterSample;
+import org.javasimon.Sample;
+import org.javasimon.StopwatchSample;
+
+/**
+ * Binary layout of the samples written by the {@link MetricSampleWriter}.
+ * <p>
+ * Each record is prefixed by its length as an int, followed by the sample
+ * kind as a byte, the sampling timestamp as a long, the sample name as a
+ * short length and UTF-8 bytes, and the sample values as longs:
+ * <ul>
+ * <li>stopwatch: counter, total, min, max, active, last</li>
+ * <li>counter: counter, min, max, increment sum, decrement sum</li>
+ * </ul>
+ *
+ * @since 7.1
+ */
+public class MetricSampleFormat {
+
+    public static final byte OTHER = 0;
+
+    public static final byte STOPWATCH = 1;
+
+    public static final byte COUNTER = 2;
+
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final String[] STOPWATCH_FIELDS = { "counter", "total",
+            "min", "max", "active", "last" };
+
+    public static final String[] COUNTER_FIELDS = { "counter", "min", "max",
+            "incrementSum", "decrementSum" };
+
+    protected static final String[] NO_FIELDS = new String[0];
+
+    private MetricSampleFormat() {
+    }
+
+    public static String[] fields(byte kind) {
+        switch (kind) {
+        case STOPWATCH:
+            return STOPWATCH_FIELDS;
+        case COUNTER:
+            return COUNTER_FIELDS;
+        default:
+            return NO_FIELDS;
+        }
+    }
+
+    /**
+     * Appends a record to the buffer, which must have enough room left.
+     *
+     * @see #maxLength
+     */
+    public static void encode(Sample sample, long timestamp, ByteBuffer buffer) {
+        byte kind;
+        long[] values;
+        if (sample instanceof StopwatchSample) {
+            StopwatchSample sw = (StopwatchSample) sample;
+            kind = STOPWATCH;
+            values = new long[] { sw.getCounter(), sw.getTotal(), sw.getMin(),
+                    sw.getMax(), sw.getActive(), sw.getLast() };
+        } else if (sample instanceof CounterSample) {
+            CounterSample c = (CounterSample) sample;
+            kind = COUNTER;
+            values = new long[] { c.getCounter(), c.getMin(), c.getMax(),
+                    c.getIncrementSum(), c.getDecrementSum() };
+        } else {
+            kind = OTHER;
+            values = new long[0];
+        }
+        byte[] name = nameBytes(sample);
+        int length = 1 + 8 + 2 + name.length + 8 * values.length;
+        buffer.putInt(length);
+        buffer.put(kind);
+        buffer.putLong(timestamp);
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+    }
+
+    protected static byte[] nameBytes(Sample sample) {
+        String name = sample.getName();
+        byte[] bytes = (name == null ? "" : name).getBytes(UTF8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Sample name too long: " + name);
+        }
+        return bytes;
+    }
+
+    /**
+     * Upper bound of the encoded length of a sample, length prefix included.
+     */
+    public static int maxLength(Sample sample) {
+        return 4 + 1 + 8 + 2 + nameBytes(sample).length + 8
+                * STOPWATCH_FIELDS.length;
+    }
+
+    /**
+     * Decoded record.
+     */
+    public static class Record {
+
+        public final byte kind;
+
+        public final long timestamp;
+
+        public final String name;
+
+        public final long[] values;
+
+        public Record(byte kind, long timestamp, String name, long[] values) {
+            this.kind = kind;
+            this.timestamp = timestamp;
+            this.name = name;
+            this.values = values;
+        }
+
+        public String[] getFields() {
+            return fields(kind);
+        }
+    }
+
+    /**
+     * Reads the next record, the buffer must hold it entirely.
+     *
+     * @return the record, or {@code null} if the buffer does not hold a
+     *         complete record
+     */
+    public static Record decode(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        buffer.mark();
+        int length = buffer.getInt();
+        if (buffer.remaining() < length) {
+            buffer.reset();
+            return null;
+        }
+        int end = buffer.position() + length;
+        byte kind = buffer.get();
+        long timestamp = buffer.getLong();
+        byte[] name = new byte[buffer.getShort()];
+        buffer.get(name);
+        long[] values = new long[(end - buffer.position()) / 8];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getLong();
+        }
+        buffer.position(end);
+        return new Record(kind, timestamp, new String(name, UTF8), values);
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.management.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Converts a binary sample file written by the {@link MetricSampleWriter} to
+ * CSV or XML, for offline analysis.
+ * <p>
+ * Usage: {@code MetricSampleReader <file> [csv|xml]}, the result being
+ * printed on the standard output.
+ *
+ * @since 7.1
+ */
+public class MetricSampleReader {
+
+    public interface Handler {
+
+        void handle(MetricSampleFormat.Record record) throws IOException;
+    }
+
+    protected final File file;
+
+    public MetricSampleReader(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads all the records of the file, a truncated trailing record being
+     * ignored.
+     */
+    public void read(Handler handler) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(MetricSampleWriter.BUFFER_SIZE);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                MetricSampleFormat.Record record;
+                while ((record = MetricSampleFormat.decode(buffer)) != null) {
+                    handler.handle(record);
+                }
+                buffer.compact();
+            }
+        }
+    }
+
+    public void toCSV(final PrintStream out) throws IOException {
+        out.println("kind,timestamp,name,values");
+        read(new Handler() {
+
+            @Override
+            public void handle(MetricSampleFormat.Record record) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(kindName(record.kind)).append(',');
+                sb.append(record.timestamp).append(',');
+                sb.append(StringEscapeUtils.escapeCsv(record.name));
+                for (long value : record.values) {
+                    sb.append(',').append(value);
+                }
+                out.println(sb);
+            }
+        });
+    }
+
+    public void toXML(final PrintStream out) throws IOException {
+        out.println("<samples>");
+        read(new Handler() {
+
+            @Override
+            public void handle(MetricSampleFormat.Record record) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("  <").append(kindName(record.kind));
+                sb.append(" name=\"").append(
+                        StringEscapeUtils.escapeXml(record.name)).append('"');
+                sb.append(" timestamp=\"").append(record.timestamp).append('"');
+                String[] fields = record.getFields();
+                for (int i = 0; i < fields.length && i < record.values.length; i++) {
+                    sb.append(' ').append(fields[i]).append("=\"").append(
+                            record.values[i]).append('"');
+                }
+                sb.append("/>");
+                out.println(sb);
+            }
+        });
+        out.println("</samples>");
+    }
+
+    protected static String kindName(byte kind) {
+        switch (kind) {
+        case MetricSampleFormat.STOPWATCH:
+            return "stopwatch";
+        case MetricSampleFormat.COUNTER:
+            return "counter";
+        default:
+            return "sample";
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: MetricSampleReader <file> [csv|xml]");
+            System.exit(1);
+        }
+        MetricSampleReader reader = new MetricSampleReader(new File(args[0]));
+        if (args.length == 2 && "xml".equalsIgnoreCase(args[1])) {
+            reader.toXML(System.out);
+        } else {
+            reader.toCSV(System.out);
+        }
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.management.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.javasimon.Sample;
+
+/**
+ * Writes samples in the {@link MetricSampleFormat binary format} from a
+ * background thread.
+ * <p>
+ * Producers only offer the samples to a bounded queue and never wait on I/O,
+ * samples offered while the queue is full are dropped and counted. The
+ * writer thread drains the queue through a direct buffer into a file channel
+ * and rotates the output once it exceeds its maximum size or age, the
+ * previous file being renamed with a timestamp suffix. The output is
+ * truncated when the writer is created. A sample which cannot be encoded is
+ * logged and counted as dropped.
+ *
+ * @since 7.1
+ */
+public class MetricSampleWriter {
+
+    private static final Log log = LogFactory.getLog(MetricSampleWriter.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 8192;
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    protected static final Entry CLOSE = new Entry(null, 0);
+
+    protected static class Entry {
+
+        protected final Sample sample;
+
+        protected final long timestamp;
+
+        protected Entry(Sample sample, long timestamp) {
+            this.sample = sample;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Released once the entries queued before it are written to the file.
+     */
+    protected static class FlushRequest extends Entry {
+
+        protected final CountDownLatch done = new CountDownLatch(1);
+
+        protected FlushRequest() {
+            super(null, 0);
+        }
+    }
+
+    protected final File file;
+
+    protected final long maxFileSize;
+
+    protected final long maxFileAgeMillis;
+
+    protected final BlockingQueue<Entry> queue;
+
+    protected final AtomicLong written = new AtomicLong();
+
+    protected final AtomicLong dropped = new AtomicLong();
+
+    /** Grown when a sample does not fit, only used by the writer thread. */
+    protected ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    protected final Thread thread;
+
+    protected FileChannel channel;
+
+    protected long openedAt;
+
+    protected volatile boolean closed;
+
+    /**
+     * @param file the output file
+     * @param maxFileSize the size triggering a rotation, 0 to disable
+     * @param maxFileAgeMillis the age triggering a rotation, 0 to disable
+     * @param queueSize the maximum number of pending samples
+     */
+    public MetricSampleWriter(File file, long maxFileSize,
+            long maxFileAgeMillis, int queueSize) throws IOException {
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxFileAgeMillis = maxFileAgeMillis;
+        queue = new ArrayBlockingQueue<Entry>(queueSize);
+        open(false);
+        thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "Nuxeo-Metrics-Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues the sample without blocking.
+     *
+     * @return {@code false} if the sample was dropped
+     */
+    public boolean offer(Sample sample) {
+        if (closed || !queue.offer(new Entry(sample, System.currentTimeMillis()))) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Waits until the samples queued so far are written to the file.
+     */
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        FlushRequest request = new FlushRequest();
+        try {
+            queue.put(request);
+            while (!request.done.await(1, TimeUnit.SECONDS)) {
+                if (!thread.isAlive()) {
+                    // stopped on an error
+                    return;
+                }
+            }
+        } catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing " + file, cause);
+        }
+    }
+
+    /**
+     * Writes the pending samples and closes the output.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(CLOSE);
+            thread.join();
+        } catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing " + file, cause);
+        }
+    }
+
+    /**
+     * @param append {@code true} for writing after the current content,
+     *            {@code false} for truncating the file
+     */
+    protected void open(boolean append) throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        if (append) {
+            channel.position(channel.size());
+        } else {
+            channel.truncate(0);
+        }
+        openedAt = System.currentTimeMillis();
+    }
+
+    protected void drain() {
+        try {
+            boolean open = true;
+            while (open) {
+                Entry entry = queue.poll(1, TimeUnit.SECONDS);
+                // batch what is already queued before touching the disk
+                while (entry != null) {
+                    open = process(entry);
+                    entry = open ? queue.poll() : null;
+                }
+                flushBuffer();
+                rotateIfNeeded();
+            }
+        } catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+        } catch (IOException cause) {
+            log.error("Cannot write samples to " + file
+                    + ", stopping serialization", cause);
+            closed = true;
+        } finally {
+            try {
+                flushBuffer();
+                channel.close();
+            } catch (IOException cause) {
+                log.warn("Cannot close " + file, cause);
+            }
+            // nothing will be written anymore, release the waiting threads
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                if (entry instanceof FlushRequest) {
+                    ((FlushRequest) entry).done.countDown();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} once the writer is closed
+     */
+    protected boolean process(Entry entry) throws IOException {
+        if (entry == CLOSE) {
+            return false;
+        }
+        if (entry instanceof FlushRequest) {
+            flushBuffer();
+            ((FlushRequest) entry).done.countDown();
+            return true;
+        }
+        try {
+            write(entry);
+        } catch (RuntimeException cause) {
+            dropped.incrementAndGet();
+            log.warn("Cannot write sample " + entry.sample.getName(), cause);
+        }
+        return true;
+    }
+
+    protected void write(Entry entry) throws IOException {
+        int length = MetricSampleFormat.maxLength(entry.sample);
+        if (buffer.remaining() < length) {
+            flushBuffer();
+            if (buffer.capacity() < length) {
+                buffer = ByteBuffer.allocateDirect(length);
+            }
+        }
+        int start = buffer.position();
+        try {
+            MetricSampleFormat.encode(entry.sample, entry.timestamp, buffer);
+        } catch (RuntimeException cause) {
+            // drop the partial record
+            buffer.position(start);
+            throw cause;
+        }
+        written.incrementAndGet();
+    }
+
+    protected void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    protected void rotateIfNeeded() throws IOException {
+        boolean tooLarge = maxFileSize > 0 && channel.position() >= maxFileSize;
+        boolean tooOld = maxFileAgeMillis > 0
+                && System.currentTimeMillis() - openedAt >= maxFileAgeMillis;
+        if (!tooLarge && !tooOld) {
+            return;
+        }
+        channel.close();
+        String suffix = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        File rotated = new File(file.getPath() + "." + suffix);
+        if (!file.renameTo(rotated)) {
+            log.warn("Cannot rotate " + file + " to " + rotated);
+        }
+        // keep the samples if the rename failed
+        open(true);
+    }
+
+}
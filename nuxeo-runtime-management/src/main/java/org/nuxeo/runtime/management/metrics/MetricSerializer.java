@@ -17,11 +17,12 @@
 
 package org.nuxeo.runtime.management.metrics;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
-import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.javasimon.Sample;
 import org.javasimon.SimonManager;
@@ -30,25 +31,72 @@ import org.nuxeo.runtime.api.Framework;
 
 import com.thoughtworks.xstream.XStream;
 
+/**
+ * Streams the samples to a file.
+ * <p>
+ * Samples are written in the compact {@link MetricSampleFormat binary
+ * format} by a background {@link MetricSampleWriter}, unless the output path
+ * ends with {@code .xml} in which case they are serialized through XStream
+ * as before. The default temporary output is still XML, the binary format is
+ * chosen by resetting the output to a path with another extension. Binary
+ * files can be converted back to CSV or XML using the
+ * {@link MetricSampleReader}.
+ */
 public class MetricSerializer implements MetricSerializerMXBean {
 
+    /**
+     * @since 7.1
+     */
+    public static final String MAX_FILE_SIZE_PROPERTY = "org.nuxeo.runtime.management.metrics.serializer.maxFileSize";
+
+    /**
+     * @since 7.1
+     */
+    public static final String MAX_FILE_AGE_PROPERTY = "org.nuxeo.runtime.management.metrics.serializer.maxFileAge";
+
+    /**
+     * @since 7.1
+     */
+    public static final String QUEUE_SIZE_PROPERTY = "org.nuxeo.runtime.management.metrics.serializer.queueSize";
+
     protected File file;
 
     protected ObjectOutputStream outputStream;
 
-    protected int count;
+    protected volatile MetricSampleWriter writer;
+
+    protected final AtomicInteger count = new AtomicInteger();
+
+    protected volatile long lastUsage;
+
+    protected long maxFileSize = Long.parseLong(Framework.getProperty(
+            MAX_FILE_SIZE_PROPERTY, String.valueOf(64 * 1024 * 1024)));
+
+    protected long maxFileAgeSeconds = Long.parseLong(Framework.getProperty(
+            MAX_FILE_AGE_PROPERTY, "0"));
 
-    protected long lastUsage;
+    protected int queueSize = Integer.parseInt(Framework.getProperty(
+            QUEUE_SIZE_PROPERTY,
+            String.valueOf(MetricSampleWriter.DEFAULT_QUEUE_SIZE)));
 
     public void toStream(Sample... samples) throws IOException {
-        if (outputStream == null) {
-            return;
+        MetricSampleWriter w = writer;
+        if (w != null) {
+            for (Sample sample : samples) {
+                w.offer(sample);
+            }
+        } else {
+            synchronized (this) {
+                if (outputStream == null) {
+                    return;
+                }
+                for (Sample sample : samples) {
+                    outputStream.writeObject(sample);
+                }
+            }
         }
-        for (Sample sample : samples) {
-            outputStream.writeObject(sample);
-        }
-        count += 1;
-        lastUsage = Calendar.getInstance().getTimeInMillis();
+        count.incrementAndGet();
+        lastUsage = System.currentTimeMillis();
     }
 
     @Override
@@ -70,24 +118,43 @@ public class MetricSerializer implements MetricSerializerMXBean {
     }
 
     @Override
-    public void resetOutput() throws IOException {
+    public synchronized void resetOutput() throws IOException {
         if (file == null) {
             createTempFile();
         }
         closeOutput();
-        outputStream = new XStream().createObjectOutputStream(new FileWriter(
-                file));
+        if (file.getName().endsWith(".xml")) {
+            outputStream = new XStream().createObjectOutputStream(new BufferedWriter(
+                    new FileWriter(file)));
+        } else {
+            writer = new MetricSampleWriter(file, maxFileSize,
+                    maxFileAgeSeconds * 1000, queueSize);
+        }
         for (String name : SimonManager.simonNames()) {
             SimonManager.getSimon(name).reset();
         }
     }
 
-    public void flushOuput() throws IOException {
-        outputStream.flush();
+    /**
+     * Flushes the output, waiting for the pending binary samples to be
+     * written.
+     */
+    public synchronized void flushOuput() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (outputStream != null) {
+            outputStream.flush();
+        }
     }
 
     @Override
-    public void closeOutput() throws IOException {
+    public synchronized void closeOutput() throws IOException {
+        if (writer != null) {
+            MetricSampleWriter w = writer;
+            writer = null;
+            w.close();
+        }
         if (outputStream == null) {
             return;
         }
@@ -102,7 +169,7 @@ public class MetricSerializer implements MetricSerializerMXBean {
 
     @Override
     public int getCount() {
-        return count;
+        return count.get();
     }
 
     @Override
@@ -110,4 +177,30 @@ public class MetricSerializer implements MetricSerializerMXBean {
         return lastUsage;
     }
 
+    @Override
+    public long getDroppedCount() {
+        MetricSampleWriter w = writer;
+        return w == null ? 0 : w.getDroppedCount();
+    }
+
+    @Override
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    @Override
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    @Override
+    public long getMaxFileAgeSeconds() {
+        return maxFileAgeSeconds;
+    }
+
+    @Override
+    public void setMaxFileAgeSeconds(long maxFileAgeSeconds) {
+        this.maxFileAgeSeconds = maxFileAgeSeconds;
+    }
+
 }
@@ -33,4 +33,31 @@ public interface MetricSerializerMXBean {
 
     String getOutputLocation();
 
+    /**
+     * Number of samples dropped because the binary writer could not keep up.
+     *
+     * @since 7.1
+     */
+    long getDroppedCount();
+
+    /**
+     * Size in bytes triggering the rotation of a binary output, 0 to
+     * disable. Applied on the next reset.
+     *
+     * @since 7.1
+     */
+    long getMaxFileSize();
+
+    void setMaxFileSize(long maxFileSize);
+
+    /**
+     * Age in seconds triggering the rotation of a binary output, 0 to
+     * disable. Applied on the next reset.
+     *
+     * @since 7.1
+     */
+    long getMaxFileAgeSeconds();
+
+    void setMaxFileAgeSeconds(long maxFileAgeSeconds);
+
 }
@@ -0,0 +1,194 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Metrics of a subsystem, partitioned from the others.
+ * <p>
+ * Metrics are published both in the partition own registry, under their
+ * local name, and in the shared registry under the partition prefix. The
+ * handles are resolved once per interned name and are meant to be kept by
+ * the callers.
+ *
+ * @see RuntimeMetrics#forComponent(String)
+ * @since 7.1
+ */
+public class ComponentMetrics {
+
+    protected final MetricName prefix;
+
+    protected final MetricRegistry parent;
+
+    protected final MetricRegistry local = new MetricRegistry();
+
+    protected final ConcurrentMap<MetricName, Metric> handles = new ConcurrentHashMap<MetricName, Metric>();
+
+    /**
+     * Members by identity, metrics do not override equals.
+     */
+    protected final Map<Metric, Boolean> members = new ConcurrentHashMap<Metric, Boolean>();
+
+    protected ComponentMetrics(MetricName prefix, MetricRegistry parent) {
+        this.prefix = prefix;
+        this.parent = parent;
+    }
+
+    public MetricName getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the registry holding only the metrics of this partition, for
+     * reporters dedicated to this subsystem.
+     */
+    public MetricRegistry getRegistry() {
+        return local;
+    }
+
+    public boolean contains(Metric metric) {
+        return members.containsKey(metric);
+    }
+
+    /**
+     * Returns a filter matching the metrics of this partition by identity,
+     * without looking at their names.
+     */
+    public MetricFilter filter() {
+        return new MetricFilter() {
+
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return contains(metric);
+            }
+        };
+    }
+
+    public Counter counter(MetricName name) {
+        return get(name, Counter.class, Counter.class);
+    }
+
+    public Timer timer(MetricName name) {
+        return get(name, Timer.class, Timer.class);
+    }
+
+    public Meter meter(MetricName name) {
+        return get(name, Meter.class, Meter.class);
+    }
+
+    public Histogram histogram(MetricName name) {
+        Metric metric = handles.get(name);
+        if (metric == null) {
+            metric = register(name, local.histogram(name.toString()));
+        }
+        return cast(name, metric, Histogram.class);
+    }
+
+    protected <T extends Metric> T get(MetricName name, Class<T> type,
+            Class<? extends T> implementation) {
+        Metric metric = handles.get(name);
+        if (metric == null) {
+            T created;
+            try {
+                created = implementation.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Cannot create "
+                        + implementation, e);
+            }
+            metric = register(name, created);
+        }
+        return cast(name, metric, type);
+    }
+
+    protected static <T extends Metric> T cast(MetricName name, Metric metric,
+            Class<T> type) {
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(name
+                    + " is already registered as a "
+                    + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    /**
+     * Registers a metric, returning the one already registered under that
+     * name if any.
+     */
+    public synchronized Metric register(MetricName name, Metric metric) {
+        Metric existing = handles.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        String localName = name.toString();
+        String fullName = prefix.resolve(localName).toString();
+        Metric shared = parent.getMetrics().get(fullName);
+        if (shared != null) {
+            // registered directly in the shared registry by legacy code
+            metric = shared;
+        }
+        Metric current = local.getMetrics().get(localName);
+        if (current == null) {
+            local.register(localName, metric);
+        } else if (current != metric) {
+            if (shared == null) {
+                // registered directly in the partition registry
+                metric = current;
+            } else {
+                // both registries must publish the same instance
+                local.remove(localName);
+                local.register(localName, metric);
+            }
+        }
+        if (shared == null) {
+            parent.register(fullName, metric);
+        }
+        members.put(metric, Boolean.TRUE);
+        handles.put(name, metric);
+        return metric;
+    }
+
+    public synchronized void remove(MetricName name) {
+        Metric metric = handles.remove(name);
+        if (metric == null) {
+            return;
+        }
+        members.remove(metric);
+        local.remove(name.toString());
+        parent.remove(prefix.resolve(name.toString()).toString());
+    }
+
+    /**
+     * Removes all the metrics of this partition.
+     */
+    public synchronized void clear() {
+        for (MetricName name : handles.keySet()) {
+            remove(name);
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Interned metric name.
+ * <p>
+ * Names are built once, typically in static fields, and compared by
+ * identity so that resolving a metric handle from a name does not involve
+ * any string building.
+ *
+ * @since 7.1
+ */
+public final class MetricName {
+
+    protected static final ConcurrentMap<String, MetricName> names = new ConcurrentHashMap<String, MetricName>();
+
+    protected final String name;
+
+    private MetricName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the interned name built from the given parts, as joined by
+     * {@link MetricRegistry#name(String, String...)}.
+     */
+    public static MetricName of(String name, String... names) {
+        return intern(MetricRegistry.name(name, names));
+    }
+
+    protected static MetricName intern(String name) {
+        MetricName interned = names.get(name);
+        if (interned == null) {
+            MetricName previous = names.putIfAbsent(name,
+                    interned = new MetricName(name));
+            if (previous != null) {
+                interned = previous;
+            }
+        }
+        return interned;
+    }
+
+    /**
+     * Returns the interned name of a child of this name.
+     */
+    public MetricName resolve(String... names) {
+        return intern(MetricRegistry.name(name, names));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -17,6 +17,7 @@
 package org.nuxeo.runtime.metrics;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -36,6 +37,7 @@ import org.nuxeo.common.xmap.annotation.XNode;
 import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.management.ServerLocator;
+import org.nuxeo.runtime.management.metrics.MetricRegister;
 
 import com.codahale.metrics.CsvReporter;
 import com.codahale.metrics.JmxAttributeGauge;
@@ -365,6 +367,144 @@ public class MetricsDescriptor implements Serializable {
         }
     }
 
+    /**
+     * Appends the metrics to local time-series files, downsampled to one
+     * minute and one hour averages.
+     *
+     * @since 7.1
+     */
+    @XObject(value = "timeSeriesReporter")
+    public static class TimeSeriesDescriptor {
+
+        public static final String ENABLED_PROPERTY = "metrics.timeseries.enabled";
+
+        public static final String PERIOD_PROPERTY = "metrics.timeseries.period";
+
+        public static final String OUTPUT_PROPERTY = "metrics.timeseries.output";
+
+        public static final String RAW_RETENTION_PROPERTY = "metrics.timeseries.raw.retention";
+
+        public static final String MINUTE_RETENTION_PROPERTY = "metrics.timeseries.minute.retention";
+
+        public static final String HOUR_RETENTION_PROPERTY = "metrics.timeseries.hour.retention";
+
+        @XNode("@enabled")
+        public boolean enabled = Framework.isBooleanPropertyTrue(ENABLED_PROPERTY);
+
+        @XNode("@periodInSecond")
+        public Integer period = Integer.valueOf(Framework.getProperty(
+                PERIOD_PROPERTY, "10"));
+
+        @XNode("@output")
+        public File outputDir = new File(Framework.getProperty(
+                OUTPUT_PROPERTY, Framework.getProperty("nuxeo.log.dir")),
+                "metrics-timeseries");
+
+        @XNode("@rawRetentionInDays")
+        public Integer rawRetention = Integer.valueOf(Framework.getProperty(
+                RAW_RETENTION_PROPERTY, "2"));
+
+        @XNode("@minuteRetentionInDays")
+        public Integer minuteRetention = Integer.valueOf(Framework.getProperty(
+                MINUTE_RETENTION_PROPERTY, "30"));
+
+        @XNode("@hourRetentionInDays")
+        public Integer hourRetention = Integer.valueOf(Framework.getProperty(
+                HOUR_RETENTION_PROPERTY, "365"));
+
+        protected TimeSeriesReporter reporter;
+
+        protected MetricRegister register;
+
+        public TimeSeriesReporter getReporter() {
+            return reporter;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "timeSeriesReporter %s, outputDir: %s, period: %d, retention: %d/%d/%d days",
+                    enabled ? "enabled" : "disabled", outputDir, period,
+                    rawRetention, minuteRetention, hourRetention);
+        }
+
+        public void enable(MetricRegistry registry) {
+            if (!enabled) {
+                return;
+            }
+            LogFactory.getLog(MetricsServiceImpl.class).info(this);
+            try {
+                reporter = new TimeSeriesReporter(registry,
+                        new TimeSeriesStore(outputDir, rawRetention,
+                                minuteRetention, hourRetention));
+            } catch (IOException e) {
+                enabled = false;
+                LogFactory.getLog(MetricsServiceImpl.class).error(
+                        "Cannot open time series, disabling: " + this, e);
+                return;
+            }
+            reporter.start(period, TimeUnit.SECONDS);
+            register = new MetricRegister();
+            register.registerMXBean(reporter, "timeSeries",
+                    TimeSeriesReporterMXBean.class, "Feature");
+        }
+
+        public void disable(MetricRegistry registry) {
+            if (reporter == null) {
+                return;
+            }
+            try {
+                register.unregisterAll();
+                reporter.stop();
+            } finally {
+                reporter = null;
+                register = null;
+            }
+        }
+    }
+
+    /**
+     * Times the runtime hot paths and collects the boot profile.
+     * <p>
+     * Only the {@value #ENABLED_PROPERTY} property installs it before the
+     * components are activated, when enabled by a contribution the profile
+     * misses the earlier activations and is reported as not complete.
+     *
+     * @since 7.1
+     */
+    @XObject(value = "runtimeInstrumentation")
+    public static class RuntimeInstrumentationDescriptor {
+
+        public static final String ENABLED_PROPERTY = "metrics.runtime.enabled";
+
+        public static final String OUTPUT_PROPERTY = "metrics.runtime.output";
+
+        @XNode("@enabled")
+        protected boolean enabled = Boolean.parseBoolean(Framework.getProperty(
+                ENABLED_PROPERTY, "false"));
+
+        /**
+         * File where the boot profile is written once the application is
+         * started, none by default.
+         */
+        @XNode("@output")
+        protected String output = Framework.getProperty(OUTPUT_PROPERTY);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("runtimeInstrumentation %s",
+                    enabled ? "enabled" : "disabled");
+        }
+    }
+
     @XNode("graphiteReporter")
     public GraphiteDescriptor graphiteReporter = new GraphiteDescriptor();
 
@@ -377,9 +517,21 @@ public class MetricsDescriptor implements Serializable {
     @XNode("tomcatInstrumentation")
     public TomcatInstrumentationDescriptor tomcatInstrumentation = new TomcatInstrumentationDescriptor();
 
+    /**
+     * @since 7.1
+     */
+    @XNode("timeSeriesReporter")
+    public TimeSeriesDescriptor timeSeriesReporter = new TimeSeriesDescriptor();
+
     @XNode(value = "jvmInstrumentation")
     public JvmInstrumentationDescriptor jvmInstrumentation = new JvmInstrumentationDescriptor();
 
+    /**
+     * @since 7.1
+     */
+    @XNode(value = "runtimeInstrumentation")
+    public RuntimeInstrumentationDescriptor runtimeInstrumentation = new RuntimeInstrumentationDescriptor();
+
     protected JmxReporter jmxReporter;
 
     public void enable(MetricRegistry registry) {
@@ -387,6 +539,7 @@ public class MetricsDescriptor implements Serializable {
         jmxReporter.start();
         graphiteReporter.enable(registry);
         csvReporter.enable(registry);
+        timeSeriesReporter.enable(registry);
         log4jInstrumentation.enable(registry);
         tomcatInstrumentation.enable(registry);
         jvmInstrumentation.enable(registry);
@@ -396,6 +549,7 @@ public class MetricsDescriptor implements Serializable {
         try {
             graphiteReporter.disable(registry);
             csvReporter.disable(registry);
+            timeSeriesReporter.disable(registry);
             log4jInstrumentation.disable(registry);
             tomcatInstrumentation.disable(registry);
             jvmInstrumentation.disable(registry);
@@ -16,33 +16,126 @@
  */
 package org.nuxeo.runtime.metrics;
 
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.RuntimeInstrumentation;
+import org.nuxeo.runtime.management.metrics.MetricRegister;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SharedMetricRegistries;
 
 public class MetricsServiceImpl extends DefaultComponent implements
         MetricsService {
 
     protected static final Log log = LogFactory.getLog(MetricsServiceImpl.class);
 
-    protected MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+    protected MetricRegistry registry = RuntimeMetrics.registry();
 
-    private final Counter instanceUp = registry.counter(MetricRegistry.name("nuxeo", "instance-up"));
+    private final Counter instanceUp = RuntimeMetrics.forComponent("nuxeo").counter(
+            MetricName.of("instance-up"));
 
     protected static final String CONFIGURATION_EP = "configuration";
 
     public static MetricsDescriptor config;
 
+    protected RuntimeMetricsInstrumentation instrumentation;
+
+    protected MetricRegister register;
+
     public MetricsServiceImpl() {
         super();
     }
 
+    @Override
+    public void activate(ComponentContext context) {
+        // profile the boot as soon as possible if enabled by properties
+        updateInstrumentation(new MetricsDescriptor(), true);
+    }
+
+    /**
+     * Installs or removes the runtime instrumentation according to the
+     * configuration.
+     *
+     * @param boot {@code true} when called on activation, contributions come
+     *            after components of other bundles were activated
+     * @since 7.1
+     */
+    protected void updateInstrumentation(MetricsDescriptor descriptor,
+            boolean boot) {
+        boolean enabled = descriptor.runtimeInstrumentation.isEnabled();
+        if (enabled && instrumentation == null) {
+            instrumentation = new RuntimeMetricsInstrumentation(registry, boot);
+            RuntimeInstrumentation.install(instrumentation);
+            if (boot) {
+                log.debug("Runtime instrumentation installed");
+            } else {
+                log.info("Runtime instrumentation enabled by configuration, "
+                        + "the components activated before are not profiled. "
+                        + "Set the "
+                        + MetricsDescriptor.RuntimeInstrumentationDescriptor.ENABLED_PROPERTY
+                        + " property to profile the whole boot");
+            }
+        } else if (!enabled && instrumentation != null) {
+            removeInstrumentation();
+        }
+    }
+
+    protected void removeInstrumentation() {
+        if (instrumentation == null) {
+            return;
+        }
+        try {
+            if (register != null) {
+                register.unregisterAll();
+                register = null;
+            }
+            if (RuntimeInstrumentation.get() == instrumentation) {
+                RuntimeInstrumentation.install(null);
+            }
+            instrumentation.dispose();
+        } finally {
+            instrumentation = null;
+        }
+    }
+
+    /**
+     * Publishes the boot profile through JMX and in the configured output
+     * file.
+     *
+     * @since 7.1
+     */
+    protected void publishBootProfile() {
+        if (instrumentation == null) {
+            return;
+        }
+        register = new MetricRegister();
+        register.registerMXBean(instrumentation, "runtimeProfile",
+                RuntimeProfileMXBean.class, "Feature");
+        String output = config.runtimeInstrumentation.getOutput();
+        if (output == null || output.isEmpty()) {
+            return;
+        }
+        File file = new File(output);
+        try {
+            FileUtils.writeStringToFile(file, instrumentation.getBootProfile(),
+                    "UTF-8");
+            log.info("Boot profile written to " + file);
+        } catch (IOException e) {
+            log.warn("Cannot write boot profile to " + file, e);
+        }
+    }
+
+    public RuntimeMetricsInstrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
     @Override
     public void registerContribution(Object contribution,
             String extensionPoint, ComponentInstance contributor)
@@ -51,6 +144,7 @@ public class MetricsServiceImpl extends DefaultComponent implements
                 && contribution instanceof MetricsDescriptor) {
             log.debug("Registering metrics contribution");
             config = (MetricsDescriptor) contribution;
+            updateInstrumentation(config, false);
         } else {
             log.warn("Unknown EP " + extensionPoint);
         }
@@ -59,6 +153,7 @@ public class MetricsServiceImpl extends DefaultComponent implements
     @Override
     public void deactivate(ComponentContext context) {
         try {
+            removeInstrumentation();
             config.disable(registry);
         } finally {
             instanceUp.dec();
@@ -75,6 +170,7 @@ public class MetricsServiceImpl extends DefaultComponent implements
         log.info("Setting up metrics configuration");
         config.enable(registry);
         instanceUp.inc();
+        publishBootProfile();
     }
 
 }
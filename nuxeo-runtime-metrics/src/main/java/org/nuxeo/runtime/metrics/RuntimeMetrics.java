@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * Entry point to the runtime metrics.
+ * <p>
+ * Subsystems get their own partition and keep the handles of their metrics,
+ * so that hot paths neither build names nor look them up:
+ *
+ * <pre>
+ * static final ComponentMetrics metrics = RuntimeMetrics.forComponent("nuxeo",
+ *         "transactions");
+ *
+ * static final Counter rollbacks = metrics.counter(MetricName.of("rollbacks"));
+ * </pre>
+ *
+ * @since 7.1
+ */
+public class RuntimeMetrics {
+
+    protected static final ConcurrentMap<MetricName, ComponentMetrics> partitions = new ConcurrentHashMap<MetricName, ComponentMetrics>();
+
+    private RuntimeMetrics() {
+    }
+
+    /**
+     * Returns the shared registry, holding the metrics of all the partitions.
+     */
+    public static MetricRegistry registry() {
+        return SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+    }
+
+    /**
+     * Returns the partition whose metrics are prefixed by the given name.
+     */
+    public static ComponentMetrics forComponent(String name, String... names) {
+        MetricName prefix = MetricName.of(name, names);
+        ComponentMetrics metrics = partitions.get(prefix);
+        if (metrics == null) {
+            ComponentMetrics previous = partitions.putIfAbsent(prefix,
+                    metrics = new ComponentMetrics(prefix, registry()));
+            if (previous != null) {
+                metrics = previous;
+            }
+        }
+        return metrics;
+    }
+
+    public static Collection<ComponentMetrics> getPartitions() {
+        return partitions.values();
+    }
+
+    /**
+     * Returns a filter excluding the metrics of the given partitions.
+     */
+    public static MetricFilter excluding(final ComponentMetrics... excluded) {
+        return new MetricFilter() {
+
+            @Override
+            public boolean matches(String name, Metric metric) {
+                for (ComponentMetrics partition : excluded) {
+                    if (partition.contains(metric)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a filter only including the metrics of the given partitions.
+     */
+    public static MetricFilter including(final ComponentMetrics... included) {
+        return new MetricFilter() {
+
+            @Override
+            public boolean matches(String name, Metric metric) {
+                for (ComponentMetrics partition : included) {
+                    if (partition.contains(metric)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.runtime.RuntimeInstrumentation;
+import org.nuxeo.runtime.model.ComponentName;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Runtime instrumentation feeding the metrics registry and collecting the
+ * boot profile.
+ * <p>
+ * Each instrumented point is reported as a timer named
+ * {@code nuxeo.runtime.<point>.<subject>}, service lookups as the
+ * {@code nuxeo.runtime.service.lookups} and
+ * {@code nuxeo.runtime.service.misses} counters.
+ *
+ * @since 7.1
+ */
+public class RuntimeMetricsInstrumentation extends RuntimeInstrumentation
+        implements RuntimeProfileMXBean {
+
+    public static final String PREFIX = "nuxeo.runtime";
+
+    protected static class Entry {
+
+        protected final com.codahale.metrics.Timer timer;
+
+        protected final AtomicLong count = new AtomicLong();
+
+        protected final AtomicLong nanos = new AtomicLong();
+
+        protected Entry(com.codahale.metrics.Timer timer) {
+            this.timer = timer;
+        }
+
+        protected void update(long elapsed) {
+            timer.update(elapsed, TimeUnit.NANOSECONDS);
+            count.incrementAndGet();
+            nanos.addAndGet(elapsed);
+        }
+    }
+
+    protected class EntryTimer implements RuntimeInstrumentation.Timer {
+
+        protected final Entry entry;
+
+        protected final long start = System.nanoTime();
+
+        protected EntryTimer(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void stop() {
+            entry.update(System.nanoTime() - start);
+        }
+    }
+
+    protected final MetricRegistry registry;
+
+    protected final Map<Point, ConcurrentMap<String, Entry>> entries = new EnumMap<Point, ConcurrentMap<String, Entry>>(
+            Point.class);
+
+    protected final ConcurrentMap<String, AtomicLong> misses = new ConcurrentHashMap<String, AtomicLong>();
+
+    protected final Counter lookupCounter;
+
+    protected final Counter missCounter;
+
+    /**
+     * Whether the instrumentation was installed early enough to see all the
+     * component activations.
+     */
+    protected final boolean complete;
+
+    public RuntimeMetricsInstrumentation(MetricRegistry registry) {
+        this(registry, true);
+    }
+
+    /**
+     * @param complete {@code false} if components were already activated
+     *            when installed
+     */
+    public RuntimeMetricsInstrumentation(MetricRegistry registry,
+            boolean complete) {
+        this.registry = registry;
+        this.complete = complete;
+        for (Point point : Point.values()) {
+            entries.put(point, new ConcurrentHashMap<String, Entry>());
+        }
+        lookupCounter = registry.counter(MetricRegistry.name(PREFIX,
+                "service", "lookups"));
+        missCounter = registry.counter(MetricRegistry.name(PREFIX, "service",
+                "misses"));
+    }
+
+    protected static String subjectName(Object subject) {
+        if (subject instanceof ComponentName) {
+            return ((ComponentName) subject).getName();
+        }
+        if (subject instanceof Class) {
+            return ((Class<?>) subject).getName();
+        }
+        return String.valueOf(subject);
+    }
+
+    protected Entry entry(Point point, Object subject) {
+        ConcurrentMap<String, Entry> map = entries.get(point);
+        String name = subjectName(subject);
+        Entry entry = map.get(name);
+        if (entry == null) {
+            com.codahale.metrics.Timer timer = registry.timer(MetricRegistry.name(
+                    PREFIX, point.name().toLowerCase(), name));
+            Entry previous = map.putIfAbsent(name, entry = new Entry(timer));
+            if (previous != null) {
+                entry = previous;
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public RuntimeInstrumentation.Timer start(Point point, Object subject) {
+        return new EntryTimer(entry(point, subject));
+    }
+
+    @Override
+    public void serviceLookup(Class<?> serviceClass, boolean found) {
+        lookupCounter.inc();
+        if (found) {
+            return;
+        }
+        missCounter.inc();
+        AtomicLong count = misses.get(serviceClass.getName());
+        if (count == null) {
+            AtomicLong previous = misses.putIfAbsent(serviceClass.getName(),
+                    count = new AtomicLong());
+            if (previous != null) {
+                count = previous;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    @Override
+    public long getServiceLookups() {
+        return lookupCounter.getCount();
+    }
+
+    @Override
+    public long getServiceLookupMisses() {
+        return missCounter.getCount();
+    }
+
+    @Override
+    public void reset() {
+        for (Map<String, Entry> map : entries.values()) {
+            map.clear();
+        }
+        misses.clear();
+        lookupCounter.dec(lookupCounter.getCount());
+        missCounter.dec(missCounter.getCount());
+        registry.removeMatching(new MetricFilter() {
+
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return metric instanceof com.codahale.metrics.Timer
+                        && name.startsWith(PREFIX + ".");
+            }
+        });
+    }
+
+    /**
+     * Removes the metrics published by this instrumentation.
+     */
+    public void dispose() {
+        registry.removeMatching(new MetricFilter() {
+
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return name.startsWith(PREFIX + ".");
+            }
+        });
+    }
+
+    @Override
+    public String getBootProfile() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"complete\": ").append(complete).append(",\n");
+        for (Point point : Point.values()) {
+            sb.append("  \"").append(point.name().toLowerCase()).append(
+                    "\": [");
+            List<Map.Entry<String, Entry>> sorted = new ArrayList<Map.Entry<String, Entry>>(
+                    entries.get(point).entrySet());
+            Collections.sort(sorted, new Comparator<Map.Entry<String, Entry>>() {
+
+                @Override
+                public int compare(Map.Entry<String, Entry> e1,
+                        Map.Entry<String, Entry> e2) {
+                    return Long.compare(e2.getValue().nanos.get(),
+                            e1.getValue().nanos.get());
+                }
+            });
+            String sep = "\n";
+            for (Map.Entry<String, Entry> each : sorted) {
+                sb.append(sep).append("    {\"name\": ");
+                appendString(sb, each.getKey());
+                sb.append(", \"count\": ").append(each.getValue().count.get());
+                sb.append(", \"millis\": ").append(
+                        TimeUnit.NANOSECONDS.toMillis(each.getValue().nanos.get()));
+                sb.append('}');
+                sep = ",\n";
+            }
+            sb.append(sorted.isEmpty() ? "" : "\n  ").append("],\n");
+        }
+        sb.append("  \"serviceLookups\": {\"count\": ").append(
+                getServiceLookups());
+        sb.append(", \"misses\": ").append(getServiceLookupMisses());
+        sb.append(", \"missed\": {");
+        String sep = "";
+        for (Map.Entry<String, AtomicLong> each : misses.entrySet()) {
+            sb.append(sep);
+            appendString(sb, each.getKey());
+            sb.append(": ").append(each.getValue().get());
+            sep = ", ";
+        }
+        sb.append("}}\n}\n");
+        return sb.toString();
+    }
+
+    protected static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+                sb.append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+}
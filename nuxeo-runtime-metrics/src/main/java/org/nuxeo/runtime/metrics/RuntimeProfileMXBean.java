@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+/**
+ * Management interface of the runtime instrumentation.
+ *
+ * @since 7.1
+ */
+public interface RuntimeProfileMXBean {
+
+    /**
+     * Returns the boot profile as a JSON document, listing for each component
+     * the time spent in activation, application started notification,
+     * extension registration, and for each contribution registry the time
+     * spent merging contributions.
+     */
+    String getBootProfile();
+
+    long getServiceLookups();
+
+    long getServiceLookupMisses();
+
+    void reset();
+
+}
@@ -0,0 +1,173 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Reporter appending all the metrics of a registry to a local
+ * {@link TimeSeriesStore}.
+ * <p>
+ * Gauges are stored when numeric, counters as their count, histograms as
+ * their count, mean and 99th percentile, meters as their count and one
+ * minute rate, timers as their count, one minute rate, mean and 99th
+ * percentile in milliseconds. Each value is stored under the metric name
+ * suffixed by the value kind, e.g. {@code nuxeo.requests.p99}.
+ *
+ * @since 7.1
+ */
+public class TimeSeriesReporter extends ScheduledReporter implements
+        TimeSeriesReporterMXBean {
+
+    private static final Log log = LogFactory.getLog(TimeSeriesReporter.class);
+
+    protected final TimeSeriesStore store;
+
+    protected final double durationFactor = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+
+    public TimeSeriesReporter(MetricRegistry registry, TimeSeriesStore store) {
+        super(registry, "timeseries-reporter", MetricFilter.ALL,
+                TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+        this.store = store;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void report(SortedMap<String, Gauge> gauges,
+            SortedMap<String, Counter> counters,
+            SortedMap<String, Histogram> histograms,
+            SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        Map<String, Double> values = new HashMap<String, Double>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            Object value;
+            try {
+                value = entry.getValue().getValue();
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (value instanceof Number) {
+                double d = ((Number) value).doubleValue();
+                if (!Double.isNaN(d)) {
+                    values.put(entry.getKey(), Double.valueOf(d));
+                }
+            }
+        }
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            put(values, entry.getKey(), "count", entry.getValue().getCount());
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            Snapshot snapshot = histogram.getSnapshot();
+            put(values, entry.getKey(), "count", histogram.getCount());
+            put(values, entry.getKey(), "mean", snapshot.getMean());
+            put(values, entry.getKey(), "p99", snapshot.get99thPercentile());
+        }
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+            Meter meter = entry.getValue();
+            put(values, entry.getKey(), "count", meter.getCount());
+            put(values, entry.getKey(), "m1_rate", meter.getOneMinuteRate());
+        }
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            Snapshot snapshot = timer.getSnapshot();
+            put(values, entry.getKey(), "count", timer.getCount());
+            put(values, entry.getKey(), "m1_rate", timer.getOneMinuteRate());
+            put(values, entry.getKey(), "mean", snapshot.getMean()
+                    * durationFactor);
+            put(values, entry.getKey(), "p99", snapshot.get99thPercentile()
+                    * durationFactor);
+        }
+        try {
+            store.append(System.currentTimeMillis(), values);
+        } catch (IOException e) {
+            log.error("Cannot append metrics to " + store.directory, e);
+        }
+    }
+
+    protected static void put(Map<String, Double> values, String name,
+            String kind, double value) {
+        values.put(name + "." + kind, Double.valueOf(value));
+    }
+
+    @Override
+    public void stop() {
+        try {
+            super.stop();
+        } finally {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.warn("Cannot close " + store.directory, e);
+            }
+        }
+    }
+
+    public TimeSeriesStore getStore() {
+        return store;
+    }
+
+    @Override
+    public String getDirectory() {
+        return store.directory.getAbsolutePath();
+    }
+
+    @Override
+    public List<String> getMetricNames() {
+        return store.getNames();
+    }
+
+    @Override
+    public String getSeries(String name, long from, long to)
+            throws IOException {
+        return toCSV(store.query(name, from, to, null));
+    }
+
+    @Override
+    public String getSeriesAt(String name, long from, long to,
+            String resolution) throws IOException {
+        return toCSV(store.query(name, from, to,
+                TimeSeriesStore.Resolution.valueOf(resolution.toUpperCase())));
+    }
+
+    protected static String toCSV(TimeSeriesStore.Series series) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < series.size; i++) {
+            sb.append(series.timestamps[i]).append(',').append(
+                    series.values[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+}
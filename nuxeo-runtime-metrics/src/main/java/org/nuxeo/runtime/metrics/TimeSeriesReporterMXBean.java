@@ -0,0 +1,47 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Management interface of the local time-series reporter.
+ *
+ * @since 7.1
+ */
+public interface TimeSeriesReporterMXBean {
+
+    String getDirectory();
+
+    List<String> getMetricNames();
+
+    /**
+     * Returns the series of a metric between two epoch millis as CSV lines of
+     * timestamp and value, using the finest resolution retained for the
+     * range.
+     */
+    String getSeries(String name, long from, long to) throws IOException;
+
+    /**
+     * Same as {@link #getSeries(String, long, long)} for the given resolution,
+     * one of raw, minute or hour.
+     */
+    String getSeriesAt(String name, long from, long to, String resolution)
+            throws IOException;
+
+}
@@ -0,0 +1,689 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Local time-series storage backing the {@link TimeSeriesReporter}.
+ * <p>
+ * Values are stored in memory-mapped files per day and per resolution, under
+ * {@code <directory>/<resolution>/<yyyyMMdd>.tsd} (UTC days). A file rolls
+ * over to {@code <yyyyMMdd>-1.tsd}, {@code <yyyyMMdd>-2.tsd}... once it
+ * reaches the segment size. Each file starts with a header holding the day
+ * and the end of the written data, followed by frames: the frame timestamp,
+ * the number of values, the column of the metric identifiers, then the column
+ * of the values. Metric names are mapped to identifiers once for all in
+ * {@code metrics.names}, one name per line.
+ * <p>
+ * The columns are per frame rather than per file: frames are appended as
+ * sampled and the set of metrics changes over time, so a whole-file column
+ * per metric would need rewriting the file. A query only reads the
+ * identifiers column of each frame in range, and a single value.
+ * <p>
+ * Raw values are downsampled on the fly to one minute and one hour averages,
+ * each resolution having its own retention in days. The averages of the
+ * current minute and hour are saved in {@code buckets.state} on close and
+ * resumed when reopened.
+ *
+ * @since 7.1
+ */
+public class TimeSeriesStore implements Closeable {
+
+    private static final Log log = LogFactory.getLog(TimeSeriesStore.class);
+
+    public enum Resolution {
+        RAW(0), MINUTE(60 * 1000L), HOUR(60 * 60 * 1000L);
+
+        public final long step;
+
+        Resolution(long step) {
+            this.step = step;
+        }
+    }
+
+    public static final long DAY = 24 * 60 * 60 * 1000L;
+
+    protected static final int MAGIC = 0x4e585453; // NXTS
+
+    protected static final int VERSION = 1;
+
+    // magic, version, day, end
+    protected static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    protected static final int END_OFFSET = 16;
+
+    protected static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Default size over which a day file rolls over, a mapping being limited
+     * to 2 GB.
+     */
+    protected static final long SEGMENT_SIZE = 1024 * 1024 * 1024L;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Points of a series.
+     */
+    public static class Series {
+
+        public final String name;
+
+        public final Resolution resolution;
+
+        public long[] timestamps = new long[16];
+
+        public double[] values = new double[16];
+
+        public int size;
+
+        public Series(String name, Resolution resolution) {
+            this.name = name;
+            this.resolution = resolution;
+        }
+
+        protected void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    /**
+     * Day file of a resolution being appended to.
+     */
+    protected class Segment {
+
+        protected final long day;
+
+        protected final int index;
+
+        protected final FileChannel channel;
+
+        protected MappedByteBuffer buffer;
+
+        protected Segment(File file, long day, int index) throws IOException {
+            this.day = day;
+            this.index = index;
+            file.getParentFile().mkdirs();
+            boolean exists = file.length() >= HEADER_SIZE;
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            long size = Math.max(Math.min(CHUNK_SIZE, segmentSize),
+                    channel.size());
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            long end = -1;
+            if (exists && buffer.getInt(0) == MAGIC) {
+                end = buffer.getLong(END_OFFSET);
+            }
+            if (end < HEADER_SIZE || end > size) {
+                if (exists) {
+                    log.warn("Overwriting invalid time series file: " + file);
+                }
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(8, day);
+                buffer.putLong(END_OFFSET, HEADER_SIZE);
+                end = HEADER_SIZE;
+            }
+            buffer.position((int) end);
+        }
+
+        /**
+         * Makes room for a frame.
+         *
+         * @return {@code false} if the frame does not fit in the segment size
+         */
+        protected boolean ensureCapacity(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return true;
+            }
+            int position = buffer.position();
+            if (position + (long) length > segmentSize) {
+                return false;
+            }
+            long size = Math.min(
+                    Math.max(buffer.capacity() * 2L, position + length),
+                    segmentSize);
+            MappedByteBuffer previous = buffer;
+            previous.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(position);
+            unmap(previous);
+            return true;
+        }
+
+        protected void append(long timestamp, int[] ids, double[] values,
+                int count) {
+            buffer.putLong(timestamp);
+            buffer.putInt(count);
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(ids[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                buffer.putDouble(values[i]);
+            }
+            // publish the frame only once fully written
+            buffer.putLong(END_OFFSET, buffer.position());
+        }
+
+        protected void close() throws IOException {
+            try {
+                buffer.force();
+                unmap(buffer);
+                buffer = null;
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Averages of the current time bucket of a downsampled resolution.
+     */
+    protected static class Bucket {
+
+        protected long start = -1;
+
+        protected double[] sums = new double[64];
+
+        protected int[] counts = new int[64];
+
+        protected void add(int id, double value) {
+            if (id >= sums.length) {
+                int length = Math.max(sums.length * 2, id + 1);
+                sums = Arrays.copyOf(sums, length);
+                counts = Arrays.copyOf(counts, length);
+            }
+            sums[id] += value;
+            counts[id]++;
+        }
+
+        protected void clear() {
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+        }
+
+        protected void write(DataOutputStream out) throws IOException {
+            out.writeLong(start);
+            int count = 0;
+            for (int id = 0; id < counts.length; id++) {
+                if (counts[id] > 0) {
+                    count++;
+                }
+            }
+            out.writeInt(count);
+            for (int id = 0; id < counts.length; id++) {
+                if (counts[id] > 0) {
+                    out.writeInt(id);
+                    out.writeDouble(sums[id]);
+                    out.writeInt(counts[id]);
+                }
+            }
+        }
+
+        protected void read(DataInputStream in) throws IOException {
+            start = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) {
+                int id = in.readInt();
+                double sum = in.readDouble();
+                int count = in.readInt();
+                add(id, 0);
+                sums[id] = sum;
+                counts[id] = count;
+            }
+        }
+    }
+
+    protected final File directory;
+
+    protected final Map<Resolution, Integer> retentionDays = new EnumMap<Resolution, Integer>(
+            Resolution.class);
+
+    protected final Map<Resolution, Segment> segments = new EnumMap<Resolution, Segment>(
+            Resolution.class);
+
+    protected final Map<Resolution, Bucket> buckets = new EnumMap<Resolution, Bucket>(
+            Resolution.class);
+
+    protected final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    protected final List<String> names = new ArrayList<String>();
+
+    protected Writer namesWriter;
+
+    /**
+     * Size over which a day file rolls over.
+     */
+    protected long segmentSize = SEGMENT_SIZE;
+
+    public TimeSeriesStore(File directory, int rawRetentionDays,
+            int minuteRetentionDays, int hourRetentionDays) throws IOException {
+        this.directory = directory;
+        retentionDays.put(Resolution.RAW, rawRetentionDays);
+        retentionDays.put(Resolution.MINUTE, minuteRetentionDays);
+        retentionDays.put(Resolution.HOUR, hourRetentionDays);
+        buckets.put(Resolution.MINUTE, new Bucket());
+        buckets.put(Resolution.HOUR, new Bucket());
+        directory.mkdirs();
+        loadNames();
+        loadBuckets();
+        purge(System.currentTimeMillis());
+    }
+
+    protected File namesFile() {
+        return new File(directory, "metrics.names");
+    }
+
+    protected void loadNames() throws IOException {
+        File file = namesFile();
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), UTF8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    ids.put(line, names.size());
+                    names.add(line);
+                }
+            }
+        }
+        namesWriter = new OutputStreamWriter(new FileOutputStream(file, true),
+                UTF8);
+    }
+
+    protected File bucketsFile() {
+        return new File(directory, "buckets.state");
+    }
+
+    /**
+     * Resumes the downsampled averages saved on close. The file is removed
+     * once read so that it is never resumed twice.
+     */
+    protected void loadBuckets() throws IOException {
+        File file = bucketsFile();
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                Bucket bucket = buckets.get(Resolution.valueOf(in.readUTF()));
+                bucket.read(in);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Cannot resume downsampled values from " + file, e);
+            for (Bucket bucket : buckets.values()) {
+                bucket.clear();
+                bucket.start = -1;
+            }
+        }
+        if (!file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    protected void saveBuckets() throws IOException {
+        File file = bucketsFile();
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(buckets.size());
+            for (Map.Entry<Resolution, Bucket> entry : buckets.entrySet()) {
+                out.writeUTF(entry.getKey().name());
+                entry.getValue().write(out);
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+    }
+
+    protected int id(String name) throws IOException {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            namesWriter.write(name.replace('\n', ' '));
+            namesWriter.write('\n');
+            namesWriter.flush();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    protected static String dayName(long day) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(day * DAY));
+    }
+
+    protected File file(Resolution resolution, long day, int index) {
+        return new File(new File(directory, resolution.name().toLowerCase()),
+                dayName(day) + (index == 0 ? "" : "-" + index) + ".tsd");
+    }
+
+    /**
+     * Gets the segment to append a frame of the given length to, rolling over
+     * to a new file when the current one is full.
+     */
+    protected Segment segment(Resolution resolution, long timestamp,
+            int length) throws IOException {
+        long day = timestamp / DAY;
+        Segment segment = segments.get(resolution);
+        if (segment != null && segment.day == day
+                && segment.ensureCapacity(length)) {
+            return segment;
+        }
+        int index = 0;
+        if (segment != null) {
+            segments.remove(resolution);
+            segment.close();
+            if (segment.day == day) {
+                index = segment.index + 1;
+            } else {
+                purge(timestamp);
+            }
+        }
+        while (true) {
+            segment = new Segment(file(resolution, day, index), day, index);
+            if (segment.ensureCapacity(length)) {
+                break;
+            }
+            boolean empty = segment.buffer.position() == HEADER_SIZE;
+            segment.close();
+            if (empty) {
+                throw new IOException("Frame of " + length
+                        + " bytes larger than the segment size " + segmentSize);
+            }
+            index++;
+        }
+        segments.put(resolution, segment);
+        return segment;
+    }
+
+    protected static int frameLength(int count) {
+        return 8 + 4 + count * (4 + 8);
+    }
+
+    protected void append(Resolution resolution, long timestamp, int[] ids,
+            double[] values, int count) throws IOException {
+        segment(resolution, timestamp, frameLength(count)).append(timestamp,
+                ids, values, count);
+    }
+
+    /**
+     * Appends the raw values sampled at the given time and feeds the
+     * downsampled resolutions.
+     */
+    public synchronized void append(long timestamp, Map<String, Double> values)
+            throws IOException {
+        int[] frameIds = new int[values.size()];
+        double[] frameValues = new double[values.size()];
+        int count = 0;
+        for (Map.Entry<String, Double> entry : values.entrySet()) {
+            frameIds[count] = id(entry.getKey());
+            frameValues[count] = entry.getValue().doubleValue();
+            count++;
+        }
+        append(Resolution.RAW, timestamp, frameIds, frameValues, count);
+        for (Map.Entry<Resolution, Bucket> entry : buckets.entrySet()) {
+            Resolution resolution = entry.getKey();
+            Bucket bucket = entry.getValue();
+            long start = timestamp - timestamp % resolution.step;
+            if (bucket.start != start) {
+                flush(resolution, bucket);
+                bucket.start = start;
+            }
+            for (int i = 0; i < count; i++) {
+                bucket.add(frameIds[i], frameValues[i]);
+            }
+        }
+    }
+
+    protected void flush(Resolution resolution, Bucket bucket)
+            throws IOException {
+        if (bucket.start < 0) {
+            return;
+        }
+        int[] frameIds = new int[bucket.sums.length];
+        double[] frameValues = new double[bucket.sums.length];
+        int count = 0;
+        for (int id = 0; id < bucket.sums.length; id++) {
+            if (bucket.counts[id] > 0) {
+                frameIds[count] = id;
+                frameValues[count] = bucket.sums[id] / bucket.counts[id];
+                count++;
+            }
+        }
+        if (count > 0) {
+            append(resolution, bucket.start, frameIds, frameValues, count);
+        }
+        bucket.clear();
+        bucket.start = -1;
+    }
+
+    /**
+     * Deletes the day files older than the retention of their resolution.
+     */
+    protected void purge(long now) {
+        for (Resolution resolution : Resolution.values()) {
+            File[] files = new File(directory, resolution.name().toLowerCase()).listFiles();
+            if (files == null) {
+                continue;
+            }
+            String oldest = dayName(now / DAY - retentionDays.get(resolution));
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(".tsd")
+                        && name.length() >= oldest.length()
+                        && name.substring(0, oldest.length()).compareTo(oldest) < 0) {
+                    if (!file.delete()) {
+                        log.warn("Cannot delete expired series " + file);
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized List<String> getNames() {
+        return new ArrayList<String>(names);
+    }
+
+    /**
+     * Picks the finest resolution still retained for the whole range and not
+     * returning too many points.
+     */
+    public Resolution resolutionFor(long from, long to) {
+        long now = System.currentTimeMillis();
+        long span = to - from;
+        if (span <= 6 * 60 * 60 * 1000L
+                && from >= (now / DAY - retentionDays.get(Resolution.RAW)) * DAY) {
+            return Resolution.RAW;
+        }
+        if (span <= 7 * DAY
+                && from >= (now / DAY - retentionDays.get(Resolution.MINUTE)) * DAY) {
+            return Resolution.MINUTE;
+        }
+        return Resolution.HOUR;
+    }
+
+    /**
+     * Fetches the series of a metric in the given time range, bounds
+     * included.
+     *
+     * @param resolution the resolution, or {@code null} to pick one
+     *            according to the range
+     */
+    public synchronized Series query(String name, long from, long to,
+            Resolution resolution) throws IOException {
+        if (resolution == null) {
+            resolution = resolutionFor(from, to);
+        }
+        Series series = new Series(name, resolution);
+        Integer id = ids.get(name);
+        if (id == null) {
+            return series;
+        }
+        for (long day = from / DAY; day <= to / DAY; day++) {
+            for (int index = 0;; index++) {
+                File file = file(resolution, day, index);
+                if (!file.exists()) {
+                    break;
+                }
+                scan(file, id.intValue(), from, to, series);
+            }
+        }
+        return series;
+    }
+
+    protected void scan(File file, int id, long from, long to, Series series)
+            throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            if (channel.size() < HEADER_SIZE) {
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                scan(file, buffer, id, from, to, series);
+            } finally {
+                unmap(buffer);
+            }
+        }
+    }
+
+    protected void scan(File file, MappedByteBuffer buffer, int id,
+            long from, long to, Series series) {
+        if (buffer.getInt(0) != MAGIC) {
+            log.warn("Not a time series file: " + file);
+            return;
+        }
+        long end = buffer.getLong(END_OFFSET);
+        if (end > buffer.capacity()) {
+            log.warn("Truncated time series file: " + file);
+            return;
+        }
+        int position = HEADER_SIZE;
+        while (position < end) {
+            long timestamp = buffer.getLong(position);
+            int count = buffer.getInt(position + 8);
+            int idsOffset = position + 12;
+            int valuesOffset = idsOffset + count * 4;
+            if (count < 0 || position + (long) frameLength(count) > end) {
+                log.warn("Corrupted frame at " + position + " in " + file);
+                return;
+            }
+            if (timestamp >= from && timestamp <= to) {
+                for (int i = 0; i < count; i++) {
+                    if (buffer.getInt(idsOffset + i * 4) == id) {
+                        series.add(timestamp,
+                                buffer.getDouble(valuesOffset + i * 8));
+                        break;
+                    }
+                }
+            }
+            position += frameLength(count);
+        }
+    }
+
+    /**
+     * Releases the mapping of a buffer now rather than when it is garbage
+     * collected, which keeps the file mapped, and not deletable on Windows.
+     * The buffer must not be used afterwards.
+     */
+    protected static void unmap(MappedByteBuffer buffer) {
+        try {
+            // up to Java 8
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // try the Java 9 way
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(
+                    field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Cannot unmap buffer, left to the garbage collector", e);
+        }
+    }
+
+    /**
+     * Saves the pending downsampled values and closes the files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            saveBuckets();
+        } finally {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            namesWriter.close();
+        }
+    }
+
+}
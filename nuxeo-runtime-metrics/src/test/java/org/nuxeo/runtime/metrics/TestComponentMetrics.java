@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+public class TestComponentMetrics {
+
+    protected final MetricRegistry parent = new MetricRegistry();
+
+    protected final ComponentMetrics metrics = new ComponentMetrics(
+            MetricName.of("test", "component"), parent);
+
+    @Test
+    public void testNamesAreInterned() {
+        MetricName name = MetricName.of("test", "component");
+        assertSame(name, MetricName.of("test.component"));
+        assertSame(MetricName.of("test", "component", "count"),
+                name.resolve("count"));
+        assertEquals("test.component.count", name.resolve("count").toString());
+    }
+
+    @Test
+    public void testHandlesArePublishedInBothRegistries() {
+        MetricName name = MetricName.of("count");
+        Counter counter = metrics.counter(name);
+        assertSame(counter, metrics.counter(name));
+        assertSame(counter, metrics.getRegistry().getMetrics().get("count"));
+        assertSame(counter, parent.getMetrics().get("test.component.count"));
+        assertTrue(metrics.contains(counter));
+        assertTrue(metrics.filter().matches("count", counter));
+        assertFalse(metrics.contains(new Counter()));
+    }
+
+    @Test
+    public void testLegacySharedMetricIsReused() {
+        Counter legacy = parent.counter("test.component.legacy");
+        Counter counter = metrics.counter(MetricName.of("legacy"));
+        assertSame(legacy, counter);
+        assertSame(legacy, metrics.getRegistry().getMetrics().get("legacy"));
+    }
+
+    @Test
+    public void testLocalMetricIsReplacedByTheSharedOne() {
+        Counter legacy = parent.counter("test.component.both");
+        Counter local = metrics.getRegistry().counter("both");
+        Counter counter = metrics.counter(MetricName.of("both"));
+        assertSame(legacy, counter);
+        // no dead instance left in the partition registry
+        assertSame(legacy, metrics.getRegistry().getMetrics().get("both"));
+        assertFalse(metrics.contains(local));
+    }
+
+    @Test
+    public void testLocalMetricIsPublished() {
+        Counter local = metrics.getRegistry().counter("local");
+        assertSame(local, metrics.counter(MetricName.of("local")));
+        assertSame(local, parent.getMetrics().get("test.component.local"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflict() {
+        MetricName name = MetricName.of("conflict");
+        metrics.counter(name);
+        metrics.timer(name);
+    }
+
+    @Test
+    public void testRemove() {
+        MetricName name = MetricName.of("removed");
+        Timer timer = metrics.timer(name);
+        metrics.remove(name);
+        assertFalse(metrics.contains(timer));
+        assertNull(metrics.getRegistry().getMetrics().get("removed"));
+        assertNull(parent.getMetrics().get("test.component.removed"));
+        metrics.counter(MetricName.of("cleared"));
+        metrics.clear();
+        assertTrue(metrics.getRegistry().getMetrics().isEmpty());
+        assertTrue(parent.getMetrics().isEmpty());
+    }
+
+    @Test
+    public void testPartitionFilters() {
+        ComponentMetrics other = new ComponentMetrics(MetricName.of("test",
+                "other"), parent);
+        Counter mine = metrics.counter(MetricName.of("count"));
+        Counter theirs = other.counter(MetricName.of("count"));
+        assertTrue(RuntimeMetrics.including(metrics).matches("", mine));
+        assertFalse(RuntimeMetrics.including(metrics).matches("", theirs));
+        assertFalse(RuntimeMetrics.excluding(metrics).matches("", mine));
+        assertTrue(RuntimeMetrics.excluding(metrics).matches("", theirs));
+    }
+
+}
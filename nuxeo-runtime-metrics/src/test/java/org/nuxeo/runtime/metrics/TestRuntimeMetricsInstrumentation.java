@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.RuntimeInstrumentation.Point;
+import org.nuxeo.runtime.model.ComponentName;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class TestRuntimeMetricsInstrumentation {
+
+    protected MetricRegistry registry;
+
+    protected RuntimeMetricsInstrumentation instrumentation;
+
+    @Before
+    public void setUp() {
+        registry = new MetricRegistry();
+        instrumentation = new RuntimeMetricsInstrumentation(registry);
+    }
+
+    @Test
+    public void testTimers() {
+        ComponentName name = ComponentName.of("service:my.comp");
+        instrumentation.start(Point.ACTIVATE, name).stop();
+        instrumentation.start(Point.ACTIVATE, name).stop();
+        instrumentation.start(Point.REGISTER_EXTENSION, "my.xp").stop();
+        assertEquals(2, registry.timer("nuxeo.runtime.activate.my.comp").getCount());
+        assertEquals(1,
+                registry.timer("nuxeo.runtime.register_extension.my.xp").getCount());
+    }
+
+    @Test
+    public void testServiceLookups() {
+        instrumentation.serviceLookup(String.class, true);
+        instrumentation.serviceLookup(Integer.class, false);
+        instrumentation.serviceLookup(Integer.class, false);
+        assertEquals(3, instrumentation.getServiceLookups());
+        assertEquals(2, instrumentation.getServiceLookupMisses());
+    }
+
+    @Test
+    public void testBootProfile() {
+        instrumentation.start(Point.ACTIVATE,
+                ComponentName.of("service:my.comp")).stop();
+        instrumentation.start(Point.MERGE_CONTRIBUTION, "my \"quoted\" xp").stop();
+        instrumentation.serviceLookup(String.class, true);
+        instrumentation.serviceLookup(Integer.class, false);
+        String profile = instrumentation.getBootProfile();
+        assertTrue(profile.contains("\"complete\": true,"));
+        assertTrue(profile.contains("\"activate\": [\n    {\"name\": \"my.comp\", \"count\": 1, "));
+        assertTrue(profile.contains("{\"name\": \"my \\\"quoted\\\" xp\", \"count\": 1, "));
+        assertTrue(profile.contains("\"application_started\": [],"));
+        assertTrue(profile.contains("\"serviceLookups\": {\"count\": 2, \"misses\": 1, "
+                + "\"missed\": {\"java.lang.Integer\": 1}}"));
+    }
+
+    @Test
+    public void testIncompleteBootProfile() {
+        instrumentation = new RuntimeMetricsInstrumentation(registry, false);
+        assertTrue(instrumentation.getBootProfile().contains(
+                "\"complete\": false,"));
+    }
+
+    @Test
+    public void testResetAndDispose() {
+        instrumentation.start(Point.ACTIVATE, "my.comp").stop();
+        instrumentation.serviceLookup(Integer.class, false);
+        instrumentation.reset();
+        assertEquals(0, instrumentation.getServiceLookups());
+        assertEquals(0, instrumentation.getServiceLookupMisses());
+        assertFalse(registry.getTimers().containsKey(
+                "nuxeo.runtime.activate.my.comp"));
+        assertTrue(instrumentation.getBootProfile().contains(
+                "\"activate\": [],"));
+        instrumentation.dispose();
+        assertTrue(registry.getMetrics().isEmpty());
+    }
+
+}
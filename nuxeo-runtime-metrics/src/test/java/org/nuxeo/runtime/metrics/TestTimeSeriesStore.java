@@ -0,0 +1,182 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *      Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.metrics.TimeSeriesStore.Resolution;
+import org.nuxeo.runtime.metrics.TimeSeriesStore.Series;
+
+public class TestTimeSeriesStore {
+
+    protected File directory;
+
+    protected TimeSeriesStore store;
+
+    /** Start of the current UTC day, kept by the retention. */
+    protected long day;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("timeseries").toFile();
+        day = System.currentTimeMillis() / TimeSeriesStore.DAY
+                * TimeSeriesStore.DAY;
+        store = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        delete(directory);
+    }
+
+    protected TimeSeriesStore open() throws IOException {
+        return new TimeSeriesStore(directory, 1, 1, 1);
+    }
+
+    protected TimeSeriesStore reopen() throws IOException {
+        store.close();
+        return store = open();
+    }
+
+    protected static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    protected void append(long offset, String name, double value)
+            throws IOException {
+        Map<String, Double> values = new HashMap<String, Double>();
+        values.put(name, Double.valueOf(value));
+        values.put("other", Double.valueOf(-value));
+        store.append(day + offset, values);
+    }
+
+    protected static void assertSeries(Series series, long[] timestamps,
+            double[] values) {
+        assertEquals(Arrays.toString(timestamps),
+                Arrays.toString(Arrays.copyOf(series.timestamps, series.size)));
+        assertEquals(Arrays.toString(values),
+                Arrays.toString(Arrays.copyOf(series.values, series.size)));
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        append(0, "a", 1);
+        append(10000, "a", 3);
+        append(70000, "a", 5);
+        assertSeries(store.query("a", day, day + 70000, Resolution.RAW),
+                new long[] { day, day + 10000, day + 70000 }, new double[] {
+                        1, 3, 5 });
+        assertSeries(store.query("a", day + 5000, day + 60000, Resolution.RAW),
+                new long[] { day + 10000 }, new double[] { 3 });
+        assertSeries(store.query("other", day, day + 70000, Resolution.RAW),
+                new long[] { day, day + 10000, day + 70000 }, new double[] {
+                        -1, -3, -5 });
+        // the first minute is written once the second one starts
+        assertSeries(store.query("a", day, day + 70000, Resolution.MINUTE),
+                new long[] { day }, new double[] { 2 });
+        assertEquals(0, store.query("unknown", day, day + 70000, null).size);
+        assertEquals(Arrays.asList("a", "other"), store.getNames());
+    }
+
+    @Test
+    public void testRestart() throws IOException {
+        append(0, "a", 1);
+        append(10000, "a", 3);
+        reopen();
+        assertEquals(Arrays.asList("a", "other"), store.getNames());
+        assertSeries(store.query("a", day, day + 10000, Resolution.RAW),
+                new long[] { day, day + 10000 }, new double[] { 1, 3 });
+        // the minute started before the restart is resumed
+        append(20000, "a", 5);
+        append(70000, "a", 0);
+        assertSeries(store.query("a", day, day + 70000, Resolution.MINUTE),
+                new long[] { day }, new double[] { 3 });
+        reopen();
+        append(60 * 60 * 1000, "a", 0);
+        assertSeries(store.query("a", day, day + 60 * 60 * 1000,
+                Resolution.HOUR), new long[] { day }, new double[] { 9.0 / 4 });
+        assertFalse(new File(directory, "buckets.state").exists());
+    }
+
+    @Test
+    public void testRollover() throws IOException {
+        // room for two frames of two values per file
+        store.segmentSize = TimeSeriesStore.HEADER_SIZE + 2
+                * TimeSeriesStore.frameLength(2);
+        for (int i = 0; i < 5; i++) {
+            append(i * 1000, "a", i);
+        }
+        File raw = new File(directory, "raw");
+        String name = TimeSeriesStore.dayName(day / TimeSeriesStore.DAY);
+        assertTrue(new File(raw, name + ".tsd").exists());
+        assertTrue(new File(raw, name + "-1.tsd").exists());
+        assertTrue(new File(raw, name + "-2.tsd").exists());
+        assertFalse(new File(raw, name + "-3.tsd").exists());
+        Series series = store.query("a", day, day + 5000, Resolution.RAW);
+        assertSeries(series, new long[] { day, day + 1000, day + 2000,
+                day + 3000, day + 4000 }, new double[] { 0, 1, 2, 3, 4 });
+        // appends go to the last file after a restart
+        reopen();
+        store.segmentSize = TimeSeriesStore.HEADER_SIZE + 2
+                * TimeSeriesStore.frameLength(2);
+        append(5000, "a", 5);
+        append(6000, "a", 6);
+        assertTrue(new File(raw, name + "-3.tsd").exists());
+        assertEquals(7, store.query("a", day, day + 6000, Resolution.RAW).size);
+    }
+
+    @Test
+    public void testPurge() throws IOException {
+        File raw = new File(directory, "raw");
+        raw.mkdirs();
+        long today = day / TimeSeriesStore.DAY;
+        File old = new File(raw, TimeSeriesStore.dayName(today - 2) + ".tsd");
+        File oldRolled = new File(raw, TimeSeriesStore.dayName(today - 2)
+                + "-1.tsd");
+        File kept = new File(raw, TimeSeriesStore.dayName(today - 1) + ".tsd");
+        File keptRolled = new File(raw, TimeSeriesStore.dayName(today - 1)
+                + "-1.tsd");
+        for (File file : Arrays.asList(old, oldRolled, kept, keptRolled)) {
+            assertTrue(file.createNewFile());
+        }
+        store.purge(day);
+        assertFalse(old.exists());
+        assertFalse(oldRolled.exists());
+        assertTrue(kept.exists());
+        assertTrue(keptRolled.exists());
+    }
+
+}
@@ -31,6 +31,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -43,16 +46,16 @@ public class BundleIdGenerator {
 
     private static final Log log = LogFactory.getLog(BundleIdGenerator.class);
 
-    private final Map<String, Long> ids = new HashMap<String, Long>();
+    private final ConcurrentMap<String, Long> ids = new ConcurrentHashMap<String, Long>();
 
-    private long count = 0;
+    private final AtomicLong count = new AtomicLong();
 
     public synchronized void load(File file) {
         DataInputStream in = null;
         try {
             in = new DataInputStream(new BufferedInputStream(
                     new FileInputStream(file)));
-            count = in.readLong();
+            count.set(in.readLong());
             int size = in.readInt();
             for (int i = 0; i < size; i++) {
                 String key = in.readUTF();
@@ -80,10 +83,10 @@ public class BundleIdGenerator {
         try {
             out = new DataOutputStream(new BufferedOutputStream(
                 new FileOutputStream(file)));
-            out.writeLong(count);
-            int size = ids.size();
-            out.writeInt(size);
-            for (Map.Entry<String, Long> entry : ids.entrySet()) {
+            Map<String, Long> snapshot = new HashMap<String, Long>(ids);
+            out.writeLong(count.get());
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
                 out.writeUTF(entry.getKey());
                 out.writeLong(entry.getValue());
             }
@@ -94,22 +97,24 @@ public class BundleIdGenerator {
         }
     }
 
-    public synchronized long getBundleId(String name) {
+    public long getBundleId(String name) {
         Long id = ids.get(name);
         if (id == null) {
-            id = count++;
-            ids.put(name, id);
+            // an id may be skipped on contention, ids only need to be unique
+            Long candidate = count.getAndIncrement();
+            Long previous = ids.putIfAbsent(name, candidate);
+            id = previous != null ? previous : candidate;
         }
         return id;
     }
 
-    public synchronized long addBundle(String name) {
-        long id = count++;
+    public long addBundle(String name) {
+        long id = count.getAndIncrement();
         ids.put(name, id);
         return id;
     }
 
-    public synchronized boolean contains(String name) {
+    public boolean contains(String name) {
         return ids.containsKey(name);
     }
 
@@ -61,7 +61,7 @@ public class BundleImpl implements Bundle {
 
     protected final ClassLoader loader;
 
-    protected int state;
+    protected volatile int state;
 
     protected long lastModified;
 
@@ -78,23 +78,33 @@ public class BundleImpl implements Bundle {
 
     public BundleImpl(OSGiAdapter osgi, BundleFile file, ClassLoader loader,
             boolean isSystemBundle) throws BundleException {
+        this(osgi, file, loader, readHeaders(file), isSystemBundle);
+    }
+
+    /**
+     * Creates a bundle from manifest headers read beforehand, without reading
+     * the bundle manifest.
+     *
+     * @since 7.1
+     */
+    public BundleImpl(OSGiAdapter osgi, BundleFile file, ClassLoader loader,
+            Dictionary<String, String> headers) throws BundleException {
+        this(osgi, file, loader, headers, false);
+    }
+
+    protected BundleImpl(OSGiAdapter osgi, BundleFile file,
+            ClassLoader loader, Dictionary<String, String> headers,
+            boolean isSystemBundle) throws BundleException {
         this.osgi = osgi;
         this.loader = loader;
         this.file = file;
-        Manifest mf = file.getManifest();
-        if (mf == null) {
-            headers = null;
+        this.headers = headers;
+        if (headers == null) {
             symbolicName = null;
             id = -1;
             context = null;
             return;
         }
-        try {
-            headers = BundleManifestReader.getHeaders(mf);
-        } catch (BundleException e) {
-            throw new BundleException("Invalid OSGi Manifest in file " + file
-                    + " : " + e.getMessage(), e);
-        }
         symbolicName = headers.get(Constants.BUNDLE_SYMBOLICNAME);
         allowHostOverride = Boolean.parseBoolean(headers.get(BundleManifestReader.ALLOW_HOST_OVERRIDE));
         id = isSystemBundle ? 0 : osgi.getBundleId(symbolicName);
@@ -102,6 +112,20 @@ public class BundleImpl implements Bundle {
         state = UNINSTALLED;
     }
 
+    protected static Dictionary<String, String> readHeaders(BundleFile file)
+            throws BundleException {
+        Manifest mf = file.getManifest();
+        if (mf == null) {
+            return null;
+        }
+        try {
+            return BundleManifestReader.getHeaders(mf);
+        } catch (BundleException e) {
+            throw new BundleException("Invalid OSGi Manifest in file " + file
+                    + " : " + e.getMessage(), e);
+        }
+    }
+
     public BundleFile getBundleFile() {
         return file;
     }
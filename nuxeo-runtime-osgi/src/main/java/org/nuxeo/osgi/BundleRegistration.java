@@ -21,8 +21,10 @@
 
 package org.nuxeo.osgi;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author  <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
@@ -32,11 +34,11 @@ public class BundleRegistration {
 
     protected final BundleImpl bundle;
 
-    // XXX: explain why these three variables are lazily instantiated.
+    // dependents and fragments are read without holding the registry lock
     protected final Set<String> dependsOn = new HashSet<String>();
-    protected final Set<String> dependsOnMe = new HashSet<String>();
+    protected final Set<String> dependsOnMe = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     protected final Set<String> waitingFor = new HashSet<String>();
-    protected final Set<String> extendsMe = new HashSet<String>();
+    protected final Set<String> extendsMe = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public BundleRegistration(BundleImpl bundle) {
         this.bundle = bundle;
@@ -21,11 +21,16 @@
 package org.nuxeo.osgi;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,21 +39,41 @@ import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
 
 /**
+ * Registry of the installed bundles.
+ * <p>
+ * Lookups do not lock: registrations are published through concurrent maps
+ * once complete. Installing and uninstalling bundles is serialized.
+ * <p>
+ * Between {@link #beginBatch()} and {@link #endBatch()}, resolved bundles are
+ * not started right away but at the end of the batch, in resolution order.
+ * They are started one at a time: the bundle listeners and activators
+ * register components with a component manager which is not thread safe.
+ *
  * @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
  */
 public class BundleRegistry {
 
     private static final Log log = LogFactory.getLog(BundleRegistry.class);
 
-    private final Map<Long, BundleRegistration> bundlesById;
+    protected static final int REPORTED_BUNDLES = 10;
+
+    private final ConcurrentMap<Long, BundleRegistration> bundlesById;
+
+    private final ConcurrentMap<String, BundleRegistration> bundles;
 
-    private final Map<String, BundleRegistration> bundles;
+    /** Registrations in installation order, aliases excluded. */
+    private final List<BundleRegistration> installed;
 
+    // guarded by this
     private final Map<String, Set<BundleRegistration>> pendings;
 
+    // guarded by this, not null during a batch
+    private List<BundleRegistration> deferred;
+
     public BundleRegistry() {
-        bundlesById = new HashMap<Long, BundleRegistration>();
-        bundles = new LinkedHashMap<String, BundleRegistration>();
+        bundlesById = new ConcurrentHashMap<Long, BundleRegistration>();
+        bundles = new ConcurrentHashMap<String, BundleRegistration>();
+        installed = new CopyOnWriteArrayList<BundleRegistration>();
         pendings = new HashMap<String, Set<BundleRegistration>>();
     }
 
@@ -59,12 +84,12 @@ public class BundleRegistry {
         }
     }
 
-    public synchronized BundleImpl getBundle(long id) {
+    public BundleImpl getBundle(long id) {
         BundleRegistration reg = bundlesById.get(id);
         return reg == null ? null : reg.bundle;
     }
 
-    public synchronized BundleImpl getBundle(String symbolicName) {
+    public BundleImpl getBundle(String symbolicName) {
         BundleRegistration reg = bundles.get(symbolicName);
         return reg == null ? null : reg.bundle;
     }
@@ -73,23 +98,27 @@ public class BundleRegistry {
      *
      * @since 5.6
      */
-    public synchronized BundleImpl[] getFragments(String symbolicName) {
+    public BundleImpl[] getFragments(String symbolicName) {
         BundleRegistration reg = bundles.get(symbolicName);
-
+        if (reg == null) {
+            return new BundleImpl[0];
+        }
         ArrayList<BundleImpl> fragments = new ArrayList<BundleImpl>();
-        for (String id:reg.extendsMe) {
-            fragments.add(getBundle(id));
+        for (String id : reg.extendsMe) {
+            BundleImpl fragment = getBundle(id);
+            if (fragment != null) {
+                fragments.add(fragment);
+            }
         }
         return fragments.toArray(new BundleImpl[fragments.size()]);
     }
 
-    public synchronized BundleImpl[] getInstalledBundles() {
-        BundleImpl[] bundles = new BundleImpl[this.bundles.size()];
-        int i = 0;
-        for (BundleRegistration reg : this.bundles.values()) {
-            bundles[i++] = reg.bundle;
+    public BundleImpl[] getInstalledBundles() {
+        List<BundleImpl> bundles = new ArrayList<BundleImpl>(installed.size());
+        for (BundleRegistration reg : installed) {
+            bundles.add(reg.bundle);
         }
-        return bundles;
+        return bundles.toArray(new BundleImpl[bundles.size()]);
     }
 
     public synchronized void install(BundleImpl bundle) throws BundleException {
@@ -113,6 +142,52 @@ public class BundleRegistry {
         }
     }
 
+    /**
+     * Defers the start of the bundles resolved from now on to the end of the
+     * batch.
+     *
+     * @since 7.1
+     */
+    public synchronized void beginBatch() {
+        if (deferred == null) {
+            deferred = new ArrayList<BundleRegistration>();
+        }
+    }
+
+    /**
+     * Starts the bundles resolved since the batch began. Bundles failing to
+     * start are logged and do not prevent the other ones from starting.
+     *
+     * @throws BundleException if some bundles failed to start
+     * @since 7.1
+     */
+    public void endBatch() throws BundleException {
+        List<BundleRegistration> regs;
+        synchronized (this) {
+            regs = deferred;
+            deferred = null;
+        }
+        if (regs == null || regs.isEmpty()) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        List<BundleRegistration> failed = new ArrayList<BundleRegistration>();
+        for (BundleRegistration reg : regs) {
+            if (!startLogged(reg)) {
+                failed.add(reg);
+            }
+        }
+        logStartupTimes(regs, System.currentTimeMillis() - begin);
+        if (!failed.isEmpty()) {
+            List<String> names = new ArrayList<String>(failed.size());
+            for (BundleRegistration reg : failed) {
+                names.add(reg.bundle.getSymbolicName());
+            }
+            throw new BundleException(failed.size()
+                    + " bundles failed to start: " + names);
+        }
+    }
+
     private void register(BundleRegistration reg) throws BundleException {
         String hostBundleId = getFragmentHost(reg);
         if (hostBundleId != null) {
@@ -136,6 +211,7 @@ public class BundleRegistry {
         reg.bundle.setUnResolved();
         bundles.remove(reg.bundle.getSymbolicName());
         bundlesById.remove(reg.bundle.getBundleId());
+        installed.remove(reg);
         reg.bundle.setUninstalled();
         for (String depOnMe : reg.dependsOnMe) {
             BundleRegistration depReg = bundles.get(depOnMe);
@@ -145,11 +221,18 @@ public class BundleRegistry {
         }
     }
 
+    protected void add(BundleRegistration reg) {
+        bundles.put(reg.bundle.getSymbolicName(), reg);
+        bundlesById.put(reg.bundle.getBundleId(), reg);
+        if (!installed.contains(reg)) {
+            installed.add(reg);
+        }
+    }
+
     protected void doPostpone(BundleRegistration reg) {
         String name = reg.bundle.getSymbolicName();
         log.info("Registering unresolved bundle: " + name);
-        bundles.put(name, reg);
-        bundlesById.put(reg.bundle.getBundleId(), reg);
+        add(reg);
 
         for (String dep : reg.waitingFor) {
             Set<BundleRegistration> regs = pendings.get(dep);
@@ -165,8 +248,7 @@ public class BundleRegistry {
     protected void doRegister(BundleRegistration reg) throws BundleException {
         String name = reg.bundle.getSymbolicName();
         log.info("Registering resolved bundle: " + name);
-        bundles.put(name, reg);
-        bundlesById.put(reg.bundle.getBundleId(), reg);
+        add(reg);
         reg.bundle.setInstalled();
         reg.bundle.setResolved();
 
@@ -174,9 +256,10 @@ public class BundleRegistry {
         if (hostBundleId != null) {
             BundleRegistration host = bundles.get(hostBundleId);
             host.addFragment(reg.bundle.getSymbolicName());
+        } else if (deferred != null) {
+            deferred.add(reg);
         } else {
-            // TODO how to lazy start the bundle?
-            reg.bundle.start();
+            start(reg);
         }
 
         // check if there are objects waiting for me
@@ -191,6 +274,53 @@ public class BundleRegistry {
         }
     }
 
+    /**
+     * Starts a bundle, recording its startup time.
+     */
+    protected void start(BundleRegistration reg) throws BundleException {
+        long begin = System.nanoTime();
+        try {
+            reg.bundle.start();
+        } finally {
+            reg.bundle.startupTime = (System.nanoTime() - begin) / 1000000d;
+        }
+    }
+
+    protected boolean startLogged(BundleRegistration reg) {
+        try {
+            start(reg);
+            return true;
+        } catch (BundleException | RuntimeException e) {
+            log.error("Failed to start bundle: "
+                    + reg.bundle.getSymbolicName(), e);
+            return false;
+        }
+    }
+
+    protected void logStartupTimes(List<BundleRegistration> regs, long elapsed) {
+        log.info("Started " + regs.size() + " bundles in " + elapsed + " ms");
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        List<BundleRegistration> sorted = new ArrayList<BundleRegistration>(
+                regs);
+        Collections.sort(sorted, new Comparator<BundleRegistration>() {
+            @Override
+            public int compare(BundleRegistration o1, BundleRegistration o2) {
+                return Double.compare(o2.bundle.startupTime,
+                        o1.bundle.startupTime);
+            }
+        });
+        int reported = log.isDebugEnabled() ? sorted.size() : Math.min(
+                REPORTED_BUNDLES, sorted.size());
+        StringBuilder buf = new StringBuilder("Bundle startup times:");
+        for (BundleRegistration reg : sorted.subList(0, reported)) {
+            buf.append(String.format("%n\t%8.1f ms %s",
+                    reg.bundle.startupTime, reg.bundle.getSymbolicName()));
+        }
+        log.info(buf);
+    }
+
     private String getFragmentHost(BundleRegistration reg) {
         String hostBundleId = reg.bundle.getHeaders().get(Constants.FRAGMENT_HOST);
         if (hostBundleId == null) {
@@ -204,9 +334,7 @@ public class BundleRegistry {
     }
 
     public void shutdown() {
-        BundleRegistration[] regs = bundles.values().toArray(
-                new BundleRegistration[bundles.size()]);
-        for (BundleRegistration reg : regs) {
+        for (BundleRegistration reg : installed) {
             try {
                 if (reg.bundle != null) {
                     reg.bundle.shutdown();
@@ -28,8 +28,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -37,7 +40,9 @@ import org.nuxeo.common.utils.FileUtils;
 import org.nuxeo.common.utils.StringUtils;
 import org.nuxeo.osgi.util.CompoundEnumeration;
 import org.nuxeo.osgi.util.EntryFilter;
+import org.nuxeo.osgi.util.EntryIndex;
 import org.nuxeo.osgi.util.FileIterator;
+import org.nuxeo.runtime.api.Framework;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
 
@@ -53,6 +58,8 @@ public class DirectoryBundleFile implements BundleFile {
     protected final List<File> files;
     protected final Manifest mf;
 
+    protected volatile EntryIndex index;
+
     public DirectoryBundleFile(File file) throws IOException {
         this(file, null);
     }
@@ -90,18 +97,66 @@ public class DirectoryBundleFile implements BundleFile {
         return FileIterator.asUrlEnumeration(it);
     }
 
+    /**
+     * Gets the entry index of the bundle directory, built on first use. The
+     * additional development roots are not indexed.
+     * <p>
+     * There is no index in dev mode: the directory may then change through
+     * hot reload, and its modification time does not reflect the changes
+     * deeper in the tree.
+     *
+     * @return the index, or {@code null} if the directory is to be walked
+     * @since 7.1
+     */
+    protected EntryIndex getIndex() {
+        if (isDevMode()) {
+            index = null;
+            return null;
+        }
+        EntryIndex result = index;
+        if (result == null) {
+            result = EntryIndex.of(file);
+            index = result;
+        }
+        return result;
+    }
+
+    protected static boolean isDevMode() {
+        if (Framework.getRuntime() == null) {
+            return Boolean.getBoolean(Framework.NUXEO_DEV_SYSTEM_PROP);
+        }
+        return Framework.isDevModeSet();
+    }
+
+    protected Enumeration<URL> createEnumeration(List<String> paths) {
+        List<URL> urls = new ArrayList<URL>(paths.size());
+        for (String path : paths) {
+            try {
+                urls.add(new File(file, path).toURI().toURL());
+            } catch (MalformedURLException e) {
+                // ignore
+            }
+        }
+        return Collections.enumeration(urls);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public Enumeration<URL> findEntries(String name, String pattern,
             boolean recurse) {
         EntryFilter efilter = EntryFilter.newFilter(pattern);
+        EntryIndex index = getIndex();
+        Enumeration<URL> entries = index == null ? createEnumeration(new File(
+                file, name), efilter, recurse) : createEnumeration(index.find(
+                name, efilter, recurse));
         if (files.size() == 1) {
-            return createEnumeration(new File(file, name), efilter, recurse);
+            return entries;
         } else {
             Enumeration<URL>[] enums = new Enumeration[files.size()];
-            int i = 0;
-            for (File f : files) {
-                enums[i++] = createEnumeration(new File(f, name), efilter, recurse);
+            enums[0] = entries;
+            for (int i = 1; i < enums.length; i++) {
+                enums[i] = createEnumeration(new File(files.get(i), name),
+                        efilter, recurse);
             }
             return new CompoundEnumeration<URL>(enums);
         }
@@ -124,8 +179,26 @@ public class DirectoryBundleFile implements BundleFile {
 
     @Override
     public Enumeration<String> getEntryPaths(String path) {
-        throw new UnsupportedOperationException(
-        "The operation BundleFile.geEntryPaths() is not yet implemented");
+        EntryIndex index = getIndex();
+        Set<String> paths = new LinkedHashSet<String>();
+        if (index != null) {
+            paths.addAll(index.list(path));
+        }
+        for (int i = index == null ? 0 : 1; i < files.size(); i++) {
+            File[] children = new File(files.get(i), path).listFiles();
+            if (children == null) {
+                continue;
+            }
+            String prefix = path.startsWith("/") ? path.substring(1) : path;
+            if (prefix.length() > 0 && !prefix.endsWith("/")) {
+                prefix += '/';
+            }
+            for (File child : children) {
+                paths.add(prefix + child.getName()
+                        + (child.isDirectory() ? "/" : ""));
+            }
+        }
+        return paths.isEmpty() ? null : Collections.enumeration(paths);
     }
 
     @Override
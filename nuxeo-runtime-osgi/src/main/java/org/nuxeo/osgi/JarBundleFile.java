@@ -43,6 +43,8 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.utils.FileUtils;
 import org.nuxeo.common.utils.StringUtils;
 import org.nuxeo.osgi.util.EntryFilter;
+import org.nuxeo.osgi.util.EntryIndex;
+import org.nuxeo.osgi.util.NestedJarFile;
 import org.osgi.framework.Constants;
 
 /**
@@ -57,6 +59,16 @@ public class JarBundleFile implements BundleFile {
 
     protected String urlBase;
 
+    protected volatile EntryIndex index;
+
+    /**
+     * For subclasses not backed by a {@link JarFile}.
+     *
+     * @since 7.1
+     */
+    protected JarBundleFile() {
+    }
+
     public JarBundleFile(File file) throws IOException {
         this(new JarFile(file));
     }
@@ -70,47 +82,28 @@ public class JarBundleFile implements BundleFile {
         }
     }
 
+    /**
+     * Gets the entry index of this JAR, built on first use.
+     *
+     * @since 7.1
+     */
+    protected EntryIndex getIndex() {
+        EntryIndex result = index;
+        if (result == null) {
+            result = EntryIndex.load(new File(jarFile.getName()), jarFile);
+            index = result;
+        }
+        return result;
+    }
+
     @Override
     public Enumeration<URL> findEntries(String name, String pattern,
             boolean recurse) {
-        if (name.startsWith("/")) {
-            name = name.substring(1);
-        }
-        String prefix;
-        if (name.length() == 0) {
-            name = null;
-            prefix = "";
-        } else if (!name.endsWith("/") ){
-            prefix = name+"/";
-        } else {
-            prefix = name;
-        }
-        int len = prefix.length();
         EntryFilter filter = EntryFilter.newFilter(pattern);
-        Enumeration<JarEntry> entries = jarFile.entries();
         ArrayList<URL> result = new ArrayList<URL>();
         try {
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                if (entry.isDirectory()) {
-                    continue;
-                }
-                String ename = entry.getName();
-                if (name != null && !ename.startsWith(prefix)) {
-                    continue;
-                }
-                int i = ename.lastIndexOf('/');
-                if (!recurse) {
-                    if (i > -1) {
-                        if (ename.indexOf('/', len) > -1) {
-                            continue;
-                        }
-                    }
-                }
-                String n = i > -1 ? ename.substring(i+1) : ename;
-                if (filter.match(n)) {
-                    result.add(getEntryUrl(ename));
-                }
+            for (String path : getIndex().find(name, filter, recurse)) {
+                result.add(getEntryUrl(path));
             }
         } catch (MalformedURLException e) {
             throw new RuntimeException(e);
@@ -136,8 +129,8 @@ public class JarBundleFile implements BundleFile {
 
     @Override
     public Enumeration<String> getEntryPaths(String path) {
-        throw new UnsupportedOperationException(
-                "The operation BundleFile.geEntryPaths() was not yet implemented");
+        List<String> paths = getIndex().list(path);
+        return paths.isEmpty() ? null : Collections.enumeration(paths);
     }
 
     @Override
@@ -197,8 +190,11 @@ public class JarBundleFile implements BundleFile {
             String name = path.replace('/', '_');
             File dest = new File(tmpDir, fileName + '-' + name);
             try {
-                extractNestedJar(jarFile, path, dest);
-                nested.add(new NestedJarBundleFile(location, dest));
+                ZipEntry entry = jarFile.getEntry(path);
+                if (entry == null) {
+                    throw new FileNotFoundException(path);
+                }
+                nested.add(newNestedBundle(location, entry, dest));
             } catch (FileNotFoundException e) {
                 log.error("A nested jar is referenced in manifest but not found: "
                         + location);
@@ -209,6 +205,27 @@ public class JarBundleFile implements BundleFile {
         return nested;
     }
 
+    /**
+     * Opens a nested JAR in place if it is stored uncompressed, otherwise
+     * extracts it to the given file.
+     *
+     * @since 7.1
+     */
+    protected BundleFile newNestedBundle(String location, ZipEntry entry,
+            File dest) throws IOException {
+        if (NestedJarFile.canOpen(entry)) {
+            try {
+                return new NestedJarBundleFile(location, NestedJarFile.open(
+                        getFile(), entry.getName()));
+            } catch (IOException e) {
+                log.debug("Cannot read " + location
+                        + " in place, extracting it", e);
+            }
+        }
+        extractNestedJar(jarFile, entry, dest);
+        return new NestedJarBundleFile(location, dest);
+    }
+
     public static void extractNestedJar(JarFile file, String path, File dest) throws IOException {
         InputStream in = null;
         ZipEntry entry = file.getEntry(path);
@@ -248,8 +265,7 @@ public class JarBundleFile implements BundleFile {
                 String location = base + path;
                 String name = path.replace('/', '_');
                 File dest = new File(tmpDir, fileName + '-' + name);
-                extractNestedJar(jarFile, entry, dest);
-                nested.add(new NestedJarBundleFile(location, dest));
+                nested.add(newNestedBundle(location, entry, dest));
             }
         }
         return nested;
@@ -300,7 +316,7 @@ public class JarBundleFile implements BundleFile {
         return getLocation();
     }
 
-    protected final URL getEntryUrl(String name) throws MalformedURLException {
+    protected URL getEntryUrl(String name) throws MalformedURLException {
         return new URL(urlBase + name);
     }
 
@@ -23,10 +23,23 @@ package org.nuxeo.osgi;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collection;
 import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.nuxeo.osgi.util.EntryIndex;
+import org.nuxeo.osgi.util.NestedJarFile;
+import org.osgi.framework.Constants;
 
 
 /**
+ * A JAR nested in another JAR, either extracted to a file or, since 7.1, read
+ * in place through a {@link NestedJarFile} when stored uncompressed.
+ *
  * @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
  *
  */
@@ -34,6 +47,13 @@ public class NestedJarBundleFile extends JarBundleFile {
 
     protected final String location;
 
+    /**
+     * The nested JAR read in place, or {@code null} if it was extracted.
+     *
+     * @since 7.1
+     */
+    protected final NestedJarFile nested;
+
     public NestedJarBundleFile(String location, File file) throws IOException {
         this(location, new JarFile(file));
     }
@@ -41,6 +61,48 @@ public class NestedJarBundleFile extends JarBundleFile {
     public NestedJarBundleFile(String location, JarFile jarFile) {
         super(jarFile);
         this.location = location;
+        nested = null;
+    }
+
+    /**
+     * @since 7.1
+     */
+    public NestedJarBundleFile(String location, NestedJarFile nested) {
+        this.location = location;
+        this.nested = nested;
+    }
+
+    /**
+     * Opens in place the nested JAR at the given location, of the form
+     * {@code jar:file:/container.jar!/path/nested.jar}.
+     *
+     * @since 7.1
+     */
+    public static NestedJarBundleFile open(String location) throws IOException {
+        int i = location.indexOf(NestedJarFile.SEPARATOR);
+        if (!location.startsWith("jar:") || i == -1) {
+            throw new MalformedURLException("Not a nested JAR location: "
+                    + location);
+        }
+        File container;
+        try {
+            container = new File(new URI(location.substring(4, i)));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new MalformedURLException("Not a nested JAR location: "
+                    + location);
+        }
+        String name = location.substring(i + NestedJarFile.SEPARATOR.length());
+        return new NestedJarBundleFile(location, NestedJarFile.open(container,
+                name));
+    }
+
+    /**
+     * Returns {@code true} if this nested JAR is read in place.
+     *
+     * @since 7.1
+     */
+    public boolean isInPlace() {
+        return nested != null;
     }
 
     @Override
@@ -60,4 +122,106 @@ public class NestedJarBundleFile extends JarBundleFile {
         return location;
     }
 
+    @Override
+    protected EntryIndex getIndex() {
+        if (nested == null) {
+            return super.getIndex();
+        }
+        EntryIndex result = index;
+        if (result == null) {
+            result = EntryIndex.of(nested.getEntryNames());
+            index = result;
+        }
+        return result;
+    }
+
+    @Override
+    protected URL getEntryUrl(String name) throws MalformedURLException {
+        return nested == null ? super.getEntryUrl(name)
+                : nested.getEntryURL(name);
+    }
+
+    @Override
+    public URL getEntry(String name) {
+        if (nested == null) {
+            return super.getEntry(name);
+        }
+        if (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        if (!nested.contains(name)) {
+            return null;
+        }
+        try {
+            return nested.getEntryURL(name);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code null} when read in place, the nested JAR not being a
+     * file.
+     */
+    @Override
+    public File getFile() {
+        return nested == null ? super.getFile() : null;
+    }
+
+    @Override
+    public Manifest getManifest() {
+        if (nested == null) {
+            return super.getManifest();
+        }
+        try {
+            return nested.getManifest();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String getSymbolicName() {
+        if (nested == null) {
+            return super.getSymbolicName();
+        }
+        Manifest mf = getManifest();
+        String value = mf == null ? null : mf.getMainAttributes().getValue(
+                Constants.BUNDLE_SYMBOLICNAME);
+        return value == null ? null
+                : BundleManifestReader.removePropertiesFromHeaderValue(value);
+    }
+
+    @Override
+    public Collection<BundleFile> getNestedBundles(File tmpDir)
+            throws IOException {
+        // no more than one level of nesting
+        return nested == null ? super.getNestedBundles(tmpDir) : null;
+    }
+
+    @Override
+    public Collection<BundleFile> findNestedBundles(File tmpDir)
+            throws IOException {
+        return nested == null ? super.findNestedBundles(tmpDir) : null;
+    }
+
+    @Override
+    public URL getURL() {
+        return nested == null ? super.getURL() : nested.getURL();
+    }
+
+    @Override
+    public URL getJarURL() {
+        return nested == null ? super.getJarURL() : nested.getURL();
+    }
+
+    @Override
+    public void close(OSGiAdapter osgi) throws IOException {
+        if (nested == null) {
+            super.close(osgi);
+        } else {
+            nested.close();
+        }
+    }
+
 }
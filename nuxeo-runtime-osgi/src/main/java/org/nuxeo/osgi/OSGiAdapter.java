@@ -22,15 +22,16 @@ package org.nuxeo.osgi;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.Environment;
 import org.nuxeo.common.collections.ListenerList;
 import org.nuxeo.osgi.services.PackageAdminImpl;
+import org.nuxeo.osgi.services.ServiceFilter;
+import org.nuxeo.osgi.services.ServiceRegistry;
+import org.nuxeo.osgi.util.EntryIndex;
 import org.nuxeo.osgi.util.jar.JarFileCloser;
 import org.nuxeo.osgi.util.jar.URLJarFileIntrospector;
 import org.nuxeo.osgi.util.jar.URLJarFileIntrospectionError;
@@ -41,9 +42,9 @@ import org.osgi.framework.BundleListener;
 import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
-import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.packageadmin.PackageAdmin;
 
 /**
@@ -67,9 +68,7 @@ public class OSGiAdapter {
 
     protected ListenerList bundleListeners;
 
-    protected ListenerList serviceListeners;
-
-    protected Map<String, ServiceRegistration> services;
+    protected ServiceRegistry services;
 
     protected BundleRegistry registry;
 
@@ -86,7 +85,7 @@ public class OSGiAdapter {
     }
 
     public OSGiAdapter(File workingDir, File dataDir, Properties properties) {
-        services = new ConcurrentHashMap<String, ServiceRegistration>();
+        services = new ServiceRegistry();
         this.workingDir = workingDir;
         this.dataDir = dataDir;
         this.dataDir.mkdirs();
@@ -95,7 +94,7 @@ public class OSGiAdapter {
     }
 
     public void removeService(String clazz) {
-        services.remove(clazz);
+        services.unregisterAll(clazz);
     }
 
     protected void initialize(Properties properties) {
@@ -103,10 +102,10 @@ public class OSGiAdapter {
         registry = new BundleRegistry();
         frameworkListeners = new ListenerList();
         bundleListeners = new ListenerList();
-        serviceListeners = new ListenerList();
         bundleIds = new BundleIdGenerator();
         idTableFile = new File(dataDir, "bundles.ids");
         bundleIds.load(idTableFile);
+        EntryIndex.setCacheDirectory(new File(dataDir, "bundles.entries"));
         // setting up default properties
         properties.put(Constants.FRAMEWORK_VENDOR, "Nuxeo");
         properties.put(Constants.FRAMEWORK_VERSION, "1.0.0");
@@ -129,6 +128,13 @@ public class OSGiAdapter {
         return registry;
     }
 
+    /**
+     * @since 7.1
+     */
+    public ServiceRegistry getServiceRegistry() {
+        return services;
+    }
+
     public String getProperty(String key) {
         String value = properties.getProperty(key);
         if (value == null) {
@@ -160,7 +166,6 @@ public class OSGiAdapter {
         registry = null;
         frameworkListeners = null;
         bundleListeners = null;
-        serviceListeners = null;
         properties = null;
         uRLJarFileCloser = null;
     }
@@ -186,9 +191,7 @@ public class OSGiAdapter {
     }
 
     public void install(BundleImpl bundle) throws BundleException {
-        double s = System.currentTimeMillis();
         registry.install(bundle);
-        bundle.startupTime = System.currentTimeMillis() - s;
     }
 
     public void uninstall(BundleImpl bundle) throws BundleException {
@@ -204,17 +207,17 @@ public class OSGiAdapter {
     }
 
     public void addServiceListener(ServiceListener listener) {
-        serviceListeners.add(listener);
+        services.addServiceListener(listener, null);
     }
 
-    public void addServiceListener(ServiceListener listener, String filter) {
-        // TODO?
-        throw new UnsupportedOperationException(
-                "This method is not implemented");
+    public void addServiceListener(ServiceListener listener, String filter)
+            throws InvalidSyntaxException {
+        services.addServiceListener(listener,
+                filter == null ? null : ServiceFilter.parse(filter));
     }
 
     public void removeServiceListener(ServiceListener listener) {
-        serviceListeners.remove(listener);
+        services.removeServiceListener(listener);
     }
 
     public void addBundleListener(BundleListener listener) {
@@ -256,10 +259,7 @@ public class OSGiAdapter {
     }
 
     public void fireServiceEvent(ServiceEvent event) {
-        Object[] listeners = serviceListeners.getListeners();
-        for (Object listener : listeners) {
-            ((ServiceListener) listener).serviceChanged(event);
-        }
+        services.fireServiceEvent(event);
     }
 
     public void fireBundleEvent(BundleEvent event) {
@@ -26,8 +26,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Dictionary;
 
+import org.nuxeo.osgi.services.ServiceFilter;
 import org.nuxeo.osgi.services.ServiceReferenceImpl;
-import org.nuxeo.osgi.services.ServiceRegistrationImpl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
@@ -78,15 +78,14 @@ public class OSGiBundleContext implements BundleContext {
 
     @Override
     public Filter createFilter(String filter) throws InvalidSyntaxException {
-        throw new UnsupportedOperationException(
-                "BundleContext.createFilter() was not yet implemented");
+        return ServiceFilter.parse(filter);
     }
 
     @Override
     public ServiceReference[] getAllServiceReferences(String clazz,
             String filter) throws InvalidSyntaxException {
-        // TODO Auto-generated method stub
-        return null;
+        return bundle.osgi.services.getReferences(clazz,
+                filter == null ? null : ServiceFilter.parse(filter));
     }
 
     @Override
@@ -116,20 +115,19 @@ public class OSGiBundleContext implements BundleContext {
 
     @Override
     public Object getService(ServiceReference reference) {
-        return ((ServiceReferenceImpl)reference).getService();
+        return ((ServiceReferenceImpl) reference).getService(bundle);
     }
 
     @Override
     public ServiceReference getServiceReference(String clazz) {
-        ServiceRegistration reg = bundle.osgi.services.get(clazz);
-        return reg != null ? reg.getReference() : null;
+        return bundle.osgi.services.getReference(clazz);
     }
 
     @Override
     public ServiceReference[] getServiceReferences(String clazz, String filter)
             throws InvalidSyntaxException {
-        ServiceRegistration reg = bundle.osgi.services.get(clazz);
-        return reg != null ? new ServiceReference[] {reg.getReference()} : null;
+        // a single class space: all the services are compatible
+        return getAllServiceReferences(clazz, filter);
     }
 
     @Override
@@ -158,15 +156,8 @@ public class OSGiBundleContext implements BundleContext {
     @Override
     public ServiceRegistration registerService(String[] clazzes,
             Object service, Dictionary properties) {
-        ServiceRegistrationImpl reg = new ServiceRegistrationImpl(bundle.osgi, bundle, clazzes, service);
-        if (properties != null) {
-            reg.setProperties(properties);
-            return reg;
-        }
-        for (String c : clazzes) {
-            bundle.osgi.services.put(c, reg);
-        }
-        return reg;
+        return bundle.osgi.services.register(bundle, clazzes, service,
+                properties);
     }
 
     @SuppressWarnings("rawtypes")
@@ -193,8 +184,7 @@ public class OSGiBundleContext implements BundleContext {
 
     @Override
     public boolean ungetService(ServiceReference reference) {
-        // not impl.
-        return false;
+        return ((ServiceReferenceImpl) reference).ungetService(bundle);
     }
 
 }
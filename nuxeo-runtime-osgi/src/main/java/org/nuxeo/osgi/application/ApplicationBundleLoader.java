@@ -167,13 +167,13 @@ public class ApplicationBundleLoader {
         try {
             writer = new BufferedWriter(new FileWriter(file));
             for (BundleFile bf : bundles) {
-                writer.append(bf.getFile().getAbsolutePath());
+                writer.append(ClassPath.getCacheEntry(bf));
                 writer.newLine();
             }
             writer.append("#");
             writer.newLine();
             for (BundleFile bf : jars) {
-                writer.append(bf.getFile().getAbsolutePath());
+                writer.append(ClassPath.getCacheEntry(bf));
                 writer.newLine();
             }
         } finally {
@@ -198,13 +198,7 @@ public class ApplicationBundleLoader {
                     list = null;
                     continue;
                 }
-                BundleFile bf = null;
-                File f = new File(line.trim());
-                if (f.isDirectory()) {
-                    bf = new DirectoryBundleFile(f);
-                } else {
-                    bf = new JarBundleFile(f);
-                }
+                BundleFile bf = ClassPath.newBundleFile(line.trim());
                 bundleLoader.loadJAR(bf);
                 if (list != null) {
                     list.add(bf);
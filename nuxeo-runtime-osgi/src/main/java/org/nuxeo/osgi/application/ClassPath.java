@@ -33,6 +33,7 @@ import java.util.List;
 import org.nuxeo.osgi.BundleFile;
 import org.nuxeo.osgi.DirectoryBundleFile;
 import org.nuxeo.osgi.JarBundleFile;
+import org.nuxeo.osgi.NestedJarBundleFile;
 import org.osgi.framework.BundleException;
 
 /**
@@ -97,19 +98,19 @@ public class ClassPath implements ClassPathScanner.Callback {
         try {
             writer = new BufferedWriter(new FileWriter(file));
             for (BundleFile bf : bundles) {
-                writer.append(bf.getFile().getAbsolutePath());
+                writer.append(getCacheEntry(bf));
                 writer.newLine();
             }
             writer.append("#");
             writer.newLine();
             for (BundleFile bf : jars) {
-                writer.append(bf.getFile().getAbsolutePath());
+                writer.append(getCacheEntry(bf));
                 writer.newLine();
             }
             writer.append("#");
             writer.newLine();
             for (BundleFile bf : nestedJars) {
-                writer.append(bf.getFile().getAbsolutePath());
+                writer.append(getCacheEntry(bf));
                 writer.newLine();
             }
         } finally {
@@ -119,6 +120,33 @@ public class ClassPath implements ClassPathScanner.Callback {
         }
     }
 
+    /**
+     * Gets the line identifying a bundle file in the bundles cache: its path,
+     * or its location for nested JARs read in place.
+     *
+     * @since 7.1
+     */
+    public static String getCacheEntry(BundleFile bf) {
+        File file = bf.getFile();
+        return file != null ? file.getAbsolutePath() : bf.getLocation();
+    }
+
+    /**
+     * Opens the bundle file identified by a line of the bundles cache.
+     *
+     * @since 7.1
+     */
+    public static BundleFile newBundleFile(String entry) throws IOException {
+        if (entry.startsWith("jar:")) {
+            return NestedJarBundleFile.open(entry);
+        }
+        File f = new File(entry);
+        if (f.isDirectory()) {
+            return new DirectoryBundleFile(f);
+        }
+        return new JarBundleFile(f);
+    }
+
     public void restore(File file) throws IOException {
         BufferedReader reader = null;
         try {
@@ -138,13 +166,7 @@ public class ClassPath implements ClassPathScanner.Callback {
                     }
                     continue;
                 }
-                BundleFile bf = null;
-                File f = new File(line.trim());
-                if (f.isDirectory()) {
-                    bf = new DirectoryBundleFile(f);
-                } else {
-                    bf = new JarBundleFile(f);
-                }
+                BundleFile bf = newBundleFile(line.trim());
                 loader.addURL(bf.getURL());
                 list.add(bf);
             }
@@ -0,0 +1,229 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.osgi.application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Index of the lookup keys of class path JARs, persisted between starts.
+ * <p>
+ * The keys of a JAR are the directories it contains, which include its
+ * packages, and the paths of its non class entries. Class entries are not
+ * keys on their own: a class is looked up through its package.
+ * <p>
+ * Keys are cached by JAR path and are reused as long as the JAR length and
+ * last modification time are unchanged.
+ *
+ * @since 7.1
+ */
+public class ClassPathIndex {
+
+    protected static final int MAGIC = 0x4e584349;
+
+    protected static final int VERSION = 1;
+
+    protected static final String[] NO_KEYS = new String[0];
+
+    protected static class Entry {
+
+        protected final long length;
+
+        protected final long lastModified;
+
+        protected final String[] keys;
+
+        protected Entry(long length, long lastModified, String[] keys) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.keys = keys;
+        }
+
+        protected boolean matches(File file) {
+            return length == file.length()
+                    && lastModified == file.lastModified();
+        }
+    }
+
+    protected final Map<String, Entry> cached = new ConcurrentHashMap<String, Entry>();
+
+    protected final Map<String, Entry> used = new ConcurrentHashMap<String, Entry>();
+
+    protected volatile boolean modified;
+
+    /**
+     * Gets the keys of a JAR, scanning it only if the cached keys are
+     * missing or out of date.
+     */
+    public String[] getKeys(File file, JarFile jar) {
+        String path = file.getAbsolutePath();
+        String[] keys = lookup(path, file);
+        return keys != null ? keys : put(path, file, scan(jar));
+    }
+
+    /**
+     * Gets the keys of a nested JAR read in place, whose cached keys are
+     * checked against its container file.
+     *
+     * @since 7.1
+     */
+    public String[] getKeys(String path, File container, Collection<String> names) {
+        String[] keys = lookup(path, container);
+        return keys != null ? keys : put(path, container, scan(names));
+    }
+
+    protected String[] lookup(String path, File file) {
+        Entry entry = cached.get(path);
+        if (entry == null || !entry.matches(file)) {
+            return null;
+        }
+        used.put(path, entry);
+        return entry.keys;
+    }
+
+    protected String[] put(String path, File file, String[] keys) {
+        Entry entry = new Entry(file.length(), file.lastModified(), keys);
+        cached.put(path, entry);
+        used.put(path, entry);
+        modified = true;
+        return keys;
+    }
+
+    public static String[] scan(JarFile jar) {
+        List<String> names = new ArrayList<String>();
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        return scan(names);
+    }
+
+    public static String[] scan(Collection<String> names) {
+        Set<String> keys = new LinkedHashSet<String>();
+        for (String name : names) {
+            if (name.endsWith("/")) {
+                name = name.substring(0, name.length() - 1);
+            } else if (name.endsWith(".class")) {
+                int index = name.lastIndexOf('/');
+                name = index == -1 ? "" : name.substring(0, index);
+            }
+            while (keys.add(name)) {
+                int index = name.lastIndexOf('/');
+                if (index == -1) {
+                    break;
+                }
+                name = name.substring(0, index);
+            }
+        }
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    /**
+     * Returns {@code true} if JARs were scanned or dropped since the index was
+     * loaded.
+     */
+    public boolean isModified() {
+        return modified || used.size() != cached.size();
+    }
+
+    public void load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a class path index: " + file);
+            }
+            // keys are shared between JARs, read them once
+            Map<String, String> strings = new HashMap<String, String>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                String[] keys = new String[in.readInt()];
+                for (int j = 0; j < keys.length; j++) {
+                    String key = in.readUTF();
+                    String shared = strings.get(key);
+                    if (shared == null) {
+                        strings.put(key, key);
+                        shared = key;
+                    }
+                    keys[j] = shared;
+                }
+                cached.put(path, new Entry(length, lastModified, keys));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Stores the keys of the JARs indexed since the index was created.
+     */
+    public void store(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Map<String, Entry> entries = new HashMap<String, Entry>(used);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> each : entries.entrySet()) {
+                Entry entry = each.getValue();
+                out.writeUTF(each.getKey());
+                out.writeLong(entry.length);
+                out.writeLong(entry.lastModified);
+                out.writeInt(entry.keys.length);
+                for (String key : entry.keys) {
+                    out.writeUTF(key);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Cannot write class path index " + file);
+            }
+        }
+        cached.keySet().retainAll(used.keySet());
+        modified = false;
+    }
+
+}
@@ -71,4 +71,13 @@ public class DelegateLoader implements SharedClassLoader {
         return loader;
     }
 
+    /**
+     * Does nothing, the delegate loader is not indexed.
+     *
+     * @since 7.1
+     */
+    @Override
+    public void storeIndex() {
+    }
+
 }
@@ -31,6 +31,8 @@ import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.nuxeo.common.Environment;
+
 /**
  *
  * @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
@@ -58,6 +60,8 @@ public class Main {
                 ((URLClassLoader) cl).getURLs(), rootLoader);
         Thread.currentThread().setContextClassLoader(classLoader.getLoader());
         URL systemBundle = classLoader.getURLs()[0];
+        // reuse the JAR index stored alongside the bundles cache
+        classLoader.loadIndex(getIndexFile(args));
         // build the class path now
         List<File> cp = buildClassPath(classLoader, args[0]);
         // make new arguments by removing the first one to pass further
@@ -71,6 +75,25 @@ public class Main {
         main.invoke(null, systemBundle, cp, args);
     }
 
+    /**
+     * Gets the index file of the shared class loader, located in the data
+     * directory of the application as resolved from the command line.
+     *
+     * @since 7.1
+     */
+    protected static File getIndexFile(String[] args) {
+        CommandLineOptions options = new CommandLineOptions(args);
+        String data = options.getOption("data");
+        if (data == null) {
+            String home = options.getOption("home");
+            if (home == null) {
+                home = System.getProperty(Environment.HOME_DIR, ".");
+            }
+            data = new File(home, "data").getPath();
+        }
+        return new File(data, SharedClassLoaderImpl.INDEX_FILE);
+    }
+
     public static List<File> buildClassPath(SharedClassLoader classLoader,
             String rawcp) throws IOException {
         List<File> result = new ArrayList<File>();
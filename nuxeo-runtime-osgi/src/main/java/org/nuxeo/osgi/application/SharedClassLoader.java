@@ -21,6 +21,7 @@
 
 package org.nuxeo.osgi.application;
 
+import java.io.IOException;
 import java.net.URL;
 
 /**
@@ -39,4 +40,12 @@ public interface SharedClassLoader {
 
     URL[] getURLs();
 
+    /**
+     * Persists the index of the JARs added so far, if the loader maintains
+     * one, so that it can be reused on the next start.
+     *
+     * @since 7.1
+     */
+    void storeIndex() throws IOException;
+
 }
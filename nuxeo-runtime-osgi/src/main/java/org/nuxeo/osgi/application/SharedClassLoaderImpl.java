@@ -21,15 +21,280 @@
 
 package org.nuxeo.osgi.application;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.nuxeo.osgi.util.NestedJarFile;
 
 /**
+ * Shared class loader indexing the JARs it is given.
+ * <p>
+ * Each JAR added through {@link #addURL(URL)} is indexed by package and by
+ * resource path (see {@link ClassPathIndex}), so that class and resource
+ * lookups skip the JARs which cannot contain the requested name instead of
+ * opening each of them. Nested JARs read in place are added through their
+ * {@value NestedJarFile#PROTOCOL} URLs and indexed the same way. Other URLs
+ * (directories, remote locations) are not indexed and are always looked
+ * into. Lookups follow the order in which the URLs were added.
+ * <p>
+ * The index keys can be persisted in a {@value #INDEX_FILE} file alongside
+ * the bundles cache, using {@link #loadIndex(File)} and {@link #storeIndex()},
+ * so that unchanged JARs are not scanned again on the next start.
+ *
  * @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
  *
  */
 public class SharedClassLoaderImpl extends URLClassLoader implements SharedClassLoader {
 
+    /**
+     * @since 7.1
+     */
+    public static final String INDEX_FILE = "bundles.index";
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    protected static final IndexedJar[] NO_JARS = new IndexedJar[0];
+
+    protected static final UrlElement[] NO_URLS = new UrlElement[0];
+
+    /**
+     * An URL of the class path.
+     *
+     * @since 7.1
+     */
+    protected abstract static class Element {
+
+        protected final URL url;
+
+        /** Rank of the URL in the class path. */
+        protected final int position;
+
+        protected Element(URL url, int position) {
+            this.url = url;
+            this.position = position;
+        }
+
+        protected abstract Manifest getManifest() throws IOException;
+
+        /**
+         * Reads an entry into the given stream.
+         *
+         * @return the code source of the entry, or {@code null} if there is no
+         *         such entry
+         */
+        protected abstract CodeSource read(String name,
+                ByteArrayOutputStream out) throws IOException;
+
+        protected abstract URL getResource(String name);
+
+        protected abstract void close() throws IOException;
+
+        @Override
+        public String toString() {
+            return url.toExternalForm();
+        }
+    }
+
+    /**
+     * An URL which is not indexed, looked up through its own
+     * {@link URLClassLoader}.
+     *
+     * @since 7.1
+     */
+    protected static class UrlElement extends Element {
+
+        protected final URLClassLoader loader;
+
+        protected UrlElement(URL url, int position) {
+            super(url, position);
+            loader = new URLClassLoader(new URL[] { url }, null);
+        }
+
+        @Override
+        protected Manifest getManifest() {
+            return null;
+        }
+
+        @Override
+        protected CodeSource read(String name, ByteArrayOutputStream out)
+                throws IOException {
+            URL resource = loader.findResource(name);
+            if (resource == null) {
+                return null;
+            }
+            copy(resource.openStream(), out);
+            return new CodeSource(url, (CodeSigner[]) null);
+        }
+
+        @Override
+        protected URL getResource(String name) {
+            return loader.findResource(name);
+        }
+
+        @Override
+        protected void close() throws IOException {
+            loader.close();
+        }
+    }
+
+    protected static class IndexedJar extends Element {
+
+        protected final File file;
+
+        protected final JarFile jar;
+
+        protected volatile Manifest manifest;
+
+        protected IndexedJar(URL url, int position, File file, JarFile jar) {
+            super(url, position);
+            this.file = file;
+            this.jar = jar;
+        }
+
+        protected String[] getKeys(ClassPathIndex keys) {
+            return keys.getKeys(file, jar);
+        }
+
+        @Override
+        protected Manifest getManifest() throws IOException {
+            if (manifest == null) {
+                manifest = jar.getManifest();
+            }
+            return manifest;
+        }
+
+        protected boolean contains(String name) {
+            return jar.getJarEntry(name) != null;
+        }
+
+        @Override
+        protected CodeSource read(String name, ByteArrayOutputStream out)
+                throws IOException {
+            JarEntry entry = jar.getJarEntry(name);
+            if (entry == null) {
+                return null;
+            }
+            copy(jar.getInputStream(entry), out);
+            // signers are only known once the entry was fully read
+            return new CodeSource(url, entry.getCodeSigners());
+        }
+
+        @Override
+        protected URL getResource(String name) {
+            if (!contains(name)) {
+                return null;
+            }
+            try {
+                return newResourceURL(name);
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+
+        protected URL newResourceURL(String name) throws MalformedURLException {
+            return new URL("jar:" + url.toExternalForm() + "!/" + name);
+        }
+
+        @Override
+        protected void close() throws IOException {
+            jar.close();
+        }
+    }
+
+    /**
+     * A nested JAR read in place, added through its
+     * {@value NestedJarFile#PROTOCOL} URL.
+     *
+     * @since 7.1
+     */
+    protected static class IndexedNestedJar extends IndexedJar {
+
+        protected final NestedJarFile nested;
+
+        protected IndexedNestedJar(URL url, int position, NestedJarFile nested) {
+            super(url, position, nested.getContainer(), null);
+            this.nested = nested;
+        }
+
+        @Override
+        protected String[] getKeys(ClassPathIndex keys) {
+            return keys.getKeys(nested.toString(), file,
+                    nested.getEntryNames());
+        }
+
+        @Override
+        protected Manifest getManifest() throws IOException {
+            return nested.getManifest();
+        }
+
+        @Override
+        protected boolean contains(String name) {
+            return nested.contains(name);
+        }
+
+        @Override
+        protected CodeSource read(String name, ByteArrayOutputStream out)
+                throws IOException {
+            InputStream in = nested.getInputStream(name);
+            if (in == null) {
+                return null;
+            }
+            copy(in, out);
+            // signed nested JARs are not opened in place but extracted
+            return new CodeSource(url, (CodeSigner[]) null);
+        }
+
+        @Override
+        protected URL newResourceURL(String name) throws MalformedURLException {
+            return nested.getEntryURL(name);
+        }
+
+        @Override
+        protected void close() {
+            nested.close();
+        }
+    }
+
+    protected final Object indexLock = new Object();
+
+    protected final List<URL> urls = new CopyOnWriteArrayList<URL>();
+
+    protected final Set<String> added = new HashSet<String>();
+
+    protected final List<IndexedJar> jars = new ArrayList<IndexedJar>();
+
+    protected final ConcurrentMap<String, IndexedJar[]> index = new ConcurrentHashMap<String, IndexedJar[]>();
+
+    /** The URLs which are not indexed, in class path order. */
+    protected volatile UrlElement[] others = NO_URLS;
+
+    protected ClassPathIndex keys = new ClassPathIndex();
+
+    protected File indexFile;
+
     public SharedClassLoaderImpl(ClassLoader parent) {
         this(new URL[0], parent);
     }
@@ -39,12 +304,267 @@ public class SharedClassLoaderImpl extends URLClassLoader implements SharedClass
     }
 
     public SharedClassLoaderImpl(URL[] urls, ClassLoader parent) {
-        super(urls, parent);
+        super(new URL[0], parent);
+        for (URL url : urls) {
+            addURL(url);
+        }
+    }
+
+    /**
+     * Reuses the index keys stored in the given file for the JARs added from
+     * now on. The file is created on {@link #storeIndex()} if missing or
+     * unreadable.
+     *
+     * @since 7.1
+     */
+    public void loadIndex(File file) {
+        synchronized (indexLock) {
+            indexFile = file;
+            keys = new ClassPathIndex();
+            if (file.isFile()) {
+                try {
+                    keys.load(file);
+                } catch (IOException e) {
+                    // corrupted or outdated, rebuilt on store
+                    keys = new ClassPathIndex();
+                }
+            }
+            // keep the JARs already indexed in the stored index
+            for (IndexedJar jar : jars) {
+                jar.getKeys(keys);
+            }
+        }
+    }
+
+    @Override
+    public void storeIndex() throws IOException {
+        synchronized (indexLock) {
+            if (indexFile == null) {
+                return;
+            }
+            if (keys.isModified() || !indexFile.isFile()) {
+                keys.store(indexFile);
+            }
+        }
     }
 
     @Override
     public void addURL(URL url) {
-        super.addURL(url);
+        synchronized (indexLock) {
+            if (!added.add(url.toExternalForm())) {
+                return;
+            }
+            int position = urls.size();
+            urls.add(url);
+            if (NestedJarFile.PROTOCOL.equals(url.getProtocol())) {
+                try {
+                    index(new IndexedNestedJar(url, position,
+                            NestedJarFile.get(url)));
+                    return;
+                } catch (IOException e) {
+                    // cannot be read, look it up as is
+                }
+            }
+            File file = getJarFile(url);
+            if (file != null) {
+                try {
+                    index(new IndexedJar(url, position, file, new JarFile(
+                            file)));
+                    return;
+                } catch (IOException e) {
+                    // not a JAR, look it up as is
+                }
+            }
+            UrlElement[] copy = Arrays.copyOf(others, others.length + 1);
+            copy[others.length] = new UrlElement(url, position);
+            others = copy;
+        }
+    }
+
+    protected static File getJarFile(URL url) {
+        if (!"file".equals(url.getProtocol()) || url.getPath().endsWith("/")) {
+            return null;
+        }
+        File file;
+        try {
+            file = new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+        return file.isFile() ? file : null;
+    }
+
+    protected void index(IndexedJar jar) {
+        jars.add(jar);
+        for (String key : jar.getKeys(keys)) {
+            IndexedJar[] owners = index.get(key);
+            if (owners == null) {
+                owners = new IndexedJar[] { jar };
+            } else {
+                IndexedJar[] copy = new IndexedJar[owners.length + 1];
+                System.arraycopy(owners, 0, copy, 0, owners.length);
+                copy[owners.length] = jar;
+                owners = copy;
+            }
+            index.put(key, owners);
+        }
+    }
+
+    /**
+     * Gets the class path elements which may contain the given entry, in
+     * class path order: the indexed JARs owning it and the URLs which are not
+     * indexed.
+     *
+     * @since 7.1
+     */
+    protected Element[] getCandidates(String name) {
+        IndexedJar[] owners = getOwners(name);
+        UrlElement[] others = this.others;
+        if (others.length == 0) {
+            return owners;
+        }
+        Element[] merged = new Element[owners.length + others.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < owners.length && j < others.length) {
+            if (owners[i].position < others[j].position) {
+                merged[k++] = owners[i++];
+            } else {
+                merged[k++] = others[j++];
+            }
+        }
+        while (i < owners.length) {
+            merged[k++] = owners[i++];
+        }
+        while (j < others.length) {
+            merged[k++] = others[j++];
+        }
+        return merged;
+    }
+
+    /**
+     * Gets the indexed JARs which may contain the given entry, in class path
+     * order.
+     */
+    protected IndexedJar[] getOwners(String name) {
+        IndexedJar[] owners;
+        if (name.endsWith(".class")) {
+            int i = name.lastIndexOf('/');
+            owners = index.get(i == -1 ? "" : name.substring(0, i));
+        } else if (name.endsWith("/")) {
+            owners = index.get(name.substring(0, name.length() - 1));
+        } else {
+            owners = index.get(name);
+        }
+        return owners == null ? NO_JARS : owners;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/').concat(".class");
+        Element[] candidates = getCandidates(path);
+        if (candidates.length > 0) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            for (Element element : candidates) {
+                try {
+                    CodeSource cs = element.read(path, out);
+                    if (cs != null) {
+                        return defineClass(name, element, out.toByteArray(),
+                                cs);
+                    }
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    protected Class<?> defineClass(String name, Element element,
+            byte[] bytes, CodeSource cs) throws IOException {
+        int i = name.lastIndexOf('.');
+        if (i != -1) {
+            definePackage(name.substring(0, i), element);
+        }
+        return defineClass(name, bytes, 0, bytes.length, cs);
+    }
+
+    protected void definePackage(String name, Element element)
+            throws IOException {
+        if (getPackage(name) != null) {
+            return;
+        }
+        Manifest manifest = element.getManifest();
+        try {
+            if (manifest != null) {
+                definePackage(name, manifest, element.url);
+            } else {
+                definePackage(name, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException e) {
+            // defined concurrently by another class of the same package
+        }
+    }
+
+    protected static void copy(InputStream in, ByteArrayOutputStream out)
+            throws IOException {
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public URL findResource(String name) {
+        for (Element element : getCandidates(name)) {
+            URL url = element.getResource(name);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        List<URL> found = new ArrayList<URL>();
+        for (Element element : getCandidates(name)) {
+            URL url = element.getResource(name);
+            if (url != null) {
+                found.add(url);
+            }
+        }
+        return Collections.enumeration(found);
+    }
+
+    @Override
+    public URL[] getURLs() {
+        return urls.toArray(new URL[urls.size()]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (indexLock) {
+            index.clear();
+            List<Element> elements = new ArrayList<Element>(jars);
+            elements.addAll(Arrays.asList(others));
+            for (Element element : elements) {
+                try {
+                    element.close();
+                } catch (IOException e) {
+                    // ignore, closing the others
+                }
+            }
+            jars.clear();
+            others = NO_URLS;
+        }
+        super.close();
     }
 
     @Override
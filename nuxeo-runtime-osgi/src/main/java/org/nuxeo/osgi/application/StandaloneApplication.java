@@ -237,6 +237,7 @@ public class StandaloneApplication extends OSGiAdapter {
             cpath.scan(classPath, scanForNestedJARs, libdirs);
             cpath.store(cache);
         }
+        classLoader.storeIndex();
         installAll(cpath.getBundles());
         // new ApplicationBundleLoader(this, !clear).loadBundles(classPath);
     }
@@ -246,9 +247,21 @@ public class StandaloneApplication extends OSGiAdapter {
     }
 
     public void installAll(List<BundleFile> bundles) throws BundleException {
-        for (BundleFile bf : bundles) {
-            install(new BundleImpl(this, bf, classLoader.getLoader()));
+        registry.beginBatch();
+        try {
+            for (BundleFile bf : bundles) {
+                install(new BundleImpl(this, bf, classLoader.getLoader()));
+            }
+        } catch (BundleException | RuntimeException e) {
+            // start what was installed, without hiding the install failure
+            try {
+                registry.endBatch();
+            } catch (BundleException ee) {
+                e.addSuppressed(ee);
+            }
+            throw e;
         }
+        registry.endBatch();
     }
 
     /**
@@ -25,6 +25,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -66,6 +70,13 @@ public class FrameworkLoader {
     public static final String SCAN_FOR_NESTED_JARS = "org.nuxeo.app.scanForNestedJars";
     public static final String FLUSH_CACHE = "org.nuxeo.app.flushCache";
     public static final String ARGS = "org.nuxeo.app.args";
+    /**
+     * Host environment entry holding the manifest headers of the bundle
+     * files, keyed by path, as recorded by a previous boot.
+     *
+     * @since 7.1
+     */
+    public static final String BUNDLE_HEADERS = "org.nuxeo.app.bundleHeaders";
     private static final Log log = LogFactory.getLog(FrameworkLoader.class);
     private static boolean isInitialized;
     private static boolean isStarted;
@@ -73,6 +84,9 @@ public class FrameworkLoader {
     private static ClassLoader loader;
     private static List<File> bundleFiles;
     private static OSGiAdapter osgi;
+    private static Map<String, Map<String, String>> knownHeaders;
+    private static Map<String, Map<String, String>> installedHeaders;
+    private static boolean installFailed;
 
     public static OSGiAdapter osgi() {
         return osgi;
@@ -82,6 +96,7 @@ public class FrameworkLoader {
         return loader;
     }
 
+    @SuppressWarnings("unchecked")
     public static synchronized void initialize(ClassLoader cl, File home,
             List<File> bundleFiles, Map<String, Object> hostEnv) {
         if (isInitialized) {
@@ -93,6 +108,7 @@ public class FrameworkLoader {
         Collections.sort(FrameworkLoader.bundleFiles);
 
         loader = cl;
+        knownHeaders = (Map<String, Map<String, String>>) hostEnv.get(BUNDLE_HEADERS);
         doInitialize(hostEnv);
         osgi = new OSGiAdapter(home);
         isInitialized = true;
@@ -212,22 +228,16 @@ public class FrameworkLoader {
         SystemBundle systemBundle = new SystemBundle(osgi, bf, loader);
         osgi.setSystemBundle(systemBundle);
         printDeploymentOrderInfo(bundleFiles);
-        for (File f : bundleFiles) {
-            if (!isBundle(f)) {
-                continue;
-            }
-            try {
-                install(f);
-            } catch (IOException e) {
-                log.error("Failed to install bundle: " + f, e);
-                // continue
-            } catch (BundleException e) {
-                log.error("Failed to install bundle: " + f, e);
-                // continue
-            } catch (RuntimeException e) {
-                log.error("Failed to install bundle: " + f, e);
-                // continue
-            }
+        // bundles are started once all are installed
+        osgi.getRegistry().beginBatch();
+        installedHeaders = installBundles(osgi, loader, bundleFiles,
+                knownHeaders);
+        installFailed = installedHeaders == null;
+        try {
+            osgi.getRegistry().endBatch();
+        } catch (BundleException e) {
+            installFailed = true;
+            log.error(e.getMessage());
         }
         osgi.fireFrameworkEvent(new FrameworkEvent(FrameworkEvent.STARTED,
                 systemBundle, null));
@@ -251,19 +261,112 @@ public class FrameworkLoader {
     }
 
     public static String install(File f) throws IOException, BundleException {
+        BundleImpl bundle = install(osgi, loader, f, null);
+        return bundle == null ? null : bundle.getSymbolicName();
+    }
+
+    /**
+     * Installs the bundle files. If the manifest headers recorded by a
+     * previous boot are given, the files having some are installed from them
+     * without reading their manifest, and the others are not bundles.
+     *
+     * @param knownHeaders the manifest headers keyed by path, or {@code null}
+     *            to read the manifests
+     * @return the manifest headers of the installed bundles keyed by path, or
+     *         {@code null} if some bundles failed to install
+     * @since 7.1
+     */
+    public static Map<String, Map<String, String>> installBundles(
+            OSGiAdapter osgi, ClassLoader loader, List<File> files,
+            Map<String, Map<String, String>> knownHeaders) {
+        Map<String, Map<String, String>> installed = new HashMap<String, Map<String, String>>();
+        boolean failed = false;
+        for (File f : files) {
+            Map<String, String> headers = null;
+            if (knownHeaders != null) {
+                headers = knownHeaders.get(f.getPath());
+                if (headers == null) {
+                    continue;
+                }
+            } else if (!isBundle(f)) {
+                continue;
+            }
+            try {
+                BundleImpl bundle = install(osgi, loader, f, headers);
+                if (bundle != null) {
+                    installed.put(f.getPath(), toMap(bundle.getHeaders()));
+                }
+            } catch (IOException e) {
+                failed = true;
+                log.error("Failed to install bundle: " + f, e);
+                // continue
+            } catch (BundleException e) {
+                failed = true;
+                log.error("Failed to install bundle: " + f, e);
+                // continue
+            } catch (RuntimeException e) {
+                failed = true;
+                log.error("Failed to install bundle: " + f, e);
+                // continue
+            }
+        }
+        return failed ? null : installed;
+    }
+
+    /**
+     * Installs a bundle, using the given manifest headers instead of reading
+     * them from the bundle if not {@code null}.
+     *
+     * @return the installed bundle, or {@code null} if the file is not a
+     *         bundle
+     * @since 7.1
+     */
+    protected static BundleImpl install(OSGiAdapter osgi, ClassLoader loader,
+            File f, Map<String, String> headers) throws IOException,
+            BundleException {
         BundleFile bf = null;
         if (f.isDirectory()) {
             bf = new DirectoryBundleFile(f);
         } else {
             bf = new JarBundleFile(f);
         }
-        BundleImpl bundle = new BundleImpl(osgi, bf, loader);
+        BundleImpl bundle;
+        if (headers != null) {
+            bundle = new BundleImpl(osgi, bf, loader,
+                    new Hashtable<String, String>(headers));
+        } else {
+            bundle = new BundleImpl(osgi, bf, loader);
+        }
         if (bundle.getState() == 0) {
             // not a bundle (no Bundle-SymbolicName)
             return null;
         }
         osgi.install(bundle);
-        return bundle.getSymbolicName();
+        return bundle;
+    }
+
+    /**
+     * Gets the manifest headers of the bundles installed at start, keyed by
+     * path, for the launcher to replay them on the next boot.
+     *
+     * @return the headers, or {@code null} if some bundles failed to install
+     * @since 7.1
+     */
+    public static synchronized Map<String, Map<String, String>> getBundleHeaders() {
+        if (installedHeaders == null || installFailed) {
+            return null;
+        }
+        return new HashMap<String, Map<String, String>>(installedHeaders);
+    }
+
+    protected static Map<String, String> toMap(Dictionary<String, String> headers) {
+        Map<String, String> map = new HashMap<String, String>();
+        Enumeration<String> keys = headers.keys();
+        while (keys.hasMoreElements()) {
+            String key = keys.nextElement();
+            map.put(key, headers.get(key));
+        }
+        return map;
     }
 
     public static void preprocess() {
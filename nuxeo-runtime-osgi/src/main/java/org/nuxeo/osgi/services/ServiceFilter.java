@@ -0,0 +1,491 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.osgi.services;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
+
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * RFC 1960 (LDAP) filter on service properties.
+ * <p>
+ * Besides matching, a filter tells which object classes a service must have
+ * to possibly match it, see {@link #getObjectClasses()}, so that service
+ * events are only dispatched to the listeners which may be interested.
+ *
+ * @since 7.1
+ */
+public class ServiceFilter implements Filter {
+
+    protected static final int AND = 0;
+
+    protected static final int OR = 1;
+
+    protected static final int NOT = 2;
+
+    protected static final int EQUAL = 3;
+
+    protected static final int APPROX = 4;
+
+    protected static final int GREATER = 5;
+
+    protected static final int LESS = 6;
+
+    protected static final int PRESENT = 7;
+
+    protected static final int SUBSTRING = 8;
+
+    protected final String text;
+
+    protected final Node root;
+
+    protected ServiceFilter(String text, Node root) {
+        this.text = text;
+        this.root = root;
+    }
+
+    public static ServiceFilter parse(String filter)
+            throws InvalidSyntaxException {
+        if (filter == null) {
+            throw new InvalidSyntaxException("Null filter", null);
+        }
+        Parser parser = new Parser(filter);
+        Node root = parser.parseFilter();
+        parser.skipWhitespace();
+        if (parser.pos != filter.length()) {
+            throw parser.error("Extraneous trailing characters");
+        }
+        return new ServiceFilter(filter.trim(), root);
+    }
+
+    /**
+     * Gets the object classes a service must have one of to match this
+     * filter, or {@code null} if any service may match.
+     */
+    public Set<String> getObjectClasses() {
+        return root.getObjectClasses();
+    }
+
+    public boolean match(ServiceProperties properties) {
+        return root.match(properties);
+    }
+
+    @Override
+    public boolean match(ServiceReference reference) {
+        if (reference instanceof ServiceReferenceImpl) {
+            return match(((ServiceReferenceImpl) reference).getProperties());
+        }
+        return match(toDictionary(reference));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public boolean match(Dictionary dictionary) {
+        return match(ServiceProperties.of(dictionary, false));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public boolean matchCase(Dictionary dictionary) {
+        return match(ServiceProperties.of(dictionary, true));
+    }
+
+    protected static Dictionary<String, Object> toDictionary(
+            ServiceReference reference) {
+        Hashtable<String, Object> dict = new Hashtable<String, Object>();
+        String[] keys = reference.getPropertyKeys();
+        if (keys != null) {
+            for (String key : keys) {
+                Object value = reference.getProperty(key);
+                if (value != null) {
+                    dict.put(key, value);
+                }
+            }
+        }
+        return dict;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Filter && text.equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+    protected static class Node {
+
+        protected final int op;
+
+        protected final String attr;
+
+        /** The value, the substring parts, or the child nodes. */
+        protected final Object value;
+
+        protected Node(int op, String attr, Object value) {
+            this.op = op;
+            this.attr = attr;
+            this.value = value;
+        }
+
+        protected Node[] children() {
+            return (Node[]) value;
+        }
+
+        protected Set<String> getObjectClasses() {
+            switch (op) {
+            case EQUAL:
+                if (Constants.OBJECTCLASS.equalsIgnoreCase(attr)) {
+                    Set<String> classes = new HashSet<String>();
+                    classes.add((String) value);
+                    return classes;
+                }
+                return null;
+            case AND:
+                Set<String> narrowest = null;
+                for (Node child : children()) {
+                    Set<String> classes = child.getObjectClasses();
+                    if (classes != null
+                            && (narrowest == null || classes.size() < narrowest.size())) {
+                        narrowest = classes;
+                    }
+                }
+                return narrowest;
+            case OR:
+                Set<String> all = new HashSet<String>();
+                for (Node child : children()) {
+                    Set<String> classes = child.getObjectClasses();
+                    if (classes == null) {
+                        return null;
+                    }
+                    all.addAll(classes);
+                }
+                return all;
+            default:
+                return null;
+            }
+        }
+
+        protected boolean match(ServiceProperties properties) {
+            switch (op) {
+            case AND:
+                for (Node child : children()) {
+                    if (!child.match(properties)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for (Node child : children()) {
+                    if (child.match(properties)) {
+                        return true;
+                    }
+                }
+                return false;
+            case NOT:
+                return !children()[0].match(properties);
+            default:
+                Object actual = properties.get(attr);
+                if (actual == null) {
+                    return false;
+                }
+                return op == PRESENT || compare(actual);
+            }
+        }
+
+        protected boolean compare(Object actual) {
+            if (actual instanceof String) {
+                return compareString((String) actual);
+            }
+            if (actual instanceof Collection) {
+                for (Object each : (Collection<?>) actual) {
+                    if (each != null && compare(each)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (actual.getClass().isArray()) {
+                int length = Array.getLength(actual);
+                for (int i = 0; i < length; i++) {
+                    Object each = Array.get(actual, i);
+                    if (each != null && compare(each)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (op == SUBSTRING) {
+                return compareString(actual.toString());
+            }
+            String expected = ((String) value).trim();
+            if (actual instanceof Boolean) {
+                return (op == EQUAL || op == APPROX)
+                        && actual.equals(Boolean.valueOf(expected));
+            }
+            if (actual instanceof Character) {
+                return expected.length() == 1
+                        && compareOrdered(((Character) actual).compareTo(expected.charAt(0)));
+            }
+            if (actual instanceof Comparable) {
+                Object other = newInstance(actual.getClass(), expected);
+                if (other == null) {
+                    return false;
+                }
+                @SuppressWarnings({ "unchecked", "rawtypes" })
+                int cmp = ((Comparable) actual).compareTo(other);
+                return compareOrdered(cmp);
+            }
+            Object other = newInstance(actual.getClass(), expected);
+            return other != null && (op == EQUAL || op == APPROX)
+                    && actual.equals(other);
+        }
+
+        protected boolean compareOrdered(int cmp) {
+            switch (op) {
+            case GREATER:
+                return cmp >= 0;
+            case LESS:
+                return cmp <= 0;
+            default:
+                return cmp == 0;
+            }
+        }
+
+        protected boolean compareString(String actual) {
+            switch (op) {
+            case EQUAL:
+                return actual.equals(value);
+            case APPROX:
+                return normalize(actual).equalsIgnoreCase(
+                        normalize((String) value));
+            case GREATER:
+                return actual.compareTo((String) value) >= 0;
+            case LESS:
+                return actual.compareTo((String) value) <= 0;
+            case SUBSTRING:
+                return matchSubstring(actual, (String[]) value);
+            default:
+                return false;
+            }
+        }
+
+        /**
+         * Matches substring parts, the first being the required prefix and
+         * the last the required suffix, each possibly empty.
+         */
+        protected static boolean matchSubstring(String actual, String[] parts) {
+            String first = parts[0];
+            String last = parts[parts.length - 1];
+            if (!actual.startsWith(first)) {
+                return false;
+            }
+            int pos = first.length();
+            for (int i = 1; i < parts.length - 1; i++) {
+                int index = actual.indexOf(parts[i], pos);
+                if (index == -1) {
+                    return false;
+                }
+                pos = index + parts[i].length();
+            }
+            return actual.length() - pos >= last.length()
+                    && actual.endsWith(last);
+        }
+
+        protected static String normalize(String s) {
+            StringBuilder buf = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (!Character.isWhitespace(c)) {
+                    buf.append(c);
+                }
+            }
+            return buf.toString();
+        }
+
+        protected static Object newInstance(Class<?> type, String value) {
+            try {
+                Constructor<?> ctor = type.getConstructor(String.class);
+                return ctor.newInstance(value);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    protected static class Parser {
+
+        protected final String text;
+
+        protected int pos;
+
+        protected Parser(String text) {
+            this.text = text;
+        }
+
+        protected InvalidSyntaxException error(String message) {
+            return new InvalidSyntaxException(message + " at " + pos, text);
+        }
+
+        protected void skipWhitespace() {
+            while (pos < text.length()
+                    && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        protected void expect(char c) throws InvalidSyntaxException {
+            skipWhitespace();
+            if (pos >= text.length() || text.charAt(pos) != c) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        protected Node parseFilter() throws InvalidSyntaxException {
+            expect('(');
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("Unterminated filter");
+            }
+            Node node;
+            switch (text.charAt(pos)) {
+            case '&':
+                pos++;
+                node = new Node(AND, null, parseList());
+                break;
+            case '|':
+                pos++;
+                node = new Node(OR, null, parseList());
+                break;
+            case '!':
+                pos++;
+                node = new Node(NOT, null, new Node[] { parseFilter() });
+                break;
+            default:
+                node = parseItem();
+            }
+            expect(')');
+            return node;
+        }
+
+        protected Node[] parseList() throws InvalidSyntaxException {
+            List<Node> nodes = new ArrayList<Node>();
+            skipWhitespace();
+            while (pos < text.length() && text.charAt(pos) == '(') {
+                nodes.add(parseFilter());
+                skipWhitespace();
+            }
+            if (nodes.isEmpty()) {
+                throw error("Empty filter list");
+            }
+            return nodes.toArray(new Node[nodes.size()]);
+        }
+
+        protected Node parseItem() throws InvalidSyntaxException {
+            int start = pos;
+            while (pos < text.length() && "=<>~()".indexOf(text.charAt(pos)) == -1) {
+                pos++;
+            }
+            String attr = text.substring(start, pos).trim();
+            if (attr.length() == 0 || pos >= text.length()) {
+                throw error("Missing attribute");
+            }
+            int op;
+            char c = text.charAt(pos);
+            if (c == '=') {
+                op = EQUAL;
+                pos++;
+            } else if (c != '(' && c != ')' && pos + 1 < text.length()
+                    && text.charAt(pos + 1) == '=') {
+                op = c == '~' ? APPROX : c == '>' ? GREATER : LESS;
+                pos += 2;
+            } else {
+                throw error("Invalid operator");
+            }
+            List<String> parts = parseValue();
+            if (op != EQUAL) {
+                if (parts.size() > 1) {
+                    throw error("Wildcard not allowed with this operator");
+                }
+                return new Node(op, attr, parts.get(0));
+            }
+            if (parts.size() == 1) {
+                return new Node(EQUAL, attr, parts.get(0));
+            }
+            if (parts.size() == 2 && parts.get(0).length() == 0
+                    && parts.get(1).length() == 0) {
+                return new Node(PRESENT, attr, null);
+            }
+            return new Node(SUBSTRING, attr,
+                    parts.toArray(new String[parts.size()]));
+        }
+
+        /**
+         * Parses a value up to the closing parenthesis, split on the
+         * unescaped wildcards.
+         */
+        protected List<String> parseValue() throws InvalidSyntaxException {
+            List<String> parts = new ArrayList<String>();
+            StringBuilder buf = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c == ')') {
+                    parts.add(buf.toString());
+                    return parts;
+                }
+                if (c == '(') {
+                    throw error("Unescaped '('");
+                }
+                if (c == '*') {
+                    parts.add(buf.toString());
+                    buf.setLength(0);
+                } else if (c == '\\') {
+                    if (++pos >= text.length()) {
+                        throw error("Dangling escape");
+                    }
+                    buf.append(text.charAt(pos));
+                } else {
+                    buf.append(c);
+                }
+                pos++;
+            }
+            throw error("Unterminated value");
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.osgi.services;
+
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.osgi.framework.Constants;
+
+/**
+ * Immutable service properties. Keys are case insensitive unless stated
+ * otherwise, as required for service properties and filters.
+ *
+ * @since 7.1
+ */
+public final class ServiceProperties {
+
+    public static final ServiceProperties EMPTY = new ServiceProperties(
+            new HashMap<String, Object>(), false);
+
+    private final Map<String, Object> values;
+
+    private final Map<String, String> keys;
+
+    private ServiceProperties(Map<String, Object> values, boolean caseSensitive) {
+        this.values = values;
+        if (caseSensitive) {
+            keys = null;
+        } else {
+            keys = new HashMap<String, String>(values.size() * 2);
+            for (String key : values.keySet()) {
+                keys.put(key.toLowerCase(Locale.ENGLISH), key);
+            }
+        }
+    }
+
+    /**
+     * Builds the properties of a service registration: the given ones, minus
+     * those the framework sets itself.
+     */
+    public static ServiceProperties of(Dictionary<?, ?> dict, String[] classes,
+            long id) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put(Constants.OBJECTCLASS, classes.clone());
+        values.put(Constants.SERVICE_ID, Long.valueOf(id));
+        if (dict != null) {
+            Enumeration<?> en = dict.keys();
+            while (en.hasMoreElements()) {
+                Object key = en.nextElement();
+                if (!(key instanceof String)) {
+                    continue;
+                }
+                String name = (String) key;
+                if (Constants.OBJECTCLASS.equalsIgnoreCase(name)
+                        || Constants.SERVICE_ID.equalsIgnoreCase(name)) {
+                    continue;
+                }
+                values.put(name, dict.get(key));
+            }
+        }
+        return new ServiceProperties(values, false);
+    }
+
+    public static ServiceProperties of(Dictionary<?, ?> dict,
+            boolean caseSensitive) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        if (dict != null) {
+            Enumeration<?> en = dict.keys();
+            while (en.hasMoreElements()) {
+                Object key = en.nextElement();
+                values.put(String.valueOf(key), dict.get(key));
+            }
+        }
+        return new ServiceProperties(values, caseSensitive);
+    }
+
+    public Object get(String key) {
+        if (keys != null) {
+            String actual = keys.get(key.toLowerCase(Locale.ENGLISH));
+            return actual == null ? null : values.get(actual);
+        }
+        return values.get(key);
+    }
+
+    public String[] getKeys() {
+        return values.keySet().toArray(new String[values.size()]);
+    }
+
+    public String[] getObjectClasses() {
+        Object classes = values.get(Constants.OBJECTCLASS);
+        return classes instanceof String[] ? (String[]) classes
+                : new String[0];
+    }
+
+    public long getId() {
+        Object id = values.get(Constants.SERVICE_ID);
+        return id instanceof Long ? ((Long) id).longValue() : -1;
+    }
+
+    /**
+     * Gets the service ranking, 0 if missing or not an integer.
+     */
+    public int getRanking() {
+        Object ranking = get(Constants.SERVICE_RANKING);
+        return ranking instanceof Integer ? ((Integer) ranking).intValue() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+
+}
@@ -19,55 +19,84 @@
 package org.nuxeo.osgi.services;
 
 import java.util.Dictionary;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServiceFactory;
 import org.osgi.framework.ServiceReference;
 
 /**
- * Dummy service reference. servicefactory not supported.
+ * Service reference. Properties are immutable and replaced as a whole when
+ * the registration is modified, so reading them does not lock.
+ * <p>
+ * The objects returned by a {@link ServiceFactory} are cached per using
+ * bundle until it releases them, or the service is unregistered.
  *
  * @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
  *
  */
 public class ServiceReferenceImpl implements ServiceReference {
 
-    protected Bundle bundle;
-    protected Object service;
-    protected ServiceFactory factory;
-    protected Map<String,Object> props;
+    protected static class Use {
 
-    public ServiceReferenceImpl(Bundle bundle, Object service) {
+        protected int count;
+
+        protected Object service;
+    }
+
+    protected final ServiceRegistrationImpl registration;
+    protected final Bundle bundle;
+    protected final Object service;
+    protected final ServiceFactory factory;
+    protected volatile ServiceProperties props;
+    protected volatile boolean unregistered;
+    protected final ConcurrentMap<Bundle, Use> uses = new ConcurrentHashMap<Bundle, Use>();
+
+    /**
+     * @since 7.1
+     */
+    public ServiceReferenceImpl(ServiceRegistrationImpl registration,
+            Bundle bundle, Object service, ServiceProperties props) {
+        this.registration = registration;
         this.bundle = bundle;
+        this.props = props;
         if (service instanceof ServiceFactory) {
-            factory = (ServiceFactory)service;
+            factory = (ServiceFactory) service;
+            this.service = null;
         } else {
+            factory = null;
             this.service = service;
         }
     }
 
+    /**
+     * @since 7.1
+     */
+    public ServiceProperties getProperties() {
+        return props;
+    }
+
     @Override
-    public synchronized Object getProperty(String key) {
-        return props != null ? props.get(key) : null;
+    public Object getProperty(String key) {
+        return props.get(key);
     }
 
     @Override
-    public synchronized String[] getPropertyKeys() {
-        return props != null ? props.keySet().toArray(new String[props.size()]) : null;
+    public String[] getPropertyKeys() {
+        return props.getKeys();
     }
 
     @Override
     public Bundle getBundle() {
-        return bundle;
+        return unregistered ? null : bundle;
     }
 
     @Override
     public Bundle[] getUsingBundles() {
-        // not impl.
-        return new Bundle[] {};
+        Set<Bundle> users = uses.keySet();
+        return users.toArray(new Bundle[users.size()]);
     }
 
     @Override
@@ -76,29 +105,113 @@ public class ServiceReferenceImpl implements ServiceReference {
             return true;
         }
         try {
-            return service.getClass() == bundle.loadClass(className);
+            return bundle.loadClass(className).isInstance(service);
         } catch (ClassNotFoundException e) {
             return false;
         }
     }
 
+    /**
+     * Orders references by ranking then, for the same ranking, by reverse
+     * registration order, the greatest reference being the one returned by
+     * service lookups.
+     */
     @Override
     public int compareTo(Object reference) {
-        throw new UnsupportedOperationException("Not implemented");
+        ServiceProperties other = ((ServiceReferenceImpl) reference).props;
+        int cmp = Integer.compare(props.getRanking(), other.getRanking());
+        return cmp != 0 ? cmp : Long.compare(other.getId(), props.getId());
     }
 
+    /**
+     * Gets the service on behalf of the registering bundle.
+     */
     public Object getService() {
-        return service == null ? factory.getService(bundle, null) : service;
+        return getService(bundle);
     }
 
-    public synchronized void setProperties(Dictionary<String,?> dict) {
-        if (props == null) {
-            props = new HashMap<String, Object>();
+    /**
+     * Gets the service on behalf of a using bundle, asking the service
+     * factory only for the first use of that bundle.
+     *
+     * @since 7.1
+     */
+    public Object getService(Bundle user) {
+        if (unregistered) {
+            return null;
+        }
+        Use use = uses.get(user);
+        if (use == null) {
+            Use previous = uses.putIfAbsent(user, use = new Use());
+            if (previous != null) {
+                use = previous;
+            }
+        }
+        synchronized (use) {
+            if (factory != null && use.service == null) {
+                use.service = factory.getService(user, registration);
+                if (use.service == null) {
+                    return null;
+                }
+            }
+            use.count++;
+            return factory != null ? use.service : service;
+        }
+    }
+
+    /**
+     * Releases a use of the service by a bundle, giving the service back to
+     * the factory once the bundle does not use it anymore.
+     *
+     * @since 7.1
+     */
+    public boolean ungetService(Bundle user) {
+        Use use = uses.get(user);
+        if (use == null) {
+            return false;
         }
-        Enumeration<String> en = dict.keys();
-        while (en.hasMoreElements()) {
-            String key = en.nextElement();
-            props.put(key, dict.get(key));
+        synchronized (use) {
+            if (use.count == 0) {
+                return false;
+            }
+            if (--use.count > 0) {
+                return true;
+            }
+            uses.remove(user, use);
+            release(user, use);
         }
+        return true;
+    }
+
+    protected void release(Bundle user, Use use) {
+        if (factory != null && use.service != null) {
+            factory.ungetService(user, registration, use.service);
+            use.service = null;
+        }
+    }
+
+    /**
+     * Releases the services still in use, once unregistered.
+     */
+    protected void releaseAll() {
+        for (Bundle user : uses.keySet()) {
+            Use use = uses.remove(user);
+            if (use != null) {
+                synchronized (use) {
+                    use.count = 0;
+                    release(user, use);
+                }
+            }
+        }
+    }
+
+    protected void setProperties(Dictionary<?, ?> dict) {
+        props = ServiceProperties.of(dict, props.getObjectClasses(),
+                props.getId());
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceReference" + props;
     }
 }
@@ -20,27 +20,31 @@ package org.nuxeo.osgi.services;
 
 import java.util.Dictionary;
 
-import org.nuxeo.osgi.OSGiAdapter;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 
 /**
- * Dummy service registration impl.
+ * Service registration, managed by the {@link ServiceRegistry}.
  *
  * @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
  *
  */
 public class ServiceRegistrationImpl implements ServiceRegistration {
 
-    protected OSGiAdapter osgi;
-    protected String[] classes;
-    protected ServiceReferenceImpl ref;
+    protected final ServiceRegistry registry;
+    protected final ServiceReferenceImpl ref;
+    // guarded by the registry
+    protected boolean unregistering;
 
-    public ServiceRegistrationImpl(OSGiAdapter osgi, Bundle bundle, String[] classes, Object service) {
-        this.osgi = osgi;
-        this.classes = classes;
-        this.ref = new ServiceReferenceImpl(bundle, service);
+    /**
+     * @since 7.1
+     */
+    public ServiceRegistrationImpl(ServiceRegistry registry, Bundle bundle,
+            String[] classes, Object service, Dictionary<?, ?> properties) {
+        this.registry = registry;
+        this.ref = new ServiceReferenceImpl(this, bundle, service,
+                ServiceProperties.of(properties, classes, registry.nextId()));
     }
 
     @Override
@@ -48,17 +52,15 @@ public class ServiceRegistrationImpl implements ServiceRegistration {
         return ref;
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @SuppressWarnings("rawtypes")
     @Override
     public void setProperties(Dictionary properties) {
-        ref.setProperties(properties);
+        registry.modified(this, properties);
     }
 
     @Override
     public void unregister() {
-        for (String c : classes) {
-            osgi.removeService(c);
-        }
+        registry.unregister(this);
     }
 
 }
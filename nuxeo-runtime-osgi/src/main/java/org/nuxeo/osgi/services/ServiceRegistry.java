@@ -0,0 +1,337 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.osgi.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Registry of the OSGi services.
+ * <p>
+ * Registrations are kept per registered class in arrays sorted by
+ * {@value Constants#SERVICE_RANKING} then registration order, replaced on
+ * each change, so that lookups do not lock.
+ * <p>
+ * Service listeners are indexed by the object classes their filter requires,
+ * see {@link ServiceFilter#getObjectClasses()}: an event only reaches the
+ * listeners indexed under a class of the service and those whose filter is
+ * not restricted to some classes.
+ *
+ * @since 7.1
+ */
+public class ServiceRegistry {
+
+    private static final Log log = LogFactory.getLog(ServiceRegistry.class);
+
+    protected static final ServiceRegistrationImpl[] NO_REGISTRATIONS = new ServiceRegistrationImpl[0];
+
+    protected static final ListenerEntry[] NO_LISTENERS = new ListenerEntry[0];
+
+    /** Highest ranking first, then oldest first. */
+    protected static final Comparator<ServiceRegistrationImpl> ORDER = new Comparator<ServiceRegistrationImpl>() {
+        @Override
+        public int compare(ServiceRegistrationImpl o1,
+                ServiceRegistrationImpl o2) {
+            return o2.ref.compareTo(o1.ref);
+        }
+    };
+
+    protected static class ListenerEntry {
+
+        protected final ServiceListener listener;
+
+        protected final ServiceFilter filter;
+
+        protected final Set<String> classes;
+
+        protected ListenerEntry(ServiceListener listener, ServiceFilter filter) {
+            this.listener = listener;
+            this.filter = filter;
+            classes = filter == null ? null : filter.getObjectClasses();
+        }
+
+        protected boolean matches(ServiceProperties properties) {
+            return filter == null || filter.match(properties);
+        }
+    }
+
+    protected final AtomicLong ids = new AtomicLong();
+
+    protected final Object lock = new Object();
+
+    protected final ConcurrentMap<String, ServiceRegistrationImpl[]> byClass = new ConcurrentHashMap<String, ServiceRegistrationImpl[]>();
+
+    protected volatile ServiceRegistrationImpl[] all = NO_REGISTRATIONS;
+
+    protected final Object listenersLock = new Object();
+
+    protected final Map<ServiceListener, ListenerEntry> listeners = new IdentityHashMap<ServiceListener, ListenerEntry>();
+
+    protected final ConcurrentMap<String, ListenerEntry[]> indexedListeners = new ConcurrentHashMap<String, ListenerEntry[]>();
+
+    protected volatile ListenerEntry[] otherListeners = NO_LISTENERS;
+
+    protected long nextId() {
+        return ids.incrementAndGet();
+    }
+
+    public ServiceRegistrationImpl register(Bundle bundle, String[] classes,
+            Object service, Dictionary<?, ?> properties) {
+        ServiceRegistrationImpl reg = new ServiceRegistrationImpl(this, bundle,
+                classes, service, properties);
+        synchronized (lock) {
+            for (String clazz : classes) {
+                byClass.put(clazz, sorted(byClass.get(clazz), reg, null));
+            }
+            ServiceRegistrationImpl[] copy = Arrays.copyOf(all, all.length + 1);
+            copy[all.length] = reg;
+            all = copy;
+        }
+        fireServiceEvent(new ServiceEvent(ServiceEvent.REGISTERED, reg.ref));
+        return reg;
+    }
+
+    protected void modified(ServiceRegistrationImpl reg,
+            Dictionary<?, ?> properties) {
+        synchronized (lock) {
+            if (reg.unregistering) {
+                throw new IllegalStateException(
+                        "Service already unregistered: " + reg.ref);
+            }
+            reg.ref.setProperties(properties);
+            // the ranking may have changed
+            for (String clazz : reg.ref.props.getObjectClasses()) {
+                byClass.put(clazz, sorted(byClass.get(clazz), null, null));
+            }
+        }
+        fireServiceEvent(new ServiceEvent(ServiceEvent.MODIFIED, reg.ref));
+    }
+
+    /**
+     * Unregisters a service, once the listeners were told while the service
+     * is still available. Unregistering twice does nothing.
+     */
+    protected void unregister(ServiceRegistrationImpl reg) {
+        synchronized (lock) {
+            if (reg.unregistering) {
+                return;
+            }
+            reg.unregistering = true;
+        }
+        fireServiceEvent(new ServiceEvent(ServiceEvent.UNREGISTERING, reg.ref));
+        synchronized (lock) {
+            for (String clazz : reg.ref.props.getObjectClasses()) {
+                ServiceRegistrationImpl[] regs = sorted(byClass.get(clazz),
+                        null, reg);
+                if (regs.length == 0) {
+                    byClass.remove(clazz);
+                } else {
+                    byClass.put(clazz, regs);
+                }
+            }
+            List<ServiceRegistrationImpl> copy = new ArrayList<ServiceRegistrationImpl>(
+                    Arrays.asList(all));
+            copy.remove(reg);
+            all = copy.toArray(new ServiceRegistrationImpl[copy.size()]);
+            reg.ref.unregistered = true;
+        }
+        reg.ref.releaseAll();
+    }
+
+    protected static ServiceRegistrationImpl[] sorted(
+            ServiceRegistrationImpl[] regs, ServiceRegistrationImpl added,
+            ServiceRegistrationImpl removed) {
+        List<ServiceRegistrationImpl> list = new ArrayList<ServiceRegistrationImpl>();
+        if (regs != null) {
+            list.addAll(Arrays.asList(regs));
+        }
+        if (added != null) {
+            list.add(added);
+        }
+        if (removed != null) {
+            list.remove(removed);
+        }
+        Collections.sort(list, ORDER);
+        return list.toArray(new ServiceRegistrationImpl[list.size()]);
+    }
+
+    /**
+     * Unregisters the services registered under the given class.
+     */
+    public void unregisterAll(String clazz) {
+        ServiceRegistrationImpl[] regs = byClass.get(clazz);
+        if (regs != null) {
+            for (ServiceRegistrationImpl reg : regs) {
+                unregister(reg);
+            }
+        }
+    }
+
+    /**
+     * Gets the reference to the service with the highest ranking registered
+     * under the given class.
+     */
+    public ServiceReference getReference(String clazz) {
+        ServiceRegistrationImpl[] regs = byClass.get(clazz);
+        return regs == null || regs.length == 0 ? null : regs[0].ref;
+    }
+
+    /**
+     * Gets the references to the services registered under the given class,
+     * or under any class if {@code null}, which match the filter if any.
+     *
+     * @return the references, or {@code null} if none
+     */
+    public ServiceReference[] getReferences(String clazz, ServiceFilter filter) {
+        ServiceRegistrationImpl[] regs = clazz == null ? all
+                : byClass.get(clazz);
+        if (regs == null || regs.length == 0) {
+            return null;
+        }
+        List<ServiceReference> refs = new ArrayList<ServiceReference>(
+                regs.length);
+        for (ServiceRegistrationImpl reg : regs) {
+            if (filter == null || filter.match(reg.ref.props)) {
+                refs.add(reg.ref);
+            }
+        }
+        return refs.isEmpty() ? null
+                : refs.toArray(new ServiceReference[refs.size()]);
+    }
+
+    /**
+     * Adds a listener, or replaces its filter if already added.
+     *
+     * @param filter the filter, {@code null} to listen to all services
+     */
+    public void addServiceListener(ServiceListener listener,
+            ServiceFilter filter) {
+        synchronized (listenersLock) {
+            removeListenerEntry(listener);
+            ListenerEntry entry = new ListenerEntry(listener, filter);
+            listeners.put(listener, entry);
+            if (entry.classes == null) {
+                otherListeners = appended(otherListeners, entry);
+            } else {
+                for (String clazz : entry.classes) {
+                    indexedListeners.put(clazz,
+                            appended(indexedListeners.get(clazz), entry));
+                }
+            }
+        }
+    }
+
+    public void removeServiceListener(ServiceListener listener) {
+        synchronized (listenersLock) {
+            removeListenerEntry(listener);
+        }
+    }
+
+    protected void removeListenerEntry(ServiceListener listener) {
+        ListenerEntry entry = listeners.remove(listener);
+        if (entry == null) {
+            return;
+        }
+        if (entry.classes == null) {
+            otherListeners = removed(otherListeners, entry);
+            return;
+        }
+        for (String clazz : entry.classes) {
+            ListenerEntry[] entries = removed(indexedListeners.get(clazz), entry);
+            if (entries.length == 0) {
+                indexedListeners.remove(clazz);
+            } else {
+                indexedListeners.put(clazz, entries);
+            }
+        }
+    }
+
+    protected static ListenerEntry[] appended(ListenerEntry[] entries,
+            ListenerEntry entry) {
+        if (entries == null) {
+            return new ListenerEntry[] { entry };
+        }
+        ListenerEntry[] copy = Arrays.copyOf(entries, entries.length + 1);
+        copy[entries.length] = entry;
+        return copy;
+    }
+
+    protected static ListenerEntry[] removed(ListenerEntry[] entries,
+            ListenerEntry entry) {
+        if (entries == null) {
+            return NO_LISTENERS;
+        }
+        List<ListenerEntry> list = new ArrayList<ListenerEntry>(
+                Arrays.asList(entries));
+        list.remove(entry);
+        return list.toArray(new ListenerEntry[list.size()]);
+    }
+
+    /**
+     * Dispatches an event to the listeners whose filter matches the service.
+     */
+    public void fireServiceEvent(ServiceEvent event) {
+        ServiceReference ref = event.getServiceReference();
+        ServiceProperties props = ref instanceof ServiceReferenceImpl ? ((ServiceReferenceImpl) ref).getProperties()
+                : ServiceProperties.of(ServiceFilter.toDictionary(ref), false);
+        String[] classes = props.getObjectClasses();
+        List<ListenerEntry> targets = new ArrayList<ListenerEntry>();
+        for (String clazz : classes) {
+            ListenerEntry[] entries = indexedListeners.get(clazz);
+            if (entries != null) {
+                for (ListenerEntry entry : entries) {
+                    // filters requiring several classes are indexed under each
+                    if (classes.length == 1 || !targets.contains(entry)) {
+                        targets.add(entry);
+                    }
+                }
+            }
+        }
+        targets.addAll(Arrays.asList(otherListeners));
+        for (ListenerEntry entry : targets) {
+            if (!entry.matches(props)) {
+                continue;
+            }
+            try {
+                entry.listener.serviceChanged(event);
+            } catch (RuntimeException e) {
+                log.error("Error in service listener " + entry.listener, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.osgi.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Sorted index of the entry paths of a bundle, answering prefix queries
+ * without scanning the bundle.
+ * <p>
+ * Paths are relative to the bundle root and never start with a slash.
+ * Directories end with a slash and are present even if the bundle has no
+ * explicit entry for them. The descendants of a directory share its path
+ * as a prefix and thus form a contiguous range starting right after it.
+ * <p>
+ * Indexes of JAR files are cached on disk, keyed by the JAR path and checked
+ * against its length and last modification time, once a cache directory is
+ * set through {@link #setCacheDirectory(File)}.
+ *
+ * @since 7.1
+ */
+public class EntryIndex {
+
+    protected static final int MAGIC = 0x4e584549;
+
+    protected static final int VERSION = 1;
+
+    protected static volatile File cacheDirectory;
+
+    protected final String[] paths;
+
+    protected EntryIndex(String[] paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * Builds the index of the given entry paths, adding the missing parent
+     * directories.
+     */
+    public static EntryIndex of(Collection<String> entries) {
+        Set<String> all = new HashSet<String>(entries.size() * 2);
+        for (String path : entries) {
+            if (path.startsWith("/")) {
+                path = path.substring(1);
+            }
+            if (path.length() == 0) {
+                continue;
+            }
+            all.add(path);
+            int i = path.lastIndexOf('/', path.length() - 2);
+            while (i > 0 && all.add(path.substring(0, i + 1))) {
+                i = path.lastIndexOf('/', i - 1);
+            }
+        }
+        String[] paths = all.toArray(new String[all.size()]);
+        Arrays.sort(paths);
+        return new EntryIndex(paths);
+    }
+
+    public static EntryIndex of(JarFile jar) {
+        List<String> entries = new ArrayList<String>();
+        Enumeration<JarEntry> it = jar.entries();
+        while (it.hasMoreElements()) {
+            entries.add(it.nextElement().getName());
+        }
+        return of(entries);
+    }
+
+    /**
+     * Indexes the files and directories below the given root.
+     */
+    public static EntryIndex of(File root) {
+        List<String> entries = new ArrayList<String>();
+        collect(root, "", entries);
+        return of(entries);
+    }
+
+    protected static void collect(File dir, String prefix, List<String> entries) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                path += '/';
+                entries.add(path);
+                collect(file, path, entries);
+            } else {
+                entries.add(path);
+            }
+        }
+    }
+
+    /**
+     * Gets the index of a JAR, from the disk cache if it is up to date.
+     */
+    public static EntryIndex load(File file, JarFile jar) {
+        File cache = getCacheFile(file);
+        if (cache != null && cache.isFile()) {
+            try {
+                EntryIndex index = read(cache, file);
+                if (index != null) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // rewritten below
+            }
+        }
+        EntryIndex index = of(jar);
+        if (cache != null) {
+            try {
+                index.write(cache, file);
+            } catch (IOException e) {
+                cache.delete();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Sets the directory where JAR indexes are cached, or {@code null} to
+     * disable the cache.
+     */
+    public static void setCacheDirectory(File dir) {
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        cacheDirectory = dir;
+    }
+
+    protected static File getCacheFile(File file) {
+        File dir = cacheDirectory;
+        if (dir == null) {
+            return null;
+        }
+        String path = file.getAbsolutePath();
+        return new File(dir, file.getName() + '-'
+                + Integer.toHexString(path.hashCode()) + ".idx");
+    }
+
+    protected static EntryIndex read(File cache, File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(cache)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (!file.getAbsolutePath().equals(in.readUTF())
+                    || file.length() != in.readLong()
+                    || file.lastModified() != in.readLong()) {
+                return null;
+            }
+            String[] paths = new String[in.readInt()];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = in.readUTF();
+            }
+            return new EntryIndex(paths);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file renamed once complete, so that
+     * concurrent readers never see a partial index.
+     */
+    protected void write(File cache, File file) throws IOException {
+        File tmp = File.createTempFile(cache.getName(), ".tmp",
+                cache.getParentFile());
+        try {
+            write(tmp, file.getAbsolutePath(), file.length(),
+                    file.lastModified());
+            if (!tmp.renameTo(cache)) {
+                cache.delete();
+                if (!tmp.renameTo(cache)) {
+                    throw new IOException("Cannot write entry index " + cache);
+                }
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    protected void write(File tmp, String jarPath, long length,
+            long lastModified) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(jarPath);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeInt(paths.length);
+            for (String path : paths) {
+                out.writeUTF(path);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Normalizes a directory path into the prefix of its descendants.
+     */
+    protected static String toPrefix(String path) {
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.length() == 0 || path.endsWith("/")) {
+            return path;
+        }
+        return path + '/';
+    }
+
+    protected int start(String prefix) {
+        int i = Arrays.binarySearch(paths, prefix);
+        return i < 0 ? -i - 1 : i;
+    }
+
+    /**
+     * Gets the index of the first path following the descendants of the given
+     * directory.
+     */
+    protected int skip(String dir) {
+        return start(dir.substring(0, dir.length() - 1) + (char) ('/' + 1));
+    }
+
+    public boolean contains(String path) {
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        return Arrays.binarySearch(paths, path) >= 0;
+    }
+
+    /**
+     * Finds the files below the given directory whose name matches the filter.
+     *
+     * @see org.osgi.framework.Bundle#findEntries(String, String, boolean)
+     */
+    public List<String> find(String dir, EntryFilter filter, boolean recurse) {
+        String prefix = toPrefix(dir);
+        List<String> result = new ArrayList<String>();
+        int i = start(prefix);
+        if (i < paths.length && paths[i].equals(prefix)) {
+            i++;
+        }
+        while (i < paths.length && paths[i].startsWith(prefix)) {
+            String path = paths[i];
+            if (path.endsWith("/")) {
+                i = recurse ? i + 1 : skip(path);
+                continue;
+            }
+            int slash = path.lastIndexOf('/');
+            if (filter.match(slash == -1 ? path : path.substring(slash + 1))) {
+                result.add(path);
+            }
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the paths of the files and directories directly below the given
+     * directory.
+     *
+     * @see org.osgi.framework.Bundle#getEntryPaths(String)
+     */
+    public List<String> list(String dir) {
+        String prefix = toPrefix(dir);
+        List<String> result = new ArrayList<String>();
+        int i = start(prefix);
+        if (i < paths.length && paths[i].equals(prefix)) {
+            i++;
+        }
+        while (i < paths.length && paths[i].startsWith(prefix)) {
+            String path = paths[i];
+            result.add(path);
+            i = path.endsWith("/") ? skip(path) : i + 1;
+        }
+        return result;
+    }
+
+    public int size() {
+        return paths.length;
+    }
+
+}
@@ -0,0 +1,498 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.osgi.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A JAR stored uncompressed inside another JAR, read in place.
+ * <p>
+ * The nested JAR bytes are memory mapped from the container file and its
+ * entries are read through views of that region, so that the nested JAR
+ * never needs to be extracted. Only nested JARs using the
+ * {@link ZipEntry#STORED} method can be opened that way, compressed ones
+ * still need to be extracted.
+ * <p>
+ * Nested JARs and their entries are addressed by {@value #PROTOCOL} URLs of
+ * the form {@code nxjar:file:/container.jar!/lib/nested.jar!/path/entry},
+ * handled by {@link NestedJarURLStreamHandler}. The handler is carried by the
+ * URLs, parse their external form back with {@link #newURL(String)}.
+ * <p>
+ * The opened nested JARs are shared by URL, and reopened when the length or
+ * the modification time of their container changes. Signed nested JARs are
+ * not opened: their signatures can only be checked by a {@link JarFile},
+ * they need to be extracted.
+ *
+ * @since 7.1
+ */
+public class NestedJarFile implements Closeable {
+
+    public static final String PROTOCOL = "nxjar";
+
+    public static final String SEPARATOR = "!/";
+
+    protected static final int LOCAL_HEADER = 0x04034b50;
+
+    protected static final int CENTRAL_HEADER = 0x02014b50;
+
+    protected static final int END_HEADER = 0x06054b50;
+
+    protected static final int END_LENGTH = 22;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected static final ConcurrentMap<String, NestedJarFile> opened = new ConcurrentHashMap<String, NestedJarFile>();
+
+    protected static class Entry {
+
+        protected final String name;
+
+        protected final int method;
+
+        protected final long compressedSize;
+
+        protected final long size;
+
+        protected final long offset;
+
+        protected Entry(String name, int method, long compressedSize,
+                long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+
+    protected final File container;
+
+    protected final long containerLength;
+
+    protected final long containerLastModified;
+
+    protected final String name;
+
+    protected final ByteBuffer region;
+
+    protected final Map<String, Entry> entries;
+
+    protected final String spec;
+
+    protected final URL url;
+
+    protected volatile Manifest manifest;
+
+    protected NestedJarFile(File container, long containerLength,
+            long containerLastModified, String name, ByteBuffer region)
+            throws IOException {
+        this.container = container;
+        this.containerLength = containerLength;
+        this.containerLastModified = containerLastModified;
+        this.name = name;
+        this.region = region;
+        entries = readEntries(region);
+        spec = PROTOCOL + ':' + container.toURI().toURL().toExternalForm()
+                + SEPARATOR + name;
+        url = newURL(spec);
+    }
+
+    /**
+     * Returns {@code true} if the given nested JAR entry can be read in place.
+     */
+    public static boolean canOpen(ZipEntry entry) {
+        return entry.getMethod() == ZipEntry.STORED;
+    }
+
+    /**
+     * Opens the nested JAR stored at the given path of a container JAR.
+     *
+     * @throws ZipException if the nested JAR is compressed, signed or cannot
+     *             be parsed
+     */
+    public static NestedJarFile open(File container, String name)
+            throws IOException {
+        // taken first, a concurrent change makes the nested JAR stale
+        long length = container.length();
+        long lastModified = container.lastModified();
+        RandomAccessFile file = new RandomAccessFile(container, "r");
+        try {
+            Entry entry = readEntries(file).get(name);
+            if (entry == null) {
+                throw new FileNotFoundException(name + " in " + container);
+            }
+            if (entry.method != ZipEntry.STORED) {
+                throw new ZipException("Nested JAR " + name + " in "
+                        + container + " is compressed");
+            }
+            ByteBuffer header = read(file, entry.offset, 30);
+            if (header.getInt(0) != LOCAL_HEADER) {
+                throw new ZipException("Invalid local header for " + name);
+            }
+            long start = entry.offset + 30 + getShort(header, 26)
+                    + getShort(header, 28);
+            // the mapping remains valid once the file is closed
+            ByteBuffer region = file.getChannel().map(MapMode.READ_ONLY,
+                    start, entry.size);
+            NestedJarFile jar = new NestedJarFile(container, length,
+                    lastModified, name, region.order(ByteOrder.LITTLE_ENDIAN));
+            if (isSigned(jar.entries.keySet())) {
+                throw new ZipException("Nested JAR " + name + " in "
+                        + container + " is signed");
+            }
+            opened.put(jar.spec, jar);
+            return jar;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Gets the nested JAR designated by a {@value #PROTOCOL} URL, opening it
+     * if needed. Entry paths following the nested JAR path are ignored.
+     */
+    public static NestedJarFile get(URL url) throws IOException {
+        String path = url.getPath();
+        int i = path.indexOf(SEPARATOR);
+        if (i == -1) {
+            throw new MalformedURLException("No nested JAR in " + url);
+        }
+        int j = path.indexOf(SEPARATOR, i + SEPARATOR.length());
+        String jarPath = j == -1 ? path : path.substring(0, j);
+        NestedJarFile jar = opened.get(PROTOCOL + ':' + jarPath);
+        if (jar != null) {
+            if (!jar.isStale()) {
+                return jar;
+            }
+            jar.close();
+        }
+        File container;
+        try {
+            container = new File(new URI(path.substring(0, i)));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new MalformedURLException("Not a file container: " + url);
+        }
+        return open(container, jarPath.substring(i + SEPARATOR.length()));
+    }
+
+    public static URL newURL(String spec) throws MalformedURLException {
+        return new URL(null, spec, NestedJarURLStreamHandler.INSTANCE);
+    }
+
+    /**
+     * Returns {@code true} if the given entry names include a signature file.
+     */
+    protected static boolean isSigned(Collection<String> names) {
+        for (String entry : names) {
+            if (!entry.startsWith("META-INF/")
+                    || entry.indexOf('/', 9) != -1) {
+                continue;
+            }
+            String upper = entry.toUpperCase(Locale.ENGLISH);
+            if (upper.endsWith(".SF") || upper.endsWith(".RSA")
+                    || upper.endsWith(".DSA") || upper.endsWith(".EC")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected static int getShort(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xffff;
+    }
+
+    protected static long getInt(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & 0xffffffffL;
+    }
+
+    protected static ByteBuffer read(RandomAccessFile file, long offset,
+            int length) throws IOException {
+        byte[] bytes = new byte[length];
+        file.seek(offset);
+        file.readFully(bytes);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Gets the position of the end of central directory record.
+     */
+    protected static int findEnd(ByteBuffer buffer) throws ZipException {
+        int min = Math.max(0, buffer.limit() - END_LENGTH - 0xffff);
+        for (int i = buffer.limit() - END_LENGTH; i >= min; i--) {
+            if (buffer.getInt(i) == END_HEADER) {
+                return i;
+            }
+        }
+        throw new ZipException("Not a ZIP file");
+    }
+
+    protected static Map<String, Entry> readEntries(RandomAccessFile file)
+            throws IOException {
+        long length = file.length();
+        int tail = (int) Math.min(length, END_LENGTH + 0xffff);
+        ByteBuffer end = read(file, length - tail, tail);
+        int i = findEnd(end);
+        ByteBuffer directory = read(file, getDirectoryOffset(end, i),
+                (int) getInt(end, i + 12));
+        return readDirectory(directory, getShort(end, i + 10));
+    }
+
+    protected static Map<String, Entry> readEntries(ByteBuffer zip)
+            throws IOException {
+        int i = findEnd(zip);
+        ByteBuffer directory = zip.duplicate();
+        directory.position((int) getDirectoryOffset(zip, i));
+        directory.limit(directory.position() + (int) getInt(zip, i + 12));
+        return readDirectory(directory.slice().order(ByteOrder.LITTLE_ENDIAN),
+                getShort(zip, i + 10));
+    }
+
+    protected static long getDirectoryOffset(ByteBuffer end, int i)
+            throws ZipException {
+        long offset = getInt(end, i + 16);
+        if (offset == 0xffffffffL || getShort(end, i + 10) == 0xffff) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+        return offset;
+    }
+
+    protected static Map<String, Entry> readDirectory(ByteBuffer directory,
+            int count) throws ZipException {
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>(
+                count * 4 / 3 + 1);
+        int p = 0;
+        for (int n = 0; n < count; n++) {
+            if (directory.getInt(p) != CENTRAL_HEADER) {
+                throw new ZipException("Invalid central directory");
+            }
+            int nameLength = getShort(directory, p + 28);
+            byte[] bytes = new byte[nameLength];
+            ByteBuffer view = directory.duplicate();
+            view.position(p + 46);
+            view.get(bytes);
+            String entryName = new String(bytes, UTF8);
+            entries.put(entryName, new Entry(entryName, getShort(directory,
+                    p + 10), getInt(directory, p + 20), getInt(directory,
+                    p + 24), getInt(directory, p + 42)));
+            p += 46 + nameLength + getShort(directory, p + 30)
+                    + getShort(directory, p + 32);
+        }
+        return entries;
+    }
+
+    public File getContainer() {
+        return container;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns {@code true} if the container changed since this nested JAR was
+     * opened.
+     */
+    public boolean isStale() {
+        return container.length() != containerLength
+                || container.lastModified() != containerLastModified;
+    }
+
+    public URL getURL() {
+        return url;
+    }
+
+    public URL getEntryURL(String entry) throws MalformedURLException {
+        return newURL(spec + SEPARATOR + entry);
+    }
+
+    public Collection<String> getEntryNames() {
+        return Collections.unmodifiableCollection(entries.keySet());
+    }
+
+    public boolean contains(String entry) {
+        return entries.containsKey(entry);
+    }
+
+    public long getSize(String entry) {
+        Entry e = entries.get(entry);
+        return e == null ? -1 : e.size;
+    }
+
+    public long size() {
+        return region.capacity();
+    }
+
+    /**
+     * Opens a stream on the nested JAR itself.
+     */
+    public InputStream openStream() {
+        return new ByteBufferInputStream(region.duplicate(), false);
+    }
+
+    /**
+     * Opens a stream on an entry of the nested JAR.
+     *
+     * @return the stream or {@code null} if there is no such entry
+     */
+    public InputStream getInputStream(String entry) throws IOException {
+        Entry e = entries.get(entry);
+        if (e == null) {
+            return null;
+        }
+        ByteBuffer header = region.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int offset = (int) e.offset;
+        if (header.getInt(offset) != LOCAL_HEADER) {
+            throw new ZipException("Invalid local header for " + entry);
+        }
+        int start = offset + 30 + getShort(header, offset + 26)
+                + getShort(header, offset + 28);
+        ByteBuffer data = region.duplicate();
+        data.position(start);
+        data.limit(start + (int) e.compressedSize);
+        switch (e.method) {
+        case ZipEntry.STORED:
+            return new ByteBufferInputStream(data, false);
+        case ZipEntry.DEFLATED:
+            final Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(new ByteBufferInputStream(data,
+                    true), inflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+        default:
+            throw new ZipException("Unsupported compression method "
+                    + e.method + " for " + entry);
+        }
+    }
+
+    public Manifest getManifest() throws IOException {
+        if (manifest == null) {
+            InputStream in = getInputStream("META-INF/MANIFEST.MF");
+            if (in == null) {
+                return null;
+            }
+            try {
+                manifest = new Manifest(in);
+            } finally {
+                in.close();
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Forgets this nested JAR, the mapped region is released once no longer
+     * referenced.
+     */
+    @Override
+    public void close() {
+        opened.remove(spec, this);
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+    /**
+     * Stream over a buffer view, optionally followed by the dummy byte needed
+     * by a no wrap {@link Inflater}.
+     */
+    protected static class ByteBufferInputStream extends InputStream {
+
+        protected final ByteBuffer buffer;
+
+        protected boolean padding;
+
+        protected ByteBufferInputStream(ByteBuffer buffer, boolean padding) {
+            this.buffer = buffer;
+            this.padding = padding;
+        }
+
+        @Override
+        public int read() {
+            if (buffer.hasRemaining()) {
+                return buffer.get() & 0xff;
+            }
+            if (padding) {
+                padding = false;
+                return 0;
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                if (!padding) {
+                    return -1;
+                }
+                padding = false;
+                b[off] = 0;
+                return 1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+    }
+
+}
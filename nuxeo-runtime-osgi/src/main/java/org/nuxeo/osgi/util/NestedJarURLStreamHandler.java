@@ -0,0 +1,127 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.osgi.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+
+/**
+ * Handler of the {@value NestedJarFile#PROTOCOL} URLs addressing nested JARs
+ * read in place and their entries.
+ * <p>
+ * URLs built by {@link NestedJarFile#newURL(String)} carry the handler, as do
+ * the URLs resolved against them, so their external form is to be parsed back
+ * with {@link NestedJarFile#newURL(String)}. The handler is not registered
+ * globally: setting the {@value #HANDLER_PKGS} system property or the
+ * {@link URL} stream handler factory at runtime would interfere with the
+ * container. To make {@link URL#URL(String)} accept these URLs anyway, the
+ * launcher may add {@value #HANDLER_PKG} to the system property, for instance
+ * {@code -Djava.protocol.handler.pkgs=org.nuxeo.osgi.util}, provided this
+ * class is visible from the system class loader.
+ *
+ * @since 7.1
+ */
+public class NestedJarURLStreamHandler extends URLStreamHandler {
+
+    public static final String HANDLER_PKGS = "java.protocol.handler.pkgs";
+
+    /** Package of the {@link org.nuxeo.osgi.util.nxjar.Handler}. */
+    public static final String HANDLER_PKG = "org.nuxeo.osgi.util";
+
+    public static final NestedJarURLStreamHandler INSTANCE = new NestedJarURLStreamHandler();
+
+    @Override
+    protected void parseURL(URL u, String spec, int start, int limit) {
+        String path = spec.substring(start, limit);
+        String base = u.getPath();
+        if (!path.startsWith("file:") && base != null && base.length() > 0) {
+            // relative to an entry of the context URL
+            if (path.startsWith("/")) {
+                int i = base.lastIndexOf(NestedJarFile.SEPARATOR);
+                path = base.substring(0, i + NestedJarFile.SEPARATOR.length())
+                        + path.substring(1);
+            } else {
+                path = base.substring(0, base.lastIndexOf('/') + 1) + path;
+            }
+        }
+        setURL(u, NestedJarFile.PROTOCOL, null, -1, null, null, path, null,
+                null);
+    }
+
+    @Override
+    protected URLConnection openConnection(URL u) throws IOException {
+        return new Connection(u);
+    }
+
+    protected static class Connection extends URLConnection {
+
+        protected NestedJarFile jar;
+
+        protected String entry;
+
+        protected Connection(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (connected) {
+                return;
+            }
+            jar = NestedJarFile.get(url);
+            String path = url.getPath();
+            String prefix = jar.toString().substring(
+                    NestedJarFile.PROTOCOL.length() + 1)
+                    + NestedJarFile.SEPARATOR;
+            if (path.startsWith(prefix)) {
+                entry = path.substring(prefix.length());
+                if (!jar.contains(entry)) {
+                    throw new FileNotFoundException(url.toExternalForm());
+                }
+            }
+            connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+            return entry == null ? jar.openStream()
+                    : jar.getInputStream(entry);
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            try {
+                connect();
+            } catch (IOException e) {
+                return -1;
+            }
+            return entry == null ? jar.size() : jar.getSize(entry);
+        }
+
+        @Override
+        public int getContentLength() {
+            long length = getContentLengthLong();
+            return length > Integer.MAX_VALUE ? -1 : (int) length;
+        }
+    }
+
+}
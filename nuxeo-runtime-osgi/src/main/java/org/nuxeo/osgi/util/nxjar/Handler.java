@@ -0,0 +1,31 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.osgi.util.nxjar;
+
+import org.nuxeo.osgi.util.NestedJarURLStreamHandler;
+
+/**
+ * The {@value org.nuxeo.osgi.util.NestedJarFile#PROTOCOL} handler found
+ * through the {@value NestedJarURLStreamHandler#HANDLER_PKGS} system
+ * property, when the launcher adds
+ * {@value NestedJarURLStreamHandler#HANDLER_PKG} to it.
+ *
+ * @since 7.1
+ */
+public class Handler extends NestedJarURLStreamHandler {
+
+}
@@ -0,0 +1,181 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.osgi.services.tests;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.osgi.services.ServiceFilter;
+import org.nuxeo.osgi.services.ServiceReferenceImpl;
+import org.nuxeo.osgi.services.ServiceRegistry;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceFactory;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * @since 7.1
+ */
+public class TestServiceRegistry {
+
+    protected final ServiceRegistry registry = new ServiceRegistry();
+
+    protected static Hashtable<String, Object> props(Object... keyValues) {
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            props.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return props;
+    }
+
+    protected static Bundle newBundle() {
+        return (Bundle) Proxy.newProxyInstance(
+                TestServiceRegistry.class.getClassLoader(),
+                new Class<?>[] { Bundle.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        if ("hashCode".equals(method.getName())) {
+                            return System.identityHashCode(proxy);
+                        }
+                        if ("equals".equals(method.getName())) {
+                            return proxy == args[0];
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    @Test
+    public void matchesFilters() throws Exception {
+        Hashtable<String, Object> props = props("Name", "nuxeo runtime",
+                "ranking", 10, "tags", new String[] { "a", "b" });
+        assertThat(ServiceFilter.parse("(name=nuxeo*)").match(props), is(true));
+        assertThat(ServiceFilter.parse("(name=*run*me)").match(props),
+                is(true));
+        assertThat(ServiceFilter.parse("(&(ranking>=5)(tags=b))").match(props),
+                is(true));
+        assertThat(ServiceFilter.parse("(|(ranking<=5)(!(tags=*)))").match(
+                props), is(false));
+        assertThat(ServiceFilter.parse("(name~=NuxeoRuntime)").match(props),
+                is(true));
+        assertThat(ServiceFilter.parse("(name=*)").matchCase(props),
+                is(false));
+        assertThat(ServiceFilter.parse("(missing=*)").match(props), is(false));
+    }
+
+    @Test
+    public void indexesFiltersByObjectClass() throws Exception {
+        assertThat(ServiceFilter.parse(
+                "(&(objectClass=a.B)(|(x=1)(objectClass=c.D)))").getObjectClasses().size(),
+                is(1));
+        assertThat(ServiceFilter.parse(
+                "(|(objectClass=a.B)(objectClass=c.D))").getObjectClasses().size(),
+                is(2));
+        assertThat(ServiceFilter.parse("(|(objectClass=a.B)(x=1))").getObjectClasses(),
+                nullValue());
+    }
+
+    @Test
+    public void ordersByRanking() {
+        Bundle bundle = newBundle();
+        registry.register(bundle, new String[] { "a.A", "b.B" }, "first", null);
+        registry.register(bundle, new String[] { "a.A" }, "second",
+                props(Constants.SERVICE_RANKING, 5));
+        ServiceRegistration third = registry.register(bundle,
+                new String[] { "a.A" }, "third", null);
+        ServiceReference[] refs = registry.getReferences("a.A", null);
+        assertThat(refs.length, is(3));
+        assertThat(((ServiceReferenceImpl) refs[0]).getService(),
+                is((Object) "second"));
+        assertThat(((ServiceReferenceImpl) refs[1]).getService(),
+                is((Object) "first"));
+        third.setProperties(props(Constants.SERVICE_RANKING, 7));
+        assertThat(
+                ((ServiceReferenceImpl) registry.getReference("a.A")).getService(),
+                is((Object) "third"));
+        third.unregister();
+        assertThat(registry.getReferences("a.A", null).length, is(2));
+        assertThat(registry.getReferences("b.B", null).length, is(1));
+    }
+
+    @Test
+    public void dispatchesToMatchingListeners() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        registry.addServiceListener(new ServiceListener() {
+            @Override
+            public void serviceChanged(ServiceEvent event) {
+                events.add("a:" + event.getType());
+            }
+        }, ServiceFilter.parse("(objectClass=a.A)"));
+        registry.addServiceListener(new ServiceListener() {
+            @Override
+            public void serviceChanged(ServiceEvent event) {
+                events.add("any:" + event.getType());
+            }
+        }, ServiceFilter.parse("(x=1)"));
+        registry.register(null, new String[] { "b.B" }, "b", null);
+        ServiceRegistration reg = registry.register(null,
+                new String[] { "a.A" }, "a", props("x", 1));
+        reg.unregister();
+        assertThat(events.toString(), is("[a:1, any:1, a:4, any:4]"));
+    }
+
+    @Test
+    public void cachesFactoryServicesPerBundle() {
+        final List<Object> created = new ArrayList<Object>();
+        ServiceFactory factory = new ServiceFactory() {
+            @Override
+            public Object getService(Bundle bundle,
+                    ServiceRegistration registration) {
+                Object service = new Object();
+                created.add(service);
+                return service;
+            }
+
+            @Override
+            public void ungetService(Bundle bundle,
+                    ServiceRegistration registration, Object service) {
+                created.remove(service);
+            }
+        };
+        ServiceReferenceImpl ref = (ServiceReferenceImpl) registry.register(
+                null, new String[] { "a.A" }, factory, null).getReference();
+        Bundle user = newBundle();
+        Object service = ref.getService(user);
+        assertThat(ref.getService(user), is(service));
+        ref.getService(newBundle());
+        assertThat(created.size(), is(2));
+        assertThat(ref.ungetService(user), is(true));
+        assertThat(created.size(), is(2));
+        assertThat(ref.ungetService(user), is(true));
+        assertThat(created.size(), is(1));
+    }
+
+}
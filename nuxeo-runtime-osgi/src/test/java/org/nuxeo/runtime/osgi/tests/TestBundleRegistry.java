@@ -0,0 +1,153 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.osgi.tests;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.Manifest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.osgi.BundleImpl;
+import org.nuxeo.osgi.DirectoryBundleFile;
+import org.nuxeo.osgi.OSGiAdapter;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+
+/**
+ * @since 7.1
+ */
+public class TestBundleRegistry {
+
+    protected static final List<String> started = new CopyOnWriteArrayList<String>();
+
+    /**
+     * Records the start order, the bundles whose name starts with "failing"
+     * fail to start.
+     */
+    public static class RecordingActivator implements BundleActivator {
+
+        @Override
+        public void start(BundleContext context) throws Exception {
+            String name = context.getBundle().getSymbolicName();
+            if (name.startsWith("failing")) {
+                throw new IllegalStateException(name);
+            }
+            started.add(name);
+        }
+
+        @Override
+        public void stop(BundleContext context) {
+        }
+    }
+
+    protected File dir;
+
+    protected OSGiAdapter osgi;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("registry").toFile();
+        started.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (osgi != null) {
+            osgi.shutdown();
+        }
+        delete(dir);
+    }
+
+    protected static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Installs bundles in a batch, checking that none starts before the end
+     * of the batch.
+     */
+    protected void startBatch(String... bundles) throws IOException,
+            BundleException {
+        osgi = new OSGiAdapter(new File(dir, "work"), new File(dir, "data"),
+                new Properties());
+        osgi.getRegistry().beginBatch();
+        try {
+            for (String bundle : bundles) {
+                osgi.install(newBundle(bundle));
+            }
+            assertThat(started.isEmpty(), is(true));
+        } finally {
+            osgi.getRegistry().endBatch();
+        }
+    }
+
+    protected BundleImpl newBundle(String name) throws IOException,
+            BundleException {
+        File file = new File(dir, name);
+        file.mkdir();
+        Hashtable<String, String> headers = new Hashtable<String, String>();
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, name);
+        headers.put(Constants.BUNDLE_ACTIVATOR,
+                RecordingActivator.class.getName());
+        return new BundleImpl(osgi, new DirectoryBundleFile(file,
+                new Manifest()), getClass().getClassLoader(), headers);
+    }
+
+    @Test
+    public void startsInResolutionOrder() throws Exception {
+        startBatch("a", "b", "c", "d");
+        assertThat(started, is(Arrays.asList("a", "b", "c", "d")));
+    }
+
+    @Test
+    public void reportsFailures() throws Exception {
+        try {
+            startBatch("a", "failing", "c");
+            fail("bundle failure not reported");
+        } catch (BundleException e) {
+            assertThat(e.getMessage(),
+                    is("1 bundles failed to start: [failing]"));
+        }
+        // the other bundles are started anyway
+        assertThat(started, is(Arrays.asList("a", "c")));
+        assertThat(osgi.getBundle("c").getState(), is(Bundle.ACTIVE));
+        assertThat(osgi.getBundle("failing").getState() == Bundle.ACTIVE,
+                is(false));
+    }
+
+}
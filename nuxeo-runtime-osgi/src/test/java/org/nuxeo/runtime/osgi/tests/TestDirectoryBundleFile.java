@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.osgi.tests;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Manifest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.osgi.DirectoryBundleFile;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * @since 7.1
+ */
+public class TestDirectoryBundleFile {
+
+    protected File dir;
+
+    protected DirectoryBundleFile bundleFile;
+
+    @Before
+    public void createBundle() throws IOException {
+        dir = Files.createTempDirectory("bundle").toFile();
+        new File(dir, "OSGI-INF").mkdir();
+        touch("OSGI-INF/a.xml");
+        bundleFile = new DirectoryBundleFile(dir, new Manifest());
+    }
+
+    @After
+    public void deleteBundle() {
+        System.clearProperty(Framework.NUXEO_DEV_SYSTEM_PROP);
+        for (File file : new File(dir, "OSGI-INF").listFiles()) {
+            file.delete();
+        }
+        new File(dir, "OSGI-INF").delete();
+        dir.delete();
+    }
+
+    protected void touch(String path) throws IOException {
+        Files.write(new File(dir, path).toPath(), new byte[0]);
+    }
+
+    protected List<String> findXML() {
+        List<String> names = new ArrayList<String>();
+        for (URL url : Collections.list(bundleFile.findEntries("OSGI-INF",
+                "*.xml", false))) {
+            names.add(new File(url.getPath()).getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    public void indexesEntries() throws IOException {
+        assertThat(findXML(), is(Collections.singletonList("a.xml")));
+        // the index is kept outside of dev mode
+        touch("OSGI-INF/b.xml");
+        assertThat(findXML(), is(Collections.singletonList("a.xml")));
+        assertThat(Collections.list(bundleFile.getEntryPaths("OSGI-INF")),
+                is(Collections.singletonList("OSGI-INF/a.xml")));
+    }
+
+    @Test
+    public void walksDirectoryInDevMode() throws IOException {
+        assertThat(findXML(), is(Collections.singletonList("a.xml")));
+        System.setProperty(Framework.NUXEO_DEV_SYSTEM_PROP, "true");
+        touch("OSGI-INF/b.xml");
+        List<String> expected = new ArrayList<String>();
+        expected.add("a.xml");
+        expected.add("b.xml");
+        assertThat(findXML(), is(expected));
+        List<String> paths = Collections.list(bundleFile.getEntryPaths(
+                "OSGI-INF"));
+        Collections.sort(paths);
+        assertThat(paths.size(), is(2));
+        assertThat(paths.get(1), is("OSGI-INF/b.xml"));
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.osgi.tests;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.osgi.OSGiAdapter;
+import org.nuxeo.osgi.application.loader.FrameworkLoader;
+import org.osgi.framework.Constants;
+
+/**
+ * @since 7.1
+ */
+public class TestFrameworkLoader {
+
+    protected File dir;
+
+    protected OSGiAdapter osgi;
+
+    protected File a;
+
+    protected File b;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("loader").toFile();
+        osgi = new OSGiAdapter(new File(dir, "work"), new File(dir, "data"),
+                new Properties());
+        a = newBundle("a", "a-manifest");
+        b = newBundle("b", "b");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        osgi.shutdown();
+        TestBundleRegistry.delete(dir);
+    }
+
+    protected File newBundle(String path, String name) throws IOException {
+        File file = new File(dir, path);
+        new File(file, "META-INF").mkdirs();
+        Manifest mf = new Manifest();
+        mf.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        mf.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, name);
+        try (OutputStream out = new FileOutputStream(new File(file,
+                "META-INF/MANIFEST.MF"))) {
+            mf.write(out);
+        }
+        return file;
+    }
+
+    protected Map<String, Map<String, String>> install(
+            Map<String, Map<String, String>> knownHeaders, File... files) {
+        List<File> list = Arrays.asList(files);
+        return FrameworkLoader.installBundles(osgi,
+                getClass().getClassLoader(), list, knownHeaders);
+    }
+
+    @Test
+    public void readsManifests() {
+        Map<String, Map<String, String>> installed = install(null, a, b,
+                new File(dir, "work"));
+        assertThat(osgi.getBundle("a-manifest"), notNullValue());
+        assertThat(osgi.getBundle("b"), notNullValue());
+        assertThat(installed.keySet(), is((Set<String>) new HashSet<String>(
+                Arrays.asList(a.getPath(), b.getPath()))));
+        assertThat(installed.get(a.getPath()).get(
+                Constants.BUNDLE_SYMBOLICNAME), is("a-manifest"));
+    }
+
+    @Test
+    public void installsFromKnownHeaders() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "a-recorded");
+        Map<String, Map<String, String>> installed = install(
+                Collections.singletonMap(a.getPath(), headers), a, b);
+        // the manifest is not read
+        assertThat(osgi.getBundle("a-recorded"), notNullValue());
+        assertThat(osgi.getBundle("a-manifest"), nullValue());
+        // files without known headers are not bundles
+        assertThat(osgi.getBundle("b"), nullValue());
+        assertThat(installed, is(Collections.singletonMap(a.getPath(),
+                headers)));
+    }
+
+    @Test
+    public void reportsFailures() {
+        Map<String, Map<String, String>> known = new HashMap<String, Map<String, String>>();
+        File missing = new File(dir, "missing.jar");
+        known.put(missing.getPath(), Collections.singletonMap(
+                Constants.BUNDLE_SYMBOLICNAME, "missing"));
+        known.put(b.getPath(), Collections.singletonMap(
+                Constants.BUNDLE_SYMBOLICNAME, "b"));
+        assertThat(install(known, missing, b), nullValue());
+        // the other bundles are installed anyway
+        assertThat(osgi.getBundle("b"), notNullValue());
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.osgi.util.jar.tests;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.osgi.application.ClassPathIndex;
+import org.nuxeo.osgi.application.SharedClassLoaderImpl;
+
+/**
+ * @since 7.1
+ */
+public class TestSharedClassLoaderIndex {
+
+    protected JarBuilder jarBuilder;
+
+    protected URL first;
+
+    protected URL other;
+
+    protected SharedClassLoaderImpl loader;
+
+    @Before
+    public void setupLoader() throws IOException {
+        jarBuilder = new JarBuilder();
+        first = jarBuilder.buildFirst();
+        other = jarBuilder.buildOther();
+        // skip the application class path which also holds the test classes
+        loader = new SharedClassLoaderImpl(new URL[] { first, other },
+                ClassLoader.getSystemClassLoader().getParent());
+    }
+
+    @After
+    public void closeLoader() throws IOException {
+        loader.close();
+        new File(other.getPath()).delete();
+        jarBuilder.deleteBuiltFiles();
+    }
+
+    @Test
+    public void loadsClassesFromOwningJar() throws ClassNotFoundException {
+        Class<?> clazz = loader.loadClass(JarBuilder.First.class.getName());
+        assertThat(clazz.getClassLoader(), is((ClassLoader) loader));
+        assertThat(clazz.getProtectionDomain().getCodeSource().getLocation(),
+                is(first));
+        assertThat(clazz.getPackage(), notNullValue());
+        clazz = loader.loadClass(JarBuilder.Other.class.getName());
+        assertThat(clazz.getProtectionDomain().getCodeSource().getLocation(),
+                is(other));
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void missesUnknownClasses() throws ClassNotFoundException {
+        loader.loadClass(JarBuilder.class.getName());
+    }
+
+    @Test
+    public void findsResources() throws IOException {
+        URL marker = loader.getResource("first.marker");
+        assertThat(marker, notNullValue());
+        assertThat(marker.toExternalForm(),
+                is("jar:" + first.toExternalForm() + "!/first.marker"));
+        assertThat(loader.getResource("none.marker"), nullValue());
+        assertThat(Collections.list(loader.getResources("other.marker")),
+                is(Collections.singletonList(new URL("jar:"
+                        + other.toExternalForm() + "!/other.marker"))));
+        // same answer as the URL class loader for directories
+        String pkg = JarBuilder.class.getPackage().getName().replace('.', '/');
+        URLClassLoader plain = new URLClassLoader(new URL[] { first, other },
+                ClassLoader.getSystemClassLoader().getParent());
+        try {
+            assertThat(Collections.list(loader.getResources(pkg)),
+                    is(Collections.list(plain.getResources(pkg))));
+        } finally {
+            plain.close();
+        }
+        assertThat(loader.getURLs().length, is(2));
+    }
+
+    @Test
+    public void keepsClassPathOrder() throws Exception {
+        // a directory before the JARs, holding the same entries as the first
+        File dir = new File(jarBuilder.getRootFile(), "classes");
+        File classFile = new File(dir, new File(jarBuilder.pkgdir,
+                "JarBuilder$First.class").getPath());
+        File marker = new File(dir, "first.marker");
+        classFile.getParentFile().mkdirs();
+        Files.copy(new File(jarBuilder.bindir, new File(jarBuilder.pkgdir,
+                "JarBuilder$First.class").getPath()).toPath(),
+                classFile.toPath());
+        Files.write(marker.toPath(), new byte[0]);
+        URL dirURL = dir.toURI().toURL();
+        SharedClassLoaderImpl ordered = new SharedClassLoaderImpl(new URL[] {
+                dirURL, first, other },
+                ClassLoader.getSystemClassLoader().getParent());
+        try {
+            assertThat(ordered.getResource("first.marker"),
+                    is(marker.toURI().toURL()));
+            List<URL> urls = Collections.list(ordered.getResources(
+                    "first.marker"));
+            assertThat(urls.size(), is(2));
+            assertThat(urls.get(0), is(marker.toURI().toURL()));
+            Class<?> clazz = ordered.loadClass(
+                    JarBuilder.First.class.getName());
+            assertThat(
+                    clazz.getProtectionDomain().getCodeSource().getLocation(),
+                    is(dirURL));
+            // indexed JARs are still found after the directory
+            assertThat(ordered.getResource("other.marker"), notNullValue());
+            assertThat(ordered.getURLs().length, is(3));
+        } finally {
+            ordered.close();
+            classFile.delete();
+            marker.delete();
+            File parent = classFile.getParentFile();
+            while (!parent.equals(jarBuilder.getRootFile())) {
+                parent.delete();
+                parent = parent.getParentFile();
+            }
+        }
+    }
+
+    @Test
+    public void reusesStoredKeys() throws IOException {
+        File jar = new File(first.getPath());
+        File file = new File(jarBuilder.getRootFile(), "bundles.index");
+        JarFile jarFile = new JarFile(jar);
+        try {
+            ClassPathIndex index = new ClassPathIndex();
+            String[] keys = index.getKeys(jar, jarFile);
+            assertThat(index.isModified(), is(true));
+            index.store(file);
+            ClassPathIndex restored = new ClassPathIndex();
+            restored.load(file);
+            assertThat(restored.getKeys(jar, jarFile), is(keys));
+            assertThat(restored.isModified(), is(false));
+        } finally {
+            jarFile.close();
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.osgi.util.tests;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+import org.nuxeo.osgi.util.EntryFilter;
+import org.nuxeo.osgi.util.EntryIndex;
+
+/**
+ * @since 7.1
+ */
+public class TestEntryIndex {
+
+    protected final EntryIndex index = EntryIndex.of(Arrays.asList(
+            "META-INF/MANIFEST.MF", "OSGI-INF/a.xml", "OSGI-INF/b.xml",
+            "OSGI-INF/l10n/messages.properties", "OSGI-INF-extra/c.xml",
+            "org/nuxeo/A.class", "root.txt"));
+
+    @Test
+    public void addsMissingDirectories() {
+        assertThat(index.contains("OSGI-INF/l10n/"), is(true));
+        assertThat(index.contains("/org/nuxeo/"), is(true));
+        assertThat(index.contains("OSGI-INF/c.xml"), is(false));
+    }
+
+    @Test
+    public void findsEntries() {
+        EntryFilter xml = EntryFilter.newFilter("*.xml");
+        assertThat(index.find("OSGI-INF", xml, false),
+                is(Arrays.asList("OSGI-INF/a.xml", "OSGI-INF/b.xml")));
+        assertThat(index.find("/OSGI-INF/", EntryFilter.ANY, true),
+                is(Arrays.asList("OSGI-INF/a.xml", "OSGI-INF/b.xml",
+                        "OSGI-INF/l10n/messages.properties")));
+        assertThat(index.find("", xml, true), is(Arrays.asList(
+                "OSGI-INF-extra/c.xml", "OSGI-INF/a.xml", "OSGI-INF/b.xml")));
+        assertThat(index.find("/", EntryFilter.newFilter("*.txt"), false),
+                is(Arrays.asList("root.txt")));
+    }
+
+    @Test
+    public void listsEntryPaths() {
+        assertThat(index.list("OSGI-INF"), is(Arrays.asList("OSGI-INF/a.xml",
+                "OSGI-INF/b.xml", "OSGI-INF/l10n/")));
+        assertThat(index.list("/"), is(Arrays.asList("META-INF/",
+                "OSGI-INF-extra/", "OSGI-INF/", "org/", "root.txt")));
+        assertThat(index.list("none").isEmpty(), is(true));
+    }
+
+    @Test
+    public void cachesJarIndexes() throws IOException {
+        File dir = Files.createTempDirectory("entries").toFile();
+        File jar = new File(dir, "test.jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            out.putNextEntry(new ZipEntry("OSGI-INF/a.xml"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        File cacheDir = new File(dir, "cache");
+        EntryIndex.setCacheDirectory(cacheDir);
+        JarFile jarFile = new JarFile(jar);
+        try {
+            EntryIndex index = EntryIndex.load(jar, jarFile);
+            assertThat(index.contains("OSGI-INF/a.xml"), is(true));
+            // written through a temporary file, none left behind
+            File[] cached = cacheDir.listFiles();
+            assertThat(cached.length, is(1));
+            File cache = cached[0];
+            assertThat(cache.getName().endsWith(".idx"), is(true));
+            // reused while the JAR is unchanged
+            assertThat(cache.setLastModified(1000), is(true));
+            assertThat(EntryIndex.load(jar, jarFile).list("OSGI-INF"),
+                    is(Arrays.asList("OSGI-INF/a.xml")));
+            assertThat(cache.lastModified(), is(1000L));
+            // rewritten once it changed
+            assertThat(jar.setLastModified(jar.lastModified() + 2000),
+                    is(true));
+            assertThat(EntryIndex.load(jar, jarFile).size(), is(2));
+            assertThat(cache.lastModified() == 1000, is(false));
+            assertThat(cacheDir.listFiles().length, is(1));
+        } finally {
+            jarFile.close();
+            EntryIndex.setCacheDirectory(null);
+            for (File file : cacheDir.listFiles()) {
+                file.delete();
+            }
+            cacheDir.delete();
+            jar.delete();
+            dir.delete();
+        }
+    }
+
+}
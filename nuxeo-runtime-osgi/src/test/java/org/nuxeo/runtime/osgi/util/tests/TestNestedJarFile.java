@@ -0,0 +1,167 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.osgi.util.tests;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.osgi.util.NestedJarFile;
+
+/**
+ * @since 7.1
+ */
+public class TestNestedJarFile {
+
+    protected File container;
+
+    protected NestedJarFile nested;
+
+    @Before
+    public void createContainer() throws IOException {
+        container = File.createTempFile("container", ".jar");
+        writeContainer(nestedJar(false, "deflated"));
+        nested = NestedJarFile.open(container, "lib/nested.jar");
+    }
+
+    @After
+    public void deleteContainer() {
+        nested.close();
+        container.delete();
+    }
+
+    protected static byte[] nestedJar(boolean signed, String content)
+            throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+                "1.0");
+        manifest.getMainAttributes().putValue("Bundle-SymbolicName",
+                "nested");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream out = new JarOutputStream(bytes, manifest)) {
+            out.putNextEntry(stored("stored.txt", "stored".getBytes("UTF-8")));
+            out.write("stored".getBytes("UTF-8"));
+            out.putNextEntry(new ZipEntry("dir/deflated.txt"));
+            out.write(content.getBytes("UTF-8"));
+            if (signed) {
+                out.putNextEntry(new ZipEntry("META-INF/NESTED.SF"));
+                out.write("Signature-Version: 1.0\n".getBytes("UTF-8"));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    protected static ZipEntry stored(String name, byte[] content) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+
+    protected void writeContainer(byte[] nestedJar) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(
+                container))) {
+            out.putNextEntry(new ZipEntry("first.txt"));
+            out.write("first".getBytes("UTF-8"));
+            out.putNextEntry(stored("lib/nested.jar", nestedJar));
+            out.write(nestedJar);
+        }
+    }
+
+    protected static String read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void readsStoredAndDeflatedEntries() throws IOException {
+        assertThat(read(nested.getInputStream("stored.txt")), is("stored"));
+        assertThat(read(nested.getInputStream("dir/deflated.txt")),
+                is("deflated"));
+        assertThat(nested.getSize("dir/deflated.txt"), is(8L));
+        assertThat(nested.getInputStream("missing.txt"), nullValue());
+    }
+
+    @Test
+    public void readsManifest() throws IOException {
+        Manifest manifest = nested.getManifest();
+        assertThat(manifest.getMainAttributes().getValue(
+                "Bundle-SymbolicName"), is("nested"));
+    }
+
+    @Test
+    public void roundTripsURLs() throws IOException {
+        URL url = nested.getEntryURL("dir/deflated.txt");
+        URL parsed = NestedJarFile.newURL(url.toExternalForm());
+        assertThat(parsed.toExternalForm(), is(url.toExternalForm()));
+        assertThat(read(parsed.openStream()), is("deflated"));
+        assertThat(read(new URL(parsed, "/stored.txt").openStream()),
+                is("stored"));
+        assertThat(NestedJarFile.get(parsed), sameInstance(nested));
+    }
+
+    @Test
+    public void reopensChangedContainer() throws IOException {
+        assertThat(NestedJarFile.get(nested.getURL()), sameInstance(nested));
+        writeContainer(nestedJar(false, "changed"));
+        container.setLastModified(container.lastModified() - 10000);
+        assertThat(nested.isStale(), is(true));
+        NestedJarFile reopened = NestedJarFile.get(nested.getURL());
+        assertThat(reopened, not(sameInstance(nested)));
+        assertThat(read(reopened.getInputStream("dir/deflated.txt")),
+                is("changed"));
+        reopened.close();
+    }
+
+    @Test(expected = ZipException.class)
+    public void refusesSignedJars() throws IOException {
+        writeContainer(nestedJar(true, "signed"));
+        NestedJarFile.open(container, "lib/nested.jar");
+    }
+
+}
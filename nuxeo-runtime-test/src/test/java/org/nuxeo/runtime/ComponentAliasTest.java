@@ -55,18 +55,18 @@ public class ComponentAliasTest extends NXRuntimeTestCase {
 
         ComponentInstance co = runtime.getComponentInstance("my.comp3");
         assertNotNull(co);
-        assertEquals(new ComponentName("my.comp3"), co.getName());
+        assertEquals(ComponentName.of("my.comp3"), co.getName());
 
         // lookup by alias
         co = runtime.getComponentInstance("my.comp3.alias");
         assertNotNull(co);
-        assertEquals(new ComponentName("my.comp3"), co.getName());
+        assertEquals(ComponentName.of("my.comp3"), co.getName());
 
         co = runtime.getComponentInstance("my.comp4");
         assertNotNull(co);
-        assertEquals(new ComponentName("my.comp4"), co.getName());
+        assertEquals(ComponentName.of("my.comp4"), co.getName());
 
-        ComponentWithXPoint c = (ComponentWithXPoint) runtime.getComponent(new ComponentName(
+        ComponentWithXPoint c = (ComponentWithXPoint) runtime.getComponent(ComponentName.of(
                 "my.comp3"));
         DummyContribution[] contribs = c.getContributions();
         assertEquals(3, contribs.length);
@@ -53,13 +53,13 @@ public class ComponentDeploymentTest extends NXRuntimeTestCase {
 
         ComponentInstance co = runtime.getComponentInstance("service:my.comp1");
         assertNotNull(co);
-        assertEquals(co.getName(), new ComponentName("service:my.comp1"));
+        assertEquals(co.getName(), ComponentName.of("service:my.comp1"));
 
         co = runtime.getComponentInstance("service:my.comp2");
         assertNotNull(co);
-        assertEquals(co.getName(), new ComponentName("service:my.comp2"));
+        assertEquals(co.getName(), ComponentName.of("service:my.comp2"));
 
-        mgr.unregister(new ComponentName("service:my.comp2"));
+        mgr.unregister(ComponentName.of("service:my.comp2"));
         co = runtime.getComponentInstance("service:my.comp2");
         assertNull(co);
         co = runtime.getComponentInstance("service:my.comp1");
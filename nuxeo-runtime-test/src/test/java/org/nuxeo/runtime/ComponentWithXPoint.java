@@ -33,7 +33,7 @@ import org.nuxeo.runtime.model.Extension;
 /** @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a> */
 public class ComponentWithXPoint extends DefaultComponent {
 
-    public static final ComponentName NAME = new ComponentName("BaseXPoint");
+    public static final ComponentName NAME = ComponentName.of("BaseXPoint");
 
     private static final Log log = LogFactory.getLog(ComponentWithXPoint.class);
 
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.model.ComponentName;
+import org.nuxeo.runtime.model.DefaultComponent;
+import org.nuxeo.runtime.model.RuntimeContext;
+import org.nuxeo.runtime.model.impl.ComponentManagerImpl;
+import org.nuxeo.runtime.model.impl.DeferredComponents;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestDeferredComponents extends NXRuntimeTestCase {
+
+    protected static final String BUNDLE = "org.nuxeo.runtime.test.tests";
+
+    protected static final ComponentName COMP1 = ComponentName.of(
+            "service:my.comp1");
+
+    protected static final ComponentName COMP2 = ComponentName.of(
+            "service:my.comp2");
+
+    protected static final ComponentName SERVICE = ComponentName.of(
+            "service:my.deferred.service");
+
+    public static class DeferredService extends DefaultComponent {
+    }
+
+    /**
+     * Deploys the contributions of the deferred components when loaded,
+     * holding the runtime lock as the deferred bundles do.
+     */
+    protected class Deferred implements DeferredComponents {
+
+        protected final Map<ComponentName, String> contribs = new ConcurrentHashMap<ComponentName, String>();
+
+        protected final Map<String, ComponentName> services = new ConcurrentHashMap<String, ComponentName>();
+
+        protected final List<ComponentName> loaded = Collections.synchronizedList(new ArrayList<ComponentName>());
+
+        /** Counted down once a load holds the lock, if set. */
+        protected volatile CountDownLatch loading;
+
+        @Override
+        public boolean loadComponent(ComponentName name) {
+            synchronized (getLock()) {
+                String contrib = contribs.remove(name);
+                if (contrib == null) {
+                    return false;
+                }
+                loaded.add(name);
+                try {
+                    if (loading != null) {
+                        loading.countDown();
+                        // let the other thread take the manager lock if it can
+                        Thread.sleep(200);
+                    }
+                    deployContrib(BUNDLE, contrib);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return true;
+            }
+        }
+
+        @Override
+        public boolean loadService(String serviceClass) {
+            ComponentName name = services.get(serviceClass);
+            return name != null && loadComponent(name);
+        }
+
+        @Override
+        public Object getLock() {
+            return Framework.getRuntime();
+        }
+    }
+
+    protected ComponentManagerImpl manager;
+
+    protected Deferred deferred;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        manager = (ComponentManagerImpl) Framework.getRuntime().getComponentManager();
+        deferred = new Deferred();
+        deferred.contribs.put(COMP2, "MyComp2.xml");
+        deferred.contribs.put(SERVICE, "DeferredService.xml");
+        deferred.services.put(DeferredService.class.getName(), SERVICE);
+        manager.setDeferredComponents(deferred);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        manager.setDeferredComponents(null);
+        super.tearDown();
+    }
+
+    @Test
+    public void testLoadOnLookup() {
+        assertFalse(manager.isRegistered(COMP2));
+        assertNotNull(manager.getComponent(COMP2));
+        assertNotNull(manager.getComponent(COMP2));
+        assertEquals(Collections.singletonList(COMP2), deferred.loaded);
+        assertNull(manager.getComponent(ComponentName.of("service:unknown")));
+    }
+
+    @Test
+    public void testLoadOnService() {
+        assertFalse(manager.isRegistered(SERVICE));
+        assertNotNull(Framework.getLocalService(DeferredService.class));
+        assertEquals(Collections.singletonList(SERVICE), deferred.loaded);
+    }
+
+    @Test
+    public void testLoadOnExtension() throws Exception {
+        deployContrib(BUNDLE, "MyComp1.xml");
+        assertEquals(Collections.singletonList(COMP2), deferred.loaded);
+        assertTrue(manager.getRegistrationInfo(COMP2).isActivated());
+        // registered right away rather than pending
+        assertNull(manager.getPendingExtensions(COMP2));
+    }
+
+    @Test
+    public void testConcurrentLoad() throws Exception {
+        final RuntimeContext context = getContext();
+        final URL comp1 = lookupBundle(BUNDLE).getEntry("MyComp1.xml");
+        final CountDownLatch loading = new CountDownLatch(1);
+        deferred.loading = loading;
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread loader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    manager.getComponent(COMP2);
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }
+        };
+        // registers an extension to the component being loaded
+        Thread deployer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    loading.await();
+                    context.deploy(comp1);
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }
+        };
+        loader.setDaemon(true);
+        deployer.setDaemon(true);
+        loader.start();
+        deployer.start();
+        loader.join(TimeUnit.SECONDS.toMillis(10));
+        deployer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse("deadlock", loader.isAlive() || deployer.isAlive());
+        assertEquals(Collections.emptyList(), errors);
+        assertTrue(manager.isRegistered(COMP1));
+        assertTrue(manager.getRegistrationInfo(COMP2).isActivated());
+        assertEquals(Collections.singletonList(COMP2), deferred.loaded);
+    }
+
+}
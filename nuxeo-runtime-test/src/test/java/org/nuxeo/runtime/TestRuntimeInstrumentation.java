@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestRuntimeInstrumentation extends NXRuntimeTestCase {
+
+    protected static class Recorder extends RuntimeInstrumentation {
+
+        protected final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+        protected final List<String> stopped = Collections.synchronizedList(new ArrayList<String>());
+
+        protected final List<String> lookups = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public Timer start(Point point, Object subject) {
+            final String key = point + " " + subject;
+            started.add(key);
+            return new Timer() {
+
+                @Override
+                public void stop() {
+                    stopped.add(key);
+                }
+            };
+        }
+
+        @Override
+        public void serviceLookup(Class<?> serviceClass, boolean found) {
+            lookups.add(serviceClass.getSimpleName() + " " + found);
+        }
+    }
+
+    protected final Recorder recorder = new Recorder();
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        RuntimeInstrumentation.install(recorder);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        RuntimeInstrumentation.install(null);
+        super.tearDown();
+    }
+
+    @Test
+    public void testInstall() {
+        assertSame(recorder, RuntimeInstrumentation.get());
+        RuntimeInstrumentation.install(null);
+        assertSame(RuntimeInstrumentation.NOOP, RuntimeInstrumentation.get());
+        assertSame(RuntimeInstrumentation.NOOP_TIMER,
+                RuntimeInstrumentation.NOOP.start(
+                        RuntimeInstrumentation.Point.ACTIVATE, "any"));
+    }
+
+    @Test
+    public void testComponentHooks() throws Exception {
+        // the extension of comp1 is pending until comp2 is activated
+        deployContrib("org.nuxeo.runtime.test.tests", "MyComp1.xml");
+        deployContrib("org.nuxeo.runtime.test.tests", "MyComp2.xml");
+        assertTrue(recorder.started.toString(),
+                recorder.started.contains("ACTIVATE service:my.comp1"));
+        assertTrue(recorder.started.toString(),
+                recorder.started.contains("ACTIVATE service:my.comp2"));
+        assertTrue(recorder.started.toString(),
+                recorder.started.contains("REGISTER_EXTENSION service:my.comp2"));
+        // every timer is stopped
+        assertEquals(recorder.started, recorder.stopped);
+    }
+
+    @Test
+    public void testServiceLookups() {
+        assertNull(Framework.getLocalService(TestRuntimeInstrumentation.class));
+        assertTrue(recorder.lookups.toString(),
+                recorder.lookups.contains("TestRuntimeInstrumentation false"));
+    }
+
+}
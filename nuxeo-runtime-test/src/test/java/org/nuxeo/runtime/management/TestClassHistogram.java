@@ -0,0 +1,72 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.runtime.management.jvm.ClassHistogram;
+import org.nuxeo.runtime.management.jvm.ClassHistogramEntry;
+
+/**
+ * @since 7.1
+ */
+public class TestClassHistogram {
+
+    protected static final String BEFORE = "\n"
+            + " num     #instances         #bytes  class name\n"
+            + "----------------------------------------------\n"
+            + "   1:          1000          64000  [B\n"
+            + "   2:           500          12000  java.lang.String\n"
+            + "   3:            10            240  org.nuxeo.Foo\n"
+            + "Total          1510          76240\n";
+
+    protected static final String AFTER = "\n"
+            + " num     #instances         #bytes  class name\n"
+            + "----------------------------------------------\n"
+            + "   1:          2000         128000  [B\n"
+            + "   2:           400           9600  java.lang.String\n"
+            + "   3:            10            240  org.nuxeo.Foo\n"
+            + "   4:             5            120  org.nuxeo.Bar\n"
+            + "Total          2415         137960\n";
+
+    @Test
+    public void testParse() {
+        ClassHistogram histogram = ClassHistogram.parse(BEFORE, 0);
+        assertEquals(3, histogram.size());
+        assertEquals(1510, histogram.getTotalInstances());
+        assertEquals(76240, histogram.getTotalBytes());
+        assertEquals(500, histogram.get("java.lang.String").getInstances());
+        assertEquals("[B", histogram.top(1).get(0).getClassName());
+    }
+
+    @Test
+    public void testGrowth() {
+        ClassHistogram before = ClassHistogram.parse(BEFORE, 0);
+        ClassHistogram after = ClassHistogram.parse(AFTER, 1);
+        List<ClassHistogramEntry> growth = after.growth(before, 10);
+        assertEquals(2, growth.size());
+        assertEquals("[B", growth.get(0).getClassName());
+        assertEquals(64000, growth.get(0).getBytes());
+        assertEquals(1000, growth.get(0).getInstances());
+        assertEquals("org.nuxeo.Bar", growth.get(1).getClassName());
+        assertEquals(120, growth.get(1).getBytes());
+    }
+
+}
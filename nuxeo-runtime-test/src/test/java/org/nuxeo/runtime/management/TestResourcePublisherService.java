@@ -21,9 +21,11 @@ package org.nuxeo.runtime.management;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import javax.management.MBeanServer;
 import javax.management.MBeanServerFactory;
@@ -50,6 +52,58 @@ public class TestResourcePublisherService extends ManagementTestCase {
         assertEquals(1, registeredNames.size());
     }
 
+    /**
+     * Waits for the background batches submitted so far.
+     */
+    protected void awaitBinder() throws Exception {
+        publisherService.binder.submit(new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    @Test
+    public void testDeferredBinding() throws Exception {
+        assertTrue(publisherService.deferredBinding);
+        publisherService.registerResource("dummy", "org.nuxeo:name=dummy",
+                DummyMBean.class, new DummyService());
+        awaitBinder();
+        assertEquals(1, doQuery("org.nuxeo:name=dummy").size());
+        publisherService.unregisterResource("dummy", "org.nuxeo:name=dummy");
+        assertEquals(0, doQuery("org.nuxeo:name=dummy").size());
+    }
+
+    @Test
+    public void testUnregisteredBeforeDeferredBinding() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        // hold the binder so that the batch runs after the unregistration
+        publisherService.binder.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        DummyService instance = new DummyService();
+        publisherService.registerResource("dummy", "org.nuxeo:name=dummy",
+                DummyMBean.class, instance);
+        ObjectName name = ObjectNameFactory.getObjectName("org.nuxeo:name=dummy");
+        Resource resource = publisherService.resourcesRegistry.registry.get(name);
+        assertTrue(publisherService.resourcesRegistry.pending.contains(resource));
+        publisherService.unregisterResource("dummy", "org.nuxeo:name=dummy");
+        assertTrue(publisherService.resourcesRegistry.pending.isEmpty());
+        latch.countDown();
+        awaitBinder();
+        assertNull(resource.mbean);
+        assertEquals(0, doQuery("org.nuxeo:name=dummy").size());
+    }
+
     @Test
     @Ignore
     public void testRegisterFactory() throws Exception {
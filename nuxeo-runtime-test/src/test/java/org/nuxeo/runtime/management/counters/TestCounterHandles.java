@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.nuxeo.runtime.management.counters;
+
+import static org.junit.Assert.assertEquals;
+
+import org.javasimon.SimonManager;
+import org.javasimon.SimonState;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RuntimeFeature;
+
+@RunWith(FeaturesRunner.class)
+@Deploy("org.nuxeo.runtime.management")
+@Features(RuntimeFeature.class)
+public class TestCounterHandles {
+
+    protected static long value(String name) {
+        return SimonManager.getCounter(name).getCounter();
+    }
+
+    @Test
+    public void testHandleUpdates() {
+        CounterManager cm = Framework.getLocalService(CounterManager.class);
+        String name = "org.nuxeo.handle.updates";
+        CounterHandle handle = cm.counter(name);
+        assertEquals(name, handle.getName());
+        handle.increase();
+        handle.increase(4);
+        handle.decrease();
+        assertEquals(4, value(name));
+        handle.decrease(2);
+        assertEquals(2, value(name));
+        handle.set(10);
+        assertEquals(10, value(name));
+        // the name based methods update the same counter
+        cm.increaseCounter(name);
+        assertEquals(11, value(name));
+    }
+
+    @Test
+    public void testHandleFollowsState() {
+        CounterManager cm = Framework.getLocalService(CounterManager.class);
+        String name = "org.nuxeo.handle.state";
+        CounterHandle handle = cm.counter(name);
+        handle.increase();
+        cm.disableCounters();
+        try {
+            handle.increase();
+            assertEquals(1, value(name));
+        } finally {
+            cm.enableCounters();
+        }
+        handle.increase();
+        assertEquals(2, value(name));
+        // toggled behind the manager's back
+        SimonManager.getCounter(CounterManagerImpl.COUNTER_PREFIX).setState(
+                SimonState.DISABLED, true);
+        try {
+            handle.increase();
+            cm.increaseCounter(name);
+            assertEquals(2, value(name));
+        } finally {
+            SimonManager.getCounter(CounterManagerImpl.COUNTER_PREFIX).setState(
+                    SimonState.ENABLED, true);
+        }
+        handle.increase();
+        assertEquals(3, value(name));
+    }
+
+}
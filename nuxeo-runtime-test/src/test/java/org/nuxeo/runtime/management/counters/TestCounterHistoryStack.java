@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.nuxeo.runtime.management.counters;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestCounterHistoryStack {
+
+    @Test
+    public void testPartiallyFilled() {
+        CounterHistoryStack stack = new CounterHistoryStack(5);
+        assertEquals(0, stack.getAsList().size());
+        stack.push(1, 10);
+        stack.push(2, 20);
+        assertEquals(2, stack.getAsList().size());
+        assertEquals(20, stack.get(0)[1]);
+        assertEquals(1, stack.get(1)[0]);
+    }
+
+    @Test
+    public void testAllSlotsReadable() {
+        CounterHistoryStack stack = new CounterHistoryStack(5);
+        for (int i = 1; i <= 5; i++) {
+            stack.push(i, i);
+        }
+        assertEquals(5, stack.getAsList().size());
+        for (int i = 6; i <= 13; i++) {
+            stack.push(i, i);
+        }
+        assertEquals(5, stack.getAsList().size());
+        assertEquals(13, stack.get(0)[1]);
+        assertEquals(9, stack.get(4)[1]);
+    }
+
+}
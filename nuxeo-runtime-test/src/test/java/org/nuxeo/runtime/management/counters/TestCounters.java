@@ -105,16 +105,27 @@ public class TestCounters {
 
         CounterManager cm = Framework.getLocalService(CounterManager.class);
 
+        // history is sampled, take a sample after each change
+        CounterHistoryRecorder recorder = ((CounterManagerImpl) cm).history;
+
         String myCounter="org.nuxeo.testMe";
 
         CounterHelper.increaseCounter(myCounter); //1
+        recorder.sample();
         CounterHelper.increaseCounter(myCounter); //2
+        recorder.sample();
         CounterHelper.increaseCounter(myCounter); //3
+        recorder.sample();
         CounterHelper.decreaseCounter(myCounter); //2
+        recorder.sample();
         CounterHelper.increaseCounter(myCounter); //3
+        recorder.sample();
         CounterHelper.decreaseCounter(myCounter); //2
+        recorder.sample();
         CounterHelper.decreaseCounter(myCounter); //1
+        recorder.sample();
         CounterHelper.increaseCounter(myCounter); //2
+        recorder.sample();
         CounterHelper.increaseCounter(myCounter); //3
 
         CounterHistoryStack history = cm.getCounterHistory(myCounter);
@@ -126,8 +137,10 @@ public class TestCounters {
         assertEquals(1, history.get(8)[1]);
 
         CounterHelper.setCounterValue(myCounter,0);
+        recorder.sample();
         for (int i= 0; i< 60; i++) {
             CounterHelper.increaseCounter(myCounter);
+            recorder.sample();
         }
 
         assertEquals(50, history.getAsList().size());
@@ -137,4 +150,36 @@ public class TestCounters {
         //System.out.println(history.toString());
 
     }
+
+    @Test
+    public void verifySampledHistory() {
+
+        CounterManager cm = Framework.getLocalService(CounterManager.class);
+        CounterHistoryRecorder recorder = ((CounterManagerImpl) cm).history;
+
+        String myCounter = "org.nuxeo.testSampled";
+
+        // no background sample in between the changes
+        recorder.stop();
+        CounterHistoryStack history;
+        try {
+            CounterHelper.setCounterValue(myCounter, 0);
+            recorder.sample();
+            CounterHelper.increaseCounter(myCounter); // 1
+            CounterHelper.increaseCounter(myCounter); // 2
+            CounterHelper.decreaseCounter(myCounter); // 1
+            recorder.sample();
+            recorder.sample(); // no change, nothing recorded
+            CounterHelper.increaseCounter(myCounter); // 2
+
+            // reading the history catches up with the last changes
+            history = cm.getCounterHistory(myCounter);
+        } finally {
+            recorder.start();
+        }
+        assertEquals(3, history.getAsList().size());
+        assertEquals(2, history.get(0)[1]);
+        assertEquals(1, history.get(1)[1]);
+        assertEquals(0, history.get(2)[1]);
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.management.jvm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @since 7.1
+ */
+public class TestThreadContentionProfiler {
+
+    protected static class ContendedLock {
+    }
+
+    protected final ThreadMXBean mgmt = ManagementFactory.getThreadMXBean();
+
+    protected boolean monitoringEnabled;
+
+    // no background sample, the tests sample on their own
+    protected final ThreadContentionProfiler profiler = new ThreadContentionProfiler(
+            3600 * 1000, 16, ThreadContentionProfiler.DEFAULT_TOP);
+
+    @Before
+    public void saveMonitoringState() {
+        monitoringEnabled = mgmt.isThreadContentionMonitoringSupported()
+                && mgmt.isThreadContentionMonitoringEnabled();
+    }
+
+    @After
+    public void restoreMonitoringState() {
+        profiler.stop();
+        if (mgmt.isThreadContentionMonitoringSupported()) {
+            mgmt.setThreadContentionMonitoringEnabled(monitoringEnabled);
+        }
+    }
+
+    @Test
+    public void testStopRestoresMonitoringState() {
+        if (!mgmt.isThreadContentionMonitoringSupported()) {
+            return;
+        }
+        mgmt.setThreadContentionMonitoringEnabled(false);
+        profiler.start();
+        assertTrue(mgmt.isThreadContentionMonitoringEnabled());
+        profiler.stop();
+        assertFalse(mgmt.isThreadContentionMonitoringEnabled());
+
+        // enabled by someone else, left enabled
+        mgmt.setThreadContentionMonitoringEnabled(true);
+        profiler.start();
+        profiler.stop();
+        assertTrue(mgmt.isThreadContentionMonitoringEnabled());
+    }
+
+    @Test
+    public void testBlockedThreadIsAttributed() throws Exception {
+        profiler.start();
+        final Object lock = new ContendedLock();
+        Thread contender = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+        }, "contender");
+        synchronized (lock) {
+            contender.start();
+            while (contender.getState() != Thread.State.BLOCKED) {
+                Thread.sleep(10);
+            }
+            profiler.sample();
+            Thread.sleep(200);
+            profiler.sample();
+        }
+        contender.join();
+
+        assertEquals(2, profiler.getSampleCount());
+        assertTrue(profiler.getBlockedMillis() > 0);
+        LockContentionStats stats = find(profiler.getTopLocks(),
+                ContendedLock.class.getName());
+        assertNotNull(stats);
+        assertTrue(stats.getBlockedMillis() > 0);
+        assertEquals(0, stats.getWaitedMillis());
+        assertNotNull(stats.getOwnerFrame());
+        // the run method of the contender
+        assertNotNull(find(profiler.getTopFrames(), getClass().getName() + "$"));
+    }
+
+    protected static LockContentionStats find(List<LockContentionStats> list,
+            String name) {
+        for (LockContentionStats stats : list) {
+            if (stats.getName().contains(name)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testLowestEntryIsEvicted() {
+        Map<String, LockContentionStats> table = new HashMap<String, LockContentionStats>();
+        for (int i = 0; i < ThreadContentionProfiler.MAX_ENTRIES; i++) {
+            ThreadContentionProfiler.stats(table, "entry" + i).add(i + 1, 0,
+                    null);
+        }
+        // an existing entry does not evict
+        ThreadContentionProfiler.stats(table, "entry0").add(0, 10, null);
+        assertEquals(ThreadContentionProfiler.MAX_ENTRIES, table.size());
+        assertTrue(table.containsKey("entry0"));
+
+        ThreadContentionProfiler.stats(table, "new").add(1, 0, null);
+        assertEquals(ThreadContentionProfiler.MAX_ENTRIES, table.size());
+        assertTrue(table.containsKey("new"));
+        assertFalse(table.containsKey("entry1"));
+        assertTrue(table.containsKey("entry0"));
+    }
+
+    @Test
+    public void testSampleCostIsBelowOnePercentOfDefaultPeriod() {
+        for (int i = 0; i < 20; i++) {
+            profiler.sample();
+        }
+        long averageNanos = profiler.samplingNanos / profiler.getSampleCount();
+        long budgetNanos = ThreadContentionProfiler.DEFAULT_PERIOD_MILLIS
+                * 1000 * 1000 / 100;
+        assertTrue("sample took " + averageNanos + "ns",
+                averageNanos < budgetNanos);
+    }
+
+}
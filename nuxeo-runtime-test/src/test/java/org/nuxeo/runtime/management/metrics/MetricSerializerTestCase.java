@@ -8,8 +8,10 @@
  ******************************************************************************/
 package org.nuxeo.runtime.management.metrics;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 
 import org.javasimon.Sample;
@@ -58,6 +60,38 @@ public class MetricSerializerTestCase {
         srv.toStream(newSample());
         srv.flushOuput();
         assertTrue(srv.getOutputFile().length() > 0);
+        assertTrue(srv.getOutputFile().getName().endsWith(".xml"));
+    }
+
+    protected static int count(File file) throws IOException {
+        final int[] count = new int[1];
+        new MetricSampleReader(file).read(new MetricSampleReader.Handler() {
+
+            @Override
+            public void handle(MetricSampleFormat.Record record) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    @Test
+    public void testResetTruncatesBinaryOutput() throws IOException {
+        File file = File.createTempFile("nx-samples-", ".bin");
+        try {
+            srv.resetOutput(file.getPath());
+            srv.toStream(newSample());
+            srv.flushOuput();
+            assertEquals(1, count(file));
+            srv.resetOutput();
+            srv.toStream(newSample());
+            srv.flushOuput();
+            // the previous sample is gone
+            assertEquals(1, count(file));
+        } finally {
+            srv.closeOutput();
+            file.delete();
+        }
     }
 
 }
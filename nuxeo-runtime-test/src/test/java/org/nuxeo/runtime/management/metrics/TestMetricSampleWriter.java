@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.nuxeo.runtime.management.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.javasimon.Counter;
+import org.javasimon.SimonManager;
+import org.javasimon.Stopwatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMetricSampleWriter {
+
+    protected File file;
+
+    protected MetricSampleWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        SimonManager.enable();
+        file = File.createTempFile("nx-samples-", ".bin");
+        writer = new MetricSampleWriter(file, 0, 0,
+                MetricSampleWriter.DEFAULT_QUEUE_SIZE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.close();
+        file.delete();
+        SimonManager.destroySimon("test.writer.stopwatch");
+        SimonManager.destroySimon("test.writer.counter");
+        SimonManager.disable();
+    }
+
+    protected List<MetricSampleFormat.Record> read() throws IOException {
+        final List<MetricSampleFormat.Record> records = new ArrayList<MetricSampleFormat.Record>();
+        new MetricSampleReader(file).read(new MetricSampleReader.Handler() {
+
+            @Override
+            public void handle(MetricSampleFormat.Record record) {
+                records.add(record);
+            }
+        });
+        return records;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Stopwatch stopwatch = SimonManager.getStopwatch("test.writer.stopwatch");
+        stopwatch.start().stop();
+        stopwatch.start().stop();
+        Counter counter = SimonManager.getCounter("test.writer.counter");
+        counter.set(5);
+        counter.increase(3);
+        assertTrue(writer.offer(stopwatch.sample()));
+        assertTrue(writer.offer(counter.sample()));
+        writer.flush();
+        assertEquals(2, writer.getWrittenCount());
+
+        List<MetricSampleFormat.Record> records = read();
+        assertEquals(2, records.size());
+        MetricSampleFormat.Record record = records.get(0);
+        assertEquals(MetricSampleFormat.STOPWATCH, record.kind);
+        assertEquals("test.writer.stopwatch", record.name);
+        assertEquals(MetricSampleFormat.STOPWATCH_FIELDS.length,
+                record.values.length);
+        assertEquals(2, record.values[0]);
+        record = records.get(1);
+        assertEquals(MetricSampleFormat.COUNTER, record.kind);
+        assertEquals("test.writer.counter", record.name);
+        assertEquals(Arrays.asList(MetricSampleFormat.COUNTER_FIELDS),
+                Arrays.asList(record.getFields()));
+        assertEquals(8, record.values[0]);
+        assertTrue(record.timestamp > 0);
+    }
+
+    @Test
+    public void testUnencodableSampleIsDropped() throws IOException {
+        char[] chars = new char[Short.MAX_VALUE + 1];
+        Arrays.fill(chars, 'x');
+        String name = "test.writer." + new String(chars);
+        Counter big = SimonManager.getCounter(name);
+        try {
+            Counter counter = SimonManager.getCounter("test.writer.counter");
+            assertTrue(writer.offer(big.sample()));
+            assertTrue(writer.offer(counter.sample()));
+            writer.flush();
+        } finally {
+            SimonManager.destroySimon(name);
+        }
+        // the writer survived the failing sample
+        assertEquals(1, writer.getWrittenCount());
+        assertEquals(1, writer.getDroppedCount());
+        List<MetricSampleFormat.Record> records = read();
+        assertEquals(1, records.size());
+        assertEquals("test.writer.counter", records.get(0).name);
+    }
+
+    @Test
+    public void testCloseWritesPendingSamples() throws IOException {
+        Counter counter = SimonManager.getCounter("test.writer.counter");
+        int offered = 0;
+        for (int i = 0; i < 5000; i++) {
+            counter.increase();
+            if (writer.offer(counter.sample())) {
+                offered++;
+            }
+        }
+        writer.close();
+        assertEquals(offered, writer.getWrittenCount());
+        List<MetricSampleFormat.Record> records = read();
+        assertEquals(offered, records.size());
+        assertEquals(offered, records.get(offered - 1).values[0]
+                - records.get(0).values[0] + 1);
+    }
+
+    @Test
+    public void testOutputIsTruncated() throws IOException {
+        Counter counter = SimonManager.getCounter("test.writer.counter");
+        assertTrue(writer.offer(counter.sample()));
+        writer.close();
+        // a new writer on the same file, as after resetting the output
+        writer = new MetricSampleWriter(file, 0, 0,
+                MetricSampleWriter.DEFAULT_QUEUE_SIZE);
+        assertEquals(0, file.length());
+        assertTrue(writer.offer(counter.sample()));
+        writer.flush();
+        assertEquals(1, read().size());
+    }
+
+}
@@ -34,47 +34,47 @@ public class RegistryTest extends NXRuntimeTestCase {
         deployContrib("org.nuxeo.runtime.test.tests", "CompA.xml");
 
         assertNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompA")));
+                ComponentName.of("CompA")));
 
         deployContrib("org.nuxeo.runtime.test.tests", "CompB.xml");
 
         assertNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompA")));
+                ComponentName.of("CompA")));
 
         deployContrib("org.nuxeo.runtime.test.tests", "CompC.xml");
 
         assertNotNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompA")));
+                ComponentName.of("CompA")));
         assertNotNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompB")));
+                ComponentName.of("CompB")));
 
         undeployContrib("org.nuxeo.runtime.test.tests", "CompC.xml");
         undeployContrib("org.nuxeo.runtime.test.tests", "CompA.xml");
         undeployContrib("org.nuxeo.runtime.test.tests", "CompB.xml");
 
         assertNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompA")));
+                ComponentName.of("CompA")));
         assertNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompB")));
+                ComponentName.of("CompB")));
 
         deployContrib("org.nuxeo.runtime.test.tests", "CompA.xml");
 
         assertNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompA")));
+                ComponentName.of("CompA")));
 
         deployContrib("org.nuxeo.runtime.test.tests", "CompB.xml");
 
         assertNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompA")));
+                ComponentName.of("CompA")));
 
         deployContrib("org.nuxeo.runtime.test.tests", "CompC.xml");
 
         assertNotNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompA")));
+                ComponentName.of("CompA")));
         assertNotNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompB")));
+                ComponentName.of("CompB")));
         assertNotNull(Framework.getRuntime().getComponent(
-                new ComponentName("CompC")));
+                ComponentName.of("CompC")));
 
     }
 
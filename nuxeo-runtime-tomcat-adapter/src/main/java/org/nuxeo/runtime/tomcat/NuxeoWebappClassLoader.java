@@ -29,6 +29,10 @@ import org.nuxeo.osgi.application.MutableClassLoader;
  */
 public class NuxeoWebappClassLoader extends WebappClassLoader implements MutableClassLoader {
 
+    static {
+        registerAsParallelCapable();
+    }
+
     public NuxeoWebappClassLoader() {
     }
 
@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.tomcat.dev;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Class lookup in the local class loaders of the dev webapp loader,
+ * remembering the child owning each class and the class names missing
+ * everywhere.
+ * <p>
+ * Children are always tried in order, the first one defining a class owns
+ * it. A lookup takes the {@link #getGeneration() generation} before reading
+ * the class path, and its result is only remembered if no {@link #flush()}
+ * happened since: the generation check and the cache write are done under
+ * the same lock as the flush.
+ *
+ * @since 7.1
+ */
+public class LocalClassLookup {
+
+    /**
+     * Maximum number of class names remembered as missing.
+     */
+    protected static final int MAX_MISSES = 10000;
+
+    protected final Object lock = new Object();
+
+    protected volatile int generation;
+
+    protected final ConcurrentMap<String, LocalClassLoader> owners = new ConcurrentHashMap<String, LocalClassLoader>();
+
+    protected final Set<String> misses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Loads a class known to this cache.
+     *
+     * @return the class, or {@code null} if the class is not known
+     * @throws ClassNotFoundException if the class is known to be missing
+     */
+    public Class<?> loadCached(String name, boolean resolve)
+            throws ClassNotFoundException {
+        if (misses.contains(name)) {
+            throw new ClassNotFoundException(name);
+        }
+        LocalClassLoader owner = owners.get(name);
+        return owner == null ? null : owner.loadLocalClass(name, resolve);
+    }
+
+    /**
+     * Loads a class from the first child defining it.
+     *
+     * @param generation the generation taken before the lookup started
+     */
+    public Class<?> load(String name, boolean resolve,
+            LocalClassLoader[] children, int generation)
+            throws ClassNotFoundException {
+        for (LocalClassLoader cl : children) {
+            Class<?> clazz;
+            try {
+                clazz = cl.loadLocalClass(name, resolve);
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+            synchronized (lock) {
+                if (generation == this.generation) {
+                    owners.put(name, cl);
+                }
+            }
+            return clazz;
+        }
+        synchronized (lock) {
+            if (generation == this.generation) {
+                if (misses.size() >= MAX_MISSES) {
+                    misses.clear();
+                }
+                misses.add(name);
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    /**
+     * Forgets the class owners and the missing class names.
+     */
+    public void flush() {
+        synchronized (lock) {
+            generation++;
+            owners.clear();
+            misses.clear();
+        }
+    }
+
+}
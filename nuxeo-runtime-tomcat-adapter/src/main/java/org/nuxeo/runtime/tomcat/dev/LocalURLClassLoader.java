@@ -29,6 +29,10 @@ import java.util.Enumeration;
 public class LocalURLClassLoader extends URLClassLoader implements
         LocalClassLoader {
 
+    static {
+        registerAsParallelCapable();
+    }
+
     public LocalURLClassLoader(ClassLoader parent) {
         super(new URL[0], parent);
     }
@@ -40,13 +44,17 @@ public class LocalURLClassLoader extends URLClassLoader implements
     @Override
     public void addURL(URL url) {
         super.addURL(url);
+        ClassLoader parent = getParent();
+        if (parent instanceof NuxeoDevWebappClassLoader) {
+            ((NuxeoDevWebappClassLoader) parent).flushLookupCaches();
+        }
     }
 
     @Override
     public Class<?> loadLocalClass(String name, boolean resolve)
             throws ClassNotFoundException {
         // do not look into parent
-        synchronized(getParent()) {
+        synchronized (getClassLoadingLock(name)) {
             Class<?> clazz = findLoadedClass(name);
 
             if (clazz == null) {
@@ -38,6 +38,10 @@ import org.nuxeo.runtime.tomcat.NuxeoWebappClassLoader;
 public class NuxeoDevWebappClassLoader extends NuxeoWebappClassLoader implements
         MutableClassLoader, WebResourcesCacheFlusher {
 
+    static {
+        registerAsParallelCapable();
+    }
+
     public LocalClassLoader createLocalClassLoader(URL... urls) {
         LocalClassLoader cl = new LocalURLClassLoader(urls, this);
         addChildren(cl);
@@ -50,6 +54,15 @@ public class NuxeoDevWebappClassLoader extends NuxeoWebappClassLoader implements
 
     protected volatile LocalClassLoader[] _children;
 
+    /**
+     * The children owning the classes they already defined, bypassing the
+     * webapp repositories on the next lookups, and the class names found
+     * neither in the webapp nor in the children.
+     *
+     * @since 7.1
+     */
+    protected final LocalClassLookup lookup = new LocalClassLookup();
+
     public NuxeoDevWebappClassLoader() {
         super();
         this.children = new ArrayList<LocalClassLoader>();
@@ -71,16 +84,29 @@ public class NuxeoDevWebappClassLoader extends NuxeoWebappClassLoader implements
     public synchronized void addChildren(LocalClassLoader loader) {
         children.add(loader);
         _children = null;
+        flushLookupCaches();
     }
 
     public synchronized void removeChildren(ClassLoader loader) {
         children.remove(loader);
         _children = null;
+        flushLookupCaches();
     }
 
     public synchronized void clear() {
         children.clear();
         _children = null;
+        flushLookupCaches();
+    }
+
+    /**
+     * Forgets the class owners and the missing class names, to be called
+     * whenever the class path of this loader or of a child changes.
+     *
+     * @since 7.1
+     */
+    public void flushLookupCaches() {
+        lookup.flush();
     }
 
     public synchronized void flushWebResources() {
@@ -100,25 +126,27 @@ public class NuxeoDevWebappClassLoader extends NuxeoWebappClassLoader implements
     }
 
     /**
-     * Do not synchronize this method at method level to avoid deadlocks.
+     * Do not synchronize this method to avoid deadlocks: the webapp lookup
+     * and the children lookups lock on the class name only.
+     * <p>
+     * Classes already defined by a child are directly asked to it, and class
+     * names missing everywhere are rejected until the class path changes.
      */
     @Override
     public Class<?> loadClass(String name, boolean resolve)
             throws ClassNotFoundException {
+        // taken first, nothing is cached if the class path changes meanwhile
+        int generation = lookup.getGeneration();
+        Class<?> clazz = lookup.loadCached(name, resolve);
+        if (clazz != null) {
+            return clazz;
+        }
         try {
-            synchronized (this) {
-                return super.loadClass(name, resolve);
-            }
+            return super.loadClass(name, resolve);
         } catch (ClassNotFoundException e) {
-            for (LocalClassLoader cl : getChildren()) {
-                try {
-                    return cl.loadLocalClass(name, resolve);
-                } catch (ClassNotFoundException ee) {
-                    // do nothing
-                }
-            }
+            // look into children
         }
-        throw new ClassNotFoundException(name);
+        return lookup.load(name, resolve, getChildren(), generation);
     }
 
     @Override
@@ -168,6 +196,7 @@ public class NuxeoDevWebappClassLoader extends NuxeoWebappClassLoader implements
     @Override
     public void addURL(URL url) {
         super.addURL(url);
+        flushLookupCaches();
     }
 
     @Override
@@ -0,0 +1,155 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.tomcat.dev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestLocalClassLookup {
+
+    /**
+     * Child defining the classes it was given, counting the lookups.
+     */
+    protected static class FakeLoader implements LocalClassLoader {
+
+        protected final Map<String, Class<?>> classes = new HashMap<String, Class<?>>();
+
+        protected int lookups;
+
+        protected FakeLoader define(String name, Class<?> clazz) {
+            classes.put(name, clazz);
+            return this;
+        }
+
+        @Override
+        public Class<?> loadLocalClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            lookups++;
+            Class<?> clazz = classes.get(name);
+            if (clazz == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return clazz;
+        }
+
+        @Override
+        public Class<?> loadClass(String name) throws ClassNotFoundException {
+            return loadLocalClass(name, false);
+        }
+
+        @Override
+        public void addURL(URL url) {
+        }
+
+        @Override
+        public URL getLocalResource(String name) {
+            return null;
+        }
+
+        @Override
+        public Enumeration<URL> getLocalResources(String name) {
+            return null;
+        }
+
+        @Override
+        public InputStream getLocalResourceAsStream(String name) {
+            return null;
+        }
+    }
+
+    protected final LocalClassLookup lookup = new LocalClassLookup();
+
+    protected Class<?> load(String name, LocalClassLoader... children)
+            throws ClassNotFoundException {
+        int generation = lookup.getGeneration();
+        Class<?> clazz = lookup.loadCached(name, false);
+        return clazz != null ? clazz : lookup.load(name, false, children,
+                generation);
+    }
+
+    protected void assertMissing(String name, LocalClassLoader... children) {
+        try {
+            load(name, children);
+            fail(name + " should be missing");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void keepsChildrenOrder() throws Exception {
+        // a split package, the second child also defines a.A
+        FakeLoader first = new FakeLoader().define("a.A", String.class);
+        FakeLoader second = new FakeLoader().define("a.A", Integer.class);
+        second.define("a.B", Long.class);
+        assertSame(Long.class, load("a.B", first, second));
+        assertSame(String.class, load("a.A", first, second));
+    }
+
+    @Test
+    public void remembersOwners() throws Exception {
+        FakeLoader first = new FakeLoader();
+        FakeLoader second = new FakeLoader().define("a.A", String.class);
+        assertSame(String.class, load("a.A", first, second));
+        assertEquals(1, first.lookups);
+        assertSame(String.class, load("a.A", first, second));
+        assertEquals(1, first.lookups);
+        assertEquals(2, second.lookups);
+    }
+
+    @Test
+    public void remembersMisses() throws Exception {
+        FakeLoader child = new FakeLoader();
+        assertMissing("a.A", child);
+        assertMissing("a.A", child);
+        assertEquals(1, child.lookups);
+        // found once the class path changed
+        child.define("a.A", String.class);
+        lookup.flush();
+        assertSame(String.class, load("a.A", child));
+    }
+
+    @Test
+    public void dropsResultsOfStaleLookups() throws Exception {
+        FakeLoader child = new FakeLoader().define("a.A", String.class);
+        LocalClassLoader[] children = { child };
+        int generation = lookup.getGeneration();
+        // the class path changes while looking up
+        lookup.flush();
+        assertSame(String.class, lookup.load("a.A", false, children,
+                generation));
+        try {
+            lookup.load("a.B", false, children, generation);
+            fail();
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+        assertNull(lookup.loadCached("a.A", false));
+        assertNull(lookup.loadCached("a.B", false));
+    }
+
+}
@@ -239,7 +239,7 @@ public abstract class AbstractRuntimeService implements RuntimeService {
 
     @Override
     public ComponentInstance getComponentInstance(String name) {
-        return manager.getComponent(new ComponentName(name));
+        return manager.getComponent(ComponentName.of(name));
     }
 
     @Override
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime;
+
+/**
+ * Hooks timing the hot paths of the runtime: component activation,
+ * application started notification, extension registration, contribution
+ * merges and service lookups.
+ * <p>
+ * The runtime always goes through the {@link #get() installed}
+ * instrumentation, which is a no-op one unless a monitoring service installs
+ * its own. Call sites are expected to look like:
+ *
+ * <pre>
+ * RuntimeInstrumentation.Timer timer = RuntimeInstrumentation.get().start(
+ *         RuntimeInstrumentation.Point.ACTIVATE, name);
+ * try {
+ *     ...
+ * } finally {
+ *     timer.stop();
+ * }
+ * </pre>
+ *
+ * @since 7.1
+ */
+public abstract class RuntimeInstrumentation {
+
+    public enum Point {
+        ACTIVATE, APPLICATION_STARTED, REGISTER_EXTENSION, MERGE_CONTRIBUTION
+    }
+
+    public interface Timer {
+
+        void stop();
+    }
+
+    public static final Timer NOOP_TIMER = new Timer() {
+
+        @Override
+        public void stop() {
+        }
+    };
+
+    public static final RuntimeInstrumentation NOOP = new RuntimeInstrumentation() {
+
+        @Override
+        public Timer start(Point point, Object subject) {
+            return NOOP_TIMER;
+        }
+
+        @Override
+        public void serviceLookup(Class<?> serviceClass, boolean found) {
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    private static volatile RuntimeInstrumentation current = NOOP;
+
+    public static RuntimeInstrumentation get() {
+        return current;
+    }
+
+    /**
+     * Installs the instrumentation used by the runtime, {@code null}
+     * restoring the no-op one.
+     */
+    public static void install(RuntimeInstrumentation instrumentation) {
+        current = instrumentation == null ? NOOP : instrumentation;
+    }
+
+    /**
+     * Starts timing the given point for the given subject, a component name
+     * or a contribution registry class.
+     */
+    public abstract Timer start(Point point, Object subject);
+
+    /**
+     * Records a service lookup and whether it succeeded.
+     */
+    public abstract void serviceLookup(Class<?> serviceClass, boolean found);
+
+    public boolean isEnabled() {
+        return true;
+    }
+
+}
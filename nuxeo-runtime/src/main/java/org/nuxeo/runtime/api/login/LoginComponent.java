@@ -44,7 +44,7 @@ import org.nuxeo.runtime.model.DefaultComponent;
  */
 public class LoginComponent extends DefaultComponent implements LoginService {
 
-    public static final ComponentName NAME = new ComponentName(
+    public static final ComponentName NAME = ComponentName.of(
             "org.nuxeo.runtime.LoginComponent");
 
     public static final String SYSTEM_LOGIN = "nuxeo-system-login";
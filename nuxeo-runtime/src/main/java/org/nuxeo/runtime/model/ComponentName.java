@@ -16,6 +16,8 @@ package org.nuxeo.runtime.model;
 
 import java.io.Serializable;
 
+import org.nuxeo.runtime.model.impl.WeakInterner;
+
 /**
  * A component name.
  * <p>
@@ -29,6 +31,11 @@ import java.io.Serializable;
  * <li> service:my.service
  * <li> my.component
  * </ul>
+ * <p>
+ * Names obtained through {@link #of(String)} are canonical: equal names are
+ * the same instance as long as one of them is in use, so they share their
+ * strings and {@link #equals(Object)} returns at its identity check for them.
+ * Distinct names are still compared by their qualified name.
  *
  * @author  <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
  */
@@ -38,38 +45,73 @@ public class ComponentName implements Serializable {
 
     private static final long serialVersionUID = -7686792831111487156L;
 
+    private static final WeakInterner<ComponentName> names = new WeakInterner<ComponentName>();
+
     private final String type;
     private final String name;
     private final String rawName;
 
     /**
      * Constructs a component name from its string representation.
+     * <p>
+     * The name is not canonical, use {@link #of(String)} instead.
      *
      * @param rawName the string representation of this name
      */
     public ComponentName(String rawName) {
         int p = rawName.indexOf(':');
         if (p > -1) {
-            type = rawName.substring(0, p).intern();
+            type = type(rawName.substring(0, p));
             name = rawName.substring(p + 1);
-            this.rawName = rawName.intern();
+            this.rawName = rawName;
         } else {
             type = DEFAULT_TYPE;
             name = rawName;
-            this.rawName = (type + ':' + name).intern();
+            this.rawName = type + ':' + name;
         }
     }
 
     /**
      * Constructs a component name from its two parts: type and name.
+     * <p>
+     * The name is not canonical, use {@link #of(String, String)} instead.
      *
      * @param type the type part of the component name
      * @param name the name part of the component name
      */
     public ComponentName(String type, String name) {
-        this.type = type.intern();
+        this.type = type(type);
         this.name = name;
-        rawName = (type + ':' + name).intern();
+        rawName = type + ':' + name;
+    }
+
+    private static String type(String type) {
+        return DEFAULT_TYPE.equals(type) ? DEFAULT_TYPE : type;
+    }
+
+    /**
+     * Gets the canonical component name from its string representation.
+     *
+     * @since 7.1
+     */
+    public static ComponentName of(String rawName) {
+        return names.intern(new ComponentName(rawName));
+    }
+
+    /**
+     * Gets the canonical component name from its two parts.
+     *
+     * @since 7.1
+     */
+    public static ComponentName of(String type, String name) {
+        return names.intern(new ComponentName(type, name));
+    }
+
+    /**
+     * Resolves deserialized names to their canonical instance.
+     */
+    protected Object readResolve() {
+        return names.intern(this);
     }
 
     /**
@@ -14,6 +14,8 @@ package org.nuxeo.runtime.model;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.nuxeo.runtime.RuntimeInstrumentation;
+
 /**
  * This is a contribution registry that is managing contribution fragments and
  * merge them as needed. The implementation will be notified through
@@ -161,9 +163,15 @@ public abstract class ContributionFragmentRegistry<T> {
      * @param contrib
      */
     public synchronized void addContribution(T contrib) {
-        String id = getContributionId(contrib);
-        FragmentList<T> head = addFragment(id, contrib);
-        contributionUpdated(id, head.merge(this), contrib);
+        RuntimeInstrumentation.Timer timer = RuntimeInstrumentation.get().start(
+                RuntimeInstrumentation.Point.MERGE_CONTRIBUTION, getClass());
+        try {
+            String id = getContributionId(contrib);
+            FragmentList<T> head = addFragment(id, contrib);
+            contributionUpdated(id, head.merge(this), contrib);
+        } finally {
+            timer.stop();
+        }
     }
 
     /**
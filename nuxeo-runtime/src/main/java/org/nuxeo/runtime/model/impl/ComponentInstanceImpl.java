@@ -185,7 +185,7 @@ public class ComponentInstanceImpl implements ComponentInstance {
         if (xp != null) {
             String superCo = xp.getSuperComponent();
             if (superCo != null) {
-                ((ExtensionImpl) extension).target = new ComponentName(superCo);
+                ((ExtensionImpl) extension).target = ComponentName.of(superCo);
                 ri.manager.registerExtension(extension);
                 return;
             }
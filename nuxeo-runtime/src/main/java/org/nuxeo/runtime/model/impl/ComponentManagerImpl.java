@@ -28,6 +28,7 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.collections.ListenerList;
 import org.nuxeo.runtime.ComponentEvent;
 import org.nuxeo.runtime.ComponentListener;
+import org.nuxeo.runtime.RuntimeInstrumentation;
 import org.nuxeo.runtime.RuntimeService;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.ComponentInstance;
@@ -37,6 +38,14 @@ import org.nuxeo.runtime.model.Extension;
 import org.nuxeo.runtime.model.RegistrationInfo;
 
 /**
+ * The component manager.
+ * <p>
+ * When components are {@link #setDeferredComponents deferred}, the
+ * operations which may register deferred components, either directly or
+ * from the code of the components they activate or deactivate, take the
+ * {@link DeferredComponents#getLock() deferred components lock} before the
+ * manager lock, as the deferred components do when registering.
+ *
  * @author Bogdan Stefanescu
  * @author Florent Guillaume
  */
@@ -44,6 +53,15 @@ public class ComponentManagerImpl implements ComponentManager {
 
     private static final Log log = LogFactory.getLog(ComponentManagerImpl.class);
 
+    /**
+     * Property releasing the DOM element of the extensions once registered to
+     * their target, see {@link ExtensionImpl#releaseElement()}. Read on first
+     * registration, so better set as a system property.
+     *
+     * @since 7.1
+     */
+    public static final String COMPACT_EXTENSIONS_PROP = "org.nuxeo.runtime.compactExtensions";
+
     // must use an ordered Set to avoid loosing the order of the pending
     // extensions
     protected final Map<ComponentName, Set<Extension>> pendingExtensions;
@@ -56,6 +74,10 @@ public class ComponentManagerImpl implements ComponentManager {
 
     protected ComponentRegistry reg;
 
+    protected volatile DeferredComponents deferred;
+
+    protected Boolean compactExtensions;
+
     public ComponentManagerImpl(RuntimeService runtime) {
         reg = new ComponentRegistry();
         pendingExtensions = new HashMap<ComponentName, Set<Extension>>();
@@ -86,8 +108,11 @@ public class ComponentManagerImpl implements ComponentManager {
     }
 
     @Override
-    public synchronized RegistrationInfo getRegistrationInfo(ComponentName name) {
-        return reg.getComponent(name);
+    public RegistrationInfo getRegistrationInfo(ComponentName name) {
+        loadDeferred(name);
+        synchronized (this) {
+            return reg.getComponent(name);
+        }
     }
 
     @Override
@@ -101,20 +126,27 @@ public class ComponentManagerImpl implements ComponentManager {
     }
 
     @Override
-    public synchronized ComponentInstance getComponent(ComponentName name) {
-        RegistrationInfo ri = reg.getComponent(name);
-        return ri != null ? ri.getComponent() : null;
+    public ComponentInstance getComponent(ComponentName name) {
+        loadDeferred(name);
+        synchronized (this) {
+            RegistrationInfo ri = reg.getComponent(name);
+            return ri != null ? ri.getComponent() : null;
+        }
     }
 
     @Override
-    public synchronized void shutdown() {
-        ShutdownTask.shutdown(this);
-        try {
-            listeners = null;
-            reg.destroy();
-            reg = null;
-        } catch (Exception e) {
-            log.error("Failed to shutdown registry manager");
+    public void shutdown() {
+        synchronized (getLoadLock()) {
+            synchronized (this) {
+                ShutdownTask.shutdown(this);
+                try {
+                    listeners = null;
+                    reg.destroy();
+                    reg = null;
+                } catch (Exception e) {
+                    log.error("Failed to shutdown registry manager");
+                }
+            }
         }
     }
 
@@ -128,8 +160,49 @@ public class ComponentManagerImpl implements ComponentManager {
         this.blacklist = blacklist;
     }
 
+    /**
+     * Sets the components registered on demand, when looked up by name or
+     * service, targeted by an extension or required by another component.
+     *
+     * @since 7.1
+     */
+    public void setDeferredComponents(DeferredComponents deferred) {
+        this.deferred = deferred;
+    }
+
+    /**
+     * @since 7.1
+     */
+    public DeferredComponents getDeferredComponents() {
+        return deferred;
+    }
+
+    /**
+     * Gets the lock to take before the manager lock when registering,
+     * activating or deactivating components.
+     *
+     * @since 7.1
+     */
+    protected Object getLoadLock() {
+        DeferredComponents deferred = this.deferred;
+        return deferred == null ? this : deferred.getLock();
+    }
+
+    protected void loadDeferred(ComponentName name) {
+        DeferredComponents deferred = this.deferred;
+        if (deferred != null && name != null) {
+            deferred.loadComponent(name);
+        }
+    }
+
     @Override
-    public synchronized void register(RegistrationInfo regInfo) {
+    public void register(RegistrationInfo regInfo) {
+        synchronized (getLoadLock()) {
+            doRegister(regInfo);
+        }
+    }
+
+    protected synchronized void doRegister(RegistrationInfo regInfo) {
         RegistrationInfoImpl ri = (RegistrationInfoImpl) regInfo;
         ComponentName name = ri.getName();
         if (blacklist.contains(name.getName())) {
@@ -167,9 +240,15 @@ public class ComponentManagerImpl implements ComponentManager {
         try {
             log.info("Registering component: " + name);
             if (!reg.addComponent(ri)) {
+                Set<ComponentName> missing = reg.getMissingDependencies(ri.getName());
                 log.info("Registration delayed for component: " + name
-                        + ". Waiting for: "
-                        + reg.getMissingDependencies(ri.getName()));
+                        + ". Waiting for: " + missing);
+                if (deferred != null) {
+                    for (ComponentName n : new ArrayList<ComponentName>(
+                            missing)) {
+                        loadDeferred(n);
+                    }
+                }
             }
         } catch (Throwable e) {
             String msg = "Failed to register component: " + name;
@@ -181,17 +260,21 @@ public class ComponentManagerImpl implements ComponentManager {
     }
 
     @Override
-    public synchronized void unregister(RegistrationInfo regInfo) {
+    public void unregister(RegistrationInfo regInfo) {
         unregister(regInfo.getName());
     }
 
     @Override
-    public synchronized void unregister(ComponentName name) {
-        try {
-            log.info("Unregistering component: " + name);
-            reg.removeComponent(name);
-        } catch (Throwable e) {
-            log.error("Failed to unregister component: " + name, e);
+    public void unregister(ComponentName name) {
+        synchronized (getLoadLock()) {
+            synchronized (this) {
+                try {
+                    log.info("Unregistering component: " + name);
+                    reg.removeComponent(name);
+                } catch (Throwable e) {
+                    log.error("Failed to unregister component: " + name, e);
+                }
+            }
         }
     }
 
@@ -209,26 +292,38 @@ public class ComponentManagerImpl implements ComponentManager {
     public ComponentInstance getComponentProvidingService(
             Class<?> serviceClass) {
         RegistrationInfoImpl ri = services.get(serviceClass.getName());
+        if (ri == null && deferred != null
+                && deferred.loadService(serviceClass.getName())) {
+            ri = services.get(serviceClass.getName());
+        }
         if (ri != null && ri.isActivated()) {
             return ri.getComponent();
         }
-        synchronized(this) {
-	    if (ri != null && !ri.isActivated()) {
-		if (ri.isResolved()) {
-		    try {
-			ri.activate();
-			return ri.getComponent();
-		    } catch (Exception e) {
-			log.error("Failed to get service: " + serviceClass + ", " + e.getMessage());
-		    }
-		} else {
-		    // Hack to avoid messages during TypeService activation
-		    if (!serviceClass.getSimpleName().equals("TypeProvider")) {
-			log.debug("The component exposing the service "
-				  + serviceClass + " is not resolved");
-		    }
-		}
-	    }
+        if (ri == null) {
+            return null;
+        }
+        synchronized (getLoadLock()) {
+            synchronized (this) {
+                if (ri.isActivated()) {
+                    // activated while waiting for the locks
+                    return ri.getComponent();
+                }
+                if (ri.isResolved()) {
+                    try {
+                        ri.activate();
+                        return ri.getComponent();
+                    } catch (Exception e) {
+                        log.error("Failed to get service: " + serviceClass
+                                + ", " + e.getMessage());
+                    }
+                } else {
+                    // Hack to avoid messages during TypeService activation
+                    if (!serviceClass.getSimpleName().equals("TypeProvider")) {
+                        log.debug("The component exposing the service "
+                                + serviceClass + " is not resolved");
+                    }
+                }
+            }
         }
         return null;
     }
@@ -236,7 +331,9 @@ public class ComponentManagerImpl implements ComponentManager {
     @Override
     public <T> T getService(Class<T> serviceClass) {
         ComponentInstance comp = getComponentProvidingService(serviceClass);
-        return comp != null ? comp.getAdapter(serviceClass) : null;
+        T service = comp != null ? comp.getAdapter(serviceClass) : null;
+        RuntimeInstrumentation.get().serviceLookup(serviceClass, service != null);
+        return service;
     }
 
     @Override
@@ -262,16 +359,30 @@ public class ComponentManagerImpl implements ComponentManager {
         }
     }
 
-    public synchronized void registerExtension(Extension extension)
+    public void registerExtension(Extension extension) throws Exception {
+        synchronized (getLoadLock()) {
+            doRegisterExtension(extension);
+        }
+    }
+
+    protected synchronized void doRegisterExtension(Extension extension)
             throws Exception {
         ComponentName name = extension.getTargetComponent();
+        loadDeferred(name);
         RegistrationInfoImpl ri = reg.getComponent(name);
         if (ri != null && ri.component != null) {
             if (log.isDebugEnabled()) {
                 log.debug("Register contributed extension: " + extension);
             }
-            loadContributions(ri, extension);
-            ri.component.registerExtension(extension);
+            RuntimeInstrumentation.Timer timer = RuntimeInstrumentation.get().start(
+                    RuntimeInstrumentation.Point.REGISTER_EXTENSION, name);
+            try {
+                loadContributions(ri, extension);
+                ri.component.registerExtension(extension);
+                extensionRegistered(extension);
+            } finally {
+                timer.stop();
+            }
             sendEvent(new ComponentEvent(ComponentEvent.EXTENSION_REGISTERED,
                     ((ComponentInstanceImpl) extension.getComponent()).ri,
                     extension));
@@ -295,7 +406,13 @@ public class ComponentManagerImpl implements ComponentManager {
         }
     }
 
-    public synchronized void unregisterExtension(Extension extension)
+    public void unregisterExtension(Extension extension) throws Exception {
+        synchronized (getLoadLock()) {
+            doUnregisterExtension(extension);
+        }
+    }
+
+    protected synchronized void doUnregisterExtension(Extension extension)
             throws Exception {
         // TODO check if framework is shutting down and in that case do nothing
         if (log.isDebugEnabled()) {
@@ -323,6 +440,18 @@ public class ComponentManagerImpl implements ComponentManager {
                 extension));
     }
 
+    /**
+     * Releases the DOM element of a registered extension if configured so.
+     */
+    synchronized void extensionRegistered(Extension xt) {
+        if (compactExtensions == null) {
+            compactExtensions = Boolean.valueOf(Framework.isBooleanPropertyTrue(COMPACT_EXTENSIONS_PROP));
+        }
+        if (compactExtensions.booleanValue() && xt instanceof ExtensionImpl) {
+            ((ExtensionImpl) xt).releaseElement();
+        }
+    }
+
     public static void loadContributions(RegistrationInfoImpl ri, Extension xt) {
         ExtensionPointImpl xp = ri.getExtensionPoint(xt.getExtensionPoint());
         if (xp != null && xp.contributions != null) {
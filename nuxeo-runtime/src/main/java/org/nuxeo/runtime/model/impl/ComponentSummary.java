@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * What a component descriptor declares about its relations with the other
+ * components, read in a single streaming pass without building the
+ * registration: name, aliases, provided services, extension points,
+ * extension targets and requirements.
+ * <p>
+ * Values are returned as written, variables are not expanded.
+ *
+ * @since 7.1
+ */
+public class ComponentSummary {
+
+    private static final XMLInputFactory factory = newFactory();
+
+    protected String name;
+
+    protected String implementation;
+
+    protected final List<String> aliases = new ArrayList<String>();
+
+    protected final List<String> services = new ArrayList<String>();
+
+    protected final List<String> extensionPoints = new ArrayList<String>();
+
+    protected final List<String> targets = new ArrayList<String>();
+
+    protected final List<String> requires = new ArrayList<String>();
+
+    private static XMLInputFactory newFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Reads the summary of a descriptor.
+     *
+     * @return the summary, or {@code null} if the root element is not a
+     *         {@code component}
+     */
+    public static ComponentSummary read(InputStream in) throws IOException {
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                return read(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    protected static ComponentSummary read(XMLStreamReader reader)
+            throws XMLStreamException {
+        reader.nextTag();
+        if (!"component".equals(reader.getLocalName())) {
+            return null;
+        }
+        ComponentSummary summary = new ComponentSummary();
+        summary.name = reader.getAttributeValue(null, "name");
+        // only the children of the root element and of its service element
+        // are of interest, skip the content of the others
+        int depth = 1;
+        boolean inService = false;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                inService = false;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String element = reader.getLocalName();
+            if (inService) {
+                if ("provide".equals(element)) {
+                    add(summary.services,
+                            reader.getAttributeValue(null, "interface"));
+                }
+                skip(reader);
+                continue;
+            }
+            if (depth > 1) {
+                skip(reader);
+                continue;
+            }
+            if ("service".equals(element)) {
+                depth++;
+                inService = true;
+            } else if ("alias".equals(element)) {
+                add(summary.aliases, reader.getElementText());
+            } else if ("require".equals(element)) {
+                add(summary.requires, reader.getElementText());
+            } else if ("implementation".equals(element)) {
+                summary.implementation = reader.getAttributeValue(null,
+                        "class");
+                skip(reader);
+            } else if ("extension-point".equals(element)) {
+                add(summary.extensionPoints,
+                        reader.getAttributeValue(null, "name"));
+                skip(reader);
+            } else if ("extension".equals(element)) {
+                add(summary.targets, reader.getAttributeValue(null, "target"));
+                skip(reader);
+            } else {
+                skip(reader);
+            }
+        }
+        return summary;
+    }
+
+    protected static void add(List<String> list, String value) {
+        if (value != null) {
+            value = value.trim();
+            if (!value.isEmpty() && !list.contains(value)) {
+                list.add(value);
+            }
+        }
+    }
+
+    /**
+     * Skips the element the reader is positioned on, up to its end tag.
+     */
+    protected static void skip(XMLStreamReader reader)
+            throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getImplementation() {
+        return implementation;
+    }
+
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+    public List<String> getServices() {
+        return services;
+    }
+
+    public List<String> getExtensionPoints() {
+        return extensionPoints;
+    }
+
+    /**
+     * Gets the target components of the contributed extensions.
+     */
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    public List<String> getRequires() {
+        return requires;
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentSummary: " + name;
+    }
+
+}
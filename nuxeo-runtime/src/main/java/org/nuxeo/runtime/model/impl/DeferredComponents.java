@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.model.impl;
+
+import org.nuxeo.runtime.model.ComponentName;
+
+/**
+ * Components known to the component manager but not registered yet, which
+ * are registered when first needed.
+ *
+ * @since 7.1
+ */
+public interface DeferredComponents {
+
+    /**
+     * Registers the deferred component with the given name or alias, along
+     * with the components deployed with it.
+     *
+     * @return {@code true} if components were registered
+     */
+    boolean loadComponent(ComponentName name);
+
+    /**
+     * Registers the deferred component providing the given service, along
+     * with the components deployed with it.
+     *
+     * @return {@code true} if components were registered
+     */
+    boolean loadService(String serviceClass);
+
+    /**
+     * Gets the lock held while deferred components are registered. The
+     * component manager takes it before its own lock, so that both are always
+     * taken in the same order.
+     */
+    Object getLock();
+
+}
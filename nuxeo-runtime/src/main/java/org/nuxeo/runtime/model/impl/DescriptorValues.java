@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.model.impl;
+
+import org.nuxeo.common.xmap.Context;
+import org.nuxeo.common.xmap.XMap;
+import org.nuxeo.common.xmap.XValueFactory;
+import org.nuxeo.runtime.Version;
+import org.nuxeo.runtime.model.ComponentName;
+
+/**
+ * Value factories of the component and contribution descriptors.
+ * <p>
+ * Descriptor strings repeat a lot across contributions: extension point
+ * names, class names, schema or type names. Strings up to
+ * {@value #MAX_CANONICAL_LENGTH} characters are replaced by a canonical
+ * instance, so that each distinct value is retained once.
+ *
+ * @since 7.1
+ */
+public class DescriptorValues {
+
+    public static final int MAX_CANONICAL_LENGTH = 128;
+
+    private static final WeakInterner<String> strings = new WeakInterner<String>();
+
+    public static final XValueFactory STRING = new XValueFactory() {
+        @Override
+        public Object deserialize(Context context, String value) {
+            return canonical(value);
+        }
+
+        @Override
+        public String serialize(Context context, Object value) {
+            if (value != null) {
+                return value.toString();
+            }
+            return null;
+        }
+    };
+
+    public static final XValueFactory COMPONENT_NAME = new XValueFactory() {
+        @Override
+        public Object deserialize(Context context, String value) {
+            return ComponentName.of(value);
+        }
+
+        @Override
+        public String serialize(Context context, Object value) {
+            if (value != null) {
+                return value.toString();
+            }
+            return null;
+        }
+    };
+
+    public static final XValueFactory VERSION = new XValueFactory() {
+        @Override
+        public Object deserialize(Context context, String value) {
+            return Version.parseString(value);
+        }
+
+        @Override
+        public String serialize(Context context, Object value) {
+            if (value != null) {
+                return value.toString();
+            }
+            return null;
+        }
+    };
+
+    private DescriptorValues() {
+    }
+
+    /**
+     * Gets the canonical instance of a descriptor string, or the string
+     * itself if too long to be worth sharing.
+     */
+    public static String canonical(String value) {
+        if (value == null || value.length() > MAX_CANONICAL_LENGTH) {
+            return value;
+        }
+        return strings.intern(value);
+    }
+
+    /**
+     * Registers the factories of the component descriptors.
+     */
+    public static void registerFactories(XMap xmap) {
+        xmap.setValueFactory(ComponentName.class, COMPONENT_NAME);
+        xmap.setValueFactory(Version.class, VERSION);
+        registerStringFactory(xmap);
+    }
+
+    /**
+     * Registers the factory of canonical strings, for contribution objects.
+     */
+    public static void registerStringFactory(XMap xmap) {
+        xmap.setValueFactory(String.class, STRING);
+    }
+
+}
@@ -15,11 +15,7 @@ package org.nuxeo.runtime.model.impl;
 
 import java.io.InputStream;
 
-import org.nuxeo.common.xmap.Context;
 import org.nuxeo.common.xmap.XMap;
-import org.nuxeo.common.xmap.XValueFactory;
-import org.nuxeo.runtime.Version;
-import org.nuxeo.runtime.model.ComponentName;
 import org.nuxeo.runtime.model.RuntimeContext;
 
 /**
@@ -32,35 +28,7 @@ public class ExtensionDescriptorReader {
 
     public ExtensionDescriptorReader() {
         xmap = new XMap();
-        xmap.setValueFactory(ComponentName.class, new XValueFactory() {
-            @Override
-            public Object deserialize(Context context, String value) {
-                return new ComponentName(value);
-            }
-
-            @Override
-            public String serialize(Context context, Object value) {
-                if ( value != null ) {
-                    return value.toString();
-                }
-                return null;
-            }
-        });
-        xmap.setValueFactory(Version.class, new XValueFactory() {
-
-            @Override
-            public Object deserialize(Context context, String value) {
-                return Version.parseString(value);
-            }
-
-            @Override
-            public String serialize(Context context, Object value) {
-                if ( value != null ) {
-                    return value.toString();
-                }
-                return null;
-            }
-        });
+        DescriptorValues.registerFactories(xmap);
         xmap.register(ExtensionImpl.class);
     }
 
@@ -16,6 +16,11 @@ package org.nuxeo.runtime.model.impl;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.Charset;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.nuxeo.common.xmap.DOMSerializer;
 import org.nuxeo.common.xmap.annotation.XContent;
@@ -25,7 +30,10 @@ import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.ComponentName;
 import org.nuxeo.runtime.model.Extension;
 import org.nuxeo.runtime.model.RuntimeContext;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
 /**
  * @author <a href="mailto:bs@nuxeo.com">Bogdan Stefanescu</a>
@@ -40,6 +48,10 @@ public class ExtensionImpl implements Extension {
 
     private static final ExtensionDescriptorReader reader = new ExtensionDescriptorReader();
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final DocumentBuilderFactory factory = newFactory();
+
     @XNode("@target")
     ComponentName target;
 
@@ -55,25 +67,105 @@ public class ExtensionImpl implements Extension {
     @XNode("")
     transient Element element;
 
+    /** The element serialized when released, see {@link #releaseElement()}. */
+    transient byte[] xml;
+
+    /** The element parsed again from {@link #xml}, kept while memory allows. */
+    transient SoftReference<Element> rebuilt;
+
     transient Object[] contributions;
 
     // declaring component
     transient ComponentInstance component;
 
+    private static DocumentBuilderFactory newFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+
     @Override
-    public void dispose() {
+    public synchronized void dispose() {
         element = null;
+        xml = null;
+        rebuilt = null;
         contributions = null;
     }
 
+    /**
+     * Gets the DOM element of this extension. Once released, the element is
+     * parsed again from its serialized form, and kept until memory is short.
+     */
     @Override
-    public Element getElement() {
+    public synchronized Element getElement() {
+        if (element == null && xml != null) {
+            Element e = rebuilt == null ? null : rebuilt.get();
+            if (e == null) {
+                try {
+                    e = factory.newDocumentBuilder().parse(
+                            new ByteArrayInputStream(xml)).getDocumentElement();
+                } catch (Exception cause) {
+                    throw new IllegalStateException(
+                            "Cannot rebuild the element of " + this, cause);
+                }
+                rebuilt = new SoftReference<Element>(e);
+            }
+            return e;
+        }
         return element;
     }
 
     @Override
-    public void setElement(Element element) {
+    public synchronized void setElement(Element element) {
         this.element = element;
+        xml = null;
+        rebuilt = null;
+    }
+
+    /**
+     * Replaces the DOM element by its serialized form, much smaller, once
+     * the contributions are registered.
+     *
+     * @since 7.1
+     */
+    public synchronized void releaseElement() {
+        if (element == null) {
+            return;
+        }
+        try {
+            xml = DOMSerializer.toStringOmitXml(withNamespaces(element)).getBytes(
+                    UTF_8);
+            element = null;
+        } catch (IOException e) {
+            // keep the element
+        }
+    }
+
+    /**
+     * Copies an element, declaring on the copy the namespaces declared by
+     * its ancestors, so that it can be parsed on its own.
+     */
+    protected static Element withNamespaces(Element element) {
+        Element copy = (Element) element.cloneNode(true);
+        for (Node node = element.getParentNode(); node instanceof Element;
+                node = node.getParentNode()) {
+            NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                // by name, the document may not be namespace aware
+                String name = attr.getName();
+                if (!name.equals(XMLConstants.XMLNS_ATTRIBUTE)
+                        && !name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ':')) {
+                    continue;
+                }
+                // the closest declaration of a prefix wins
+                if (!copy.hasAttribute(name)) {
+                    copy.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                            name, attr.getValue());
+                }
+            }
+        }
+        return copy;
     }
 
     @Override
@@ -148,7 +240,10 @@ public class ExtensionImpl implements Extension {
      * Gets the XML string for this extension.
      */
     @Override
-    public String toXML() {
+    public synchronized String toXML() {
+        if (element == null && xml != null) {
+            return new String(xml, UTF_8);
+        }
         try {
             return DOMSerializer.toStringOmitXml(element);
         } catch (IOException e) {
@@ -88,6 +88,7 @@ public class ExtensionPointImpl implements ExtensionPoint, Serializable {
         if (contributions != null) {
             if (xmap == null) {
                 xmap = new XMap();
+                DescriptorValues.registerStringFactory(xmap);
                 for (Class contrib : contributions) {
                     xmap.register(contrib);
                 }
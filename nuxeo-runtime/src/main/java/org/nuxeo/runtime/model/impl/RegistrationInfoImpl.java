@@ -27,6 +27,7 @@ import org.nuxeo.common.xmap.annotation.XNodeList;
 import org.nuxeo.common.xmap.annotation.XNodeMap;
 import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.runtime.ComponentEvent;
+import org.nuxeo.runtime.RuntimeInstrumentation;
 import org.nuxeo.runtime.Version;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.Component;
@@ -354,7 +355,13 @@ public class RegistrationInfoImpl implements RegistrationInfo {
                 ComponentEvent.ACTIVATING_COMPONENT, this));
 
         // activate component
-        component.activate();
+        RuntimeInstrumentation.Timer timer = RuntimeInstrumentation.get().start(
+                RuntimeInstrumentation.Point.ACTIVATE, name);
+        try {
+            component.activate();
+        } finally {
+            timer.stop();
+        }
         log.info("Component activated: " + name);
 
         state = ACTIVATED;
@@ -386,18 +393,25 @@ public class RegistrationInfoImpl implements RegistrationInfo {
         Set<Extension> pendingExt = mgr.pendingExtensions.remove(name);
         if (pendingExt != null) {
             for (Extension xt : pendingExt) {
-                ComponentManagerImpl.loadContributions(this, xt);
+                RuntimeInstrumentation.Timer timer = RuntimeInstrumentation.get().start(
+                        RuntimeInstrumentation.Point.REGISTER_EXTENSION, name);
                 try {
-                    component.registerExtension(xt);
-                } catch (Exception e) {
-                    String msg = "Failed to register extension to: "
-                            + xt.getTargetComponent() + ", xpoint: "
-                            + xt.getExtensionPoint() + " in component: "
-                            + xt.getComponent().getName();
-                    log.error(msg, e);
-                    msg += " (" + e.toString() + ')';
-                    Framework.getRuntime().getWarnings().add(msg);
-                    Framework.handleDevError(e);
+                    ComponentManagerImpl.loadContributions(this, xt);
+                    try {
+                        component.registerExtension(xt);
+                        mgr.extensionRegistered(xt);
+                    } catch (Exception e) {
+                        String msg = "Failed to register extension to: "
+                                + xt.getTargetComponent() + ", xpoint: "
+                                + xt.getExtensionPoint() + " in component: "
+                                + xt.getComponent().getName();
+                        log.error(msg, e);
+                        msg += " (" + e.toString() + ')';
+                        Framework.getRuntime().getWarnings().add(msg);
+                        Framework.handleDevError(e);
+                    }
+                } finally {
+                    timer.stop();
                 }
             }
         }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.model.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Table of canonical instances of immutable values, which only holds them as
+ * long as they are used elsewhere.
+ * <p>
+ * Unlike {@link String#intern()}, the table is not global to the JVM and the
+ * values it holds are collected once unused, along with the registrations
+ * they came from.
+ * <p>
+ * Descriptors are read by several threads at startup, so the table is split
+ * in stripes by hash code, each with its own lock.
+ *
+ * @since 7.1
+ */
+public class WeakInterner<T> {
+
+    public static final int DEFAULT_STRIPES = 16;
+
+    protected final Map<T, WeakReference<T>>[] stripes;
+
+    public WeakInterner() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes the number of stripes, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public WeakInterner(int stripes) {
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        this.stripes = new Map[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new WeakHashMap<T, WeakReference<T>>();
+        }
+    }
+
+    protected Map<T, WeakReference<T>> stripe(Object value) {
+        int h = value.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    /**
+     * Gets the canonical instance equal to the given value, which becomes the
+     * canonical one if none is known yet.
+     */
+    public T intern(T value) {
+        Map<T, WeakReference<T>> table = stripe(value);
+        synchronized (table) {
+            WeakReference<T> ref = table.get(value);
+            T canonical = ref == null ? null : ref.get();
+            if (canonical == null) {
+                table.put(value, new WeakReference<T>(value));
+                canonical = value;
+            }
+            return canonical;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<T, WeakReference<T>> table : stripes) {
+            synchronized (table) {
+                size += table.size();
+            }
+        }
+        return size;
+    }
+
+}
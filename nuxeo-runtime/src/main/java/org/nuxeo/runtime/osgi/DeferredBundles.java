@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.osgi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.model.ComponentName;
+import org.nuxeo.runtime.model.RegistrationInfo;
+import org.nuxeo.runtime.model.RuntimeContext;
+import org.nuxeo.runtime.model.impl.ComponentManagerImpl;
+import org.nuxeo.runtime.model.impl.ComponentSummary;
+import org.nuxeo.runtime.model.impl.DefaultRuntimeContext;
+import org.nuxeo.runtime.model.impl.DeferredComponents;
+import org.osgi.framework.Bundle;
+
+/**
+ * Bundles whose components are registered on first use rather than at
+ * startup.
+ * <p>
+ * The component descriptors of the bundles are only summarized at startup,
+ * see {@link ComponentSummary}. A bundle is deferred when all its components
+ * can be reached through the component manager, that is when each of them
+ * provides a service, declares extension points or has no implementation,
+ * and when all the extensions it contributes target components of deferred
+ * bundles. Its context is created, and its components parsed, registered and
+ * activated, when one of its components is looked up by name or service,
+ * targeted by an extension or required by another component. The deferred
+ * bundles contributing to its components are loaded along with it.
+ * <p>
+ * Enabled by the {@value #LAZY_COMPONENTS} property. The components and
+ * services listed in the {@value #LAZY_COMPONENTS_WARMUP} property are known
+ * to be used, their bundles are loaded at startup.
+ *
+ * @since 7.1
+ */
+public class DeferredBundles implements DeferredComponents {
+
+    private static final Log log = LogFactory.getLog(DeferredBundles.class);
+
+    public static final String LAZY_COMPONENTS = "org.nuxeo.runtime.lazyComponents";
+
+    public static final String LAZY_COMPONENTS_WARMUP = "org.nuxeo.runtime.lazyComponents.warmup";
+
+    protected static class Entry {
+
+        protected final Bundle bundle;
+
+        /** Names and aliases of the components. */
+        protected final Set<ComponentName> names = new HashSet<ComponentName>();
+
+        protected final Set<ComponentName> targets = new HashSet<ComponentName>();
+
+        protected final Set<String> services = new HashSet<String>();
+
+        protected Entry(Bundle bundle) {
+            this.bundle = bundle;
+        }
+
+        @Override
+        public String toString() {
+            return bundle.getSymbolicName();
+        }
+    }
+
+    protected final OSGiRuntimeService runtime;
+
+    protected final Set<Entry> deferred = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+
+    protected final ConcurrentMap<ComponentName, Entry> byComponent = new ConcurrentHashMap<ComponentName, Entry>();
+
+    protected final ConcurrentMap<String, Entry> byService = new ConcurrentHashMap<String, Entry>();
+
+    /** Target component to the deferred bundles contributing to it. */
+    protected final ConcurrentMap<ComponentName, List<Entry>> contributors = new ConcurrentHashMap<ComponentName, List<Entry>>();
+
+    public DeferredBundles(OSGiRuntimeService runtime) {
+        this.runtime = runtime;
+    }
+
+    public static boolean isEnabled(OSGiRuntimeService runtime) {
+        return Boolean.parseBoolean(runtime.getProperty(LAZY_COMPONENTS,
+                "false"));
+    }
+
+    /**
+     * Defers the bundles that can be, among the given ones.
+     *
+     * @return the bundles to load now, in the given order
+     */
+    public List<Bundle> defer(List<Bundle> bundles) {
+        Set<String> warmup = new HashSet<String>();
+        String list = runtime.getProperty(LAZY_COMPONENTS_WARMUP, "");
+        StringTokenizer tok = new StringTokenizer(list, ", \t\n\r\f");
+        while (tok.hasMoreTokens()) {
+            warmup.add(tok.nextToken());
+        }
+        Map<Bundle, Entry> candidates = new LinkedHashMap<Bundle, Entry>();
+        for (Bundle bundle : bundles) {
+            Entry entry = summarize(bundle, warmup);
+            if (entry != null) {
+                candidates.put(bundle, entry);
+            }
+        }
+        // drop the bundles contributing to components which are loaded at
+        // startup, until only bundles contributing to each other are left
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Set<ComponentName> declared = new HashSet<ComponentName>();
+            for (Entry entry : candidates.values()) {
+                declared.addAll(entry.names);
+            }
+            for (Entry entry : new ArrayList<Entry>(candidates.values())) {
+                if (!declared.containsAll(entry.targets)) {
+                    candidates.remove(entry.bundle);
+                    changed = true;
+                }
+            }
+        }
+        List<Bundle> eager = new ArrayList<Bundle>(bundles.size());
+        for (Bundle bundle : bundles) {
+            Entry entry = candidates.get(bundle);
+            if (entry == null) {
+                eager.add(bundle);
+            } else {
+                index(entry);
+            }
+        }
+        log.info("Deferred " + candidates.size() + " of " + bundles.size()
+                + " component bundles");
+        if (log.isDebugEnabled()) {
+            log.debug("Deferred bundles: " + candidates.values());
+        }
+        return eager;
+    }
+
+    /**
+     * Summarizes the components of a bundle.
+     *
+     * @return the summary, or {@code null} if the bundle cannot be deferred
+     */
+    protected Entry summarize(Bundle bundle, Set<String> warmup) {
+        String list = OSGiRuntimeService.getComponentsList(bundle);
+        if (list == null) {
+            return null;
+        }
+        Entry entry = new Entry(bundle);
+        StringTokenizer tok = new StringTokenizer(list, ", \t\n\r\f");
+        while (tok.hasMoreTokens()) {
+            URL url = bundle.getEntry(tok.nextToken());
+            if (url == null) {
+                // reported when loading the bundle
+                return null;
+            }
+            ComponentSummary summary;
+            try {
+                InputStream in = url.openStream();
+                try {
+                    summary = ComponentSummary.read(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                log.debug("Cannot summarize component " + url, e);
+                return null;
+            }
+            if (summary == null) {
+                // not a component, ignored when deployed
+                continue;
+            }
+            if (summary.getName() == null || summary.getImplementation() != null
+                    && summary.getServices().isEmpty()
+                    && summary.getExtensionPoints().isEmpty()) {
+                // only reachable through its activation
+                return null;
+            }
+            ComponentName name = ComponentName.of(expand(summary.getName()));
+            if (warmup.contains(name.getName())) {
+                return null;
+            }
+            entry.names.add(name);
+            for (String alias : summary.getAliases()) {
+                entry.names.add(ComponentName.of(expand(alias)));
+            }
+            for (String target : summary.getTargets()) {
+                entry.targets.add(ComponentName.of(expand(target)));
+            }
+            for (String service : summary.getServices()) {
+                service = expand(service);
+                if (warmup.contains(service)) {
+                    return null;
+                }
+                entry.services.add(service);
+            }
+        }
+        return entry.names.isEmpty() ? null : entry;
+    }
+
+    protected String expand(String value) {
+        return value.contains("${") ? runtime.expandVars(value) : value;
+    }
+
+    protected void index(Entry entry) {
+        deferred.add(entry);
+        for (ComponentName name : entry.names) {
+            byComponent.put(name, entry);
+        }
+        for (String service : entry.services) {
+            byService.put(service, entry);
+        }
+        for (ComponentName target : entry.targets) {
+            if (entry.names.contains(target)) {
+                continue;
+            }
+            List<Entry> entries = contributors.get(target);
+            if (entries == null) {
+                entries = new CopyOnWriteArrayList<Entry>();
+                contributors.put(target, entries);
+            }
+            entries.add(entry);
+        }
+    }
+
+    protected void unindex(Entry entry) {
+        for (ComponentName name : entry.names) {
+            byComponent.remove(name, entry);
+        }
+        for (String service : entry.services) {
+            byService.remove(service, entry);
+        }
+    }
+
+    /**
+     * Loads the deferred bundles whose components are already awaited by the
+     * registered components, as extension targets or requirements.
+     */
+    public void loadAwaited(ComponentManagerImpl manager) {
+        Set<ComponentName> names = new HashSet<ComponentName>();
+        synchronized (manager) {
+            names.addAll(manager.getNeededRegistrations());
+            for (Set<ComponentName> missing : manager.getPendingRegistrations().values()) {
+                names.addAll(missing);
+            }
+        }
+        for (ComponentName name : names) {
+            loadComponent(name);
+        }
+    }
+
+    public boolean isDeferred(Bundle bundle) {
+        for (Entry entry : deferred) {
+            if (entry.bundle == bundle) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets a deferred bundle which was stopped before being loaded.
+     */
+    public void remove(Bundle bundle) {
+        for (Entry entry : deferred) {
+            if (entry.bundle == bundle && deferred.remove(entry)) {
+                unindex(entry);
+            }
+        }
+    }
+
+    public int size() {
+        return deferred.size();
+    }
+
+    @Override
+    public boolean loadComponent(ComponentName name) {
+        Entry entry = byComponent.get(name);
+        return entry != null && load(entry);
+    }
+
+    @Override
+    public boolean loadService(String serviceClass) {
+        Entry entry = byService.get(serviceClass);
+        return entry != null && load(entry);
+    }
+
+    /**
+     * The runtime lock, held by bundle events when creating the contexts of
+     * bundles.
+     */
+    @Override
+    public Object getLock() {
+        return runtime;
+    }
+
+    /**
+     * Loads a deferred bundle and the deferred bundles contributing to its
+     * components. Holds the runtime lock, as bundle events do.
+     */
+    protected boolean load(Entry entry) {
+        synchronized (runtime) {
+            if (!deferred.remove(entry)) {
+                // already loaded, or being loaded by this thread
+                return false;
+            }
+            unindex(entry);
+            log.info("Loading deferred bundle: " + entry);
+            RuntimeContext ctx;
+            try {
+                ctx = runtime.createContext(entry.bundle);
+            } catch (Exception e) {
+                log.warn("Failed to load components for bundle: " + entry, e);
+                return true;
+            }
+            for (ComponentName name : entry.names) {
+                List<Entry> entries = contributors.remove(name);
+                if (entries != null) {
+                    for (Entry contributor : entries) {
+                        load(contributor);
+                    }
+                }
+            }
+            if (runtime.componentsNotified
+                    && ctx instanceof DefaultRuntimeContext) {
+                notifyApplicationStarted(((DefaultRuntimeContext) ctx).getDeployedFiles().values());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Tells the components loaded after the application was started that it
+     * is.
+     */
+    protected void notifyApplicationStarted(Collection<ComponentName> names) {
+        List<RegistrationInfo> ris = new ArrayList<RegistrationInfo>();
+        for (ComponentName name : names) {
+            RegistrationInfo ri = runtime.getComponentManager().getRegistrationInfo(
+                    name);
+            if (ri != null) {
+                ris.add(ri);
+            }
+        }
+        runtime.notifyComponentsOnStarted(ris);
+    }
+
+}
@@ -14,6 +14,7 @@
 
 package org.nuxeo.runtime.osgi;
 
+import java.util.ArrayList;
 import java.util.IllegalFormatException;
 import java.util.LinkedList;
 import java.util.List;
@@ -21,6 +22,8 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.utils.StringUtils;
+import org.nuxeo.runtime.model.ComponentManager;
+import org.nuxeo.runtime.model.impl.ComponentManagerImpl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
@@ -37,6 +40,8 @@ public class OSGiComponentLoader implements SynchronousBundleListener {
 
     private final OSGiRuntimeService runtime;
 
+    protected DeferredBundles deferred;
+
     public OSGiComponentLoader(OSGiRuntimeService runtime) {
         this.runtime = runtime;
         install();
@@ -47,6 +52,7 @@ public class OSGiComponentLoader implements SynchronousBundleListener {
         ctx.addBundleListener(this);
         Bundle[] bundles = ctx.getBundles();
         int mask = Bundle.STARTING | Bundle.ACTIVE;
+        List<Bundle> componentBundles = new ArrayList<Bundle>();
         for (Bundle bundle : bundles) {
             String name = bundle.getSymbolicName();
             runtime.bundles.put(name, bundle);
@@ -58,12 +64,7 @@ public class OSGiComponentLoader implements SynchronousBundleListener {
                     bundleDebug("Install bundle: %s component list: " +
                             OSGiRuntimeService.getComponentsList(bundle), name);
                     // check only bundles containing nuxeo comp.
-                    try {
-                        runtime.createContext(bundle);
-                    } catch (Throwable e) {
-                        log.warn("Failed to load components for bundle: " +
-                                name, e);
-                    }
+                    componentBundles.add(bundle);
                 } else {
                     bundleDebug("Install bundle: %s has no components", name);
                 }
@@ -72,6 +73,33 @@ public class OSGiComponentLoader implements SynchronousBundleListener {
                         + "or ACTIVE, so no context was created", name);
             }
         }
+        ComponentManager manager = runtime.getComponentManager();
+        if (DeferredBundles.isEnabled(runtime)
+                && manager instanceof ComponentManagerImpl) {
+            deferred = new DeferredBundles(runtime);
+            componentBundles = deferred.defer(componentBundles);
+            ((ComponentManagerImpl) manager).setDeferredComponents(deferred);
+            // the configuration is deployed already
+            deferred.loadAwaited((ComponentManagerImpl) manager);
+        }
+        for (Bundle bundle : componentBundles) {
+            try {
+                runtime.createContext(bundle);
+            } catch (Throwable e) {
+                log.warn("Failed to load components for bundle: " +
+                        bundle.getSymbolicName(), e);
+            }
+        }
+    }
+
+    /**
+     * Gets the bundles whose components are loaded on demand, or
+     * {@code null} if lazy loading is disabled.
+     *
+     * @since 7.1
+     */
+    public DeferredBundles getDeferredBundles() {
+        return deferred;
     }
 
     public void uninstall() {
@@ -109,6 +137,9 @@ public class OSGiComponentLoader implements SynchronousBundleListener {
                 break;
             case BundleEvent.STOPPED:
             case BundleEvent.UNRESOLVED:
+                if (deferred != null) {
+                    deferred.remove(bundle);
+                }
                 if (componentsList != null) {
                     bundleDebug(
                             "Bundle changed: %s STOPPING with components: " +
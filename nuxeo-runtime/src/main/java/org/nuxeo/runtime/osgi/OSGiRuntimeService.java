@@ -41,6 +41,7 @@ import org.nuxeo.common.Environment;
 import org.nuxeo.common.utils.FileUtils;
 import org.nuxeo.common.utils.TextTemplate;
 import org.nuxeo.runtime.AbstractRuntimeService;
+import org.nuxeo.runtime.RuntimeInstrumentation;
 import org.nuxeo.runtime.Version;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.ComponentName;
@@ -63,7 +64,7 @@ import org.osgi.framework.FrameworkListener;
 public class OSGiRuntimeService extends AbstractRuntimeService implements
         FrameworkListener {
 
-    public static final ComponentName FRAMEWORK_STARTED_COMP = new ComponentName(
+    public static final ComponentName FRAMEWORK_STARTED_COMP = ComponentName.of(
             "org.nuxeo.runtime.started");
 
     /** Can be used to change the runtime home directory */
@@ -92,6 +93,12 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements
 
     private boolean appStarted = false;
 
+    /**
+     * Whether the registered components were notified that the application
+     * is started, guarded by this.
+     */
+    volatile boolean componentsNotified = false;
+
     /**
      * OSGi doesn't provide a method to lookup bundles by symbolic name. This
      * table is used to map symbolic names to bundles. This map is not handling
@@ -486,15 +493,32 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements
     }
 
     protected void notifyComponentsOnStarted() {
-        List<RegistrationInfo> ris = new ArrayList<RegistrationInfo>(
-                manager.getRegistrations());
+        List<RegistrationInfo> ris;
+        synchronized (this) {
+            // components loaded later on are notified when loaded
+            ris = new ArrayList<RegistrationInfo>(manager.getRegistrations());
+            componentsNotified = true;
+        }
+        notifyComponentsOnStarted(ris);
+    }
+
+    /**
+     * @since 7.1
+     */
+    protected void notifyComponentsOnStarted(List<RegistrationInfo> ris) {
         Collections.sort(ris, new RIApplicationStartedComparator());
+        RuntimeInstrumentation instrumentation = RuntimeInstrumentation.get();
         for (RegistrationInfo ri : ris) {
+            RuntimeInstrumentation.Timer timer = instrumentation.start(
+                    RuntimeInstrumentation.Point.APPLICATION_STARTED,
+                    ri.getName());
             try {
                 ri.notifyApplicationStarted();
             } catch (Exception e) {
                 log.error("Failed to notify component '" + ri.getName()
                         + "' on application started", e);
+            } finally {
+                timer.stop();
             }
         }
     }
@@ -50,7 +50,7 @@ import org.osgi.framework.Bundle;
  */
 public class DeploymentService extends DefaultComponent {
 
-    public static final ComponentName NAME = new ComponentName(
+    public static final ComponentName NAME = ComponentName.of(
         "org.nuxeo.runtime.services.deployment.DeploymentService");
 
     private static final Log log =  LogFactory.getLog(DeploymentService.class);
@@ -32,7 +32,7 @@ import org.nuxeo.runtime.model.Extension;
  */
 public class EventService extends DefaultComponent {
 
-    public static final ComponentName NAME = new ComponentName(
+    public static final ComponentName NAME = ComponentName.of(
             "org.nuxeo.runtime.EventService");
 
     private static final Log log = LogFactory.getLog(EventService.class);
@@ -38,4 +38,16 @@ public class TestComponentName {
         assertFalse(cn3.equals(cn1));
     }
 
+    @Test
+    public void testCanonical() {
+        ComponentName cn1 = ComponentName.of("foo:bar");
+        ComponentName cn2 = ComponentName.of("foo", "bar");
+        ComponentName cn3 = ComponentName.of("bar");
+
+        assertSame(cn1, cn2);
+        assertEquals(cn1, new ComponentName("foo:bar"));
+        assertSame(ComponentName.DEFAULT_TYPE, cn3.getType());
+        assertSame(cn3, ComponentName.of("service:bar"));
+    }
+
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.model.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TestComponentSummary {
+
+    protected static ComponentSummary read(String xml) throws Exception {
+        return ComponentSummary.read(new ByteArrayInputStream(
+                xml.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testRelations() throws Exception {
+        ComponentSummary summary = read("<?xml version=\"1.0\"?>\n"
+                + "<component name=\"my.comp\">\n"
+                + "  <alias>my.alias</alias>\n"
+                + "  <require> my.required </require>\n"
+                + "  <implementation class=\"my.Impl\"/>\n"
+                + "  <service>\n"
+                + "    <provide interface=\"my.Service\"/>\n"
+                + "    <provide interface=\"my.OtherService\"/>\n"
+                + "  </service>\n"
+                + "  <extension-point name=\"xp\">\n"
+                + "    <object class=\"my.Descriptor\"/>\n"
+                + "  </extension-point>\n"
+                + "  <extension target=\"my.target\" point=\"xp\">\n"
+                + "    <extension target=\"not.a.target\"/>\n"
+                + "    <provide interface=\"not.a.Service\"/>\n"
+                + "  </extension>\n"
+                + "  <extension target=\"my.target\" point=\"other\"/>\n"
+                + "</component>\n");
+        assertEquals("my.comp", summary.getName());
+        assertEquals("my.Impl", summary.getImplementation());
+        assertEquals(Arrays.asList("my.alias"), summary.getAliases());
+        assertEquals(Arrays.asList("my.required"), summary.getRequires());
+        assertEquals(Arrays.asList("my.Service", "my.OtherService"),
+                summary.getServices());
+        assertEquals(Arrays.asList("xp"), summary.getExtensionPoints());
+        assertEquals(Arrays.asList("my.target"), summary.getTargets());
+    }
+
+    @Test
+    public void testResources() throws Exception {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(
+                "MyComp1.xml");
+        ComponentSummary summary;
+        try {
+            summary = ComponentSummary.read(in);
+        } finally {
+            in.close();
+        }
+        assertEquals("my.comp1", summary.getName());
+        assertNull(summary.getImplementation());
+        assertEquals(Arrays.asList("my.comp2"), summary.getTargets());
+        assertEquals(Collections.emptyList(), summary.getServices());
+    }
+
+    @Test
+    public void testNotAComponent() throws Exception {
+        assertNull(read("<faces-config><component/></faces-config>"));
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.model.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+public class TestExtensionImpl {
+
+    private static final Log log = LogFactory.getLog(TestExtensionImpl.class);
+
+    protected static final String COMPONENT = "<?xml version=\"1.0\"?>\n"
+            + "<component name=\"my.comp\" xmlns=\"urn:default\""
+            + " xmlns:p=\"urn:p\" xmlns:q=\"urn:q\">\n"
+            + "  <extension target=\"my.target\" point=\"xp\""
+            + " xmlns:q=\"urn:closest\">\n"
+            + "    <p:doc p:lang=\"en\">Text</p:doc>\n"
+            + "    <q:item/>\n"
+            + "  </extension>\n"
+            + "</component>\n";
+
+    protected static Element getExtensionElement() throws Exception {
+        return getExtensionElement(COMPONENT);
+    }
+
+    protected static Element getExtensionElement(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Element component = factory.newDocumentBuilder().parse(
+                new ByteArrayInputStream(xml.getBytes("UTF-8"))).getDocumentElement();
+        return (Element) component.getElementsByTagNameNS(
+                component.getNamespaceURI(), "extension").item(0);
+    }
+
+    /**
+     * Gets a component contributing document types, about 4 KB of XML.
+     */
+    protected static String getDoctypeComponent() {
+        StringBuilder buf = new StringBuilder("<?xml version=\"1.0\"?>\n");
+        buf.append("<component name=\"my.types\">\n");
+        buf.append("  <extension target=\"org.nuxeo.ecm.core.schema.TypeService\""
+                + " point=\"doctype\">\n");
+        for (int i = 0; i < 20; i++) {
+            buf.append("    <doctype name=\"Type").append(i).append(
+                    "\" extends=\"Document\">\n");
+            buf.append("      <schema name=\"common\"/>\n");
+            buf.append("      <schema name=\"dublincore\"/>\n");
+            buf.append("      <facet name=\"Folderish\"/>\n");
+            buf.append("      <subtypes><type>File</type><type>Note</type></subtypes>\n");
+            buf.append("    </doctype>\n");
+        }
+        buf.append("  </extension>\n</component>\n");
+        return buf.toString();
+    }
+
+    protected static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void testReleaseAndRebuild() throws Exception {
+        Element element = getExtensionElement();
+        ExtensionImpl xt = new ExtensionImpl();
+        xt.setElement(element);
+        xt.releaseElement();
+        assertNull(xt.element);
+        assertNotNull(xt.xml);
+
+        // the namespaces declared by the component are kept
+        Element rebuilt = xt.getElement();
+        assertEquals("urn:default", rebuilt.getNamespaceURI());
+        assertEquals("extension", rebuilt.getLocalName());
+        assertEquals("my.target", rebuilt.getAttribute("target"));
+        Element doc = (Element) rebuilt.getElementsByTagNameNS("urn:p", "doc").item(
+                0);
+        assertNotNull(doc);
+        assertEquals("en", doc.getAttributeNS("urn:p", "lang"));
+        assertEquals("Text", doc.getTextContent());
+        assertEquals(1,
+                rebuilt.getElementsByTagNameNS("urn:closest", "item").getLength());
+        assertEquals(0,
+                rebuilt.getElementsByTagNameNS("urn:q", "item").getLength());
+
+        // parsed once
+        assertSame(rebuilt, xt.getElement());
+        // the original element is left untouched
+        assertFalse(element.hasAttribute("xmlns:p"));
+    }
+
+    @Test
+    public void testSetElementAfterRelease() throws Exception {
+        ExtensionImpl xt = new ExtensionImpl();
+        xt.setElement(getExtensionElement());
+        xt.releaseElement();
+        xt.getElement();
+        Element element = getExtensionElement();
+        xt.setElement(element);
+        assertNull(xt.xml);
+        assertNull(xt.rebuilt);
+        assertSame(element, xt.getElement());
+    }
+
+    /**
+     * Compares the heap used by extensions keeping their DOM element and by
+     * the same extensions once released, and logs the figures.
+     */
+    @Test
+    public void testReleaseReducesHeap() throws Exception {
+        int count = 1000;
+        String component = getDoctypeComponent();
+        ExtensionImpl[] extensions = new ExtensionImpl[count];
+        long base = usedHeap();
+        for (int i = 0; i < count; i++) {
+            extensions[i] = new ExtensionImpl();
+            extensions[i].setElement(getExtensionElement(component));
+        }
+        long withElements = usedHeap() - base;
+        for (ExtensionImpl xt : extensions) {
+            xt.releaseElement();
+        }
+        long released = usedHeap() - base;
+        log.info(String.format("%d extensions of %d bytes of XML, used heap:"
+                + " %d KB with their element (%d bytes each),"
+                + " %d KB released (%d bytes each)", count,
+                extensions[0].xml.length, withElements / 1024, withElements
+                        / count, released / 1024, released / count));
+        assertTrue(withElements + " bytes with elements, " + released
+                + " bytes released", released < withElements / 2);
+    }
+
+}
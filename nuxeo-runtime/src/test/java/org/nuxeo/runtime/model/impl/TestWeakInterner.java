@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.runtime.model.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+public class TestWeakInterner {
+
+    private static final Log log = LogFactory.getLog(TestWeakInterner.class);
+
+    protected static final int THREADS = 8;
+
+    protected static final int VALUES = 1000;
+
+    protected static final int ITERATIONS = 200;
+
+    @Test
+    public void testIntern() {
+        WeakInterner<String> interner = new WeakInterner<String>();
+        String first = new String("value");
+        String second = new String("value");
+        assertNotSame(first, second);
+        assertSame(first, interner.intern(first));
+        assertSame(first, interner.intern(second));
+        assertEquals(1, interner.size());
+        interner.intern("other");
+        assertEquals(2, interner.size());
+    }
+
+    @Test
+    public void testStripes() {
+        assertEquals(1, new WeakInterner<String>(1).stripes.length);
+        assertEquals(4, new WeakInterner<String>(3).stripes.length);
+        assertEquals(WeakInterner.DEFAULT_STRIPES,
+                new WeakInterner<String>().stripes.length);
+    }
+
+    @Test
+    public void testUnusedValuesAreCollected() throws Exception {
+        WeakInterner<String> interner = new WeakInterner<String>();
+        for (int i = 0; i < VALUES; i++) {
+            interner.intern(new String("value" + i));
+        }
+        for (int i = 0; i < 50 && interner.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, interner.size());
+    }
+
+    /**
+     * Interns the same values from several threads, checking they all get
+     * the same instances.
+     *
+     * @return the elapsed time in ms
+     */
+    protected long internConcurrently(final WeakInterner<String> interner)
+            throws Exception {
+        final String[] canonical = new String[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            canonical[i] = interner.intern("value" + i);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int n = 0; n < ITERATIONS; n++) {
+                            for (int i = 0; i < VALUES; i++) {
+                                assertSame(canonical[i],
+                                        interner.intern(new String(
+                                                canonical[i])));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = (System.nanoTime() - begin) / 1000000;
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertEquals(VALUES, interner.size());
+        return elapsed;
+    }
+
+    /**
+     * Compares a single lock with the striped table, and logs the figures.
+     */
+    @Test
+    public void testConcurrentIntern() throws Exception {
+        // warm up
+        internConcurrently(new WeakInterner<String>(1));
+        internConcurrently(new WeakInterner<String>());
+        long single = internConcurrently(new WeakInterner<String>(1));
+        long striped = internConcurrently(new WeakInterner<String>());
+        log.info(String.format("%d threads interning %d values, single lock:"
+                + " %d ms, %d stripes: %d ms", THREADS, THREADS * ITERATIONS
+                * VALUES, single, WeakInterner.DEFAULT_STRIPES, striped));
+    }
+
+}